@@ -0,0 +1,25 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.sdk.autoconfigure.AutoConfiguredOpenTelemetrySdk;
+import java.util.Optional;
+
+/** Creates the SDK exactly like the starter does, but sends the data to a port without receiver. */
+class BenchmarkSdk {
+
+  // nothing is listening here - the export fails in the background, which doesn't affect the
+  // cost on the calling thread that we want to measure
+  static final String ENDPOINT = "http://localhost:14317";
+
+  static AutoConfiguredOpenTelemetrySdk create() {
+    GrafanaProperties properties = new GrafanaProperties();
+    properties.getOnPrem().setEndpoint(ENDPOINT);
+    AutoConfiguredOpenTelemetrySdk sdk =
+        new OpenTelemetryConfig()
+            .autoConfiguredOpenTelemetrySdk(
+                properties, "benchmark", Optional.empty(), Optional.empty(), Optional.empty());
+    if (sdk == null) {
+      throw new IllegalStateException("unable to create OpenTelemetry SDK");
+    }
+    return sdk;
+  }
+}
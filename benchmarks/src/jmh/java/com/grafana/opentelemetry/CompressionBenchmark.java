@@ -0,0 +1,280 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.logs.Logger;
+import io.opentelemetry.api.logs.Severity;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.exporter.internal.marshal.Marshaler;
+import io.opentelemetry.exporter.internal.otlp.logs.LogsRequestMarshaler;
+import io.opentelemetry.exporter.internal.otlp.metrics.MetricsRequestMarshaler;
+import io.opentelemetry.exporter.internal.otlp.traces.TraceRequestMarshaler;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.logs.SdkLoggerProvider;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.logs.export.LogRecordExporter;
+import io.opentelemetry.sdk.logs.export.SimpleLogRecordProcessor;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Bytes on the wire and CPU time of serializing (and compressing) one OTLP export batch, as the
+ * OTLP exporters do for each request with <code>grafana.otlp.compression</code>.
+ *
+ * <p>The batches are recorded with the SDK: 512 HTTP server spans (the default batch size), the
+ * metrics of 100 routes, and 512 log records. The <code>bytesOnWire</code> counter is the size of
+ * the request body. The buffer is reused by each benchmark thread.
+ */
+@State(Scope.Thread)
+public class CompressionBenchmark {
+
+  private static final int BATCH_SIZE = 512;
+  private static final int ROUTES = 100;
+  private static final AttributeKey<String> ROUTE = AttributeKey.stringKey("http.route");
+  private static final AttributeKey<String> METHOD = AttributeKey.stringKey("http.request.method");
+  private static final AttributeKey<Long> STATUS =
+      AttributeKey.longKey("http.response.status_code");
+
+  @Param({"none", "gzip"})
+  public String compression;
+
+  @Param({"spans", "metrics", "logs"})
+  public String signal;
+
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024 * 1024);
+  private final List<SpanData> spans = new ArrayList<>();
+  private final List<MetricData> metrics = new ArrayList<>();
+  private final List<LogRecordData> logs = new ArrayList<>();
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Payload {
+    public long bytesOnWire;
+  }
+
+  @Setup
+  public void setup() {
+    Resource resource =
+        Resource.getDefault()
+            .merge(
+                Resource.create(
+                    Attributes.of(
+                        AttributeKey.stringKey("service.name"), "benchmark",
+                        AttributeKey.stringKey("service.namespace"), "shop",
+                        AttributeKey.stringKey("deployment.environment"), "production")));
+    switch (signal) {
+      case "spans":
+        recordSpans(resource);
+        break;
+      case "metrics":
+        recordMetrics(resource);
+        break;
+      case "logs":
+        recordLogs(resource);
+        break;
+      default:
+        throw new IllegalArgumentException("unknown signal: " + signal);
+    }
+  }
+
+  @Benchmark
+  public void exportBatch(Payload payload) throws IOException {
+    buffer.reset();
+    Marshaler marshaler = createMarshaler();
+    if (compression.equals("gzip")) {
+      try (OutputStream out = new GZIPOutputStream(buffer)) {
+        marshaler.writeBinaryTo(out);
+      }
+    } else {
+      marshaler.writeBinaryTo(buffer);
+    }
+    payload.bytesOnWire = buffer.size();
+  }
+
+  private Marshaler createMarshaler() {
+    switch (signal) {
+      case "spans":
+        return TraceRequestMarshaler.create(spans);
+      case "metrics":
+        return MetricsRequestMarshaler.create(metrics);
+      default:
+        return LogsRequestMarshaler.create(logs);
+    }
+  }
+
+  private void recordSpans(Resource resource) {
+    try (SdkTracerProvider tracerProvider =
+        SdkTracerProvider.builder()
+            .setResource(resource)
+            .addSpanProcessor(SimpleSpanProcessor.create(new CollectingSpanExporter(spans)))
+            .build()) {
+      Tracer tracer = tracerProvider.get("benchmark");
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        String route = route(i);
+        Span span = tracer.spanBuilder("GET " + route).setSpanKind(SpanKind.SERVER).startSpan();
+        span.setAttribute(METHOD, "GET");
+        span.setAttribute(ROUTE, route);
+        span.setAttribute("url.path", route.replace("{id}", Integer.toString(i)));
+        span.setAttribute(STATUS, status(i));
+        span.setAttribute("user_agent.original", "Mozilla/5.0 (X11; Linux x86_64)");
+        span.end();
+      }
+    }
+  }
+
+  private void recordMetrics(Resource resource) {
+    CollectingMetricExporter exporter = new CollectingMetricExporter(metrics);
+    try (SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder()
+            .setResource(resource)
+            .registerMetricReader(PeriodicMetricReader.builder(exporter).build())
+            .build()) {
+      Meter meter = meterProvider.get("benchmark");
+      DoubleHistogram duration =
+          meter.histogramBuilder("http.server.request.duration").setUnit("s").build();
+      LongCounter requests = meter.counterBuilder("http.server.requests.total").build();
+      for (int i = 0; i < ROUTES * 10; i++) {
+        Attributes attributes =
+            Attributes.of(METHOD, "GET", ROUTE, route(i), STATUS, status(i));
+        duration.record(i % 50 * 0.01, attributes);
+        requests.add(1, attributes);
+      }
+      meterProvider.forceFlush().join(10, TimeUnit.SECONDS);
+    }
+  }
+
+  private void recordLogs(Resource resource) {
+    try (SdkLoggerProvider loggerProvider =
+        SdkLoggerProvider.builder()
+            .setResource(resource)
+            .addLogRecordProcessor(
+                SimpleLogRecordProcessor.create(new CollectingLogRecordExporter(logs)))
+            .build()) {
+      Logger logger = loggerProvider.get("com.example.shop.OrderController");
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        logger
+            .logRecordBuilder()
+            .setSeverity(Severity.INFO)
+            .setSeverityText("INFO")
+            .setBody("processed order " + i + " for customer " + (i % 37) + " in " + i % 50 + "ms")
+            .setAttribute(AttributeKey.stringKey("thread.name"), "http-nio-8080-exec-" + i % 10)
+            .emit();
+      }
+    }
+  }
+
+  private static String route(int i) {
+    return "/api/v1/resource" + i % ROUTES + "/{id}";
+  }
+
+  private static long status(int i) {
+    return i % 20 == 0 ? 500 : 200;
+  }
+
+  private static class CollectingSpanExporter implements SpanExporter {
+    private final List<SpanData> spans;
+
+    CollectingSpanExporter(List<SpanData> spans) {
+      this.spans = spans;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+      this.spans.addAll(spans);
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+
+  private static class CollectingMetricExporter implements MetricExporter {
+    private final List<MetricData> metrics;
+
+    CollectingMetricExporter(List<MetricData> metrics) {
+      this.metrics = metrics;
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+      return AggregationTemporality.CUMULATIVE;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<MetricData> metrics) {
+      if (this.metrics.isEmpty()) {
+        this.metrics.addAll(metrics);
+      }
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+
+  private static class CollectingLogRecordExporter implements LogRecordExporter {
+    private final List<LogRecordData> logs;
+
+    CollectingLogRecordExporter(List<LogRecordData> logs) {
+      this.logs = logs;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<LogRecordData> logs) {
+      this.logs.addAll(logs);
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package com.grafana.opentelemetry;
+
+import com.sun.net.httpserver.HttpServer;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Batches per second that one batch processor thread can export to a local OTLP receiver with
+ * injected latency, with <code>grafana.otlp.export.maxConcurrentRequests</code>.
+ *
+ * <p>The receiver waits for <code>latencyMillis</code> before it responds, like a backend that is
+ * far away. Each batch has 512 spans (the default batch size), and is exported like the batch span
+ * processor does: it waits until the export completes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ConcurrentExportBenchmark {
+
+  private static final int BATCH_SIZE = 512;
+
+  @Param({"1", "4"})
+  public int maxConcurrentRequests;
+
+  @Param({"100"})
+  public long latencyMillis;
+
+  private final List<SpanData> batch = new ArrayList<>();
+  private ExecutorService receiverThreads;
+  private HttpServer receiver;
+  private SpanExporter exporter;
+
+  @Setup
+  public void setup() throws IOException {
+    receiverThreads = Executors.newCachedThreadPool();
+    receiver = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    receiver.setExecutor(receiverThreads);
+    receiver.createContext(
+        "/v1/traces",
+        exchange -> {
+          try (InputStream body = exchange.getRequestBody()) {
+            body.readAllBytes();
+            Thread.sleep(latencyMillis);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          exchange.sendResponseHeaders(200, -1);
+          exchange.close();
+        });
+    receiver.start();
+
+    GrafanaProperties.ExportProperties properties = new GrafanaProperties.ExportProperties();
+    properties.setMaxConcurrentRequests(maxConcurrentRequests);
+    exporter =
+        ConcurrentExporter.wrap(
+            OtlpHttpSpanExporter.builder()
+                .setEndpoint("http://localhost:" + receiver.getAddress().getPort() + "/v1/traces")
+                .build(),
+            properties,
+            null);
+    recordSpans();
+  }
+
+  @TearDown
+  public void tearDown() {
+    exporter.shutdown().join(10, TimeUnit.SECONDS);
+    receiver.stop(0);
+    receiverThreads.shutdownNow();
+  }
+
+  @Benchmark
+  public boolean exportBatch() {
+    return exporter.export(batch).join(30, TimeUnit.SECONDS).isSuccess();
+  }
+
+  private void recordSpans() {
+    SpanExporter collecting =
+        new SpanExporter() {
+          @Override
+          public CompletableResultCode export(Collection<SpanData> spans) {
+            batch.addAll(spans);
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+          }
+        };
+    try (SdkTracerProvider tracerProvider =
+        SdkTracerProvider.builder()
+            .addSpanProcessor(SimpleSpanProcessor.create(collecting))
+            .build()) {
+      Tracer tracer = tracerProvider.get("benchmark");
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        Span span =
+            tracer.spanBuilder("GET /api/orders/{id}").setSpanKind(SpanKind.SERVER).startSpan();
+        span.setAttribute("http.route", "/api/orders/{id}");
+        span.setAttribute("url.path", "/api/orders/" + i);
+        span.end();
+      }
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.autoconfigure.AutoConfiguredOpenTelemetrySdk;
+import java.util.ArrayList;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Cost of a log call through the log4j appender that is added by {@link Log4jConfig}. */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class Log4jBenchmark {
+
+  @Param({"false", "true"})
+  public boolean garbageFree;
+
+  private Logger logger;
+  private AutoConfiguredOpenTelemetrySdk sdk;
+  private Span span;
+
+  @Setup
+  public void setup() {
+    LoggerContext context = (LoggerContext) LogManager.getContext(false);
+    LoggerConfig root = context.getConfiguration().getRootLogger();
+    // only measure the OpenTelemetryAppender - not the console appender of the default config
+    for (String name : new ArrayList<>(root.getAppenders().keySet())) {
+      root.removeAppender(name);
+    }
+    root.setLevel(Level.INFO);
+
+    sdk = BenchmarkSdk.create();
+    GrafanaProperties.LogsProperties properties = new GrafanaProperties().getLogs();
+    properties.setGarbageFree(garbageFree);
+    new Log4jConfig().tryAddAppender(sdk.getOpenTelemetrySdk(), properties);
+    context.updateLoggers();
+
+    logger = LogManager.getLogger(Log4jBenchmark.class);
+    span = sdk.getOpenTelemetrySdk().getTracer("benchmark").spanBuilder("benchmark").startSpan();
+  }
+
+  @TearDown
+  public void tearDown() {
+    span.end();
+    sdk.getOpenTelemetrySdk().close();
+  }
+
+  @Benchmark
+  public void info() {
+    logger.info("hello {} from {}", "world", "benchmark");
+  }
+
+  @Benchmark
+  public void infoInSpan() {
+    try (Scope ignored = span.makeCurrent()) {
+      logger.info("hello {} from {}", "world", "benchmark");
+    }
+  }
+
+  @Benchmark
+  public void debugDisabled() {
+    logger.debug("hello {} from {}", "world", "benchmark");
+  }
+}
@@ -0,0 +1,64 @@
+package com.grafana.opentelemetry;
+
+import ch.qos.logback.classic.Level;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.autoconfigure.AutoConfiguredOpenTelemetrySdk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Cost of a log call through the logback appender that is added by {@link LogbackConfig}. */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class LogbackBenchmark {
+
+  private static final Logger logger = LoggerFactory.getLogger(LogbackBenchmark.class);
+
+  @Param({"false", "true"})
+  public boolean async;
+
+  private AutoConfiguredOpenTelemetrySdk sdk;
+  private Span span;
+
+  @Setup
+  public void setup() {
+    ch.qos.logback.classic.Logger root = LogbackConfig.getLogger();
+    // only measure the OpenTelemetryAppender - not the console appender of the default config
+    root.detachAndStopAllAppenders();
+    root.setLevel(Level.INFO);
+
+    sdk = BenchmarkSdk.create();
+    GrafanaProperties.LogsProperties properties = new GrafanaProperties().getLogs();
+    properties.getAsync().setEnabled(async);
+    new LogbackConfig().tryAddAppender(sdk.getOpenTelemetrySdk(), properties);
+    span = sdk.getOpenTelemetrySdk().getTracer("benchmark").spanBuilder("benchmark").startSpan();
+  }
+
+  @TearDown
+  public void tearDown() {
+    span.end();
+    LogbackConfig.getLogger().detachAndStopAllAppenders();
+    sdk.getOpenTelemetrySdk().close();
+  }
+
+  @Benchmark
+  public void info() {
+    logger.info("hello {} from {}", "world", "benchmark");
+  }
+
+  @Benchmark
+  public void infoInSpan() {
+    try (Scope ignored = span.makeCurrent()) {
+      logger.info("hello {} from {}", "world", "benchmark");
+    }
+  }
+
+  @Benchmark
+  public void debugDisabled() {
+    logger.debug("hello {} from {}", "world", "benchmark");
+  }
+}
@@ -0,0 +1,84 @@
+package com.grafana.opentelemetry;
+
+import ch.qos.logback.classic.Level;
+import io.opentelemetry.sdk.autoconfigure.AutoConfiguredOpenTelemetrySdk;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+/** Cost per log record of the attributes that can be captured by the logback appender. */
+@State(Scope.Benchmark)
+public class LogbackCaptureBenchmark {
+
+  private static final Logger logger = LoggerFactory.getLogger(LogbackCaptureBenchmark.class);
+  private static final Marker marker = MarkerFactory.getMarker("AUDIT");
+
+  @Param({"none", "thread", "mdc", "allMdc", "marker", "keyValuePairs", "codeLocation", "all"})
+  public String capture;
+
+  private AutoConfiguredOpenTelemetrySdk sdk;
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    @Setup
+    public void setup() {
+      MDC.put("user", "alice");
+      MDC.put("tenant", "acme");
+      MDC.put("request", "4711");
+    }
+
+    @TearDown
+    public void tearDown() {
+      MDC.clear();
+    }
+  }
+
+  @Setup
+  public void setup() {
+    ch.qos.logback.classic.Logger root = LogbackConfig.getLogger();
+    root.detachAndStopAllAppenders();
+    root.setLevel(Level.INFO);
+
+    sdk = BenchmarkSdk.create();
+    GrafanaProperties.LogsProperties properties = new GrafanaProperties().getLogs();
+    configure(properties.getCapture(), capture);
+    new LogbackConfig().tryAddAppender(sdk.getOpenTelemetrySdk(), properties);
+  }
+
+  private static void configure(GrafanaProperties.CaptureProperties properties, String capture) {
+    boolean all = capture.equals("all");
+    properties.setThread(all || capture.equals("thread"));
+    properties.setCodeLocation(all || capture.equals("codeLocation"));
+    properties.setMarker(all || capture.equals("marker"));
+    properties.setKeyValuePairs(all || capture.equals("keyValuePairs"));
+    if (capture.equals("mdc")) {
+      properties.setMdc(List.of("user", "tenant"));
+    } else if (all || capture.equals("allMdc")) {
+      properties.setMdc(List.of("*"));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    LogbackConfig.getLogger().detachAndStopAllAppenders();
+    sdk.getOpenTelemetrySdk().close();
+  }
+
+  @Benchmark
+  public void log(ThreadState threadState) {
+    logger
+        .atInfo()
+        .addMarker(marker)
+        .addKeyValue("order", 42)
+        .log("hello {} from {}", "world", "benchmark");
+  }
+}
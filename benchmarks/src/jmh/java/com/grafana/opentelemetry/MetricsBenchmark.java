@@ -0,0 +1,74 @@
+package com.grafana.opentelemetry;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.sdk.autoconfigure.AutoConfiguredOpenTelemetrySdk;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Cost of recording a Micrometer meter that is bridged by the starter's meter registry. */
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+  private AutoConfiguredOpenTelemetrySdk sdk;
+  private MeterRegistry registry;
+  private Timer timer;
+  private Counter counter;
+
+  @Setup
+  public void setup() {
+    sdk = BenchmarkSdk.create();
+    registry =
+        new OpenTelemetryConfig()
+            .openTelemetryMeterRegistry(
+                sdk.getOpenTelemetrySdk(), Clock.SYSTEM, new GrafanaProperties());
+
+    // same shape as "http.server.requests", which has percentiles-histogram enabled by the starter
+    timer =
+        Timer.builder("http.server.requests")
+            .tag("method", "GET")
+            .tag("uri", "/hello")
+            .tag("status", "200")
+            .tag("outcome", "SUCCESS")
+            .publishPercentileHistogram()
+            .register(registry);
+    counter = Counter.builder("benchmark.counter").tag("kind", "test").register(registry);
+  }
+
+  @TearDown
+  public void tearDown() {
+    registry.close();
+    sdk.getOpenTelemetrySdk().close();
+  }
+
+  @Benchmark
+  public void timerRecord() {
+    timer.record(1234, TimeUnit.MICROSECONDS);
+  }
+
+  @Benchmark
+  public void counterIncrement() {
+    counter.increment();
+  }
+
+  @Benchmark
+  public Timer timerLookupAndRecord() {
+    // the way most instrumentations record: the meter is looked up in the registry on each call
+    Timer t =
+        Timer.builder("http.server.requests")
+            .tag("method", "GET")
+            .tag("uri", "/hello")
+            .tag("status", "200")
+            .tag("outcome", "SUCCESS")
+            .publishPercentileHistogram()
+            .register(registry);
+    t.record(1234, TimeUnit.MICROSECONDS);
+    return t;
+  }
+}
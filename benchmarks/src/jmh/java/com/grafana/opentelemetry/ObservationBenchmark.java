@@ -0,0 +1,65 @@
+package com.grafana.opentelemetry;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.opentelemetry.sdk.autoconfigure.AutoConfiguredOpenTelemetrySdk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of recording the metrics of an HTTP server request observation: through Micrometer timers
+ * that are bridged to OpenTelemetry (the default), or directly on OpenTelemetry instruments (<code>
+ * grafana.otlp.metrics.nativeObservations=true</code>).
+ */
+@State(Scope.Benchmark)
+public class ObservationBenchmark {
+
+  @Param({"bridge", "native"})
+  public String handler;
+
+  private AutoConfiguredOpenTelemetrySdk sdk;
+  private MeterRegistry meterRegistry;
+  private ObservationRegistry observationRegistry;
+
+  @Setup
+  public void setup() {
+    sdk = BenchmarkSdk.create();
+    GrafanaProperties properties = new GrafanaProperties();
+    OpenTelemetryConfig config = new OpenTelemetryConfig();
+    meterRegistry =
+        config.openTelemetryMeterRegistry(sdk.getOpenTelemetrySdk(), Clock.SYSTEM, properties);
+    observationRegistry = ObservationRegistry.create();
+    observationRegistry
+        .observationConfig()
+        .observationHandler(
+            handler.equals("native")
+                ? config.openTelemetryObservationHandler(sdk.getOpenTelemetrySdk())
+                : new DefaultMeterObservationHandler(meterRegistry));
+  }
+
+  @TearDown
+  public void tearDown() {
+    meterRegistry.close();
+    sdk.getOpenTelemetrySdk().close();
+  }
+
+  @Benchmark
+  public void httpServerRequest() {
+    // the same low cardinality key values as the default convention of Spring MVC
+    Observation.createNotStarted("http.server.requests", observationRegistry)
+        .lowCardinalityKeyValue("method", "GET")
+        .lowCardinalityKeyValue("uri", "/hello")
+        .lowCardinalityKeyValue("status", "200")
+        .lowCardinalityKeyValue("outcome", "SUCCESS")
+        .lowCardinalityKeyValue("exception", "none")
+        .start()
+        .stop();
+  }
+}
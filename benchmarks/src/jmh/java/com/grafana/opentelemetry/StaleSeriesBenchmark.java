@@ -0,0 +1,120 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Memory effect of series that stop being recorded, e.g. tags of rotated endpoints.
+ *
+ * <p>Each operation is one export interval, in which a counter is recorded with new attributes. The
+ * <code>retainedSeries</code> counter shows how many series were kept in memory (and exported) by
+ * the last interval: with cumulative temporality it grows with every interval (up to the
+ * cardinality limit of the SDK), with delta temporality or <code>
+ * grafana.otlp.metrics.staleIntervals</code> it stays bounded.
+ */
+@State(Scope.Thread)
+public class StaleSeriesBenchmark {
+
+  private static final AttributeKey<String> ENDPOINT = AttributeKey.stringKey("endpoint");
+  private static final int SERIES_PER_INTERVAL = 100;
+  private static final int STALE_INTERVALS = 3;
+  private static final Duration INTERVAL = Duration.ofMinutes(1);
+
+  @Param({"cumulative", "delta", "staleIntervals"})
+  public String mode;
+
+  private SdkMeterProvider meterProvider;
+  private LongCounter counter;
+  private PointCountingExporter exporter;
+  private long next;
+  private long intervals;
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Series {
+    public long retainedSeries;
+  }
+
+  @Setup
+  public void setup() {
+    exporter =
+        new PointCountingExporter(
+            mode.equals("delta")
+                ? AggregationTemporality.DELTA
+                : AggregationTemporality.CUMULATIVE);
+    // each operation is one export interval
+    MetricExporter metricExporter =
+        mode.equals("staleIntervals")
+            ? new StaleSeriesMetricExporter(
+                exporter, STALE_INTERVALS, INTERVAL, true, () -> intervals * INTERVAL.toNanos())
+            : exporter;
+    meterProvider =
+        SdkMeterProvider.builder()
+            .registerMetricReader(PeriodicMetricReader.builder(metricExporter).build())
+            .build();
+    counter = meterProvider.get("benchmark").counterBuilder("requests").build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    meterProvider.close();
+  }
+
+  @Benchmark
+  public void exportInterval(Series series) {
+    for (int i = 0; i < SERIES_PER_INTERVAL; i++) {
+      counter.add(1, Attributes.of(ENDPOINT, "/endpoint/" + next++));
+    }
+    intervals++;
+    meterProvider.forceFlush().join(10, TimeUnit.SECONDS);
+    series.retainedSeries = exporter.lastPoints;
+  }
+
+  private static class PointCountingExporter implements MetricExporter {
+    private final AggregationTemporality temporality;
+    private volatile long lastPoints;
+
+    PointCountingExporter(AggregationTemporality temporality) {
+      this.temporality = temporality;
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+      return temporality;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<MetricData> metrics) {
+      lastPoints = metrics.stream().mapToLong(m -> m.getData().getPoints().size()).sum();
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.autoconfigure.AutoConfiguredOpenTelemetrySdk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Cost of starting and ending a span with the SDK that is created by the starter. */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class TracingBenchmark {
+
+  private AutoConfiguredOpenTelemetrySdk sdk;
+  private Tracer tracer;
+
+  @Setup
+  public void setup() {
+    sdk = BenchmarkSdk.create();
+    tracer = sdk.getOpenTelemetrySdk().getTracer("benchmark");
+  }
+
+  @TearDown
+  public void tearDown() {
+    sdk.getOpenTelemetrySdk().close();
+  }
+
+  @Benchmark
+  public Span startEnd() {
+    Span span = tracer.spanBuilder("GET /hello").setSpanKind(SpanKind.SERVER).startSpan();
+    span.end();
+    return span;
+  }
+
+  @Benchmark
+  public Span startEndWithChild() {
+    Span span = tracer.spanBuilder("GET /hello").setSpanKind(SpanKind.SERVER).startSpan();
+    try (Scope ignored = span.makeCurrent()) {
+      Span child = tracer.spanBuilder("SELECT").setSpanKind(SpanKind.CLIENT).startSpan();
+      child.setAttribute("db.system", "postgresql");
+      child.end();
+    } finally {
+      span.end();
+    }
+    return span;
+  }
+}
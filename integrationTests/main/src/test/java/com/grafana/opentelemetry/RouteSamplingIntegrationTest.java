@@ -0,0 +1,83 @@
+package com.grafana.opentelemetry;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockserver.client.MockServerClient;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.springtest.MockServerTest;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest(
+    classes = {HelloController.class, DemoApplication.class},
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@MockServerTest
+@AutoConfigureObservability
+@TestPropertySource(
+    properties = {
+      "grafana.otlp.onprem.endpoint = http://localhost:${mockServerPort}",
+      "grafana.otlp.traces.sampling.enabled = true"
+    })
+class RouteSamplingIntegrationTest {
+
+  @SuppressWarnings("unused")
+  private MockServerClient mockServerClient;
+
+  @LocalServerPort private int port;
+
+  static {
+    String delay = "500";
+    System.setProperty("otel.metric.export.interval", delay);
+    System.setProperty("otel.bsp.schedule.delay", delay);
+    System.setProperty("otel.exporter.otlp.protocol", "http/protobuf");
+  }
+
+  @BeforeEach
+  void setUp() {
+    mockServerClient
+        .when(HttpRequest.request())
+        .respond(org.mockserver.model.HttpResponse.response().withStatusCode(200));
+  }
+
+  @Test
+  void actuatorIsNotSampled() throws Exception {
+    // not the TestRestTemplate, which would start a client span that is sampled
+    HttpClient client = HttpClient.newHttpClient();
+    Assertions.assertThat(get(client, "/actuator/health").statusCode()).isEqualTo(200);
+    Assertions.assertThat(get(client, "/hello").statusCode()).isEqualTo(200);
+
+    await()
+        .atMost(10, SECONDS)
+        .untilAsserted(
+            () -> Assertions.assertThat(exportedTraces()).anyMatch(s -> s.contains("/hello")));
+    Assertions.assertThat(exportedTraces()).noneMatch(s -> s.contains("/actuator/health"));
+  }
+
+  private HttpResponse<String> get(HttpClient client, String path) throws Exception {
+    return client.send(
+        java.net.http.HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+            .build(),
+        HttpResponse.BodyHandlers.ofString());
+  }
+
+  private List<String> exportedTraces() {
+    return Arrays.stream(
+            mockServerClient.retrieveRecordedRequests(
+                HttpRequest.request().withPath("/v1/traces")))
+        .map(r -> new String(((HttpRequest) r).getBodyAsRawBytes(), StandardCharsets.UTF_8))
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,45 @@
+package com.grafana.opentelemetry;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An OTLP/HTTP receiver that only records the paths of the requests - MockServer can't run in a
+ * native image.
+ */
+class MockOtlpServer {
+
+  private final HttpServer server;
+  private final Set<String> paths = ConcurrentHashMap.newKeySet();
+
+  MockOtlpServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (InputStream body = exchange.getRequestBody()) {
+      body.readAllBytes();
+    }
+    if ("POST".equals(exchange.getRequestMethod())
+        && "application/x-protobuf".equals(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+      paths.add(exchange.getRequestURI().getPath());
+    }
+    exchange.sendResponseHeaders(200, -1);
+    exchange.close();
+  }
+
+  int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  Set<String> getPaths() {
+    return paths;
+  }
+}
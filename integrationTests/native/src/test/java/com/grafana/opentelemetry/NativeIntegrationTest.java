@@ -0,0 +1,70 @@
+package com.grafana.opentelemetry;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the same checks as the integration test of <code>integrationTests:main</code> - also in a
+ * native image, using <code>./gradlew :integrationTests:native:nativeTest</code>.
+ */
+@SpringBootTest(
+    classes = {HelloController.class, DemoApplication.class},
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureObservability
+@TestPropertySource(properties = "grafana.otlp.onprem.protocol = http/protobuf")
+class NativeIntegrationTest {
+
+  private static final MockOtlpServer server = startServer();
+
+  @Autowired private TestRestTemplate restTemplate;
+
+  @Autowired private GrafanaProperties properties;
+
+  static {
+    String delay = "500";
+    System.setProperty("otel.metric.export.interval", delay);
+    System.setProperty("otel.bsp.schedule.delay", delay);
+  }
+
+  private static MockOtlpServer startServer() {
+    try {
+      return new MockOtlpServer();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @DynamicPropertySource
+  static void endpoint(DynamicPropertyRegistry registry) {
+    registry.add("grafana.otlp.onprem.endpoint", () -> "http://localhost:" + server.getPort());
+  }
+
+  @Test
+  void testProperties() {
+    Assertions.assertThat(properties.getCloud().getZone()).isEqualTo("prod-eu-west-0");
+  }
+
+  @Test
+  void dataIsSent() {
+    restTemplate.getForEntity("/hello", String.class);
+
+    await()
+        .atMost(10, SECONDS)
+        .untilAsserted(
+            () ->
+                Assertions.assertThat(server.getPaths())
+                    .contains("/v1/traces", "/v1/metrics", "/v1/logs"));
+  }
+}
@@ -0,0 +1,390 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+import io.opentelemetry.sdk.autoconfigure.spi.logs.ConfigurableLogRecordExporterProvider;
+import io.opentelemetry.sdk.autoconfigure.spi.traces.ConfigurableSpanExporterProvider;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.logs.LogRecordProcessor;
+import io.opentelemetry.sdk.logs.ReadWriteLogRecord;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.logs.export.LogRecordExporter;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A batch processor that adapts the batch size and the delay between exports to the load.
+ *
+ * <p>It starts with the configured batch size and schedule delay. When the queue still holds a full
+ * batch after an export, i.e. it fills faster than it drains, the batch size is doubled and the
+ * delay is halved - up to {@value #ADAPTIVE_FACTOR} times the configured values. When an export
+ * only finds a small batch, they are relaxed again step by step.
+ *
+ * <p>The queue is a linked queue, so that a large maximum queue size only costs memory while the
+ * queue is filled. The OTLP exporter is created by the starter, because the batch processors of
+ * the SDK can't be replaced - the exporter is wrapped in the same way as the exporters of the SDK.
+ *
+ * @param <T> the telemetry data of the signal
+ */
+class AdaptiveBatchProcessor<T> {
+
+  private static final Logger logger = LoggerFactory.getLogger(AdaptiveBatchProcessor.class);
+
+  static final int ADAPTIVE_FACTOR = 8;
+
+  // the defaults of the batch processors of the SDK
+  private static final int DEFAULT_MAX_QUEUE_SIZE = 2048;
+  private static final int DEFAULT_MAX_EXPORT_BATCH_SIZE = 512;
+  private static final Duration DEFAULT_EXPORT_TIMEOUT = Duration.ofSeconds(30);
+
+  private final Function<Collection<T>, CompletableResultCode> export;
+  private final Supplier<CompletableResultCode> flush;
+  private final Supplier<CompletableResultCode> shutdown;
+  private final BlockingQueue<T> queue;
+  // wakes up the worker when a full batch is waiting, or when it is flushed or shut down
+  private final BlockingQueue<Boolean> wakeUp = new ArrayBlockingQueue<>(1);
+  private final int minBatchSize;
+  private final int maxBatchSize;
+  private final long minDelayNanos;
+  private final long maxDelayNanos;
+  private final long exportTimeoutNanos;
+  private final AtomicReference<CompletableResultCode> flushRequest = new AtomicReference<>();
+  private final CompletableResultCode shutdownResult = new CompletableResultCode();
+  private final LongAdder dropped = new LongAdder();
+  private final Thread worker;
+
+  private volatile int batchSize;
+  private volatile long delayNanos;
+  private volatile boolean running = true;
+
+  AdaptiveBatchProcessor(
+      Function<Collection<T>, CompletableResultCode> export,
+      Supplier<CompletableResultCode> flush,
+      Supplier<CompletableResultCode> shutdown,
+      int maxQueueSize,
+      int maxExportBatchSize,
+      Duration scheduleDelay,
+      Duration exportTimeout,
+      String signal) {
+    this.export = export;
+    this.flush = flush;
+    this.shutdown = shutdown;
+    this.queue = new LinkedBlockingQueue<>(maxQueueSize);
+    this.minBatchSize = maxExportBatchSize;
+    this.maxBatchSize =
+        Math.max(minBatchSize, Math.min(maxQueueSize, minBatchSize * ADAPTIVE_FACTOR));
+    this.maxDelayNanos = scheduleDelay.toNanos();
+    this.minDelayNanos = Math.max(1, maxDelayNanos / ADAPTIVE_FACTOR);
+    this.exportTimeoutNanos = exportTimeout.toNanos();
+    this.batchSize = minBatchSize;
+    this.delayNanos = maxDelayNanos;
+    this.worker = new Thread(this::run, "grafana-otlp-batch-" + signal);
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  private static <T> AdaptiveBatchProcessor<T> create(
+      Function<Collection<T>, CompletableResultCode> export,
+      Supplier<CompletableResultCode> flush,
+      Supplier<CompletableResultCode> shutdown,
+      GrafanaProperties.BatchProperties properties,
+      Duration defaultScheduleDelay,
+      String signal) {
+    int maxQueueSize =
+        properties.getMaxQueueSize() != null
+            ? properties.getMaxQueueSize()
+            : DEFAULT_MAX_QUEUE_SIZE;
+    int maxExportBatchSize =
+        properties.getMaxExportBatchSize() != null
+            ? properties.getMaxExportBatchSize()
+            : DEFAULT_MAX_EXPORT_BATCH_SIZE;
+    if (maxQueueSize < 1 || maxExportBatchSize < 1) {
+      logger.warn(
+          "ignoring grafana.otlp.{}.batch, the queue and batch size must be positive: {}, {}",
+          signal,
+          maxQueueSize,
+          maxExportBatchSize);
+      maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+      maxExportBatchSize = DEFAULT_MAX_EXPORT_BATCH_SIZE;
+    }
+    logger.info("exporting {} with an adaptive batch processor", signal);
+    return new AdaptiveBatchProcessor<>(
+        export,
+        flush,
+        shutdown,
+        maxQueueSize,
+        Math.min(maxQueueSize, maxExportBatchSize),
+        properties.getScheduleDelay() != null
+            ? properties.getScheduleDelay()
+            : defaultScheduleDelay,
+        properties.getExportTimeout() != null
+            ? properties.getExportTimeout()
+            : DEFAULT_EXPORT_TIMEOUT,
+        signal);
+  }
+
+  /**
+   * Creates the OTLP exporter - returns null if the SDK exports the spans with OTLP already, i.e.
+   * <code>otel.traces.exporter</code> has been overridden.
+   */
+  static SpanExporter createOtlpSpanExporter(ConfigProperties config) {
+    if (config.getList("otel.traces.exporter").contains("otlp")) {
+      logger.warn(
+          "ignoring grafana.otlp.traces.batch.adaptive, "
+              + "because otel.traces.exporter includes otlp");
+      return null;
+    }
+    for (ConfigurableSpanExporterProvider provider :
+        ServiceLoader.load(ConfigurableSpanExporterProvider.class)) {
+      if (provider.getName().equals("otlp")) {
+        return provider.createExporter(config);
+      }
+    }
+    logger.warn("ignoring grafana.otlp.traces.batch.adaptive, no OTLP span exporter found");
+    return null;
+  }
+
+  /**
+   * Creates the OTLP exporter - returns null if the SDK exports the log records with OTLP already,
+   * i.e. <code>otel.logs.exporter</code> has been overridden.
+   */
+  static LogRecordExporter createOtlpLogRecordExporter(ConfigProperties config) {
+    if (config.getList("otel.logs.exporter").contains("otlp")) {
+      logger.warn(
+          "ignoring grafana.otlp.logs.batch.adaptive, because otel.logs.exporter includes otlp");
+      return null;
+    }
+    for (ConfigurableLogRecordExporterProvider provider :
+        ServiceLoader.load(ConfigurableLogRecordExporterProvider.class)) {
+      if (provider.getName().equals("otlp")) {
+        return provider.createExporter(config);
+      }
+    }
+    logger.warn("ignoring grafana.otlp.logs.batch.adaptive, no OTLP log record exporter found");
+    return null;
+  }
+
+  static SpanProcessor create(SpanExporter exporter, GrafanaProperties.BatchProperties properties) {
+    return new Spans(
+        create(
+            exporter::export,
+            exporter::flush,
+            exporter::shutdown,
+            properties,
+            Duration.ofSeconds(5),
+            "traces"));
+  }
+
+  static LogRecordProcessor create(
+      LogRecordExporter exporter, GrafanaProperties.BatchProperties properties) {
+    return new Logs(
+        create(
+            exporter::export,
+            exporter::flush,
+            exporter::shutdown,
+            properties,
+            Duration.ofSeconds(1),
+            "logs"));
+  }
+
+  void add(T item) {
+    if (!running || !queue.offer(item)) {
+      dropped.increment();
+      return;
+    }
+    if (queue.size() >= batchSize) {
+      wakeUp.offer(Boolean.TRUE);
+    }
+  }
+
+  private void run() {
+    while (true) {
+      CompletableResultCode flushResult = flushRequest.get();
+      if (flushResult != null) {
+        exportAll();
+        flush.get().whenComplete(flushResult::succeed);
+        flushRequest.set(null);
+        continue;
+      }
+      if (!running) {
+        exportAll();
+        shutdown.get().whenComplete(shutdownResult::succeed);
+        return;
+      }
+      if (queue.size() < batchSize) {
+        try {
+          wakeUp.poll(delayNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+          // stopped by the shutdown of the provider
+          running = false;
+          continue;
+        }
+      }
+      if (flushRequest.get() == null && running) {
+        adapt(exportBatch());
+      }
+    }
+  }
+
+  /** Returns the number of exported items. */
+  private int exportBatch() {
+    List<T> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+    queue.drainTo(batch, batchSize);
+    if (!batch.isEmpty()) {
+      CompletableResultCode result;
+      try {
+        result = export.apply(batch);
+      } catch (RuntimeException e) {
+        logger.warn("unable to export {} items", batch.size(), e);
+        return batch.size();
+      }
+      result.join(exportTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+    return batch.size();
+  }
+
+  private void exportAll() {
+    int exported;
+    do {
+      exported = exportBatch();
+    } while (exported > 0);
+  }
+
+  /** Grows the batch size when the queue fills faster than it drains, and relaxes it when idle. */
+  void adapt(int exported) {
+    if (queue.size() >= batchSize) {
+      batchSize = Math.min(maxBatchSize, batchSize * 2);
+      delayNanos = Math.max(minDelayNanos, delayNanos / 2);
+    } else if (exported < batchSize / 2) {
+      batchSize = Math.max(minBatchSize, batchSize / 2);
+      delayNanos = Math.min(maxDelayNanos, delayNanos * 2);
+    }
+  }
+
+  /** Exports all queued items - the result completes when the exporter has been flushed. */
+  CompletableResultCode forceFlush() {
+    if (!worker.isAlive()) {
+      // shut down
+      return CompletableResultCode.ofSuccess();
+    }
+    CompletableResultCode result = new CompletableResultCode();
+    if (!flushRequest.compareAndSet(null, result)) {
+      CompletableResultCode pending = flushRequest.get();
+      return pending != null ? pending : forceFlush();
+    }
+    wakeUp.offer(Boolean.TRUE);
+    return result;
+  }
+
+  CompletableResultCode shutdown() {
+    running = false;
+    wakeUp.offer(Boolean.TRUE);
+    return shutdownResult;
+  }
+
+  int getBatchSize() {
+    return batchSize;
+  }
+
+  Duration getDelay() {
+    return Duration.ofNanos(delayNanos);
+  }
+
+  int getQueueSize() {
+    return queue.size();
+  }
+
+  /** The number of items that were dropped, because the queue was full. */
+  long getDropped() {
+    return dropped.sum();
+  }
+
+  static class Spans implements SpanProcessor {
+    private final AdaptiveBatchProcessor<SpanData> processor;
+
+    Spans(AdaptiveBatchProcessor<SpanData> processor) {
+      this.processor = processor;
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {}
+
+    @Override
+    public boolean isStartRequired() {
+      return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+      if (span.getSpanContext().isSampled()) {
+        processor.add(span.toSpanData());
+      }
+    }
+
+    @Override
+    public boolean isEndRequired() {
+      return true;
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+      return processor.forceFlush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return processor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "AdaptiveBatchSpanProcessor{batchSize=" + processor.getBatchSize() + "}";
+    }
+  }
+
+  static class Logs implements LogRecordProcessor {
+    private final AdaptiveBatchProcessor<LogRecordData> processor;
+
+    Logs(AdaptiveBatchProcessor<LogRecordData> processor) {
+      this.processor = processor;
+    }
+
+    @Override
+    public void onEmit(Context context, ReadWriteLogRecord logRecord) {
+      processor.add(logRecord.toLogRecordData());
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+      return processor.forceFlush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return processor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "AdaptiveBatchLogRecordProcessor{batchSize=" + processor.getBatchSize() + "}";
+    }
+  }
+}
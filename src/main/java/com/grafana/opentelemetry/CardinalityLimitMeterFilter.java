@@ -0,0 +1,124 @@
+package com.grafana.opentelemetry;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of tag combinations per Micrometer meter, before the meters are bridged to
+ * OpenTelemetry.
+ *
+ * <p>Additional tag combinations are mapped to a single meter with the tag <code>
+ * otel.metric.overflow=true</code>, which is the same attribute that the OpenTelemetry SDK uses for
+ * its cardinality limit.
+ */
+class CardinalityLimitMeterFilter implements MeterFilter {
+
+  private static final Logger logger = LoggerFactory.getLogger(CardinalityLimitMeterFilter.class);
+
+  static final String OVERFLOW_KEY = "otel.metric.overflow";
+  static final Tags OVERFLOW = Tags.of(OVERFLOW_KEY, "true");
+
+  private static final AttributeKey<String> METER = AttributeKey.stringKey("meter");
+  private static final long WARNING_INTERVAL_NANOS = Duration.ofMinutes(10).toNanos();
+
+  private final int defaultLimit;
+  private final Map<String, Integer> limits;
+  private final Map<String, MeterTags> meters = new ConcurrentHashMap<>();
+
+  CardinalityLimitMeterFilter(int defaultLimit, Map<String, Integer> limits) {
+    this.defaultLimit = defaultLimit;
+    this.limits = limits;
+  }
+
+  /** Returns null if no limit has been configured. */
+  static CardinalityLimitMeterFilter create(GrafanaProperties.MetricsProperties properties) {
+    if (properties.getCardinalityLimit() <= 0 && properties.getCardinalityLimits().isEmpty()) {
+      return null;
+    }
+    return new CardinalityLimitMeterFilter(
+        properties.getCardinalityLimit(), properties.getCardinalityLimits());
+  }
+
+  void registerMetrics(OpenTelemetry openTelemetry) {
+    openTelemetry
+        .getMeter(OpenTelemetryConfig.INSTRUMENTATION_SCOPE_NAME)
+        .counterBuilder("grafana.otlp.metrics.cardinality.overflow")
+        .setDescription(
+            "The number of tag combinations that were folded into the overflow series of a meter")
+        .buildWithCallback(
+            m ->
+                meters.forEach(
+                    (name, meter) -> {
+                      long overflow = meter.overflow.sum();
+                      if (overflow > 0) {
+                        m.record(overflow, Attributes.of(METER, name));
+                      }
+                    }));
+  }
+
+  @Override
+  public Meter.Id map(Meter.Id id) {
+    MeterTags meter = meters.computeIfAbsent(id.getName(), this::createMeterTags);
+    if (meter.limit <= 0) {
+      return id;
+    }
+    Tags tags = Tags.of(id.getTagsAsIterable());
+    if (meter.tags.contains(tags)) {
+      return id;
+    }
+    // the size is not exact under contention, which doesn't matter for a limit
+    if (meter.tags.size() < meter.limit) {
+      meter.tags.add(tags);
+      return id;
+    }
+    meter.overflow.increment();
+    warn(id.getName(), meter);
+    return id.replaceTags(OVERFLOW);
+  }
+
+  private MeterTags createMeterTags(String name) {
+    Integer limit = LoggerNames.findMostSpecific(limits, name);
+    return new MeterTags(limit == null ? defaultLimit : limit);
+  }
+
+  private static void warn(String name, MeterTags meter) {
+    long now = System.nanoTime();
+    long last = meter.lastWarning.get();
+    if ((last == 0 || now - last >= WARNING_INTERVAL_NANOS)
+        && meter.lastWarning.compareAndSet(last, now)) {
+      logger.warn(
+          "meter {} has more than {} tag combinations, additional tag combinations are recorded "
+              + "with otel.metric.overflow=true",
+          name,
+          meter.limit);
+    }
+  }
+
+  long getOverflow(String name) {
+    MeterTags meter = meters.get(name);
+    return meter == null ? 0 : meter.overflow.sum();
+  }
+
+  private static class MeterTags {
+    private final int limit;
+    private final Set<Tags> tags = ConcurrentHashMap.newKeySet();
+    private final LongAdder overflow = new LongAdder();
+    private final AtomicLong lastWarning = new AtomicLong();
+
+    MeterTags(int limit) {
+      this.limit = limit;
+    }
+  }
+}
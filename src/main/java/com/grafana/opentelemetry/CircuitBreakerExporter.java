@@ -0,0 +1,378 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.exporter.otlp.http.logs.OtlpHttpLogRecordExporter;
+import io.opentelemetry.exporter.otlp.http.metrics.OtlpHttpMetricExporter;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.exporter.otlp.logs.OtlpGrpcLogRecordExporter;
+import io.opentelemetry.exporter.otlp.metrics.OtlpGrpcMetricExporter;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.logs.export.LogRecordExporter;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops calling the OTLP exporter after a number of consecutive failed exports, so that the
+ * batches are not serialized just to be rejected while the backend is down.
+ *
+ * <p>While the circuit is open, exports fail immediately. After a backoff (which doubles with every
+ * failed probe, with jitter so that not all instances probe at once), one export is let through as
+ * a probe: if it succeeds, the circuit is closed again.
+ *
+ * <p>Retries of single requests (with exponential backoff and jitter) are done by the OTLP
+ * exporters themselves, see <code>grafana.otlp.retry.enabled</code>.
+ *
+ * @param <T> the telemetry data of the signal
+ */
+class CircuitBreakerExporter<T> {
+
+  enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private static final Logger logger = LoggerFactory.getLogger(CircuitBreakerExporter.class);
+
+  private static final AttributeKey<String> SIGNAL = AttributeKey.stringKey("signal");
+  private static final AttributeKey<String> STATE = AttributeKey.stringKey("state");
+
+  private final Function<Collection<T>, CompletableResultCode> delegate;
+  private final String signal;
+  private final int failureThreshold;
+  private final long initialBackoffNanos;
+  private final long maxBackoffNanos;
+  private final LongSupplier clock;
+  private final DoubleSupplier random;
+  private final LongAdder rejected = new LongAdder();
+
+  // guarded by this
+  private State state = State.CLOSED;
+  private int failures;
+  private long backoffNanos;
+  private long openUntil;
+
+  CircuitBreakerExporter(
+      Function<Collection<T>, CompletableResultCode> delegate,
+      String signal,
+      GrafanaProperties.CircuitBreakerProperties properties,
+      LongSupplier clock,
+      DoubleSupplier random) {
+    this.delegate = delegate;
+    this.signal = signal;
+    this.failureThreshold = Math.max(1, properties.getFailureThreshold());
+    this.initialBackoffNanos = properties.getInitialBackoff().toNanos();
+    this.maxBackoffNanos = Math.max(initialBackoffNanos, properties.getMaxBackoff().toNanos());
+    this.clock = clock;
+    this.random = random;
+    this.backoffNanos = initialBackoffNanos;
+  }
+
+  /** Returns the exporter if the circuit breaker is disabled or it's not an OTLP exporter. */
+  static SpanExporter wrap(
+      SpanExporter exporter,
+      GrafanaProperties.CircuitBreakerProperties properties,
+      List<CircuitBreakerExporter<?>> circuitBreakers) {
+    Object otlpExporter = PipelineHealth.unwrap(exporter);
+    if (!properties.isEnabled()
+        || !(otlpExporter instanceof OtlpHttpSpanExporter
+            || otlpExporter instanceof OtlpGrpcSpanExporter)) {
+      return exporter;
+    }
+    CircuitBreakerExporter<SpanData> circuitBreaker =
+        create(exporter::export, "traces", properties, circuitBreakers);
+    return new Spans(exporter, circuitBreaker);
+  }
+
+  /** Returns the exporter if the circuit breaker is disabled or it's not an OTLP exporter. */
+  static MetricExporter wrap(
+      MetricExporter exporter,
+      GrafanaProperties.CircuitBreakerProperties properties,
+      List<CircuitBreakerExporter<?>> circuitBreakers) {
+    Object otlpExporter = PipelineHealth.unwrap(exporter);
+    if (!properties.isEnabled()
+        || !(otlpExporter instanceof OtlpHttpMetricExporter
+            || otlpExporter instanceof OtlpGrpcMetricExporter)) {
+      return exporter;
+    }
+    CircuitBreakerExporter<MetricData> circuitBreaker =
+        create(exporter::export, "metrics", properties, circuitBreakers);
+    return new Metrics(exporter, circuitBreaker);
+  }
+
+  /** Returns the exporter if the circuit breaker is disabled or it's not an OTLP exporter. */
+  static LogRecordExporter wrap(
+      LogRecordExporter exporter,
+      GrafanaProperties.CircuitBreakerProperties properties,
+      List<CircuitBreakerExporter<?>> circuitBreakers) {
+    Object otlpExporter = PipelineHealth.unwrap(exporter);
+    if (!properties.isEnabled()
+        || !(otlpExporter instanceof OtlpHttpLogRecordExporter
+            || otlpExporter instanceof OtlpGrpcLogRecordExporter)) {
+      return exporter;
+    }
+    CircuitBreakerExporter<LogRecordData> circuitBreaker =
+        create(exporter::export, "logs", properties, circuitBreakers);
+    return new Logs(exporter, circuitBreaker);
+  }
+
+  private static <T> CircuitBreakerExporter<T> create(
+      Function<Collection<T>, CompletableResultCode> delegate,
+      String signal,
+      GrafanaProperties.CircuitBreakerProperties properties,
+      List<CircuitBreakerExporter<?>> circuitBreakers) {
+    CircuitBreakerExporter<T> circuitBreaker =
+        new CircuitBreakerExporter<>(
+            delegate,
+            signal,
+            properties,
+            System::nanoTime,
+            () -> ThreadLocalRandom.current().nextDouble());
+    circuitBreakers.add(circuitBreaker);
+    return circuitBreaker;
+  }
+
+  /** Returns the OTLP exporter if the exporter is a circuit breaker or is measured. */
+  static Object unwrap(Object exporter) {
+    if (exporter instanceof Spans) {
+      return PipelineHealth.unwrap(((Spans) exporter).delegate);
+    }
+    if (exporter instanceof Metrics) {
+      return PipelineHealth.unwrap(((Metrics) exporter).delegate);
+    }
+    if (exporter instanceof Logs) {
+      return PipelineHealth.unwrap(((Logs) exporter).delegate);
+    }
+    return PipelineHealth.unwrap(exporter);
+  }
+
+  static void registerMetrics(
+      OpenTelemetry openTelemetry, List<CircuitBreakerExporter<?>> circuitBreakers) {
+    if (circuitBreakers.isEmpty()) {
+      return;
+    }
+    Meter meter = openTelemetry.getMeter(OpenTelemetryConfig.INSTRUMENTATION_SCOPE_NAME);
+    meter
+        .gaugeBuilder("grafana.otlp.exporter.circuit_breaker.state")
+        .ofLongs()
+        .setDescription("1 for the current state of the circuit breaker of the exporter, else 0")
+        .buildWithCallback(
+            m ->
+                circuitBreakers.forEach(
+                    c -> {
+                      State current = c.getState();
+                      for (State state : State.values()) {
+                        m.record(
+                            state == current ? 1 : 0,
+                            Attributes.of(
+                                SIGNAL, c.signal, STATE, state.name().toLowerCase(Locale.ROOT)));
+                      }
+                    }));
+    meter
+        .counterBuilder("grafana.otlp.exporter.circuit_breaker.rejected")
+        .setDescription("The number of items that were not exported, because the circuit was open")
+        .buildWithCallback(
+            m ->
+                circuitBreakers.forEach(
+                    c -> m.record(c.rejected.sum(), Attributes.of(SIGNAL, c.signal))));
+  }
+
+  CompletableResultCode export(Collection<T> data) {
+    if (!tryAcquire()) {
+      // fails before the data is serialized
+      rejected.add(data.size());
+      return CompletableResultCode.ofFailure();
+    }
+    CompletableResultCode result;
+    try {
+      result = delegate.apply(data);
+    } catch (RuntimeException e) {
+      onResult(false);
+      throw e;
+    }
+    result.whenComplete(() -> onResult(result.isSuccess()));
+    return result;
+  }
+
+  private synchronized boolean tryAcquire() {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (clock.getAsLong() - openUntil < 0) {
+          return false;
+        }
+        state = State.HALF_OPEN;
+        logger.info("probing if the {} backend is available again", signal);
+        return true;
+      default:
+        // a probe is in flight
+        return false;
+    }
+  }
+
+  private synchronized void onResult(boolean success) {
+    if (success) {
+      if (state != State.CLOSED) {
+        logger.info("closing circuit breaker, the {} backend is available again", signal);
+      }
+      state = State.CLOSED;
+      failures = 0;
+      backoffNanos = initialBackoffNanos;
+      return;
+    }
+    if (state == State.OPEN) {
+      // a request that was sent before the circuit was opened
+      return;
+    }
+    failures++;
+    if (state == State.HALF_OPEN || failures >= failureThreshold) {
+      open();
+    }
+  }
+
+  private void open() {
+    if (state == State.CLOSED) {
+      logger.warn(
+          "opening circuit breaker after {} failed {} exports - "
+              + "no data is exported until the backend is available again",
+          failures,
+          signal);
+    }
+    // between half and the full backoff
+    long delay = backoffNanos / 2 + (long) (random.getAsDouble() * (backoffNanos / 2));
+    openUntil = clock.getAsLong() + delay;
+    state = State.OPEN;
+    backoffNanos = Math.min(maxBackoffNanos, backoffNanos * 2);
+    logger.debug("probing {} backend in {}ms", signal, TimeUnit.NANOSECONDS.toMillis(delay));
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+
+  long getRejected() {
+    return rejected.sum();
+  }
+
+  static class Spans implements SpanExporter {
+    private final SpanExporter delegate;
+    private final CircuitBreakerExporter<SpanData> circuitBreaker;
+
+    Spans(SpanExporter delegate, CircuitBreakerExporter<SpanData> circuitBreaker) {
+      this.delegate = delegate;
+      this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+      return circuitBreaker.export(spans);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "CircuitBreakerSpanExporter{delegate=" + delegate + "}";
+    }
+  }
+
+  static class Metrics implements MetricExporter {
+    private final MetricExporter delegate;
+    private final CircuitBreakerExporter<MetricData> circuitBreaker;
+
+    Metrics(MetricExporter delegate, CircuitBreakerExporter<MetricData> circuitBreaker) {
+      this.delegate = delegate;
+      this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+      return delegate.getAggregationTemporality(instrumentType);
+    }
+
+    @Override
+    public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+      return delegate.getDefaultAggregation(instrumentType);
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<MetricData> metrics) {
+      return circuitBreaker.export(metrics);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "CircuitBreakerMetricExporter{delegate=" + delegate + "}";
+    }
+  }
+
+  static class Logs implements LogRecordExporter {
+    private final LogRecordExporter delegate;
+    private final CircuitBreakerExporter<LogRecordData> circuitBreaker;
+
+    Logs(LogRecordExporter delegate, CircuitBreakerExporter<LogRecordData> circuitBreaker) {
+      this.delegate = delegate;
+      this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<LogRecordData> logs) {
+      return circuitBreaker.export(logs);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "CircuitBreakerLogRecordExporter{delegate=" + delegate + "}";
+    }
+  }
+}
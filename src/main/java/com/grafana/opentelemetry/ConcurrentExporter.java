@@ -0,0 +1,436 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.exporter.internal.otlp.logs.LogsRequestMarshaler;
+import io.opentelemetry.exporter.internal.otlp.metrics.MetricsRequestMarshaler;
+import io.opentelemetry.exporter.internal.otlp.traces.TraceRequestMarshaler;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.logs.export.LogRecordExporter;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Splits batches that are larger than the maximum request size, and sends up to a maximum number
+ * of requests concurrently.
+ *
+ * <p>The batch processors of the SDK wait for each export to complete, so the throughput is
+ * limited by the latency of the backend. With concurrent requests, the export completes as soon as
+ * the request has been sent - the batch processor only waits if the maximum number of requests is
+ * in flight.
+ *
+ * <p>Metrics are only split, and the requests are sent one after another, so that the points of a
+ * series arrive in order.
+ *
+ * <p>The requests that are in flight count towards the {@link MemoryBudget}. If no request
+ * completes in time, the remaining items of the batch are dropped and the export fails. The items
+ * of requests that fail after the export has completed are counted as lost for the {@link
+ * ShutdownFlush}.
+ *
+ * @param <T> the telemetry data of the signal
+ */
+class ConcurrentExporter<T> implements ShutdownFlush.Losses {
+
+  private static final Logger logger = LoggerFactory.getLogger(ConcurrentExporter.class);
+
+  // the default export timeout of the batch processors
+  private static final long ACQUIRE_TIMEOUT_SECONDS = 30;
+
+  private final Function<Collection<T>, CompletableResultCode> delegate;
+  private final ToLongFunction<List<T>> serializedSize;
+  private final long maxRequestBytes;
+  private final int maxConcurrentRequests;
+  private final Semaphore permits;
+  private final Set<CompletableResultCode> inFlight = ConcurrentHashMap.newKeySet();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder lost = new LongAdder();
+  private final AtomicLong pending = new AtomicLong();
+  private final ToLongFunction<T> estimate;
+  private final MemoryBudget.Account account;
+
+  /**
+   * The function for the serialized size is null if batches are not split, and the account is null
+   * if there is no memory budget.
+   */
+  ConcurrentExporter(
+      Function<Collection<T>, CompletableResultCode> delegate,
+      ToLongFunction<List<T>> serializedSize,
+      long maxRequestBytes,
+      int maxConcurrentRequests,
+      ToLongFunction<T> estimate,
+      MemoryBudget.Account account) {
+    this.delegate = delegate;
+    this.serializedSize = serializedSize;
+    this.maxRequestBytes = maxRequestBytes;
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.permits = new Semaphore(maxConcurrentRequests);
+    this.estimate = estimate;
+    this.account = account;
+  }
+
+  /** Returns the exporter if neither concurrency nor a request size has been configured. */
+  static SpanExporter wrap(
+      SpanExporter exporter,
+      GrafanaProperties.ExportProperties properties,
+      Duration shutdownTimeout,
+      MemoryBudget.Account account) {
+    ConcurrentExporter<SpanData> concurrent =
+        create(
+            exporter::export,
+            spans -> TraceRequestMarshaler.create(spans).getBinarySerializedSize(),
+            properties,
+            properties.getMaxConcurrentRequests(),
+            MemoryBudget::estimate,
+            account);
+    return concurrent == null ? exporter : new Spans(exporter, concurrent, shutdownTimeout);
+  }
+
+  /** Returns the exporter if no request size has been configured. */
+  static MetricExporter wrap(
+      MetricExporter exporter,
+      GrafanaProperties.ExportProperties properties,
+      Duration shutdownTimeout,
+      MemoryBudget.Account account) {
+    ConcurrentExporter<MetricData> concurrent =
+        create(
+            exporter::export,
+            metrics -> MetricsRequestMarshaler.create(metrics).getBinarySerializedSize(),
+            properties,
+            1,
+            MemoryBudget::estimate,
+            account);
+    return concurrent == null ? exporter : new Metrics(exporter, concurrent, shutdownTimeout);
+  }
+
+  /** Returns the exporter if neither concurrency nor a request size has been configured. */
+  static LogRecordExporter wrap(
+      LogRecordExporter exporter,
+      GrafanaProperties.ExportProperties properties,
+      Duration shutdownTimeout,
+      MemoryBudget.Account account) {
+    ConcurrentExporter<LogRecordData> concurrent =
+        create(
+            exporter::export,
+            logs -> LogsRequestMarshaler.create(logs).getBinarySerializedSize(),
+            properties,
+            properties.getMaxConcurrentRequests(),
+            MemoryBudget::estimate,
+            account);
+    return concurrent == null ? exporter : new Logs(exporter, concurrent, shutdownTimeout);
+  }
+
+  private static <T> ConcurrentExporter<T> create(
+      Function<Collection<T>, CompletableResultCode> delegate,
+      ToLongFunction<List<T>> serializedSize,
+      GrafanaProperties.ExportProperties properties,
+      int maxConcurrentRequests,
+      ToLongFunction<T> estimate,
+      MemoryBudget.Account account) {
+    DataSize maxRequestSize = properties.getMaxRequestSize();
+    boolean split = maxRequestSize != null && maxRequestSize.toBytes() > 0;
+    if (maxConcurrentRequests < 1) {
+      logger.warn(
+          "ignoring grafana.otlp.export.maxConcurrentRequests, must be at least 1: {}",
+          maxConcurrentRequests);
+      maxConcurrentRequests = 1;
+    }
+    if (!split && maxConcurrentRequests == 1) {
+      return null;
+    }
+    return new ConcurrentExporter<>(
+        delegate,
+        split ? serializedSize : null,
+        split ? maxRequestSize.toBytes() : Long.MAX_VALUE,
+        maxConcurrentRequests,
+        estimate,
+        account);
+  }
+
+  CompletableResultCode export(Collection<T> data) {
+    List<CompletableResultCode> results = new ArrayList<>();
+    List<List<T>> requests = split(new ArrayList<>(data));
+    for (int i = 0; i < requests.size(); i++) {
+      boolean acquired;
+      try {
+        acquired = permits.tryAcquire(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        acquired = false;
+      }
+      if (!acquired) {
+        // the requests that have been sent are still in flight, but the batch is incomplete
+        int remaining = requests.subList(i, requests.size()).stream().mapToInt(List::size).sum();
+        logger.warn("dropping {} items, no export request completed in time", remaining);
+        dropped.add(remaining);
+        return CompletableResultCode.ofFailure();
+      }
+      results.add(send(requests.get(i)));
+    }
+    if (maxConcurrentRequests == 1) {
+      return CompletableResultCode.ofAll(results);
+    }
+    if (results.stream().allMatch(r -> r.isDone() && !r.isSuccess())) {
+      return CompletableResultCode.ofFailure();
+    }
+    // the batch processor can continue with the next batch, so the items of the requests are
+    // tracked here from now on
+    for (int i = 0; i < results.size(); i++) {
+      CompletableResultCode result = results.get(i);
+      int size = requests.get(i).size();
+      pending.addAndGet(size);
+      result.whenComplete(
+          () -> {
+            pending.addAndGet(-size);
+            if (!result.isSuccess()) {
+              lost.add(size);
+            }
+          });
+    }
+    return CompletableResultCode.ofSuccess();
+  }
+
+  private CompletableResultCode send(List<T> request) {
+    long bytes = estimate(request);
+    CompletableResultCode result;
+    try {
+      result = delegate.apply(request);
+    } catch (RuntimeException e) {
+      permits.release();
+      release(bytes);
+      logger.warn("unable to export {} items", request.size(), e);
+      return CompletableResultCode.ofFailure();
+    }
+    inFlight.add(result);
+    result.whenComplete(
+        () -> {
+          inFlight.remove(result);
+          permits.release();
+          release(bytes);
+        });
+    return result;
+  }
+
+  /** Adds the estimated bytes of the request to the memory budget. */
+  private long estimate(List<T> request) {
+    if (account == null) {
+      return 0;
+    }
+    long bytes = 0;
+    for (T item : request) {
+      bytes += estimate.applyAsLong(item);
+    }
+    account.add(bytes);
+    return bytes;
+  }
+
+  private void release(long bytes) {
+    if (account != null) {
+      account.release(bytes);
+    }
+  }
+
+  /**
+   * Splits the batch into requests with the same number of items. The batch is only serialized
+   * once, so the requests aim at 90% of the maximum size to leave room for the resource and scope
+   * that are repeated in each request, and for items of different sizes.
+   */
+  List<List<T>> split(List<T> batch) {
+    // a single item is sent as is, it can't be split
+    if (serializedSize == null || batch.size() <= 1) {
+      return List.of(batch);
+    }
+    long bytes = serializedSize.applyAsLong(batch);
+    if (bytes <= maxRequestBytes) {
+      return List.of(batch);
+    }
+    long target = Math.max(1, maxRequestBytes - maxRequestBytes / 10);
+    int count = (int) Math.min(batch.size(), (bytes + target - 1) / target);
+    List<List<T>> requests = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      requests.add(batch.subList(i * batch.size() / count, (i + 1) * batch.size() / count));
+    }
+    return requests;
+  }
+
+  /** Completes when all requests that are in flight have completed. */
+  CompletableResultCode flush(CompletableResultCode delegateFlush) {
+    List<CompletableResultCode> results = new ArrayList<>(inFlight);
+    results.add(delegateFlush);
+    return CompletableResultCode.ofAll(results);
+  }
+
+  /** Waits for the requests that are in flight, e.g. before the delegate is shut down. */
+  void awaitInFlight(Duration timeout) {
+    flush(CompletableResultCode.ofSuccess()).join(timeout.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  int getInFlight() {
+    return inFlight.size();
+  }
+
+  /** The number of items that were dropped because no request completed in time. */
+  long getDropped() {
+    return dropped.sum();
+  }
+
+  /** The items of the requests that failed after the export had completed. */
+  @Override
+  public long getLostItems() {
+    return lost.sum();
+  }
+
+  /** The items of the requests that are in flight after the export has completed. */
+  @Override
+  public long getPendingItems() {
+    return pending.get();
+  }
+
+  /** Returns the concurrent exporter if the exporter has been wrapped. */
+  static ConcurrentExporter<?> unwrap(Object exporter) {
+    if (exporter instanceof Spans) {
+      return ((Spans) exporter).concurrent;
+    }
+    if (exporter instanceof Metrics) {
+      return ((Metrics) exporter).concurrent;
+    }
+    if (exporter instanceof Logs) {
+      return ((Logs) exporter).concurrent;
+    }
+    return null;
+  }
+
+  static class Spans implements SpanExporter {
+    private final SpanExporter delegate;
+    private final ConcurrentExporter<SpanData> concurrent;
+    private final Duration shutdownTimeout;
+
+    Spans(
+        SpanExporter delegate, ConcurrentExporter<SpanData> concurrent, Duration shutdownTimeout) {
+      this.delegate = delegate;
+      this.concurrent = concurrent;
+      this.shutdownTimeout = shutdownTimeout;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+      return concurrent.export(spans);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return concurrent.flush(delegate.flush());
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      concurrent.awaitInFlight(shutdownTimeout);
+      return delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "ConcurrentSpanExporter{delegate=" + delegate + "}";
+    }
+  }
+
+  static class Metrics implements MetricExporter {
+    private final MetricExporter delegate;
+    private final ConcurrentExporter<MetricData> concurrent;
+    private final Duration shutdownTimeout;
+
+    Metrics(
+        MetricExporter delegate,
+        ConcurrentExporter<MetricData> concurrent,
+        Duration shutdownTimeout) {
+      this.delegate = delegate;
+      this.concurrent = concurrent;
+      this.shutdownTimeout = shutdownTimeout;
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+      return delegate.getAggregationTemporality(instrumentType);
+    }
+
+    @Override
+    public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+      return delegate.getDefaultAggregation(instrumentType);
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<MetricData> metrics) {
+      return concurrent.export(metrics);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return concurrent.flush(delegate.flush());
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      concurrent.awaitInFlight(shutdownTimeout);
+      return delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "ConcurrentMetricExporter{delegate=" + delegate + "}";
+    }
+  }
+
+  static class Logs implements LogRecordExporter {
+    private final LogRecordExporter delegate;
+    private final ConcurrentExporter<LogRecordData> concurrent;
+    private final Duration shutdownTimeout;
+
+    Logs(
+        LogRecordExporter delegate,
+        ConcurrentExporter<LogRecordData> concurrent,
+        Duration shutdownTimeout) {
+      this.delegate = delegate;
+      this.concurrent = concurrent;
+      this.shutdownTimeout = shutdownTimeout;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<LogRecordData> logs) {
+      return concurrent.export(logs);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return concurrent.flush(delegate.flush());
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      concurrent.awaitInFlight(shutdownTimeout);
+      return delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "ConcurrentLogRecordExporter{delegate=" + delegate + "}";
+    }
+  }
+}
@@ -0,0 +1,603 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.baggage.propagation.W3CBaggagePropagator;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.logs.LogRecordBuilder;
+import io.opentelemetry.api.logs.Logger;
+import io.opentelemetry.api.logs.LoggerBuilder;
+import io.opentelemetry.api.logs.LoggerProvider;
+import io.opentelemetry.api.logs.Severity;
+import io.opentelemetry.api.metrics.BatchCallback;
+import io.opentelemetry.api.metrics.DoubleGaugeBuilder;
+import io.opentelemetry.api.metrics.DoubleHistogramBuilder;
+import io.opentelemetry.api.metrics.LongCounterBuilder;
+import io.opentelemetry.api.metrics.LongUpDownCounterBuilder;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.MeterBuilder;
+import io.opentelemetry.api.metrics.MeterProvider;
+import io.opentelemetry.api.metrics.ObservableMeasurement;
+import io.opentelemetry.api.trace.SpanBuilder;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.TracerBuilder;
+import io.opentelemetry.api.trace.TracerProvider;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import io.opentelemetry.sdk.autoconfigure.AutoConfiguredOpenTelemetrySdk;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link OpenTelemetry} that can be used while the SDK is created on a background thread (<code>
+ * grafana.otlp.startup.mode=deferred</code>).
+ *
+ * <p>The tracers, meters, and loggers delegate to the SDK as soon as it is ready. Until then, log
+ * records are buffered (up to a maximum number, and only within the buffer timeout) and replayed
+ * when the SDK is ready. Spans are not recorded, and instruments that are created before the SDK is
+ * ready are no-ops - code that creates instruments (e.g. Micrometer meters) should use the SDK that
+ * is passed to {@link #onReady(Consumer)}.
+ *
+ * <p>If the SDK can't be created, or is not ready within the startup timeout, the no-op {@link
+ * OpenTelemetry} is used instead, so that the listeners are still called.
+ */
+class DeferredOpenTelemetry implements OpenTelemetry {
+
+  private static final org.slf4j.Logger logger =
+      LoggerFactory.getLogger(DeferredOpenTelemetry.class);
+
+  private static final AttributeKey<String> STATE = AttributeKey.stringKey("state");
+
+  private static final Tracer NOOP_TRACER = TracerProvider.noop().get("noop");
+  private static final Meter NOOP_METER = MeterProvider.noop().get("noop");
+  private static final ContextPropagators DEFAULT_PROPAGATORS =
+      ContextPropagators.create(
+          TextMapPropagator.composite(
+              W3CTraceContextPropagator.getInstance(), W3CBaggagePropagator.getInstance()));
+
+  private final int maxBufferedLogs;
+  private final long started = System.nanoTime();
+  private final TracerProvider tracerProvider = new DeferredTracerProvider();
+  private final MeterProvider meterProvider = new DeferredMeterProvider();
+  private final LoggerProvider loggerProvider = new DeferredLoggerProvider();
+  private final LongAdder replayedLogs = new LongAdder();
+  private final LongAdder droppedLogs = new LongAdder();
+
+  private volatile OpenTelemetry delegate;
+  private volatile long readyNanos;
+
+  // guarded by this
+  private final Deque<BufferedLogRecord> bufferedLogs = new ArrayDeque<>();
+  private final List<Consumer<OpenTelemetry>> listeners = new ArrayList<>();
+  private boolean buffering = true;
+
+  DeferredOpenTelemetry(int maxBufferedLogs) {
+    this.maxBufferedLogs = maxBufferedLogs;
+  }
+
+  /**
+   * Creates the SDK on a background thread. The log records are only buffered for the duration of
+   * the buffer timeout, and the SDK is only used if it's ready within the startup timeout.
+   */
+  static DeferredOpenTelemetry start(
+      GrafanaProperties.StartupProperties properties,
+      Supplier<AutoConfiguredOpenTelemetrySdk> sdk) {
+    DeferredOpenTelemetry openTelemetry = new DeferredOpenTelemetry(properties.getBufferSize());
+    Thread thread = new Thread(() -> openTelemetry.create(sdk), "grafana-otlp-startup");
+    thread.setDaemon(true);
+    thread.start();
+    Duration bufferTimeout = properties.getBufferTimeout();
+    CompletableFuture.delayedExecutor(bufferTimeout.toMillis(), TimeUnit.MILLISECONDS)
+        .execute(() -> openTelemetry.stopBuffering(bufferTimeout));
+    Duration timeout = properties.getTimeout();
+    if (timeout != null && !timeout.isZero() && !timeout.isNegative()) {
+      CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS)
+          .execute(() -> openTelemetry.giveUp(timeout));
+    }
+    return openTelemetry;
+  }
+
+  void create(Supplier<AutoConfiguredOpenTelemetrySdk> sdk) {
+    AutoConfiguredOpenTelemetrySdk created;
+    try {
+      created = sdk.get();
+    } catch (Throwable t) {
+      // e.g. NoClassDefFoundError for an optional exporter - the listeners must still be called
+      logger.warn("failed to create the OpenTelemetry SDK, using a no-op OpenTelemetry instead", t);
+      created = null;
+    }
+    complete(created);
+  }
+
+  void complete(AutoConfiguredOpenTelemetrySdk sdk) {
+    if (sdk == null) {
+      // the reason has already been logged
+      switchTo(OpenTelemetry.noop());
+      return;
+    }
+    OpenTelemetry openTelemetry = sdk.getOpenTelemetrySdk();
+    if (!switchTo(openTelemetry)) {
+      logger.warn(
+          "OpenTelemetry SDK is ready after the startup timeout (grafana.otlp.startup.timeout), "
+              + "closing it");
+      sdk.getOpenTelemetrySdk().close();
+      return;
+    }
+    registerMetrics(openTelemetry);
+    logger.info(
+        "OpenTelemetry SDK is ready after {}ms, replayed {} log records",
+        TimeUnit.NANOSECONDS.toMillis(readyNanos),
+        replayedLogs.sum());
+  }
+
+  /** Returns false if another OpenTelemetry is already used. */
+  boolean switchTo(OpenTelemetry openTelemetry) {
+    List<Consumer<OpenTelemetry>> ready;
+    synchronized (this) {
+      if (delegate != null) {
+        return false;
+      }
+      // in order, before any new log record is emitted
+      for (BufferedLogRecord log : bufferedLogs) {
+        log.replay(openTelemetry);
+      }
+      replayedLogs.add(bufferedLogs.size());
+      bufferedLogs.clear();
+      buffering = false;
+      readyNanos = System.nanoTime() - started;
+      delegate = openTelemetry;
+      ready = new ArrayList<>(listeners);
+      listeners.clear();
+    }
+    ready.forEach(listener -> listener.accept(openTelemetry));
+    return true;
+  }
+
+  void giveUp(Duration timeout) {
+    if (switchTo(OpenTelemetry.noop())) {
+      logger.warn(
+          "OpenTelemetry SDK is not ready after {}ms (grafana.otlp.startup.timeout), "
+              + "using a no-op OpenTelemetry instead",
+          timeout.toMillis());
+    }
+  }
+
+  synchronized void stopBuffering(Duration timeout) {
+    if (delegate != null) {
+      return;
+    }
+    logger.warn(
+        "OpenTelemetry SDK is not ready after {}ms (grafana.otlp.startup.bufferTimeout), "
+            + "dropping {} buffered log records",
+        timeout.toMillis(),
+        bufferedLogs.size());
+    droppedLogs.add(bufferedLogs.size());
+    bufferedLogs.clear();
+    buffering = false;
+  }
+
+  /** Calls the listener with the SDK when it is ready - or right away if it's already ready. */
+  void onReady(Consumer<OpenTelemetry> listener) {
+    OpenTelemetry openTelemetry;
+    synchronized (this) {
+      openTelemetry = delegate;
+      if (openTelemetry == null) {
+        listeners.add(listener);
+        return;
+      }
+    }
+    listener.accept(openTelemetry);
+  }
+
+  boolean isReady() {
+    return delegate != null;
+  }
+
+  private void registerMetrics(OpenTelemetry openTelemetry) {
+    Meter meter = openTelemetry.getMeter(OpenTelemetryConfig.INSTRUMENTATION_SCOPE_NAME);
+    meter
+        .gaugeBuilder("grafana.otlp.startup.ready")
+        .setUnit("s")
+        .setDescription("The time until the OpenTelemetry SDK was ready (startup mode deferred)")
+        .buildWithCallback(m -> m.record(readyNanos / 1e9));
+    meter
+        .counterBuilder("grafana.otlp.startup.logs")
+        .setDescription("The number of log records that were emitted before the SDK was ready")
+        .buildWithCallback(
+            m -> {
+              m.record(replayedLogs.sum(), Attributes.of(STATE, "replayed"));
+              m.record(droppedLogs.sum(), Attributes.of(STATE, "dropped"));
+            });
+  }
+
+  private void emit(BufferedLogRecord log) {
+    OpenTelemetry openTelemetry = delegate;
+    if (openTelemetry == null) {
+      synchronized (this) {
+        openTelemetry = delegate;
+        if (openTelemetry == null) {
+          if (buffering && bufferedLogs.size() < maxBufferedLogs) {
+            bufferedLogs.add(log);
+          } else {
+            droppedLogs.increment();
+          }
+          return;
+        }
+      }
+    }
+    log.replay(openTelemetry);
+  }
+
+  long getDroppedLogs() {
+    return droppedLogs.sum();
+  }
+
+  @Override
+  public TracerProvider getTracerProvider() {
+    return tracerProvider;
+  }
+
+  @Override
+  public MeterProvider getMeterProvider() {
+    return meterProvider;
+  }
+
+  @Override
+  public LoggerProvider getLogsBridge() {
+    return loggerProvider;
+  }
+
+  @Override
+  public ContextPropagators getPropagators() {
+    OpenTelemetry openTelemetry = delegate;
+    return openTelemetry == null ? DEFAULT_PROPAGATORS : openTelemetry.getPropagators();
+  }
+
+  /** The name, version, and schema URL of a tracer, meter, or logger. */
+  private static class Scope {
+    private final String name;
+    private String version;
+    private String schemaUrl;
+
+    Scope(String name) {
+      this.name = name;
+    }
+  }
+
+  private class DeferredTracerProvider implements TracerProvider {
+    @Override
+    public Tracer get(String instrumentationScopeName) {
+      return new DeferredTracer(new Scope(instrumentationScopeName));
+    }
+
+    @Override
+    public Tracer get(String instrumentationScopeName, String instrumentationScopeVersion) {
+      Scope scope = new Scope(instrumentationScopeName);
+      scope.version = instrumentationScopeVersion;
+      return new DeferredTracer(scope);
+    }
+
+    @Override
+    public TracerBuilder tracerBuilder(String instrumentationScopeName) {
+      Scope scope = new Scope(instrumentationScopeName);
+      return new TracerBuilder() {
+        @Override
+        public TracerBuilder setSchemaUrl(String schemaUrl) {
+          scope.schemaUrl = schemaUrl;
+          return this;
+        }
+
+        @Override
+        public TracerBuilder setInstrumentationVersion(String instrumentationScopeVersion) {
+          scope.version = instrumentationScopeVersion;
+          return this;
+        }
+
+        @Override
+        public Tracer build() {
+          return new DeferredTracer(scope);
+        }
+      };
+    }
+  }
+
+  private class DeferredTracer implements Tracer {
+    private final Scope scope;
+    private volatile Tracer tracer;
+
+    DeferredTracer(Scope scope) {
+      this.scope = scope;
+    }
+
+    @Override
+    public SpanBuilder spanBuilder(String spanName) {
+      Tracer resolved = tracer;
+      if (resolved == null) {
+        OpenTelemetry openTelemetry = delegate;
+        if (openTelemetry == null) {
+          return NOOP_TRACER.spanBuilder(spanName);
+        }
+        TracerBuilder builder = openTelemetry.getTracerProvider().tracerBuilder(scope.name);
+        if (scope.version != null) {
+          builder.setInstrumentationVersion(scope.version);
+        }
+        if (scope.schemaUrl != null) {
+          builder.setSchemaUrl(scope.schemaUrl);
+        }
+        resolved = builder.build();
+        tracer = resolved;
+      }
+      return resolved.spanBuilder(spanName);
+    }
+  }
+
+  private class DeferredMeterProvider implements MeterProvider {
+    @Override
+    public MeterBuilder meterBuilder(String instrumentationScopeName) {
+      Scope scope = new Scope(instrumentationScopeName);
+      return new MeterBuilder() {
+        @Override
+        public MeterBuilder setSchemaUrl(String schemaUrl) {
+          scope.schemaUrl = schemaUrl;
+          return this;
+        }
+
+        @Override
+        public MeterBuilder setInstrumentationVersion(String instrumentationScopeVersion) {
+          scope.version = instrumentationScopeVersion;
+          return this;
+        }
+
+        @Override
+        public Meter build() {
+          return new DeferredMeter(scope);
+        }
+      };
+    }
+  }
+
+  private class DeferredMeter implements Meter {
+    private final Scope scope;
+    private volatile Meter meter;
+
+    DeferredMeter(Scope scope) {
+      this.scope = scope;
+    }
+
+    private Meter meter() {
+      Meter resolved = meter;
+      if (resolved == null) {
+        OpenTelemetry openTelemetry = delegate;
+        if (openTelemetry == null) {
+          return NOOP_METER;
+        }
+        MeterBuilder builder = openTelemetry.getMeterProvider().meterBuilder(scope.name);
+        if (scope.version != null) {
+          builder.setInstrumentationVersion(scope.version);
+        }
+        if (scope.schemaUrl != null) {
+          builder.setSchemaUrl(scope.schemaUrl);
+        }
+        resolved = builder.build();
+        meter = resolved;
+      }
+      return resolved;
+    }
+
+    @Override
+    public LongCounterBuilder counterBuilder(String name) {
+      return meter().counterBuilder(name);
+    }
+
+    @Override
+    public LongUpDownCounterBuilder upDownCounterBuilder(String name) {
+      return meter().upDownCounterBuilder(name);
+    }
+
+    @Override
+    public DoubleHistogramBuilder histogramBuilder(String name) {
+      return meter().histogramBuilder(name);
+    }
+
+    @Override
+    public DoubleGaugeBuilder gaugeBuilder(String name) {
+      return meter().gaugeBuilder(name);
+    }
+
+    @Override
+    public BatchCallback batchCallback(
+        Runnable callback,
+        ObservableMeasurement observableMeasurement,
+        ObservableMeasurement... additionalMeasurements) {
+      return meter().batchCallback(callback, observableMeasurement, additionalMeasurements);
+    }
+  }
+
+  private class DeferredLoggerProvider implements LoggerProvider {
+    @Override
+    public LoggerBuilder loggerBuilder(String instrumentationScopeName) {
+      Scope scope = new Scope(instrumentationScopeName);
+      return new LoggerBuilder() {
+        @Override
+        public LoggerBuilder setSchemaUrl(String schemaUrl) {
+          scope.schemaUrl = schemaUrl;
+          return this;
+        }
+
+        @Override
+        public LoggerBuilder setInstrumentationVersion(String instrumentationScopeVersion) {
+          scope.version = instrumentationScopeVersion;
+          return this;
+        }
+
+        @Override
+        public Logger build() {
+          return new DeferredLogger(scope);
+        }
+      };
+    }
+  }
+
+  private class DeferredLogger implements Logger {
+    private final Scope scope;
+    private volatile Logger logger;
+
+    DeferredLogger(Scope scope) {
+      this.scope = scope;
+    }
+
+    Logger resolve(OpenTelemetry openTelemetry) {
+      Logger resolved = logger;
+      if (resolved == null) {
+        LoggerBuilder builder = openTelemetry.getLogsBridge().loggerBuilder(scope.name);
+        if (scope.version != null) {
+          builder.setInstrumentationVersion(scope.version);
+        }
+        if (scope.schemaUrl != null) {
+          builder.setSchemaUrl(scope.schemaUrl);
+        }
+        resolved = builder.build();
+        logger = resolved;
+      }
+      return resolved;
+    }
+
+    @Override
+    public LogRecordBuilder logRecordBuilder() {
+      OpenTelemetry openTelemetry = delegate;
+      return openTelemetry == null
+          ? new BufferedLogRecord(this)
+          : resolve(openTelemetry).logRecordBuilder();
+    }
+  }
+
+  /** Keeps the values of a log record until the SDK is ready. */
+  private class BufferedLogRecord implements LogRecordBuilder {
+    private final DeferredLogger logger;
+    private final AttributesBuilder attributes = Attributes.builder();
+    private long timestamp;
+    private long observedTimestamp;
+    private Context context;
+    private Severity severity;
+    private String severityText;
+    private String body;
+
+    BufferedLogRecord(DeferredLogger logger) {
+      this.logger = logger;
+    }
+
+    @Override
+    public LogRecordBuilder setTimestamp(long timestamp, TimeUnit unit) {
+      this.timestamp = unit.toNanos(timestamp);
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setTimestamp(Instant instant) {
+      this.timestamp = toNanos(instant);
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setObservedTimestamp(long timestamp, TimeUnit unit) {
+      this.observedTimestamp = unit.toNanos(timestamp);
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setObservedTimestamp(Instant instant) {
+      this.observedTimestamp = toNanos(instant);
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setContext(Context context) {
+      this.context = context;
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setSeverity(Severity severity) {
+      this.severity = severity;
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setSeverityText(String severityText) {
+      this.severityText = severityText;
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setBody(String body) {
+      this.body = body;
+      return this;
+    }
+
+    @Override
+    public <T> LogRecordBuilder setAttribute(AttributeKey<T> key, T value) {
+      if (key != null && value != null) {
+        attributes.put(key, value);
+      }
+      return this;
+    }
+
+    @Override
+    public void emit() {
+      // the SDK would use the values at the time of the replay
+      if (context == null) {
+        context = Context.current();
+      }
+      if (observedTimestamp == 0) {
+        observedTimestamp = toNanos(Instant.now());
+      }
+      DeferredOpenTelemetry.this.emit(this);
+    }
+
+    void replay(OpenTelemetry openTelemetry) {
+      LogRecordBuilder builder =
+          logger
+              .resolve(openTelemetry)
+              .logRecordBuilder()
+              .setObservedTimestamp(observedTimestamp, TimeUnit.NANOSECONDS)
+              .setContext(context);
+      if (timestamp != 0) {
+        builder.setTimestamp(timestamp, TimeUnit.NANOSECONDS);
+      }
+      if (severity != null) {
+        builder.setSeverity(severity);
+      }
+      if (severityText != null) {
+        builder.setSeverityText(severityText);
+      }
+      if (body != null) {
+        builder.setBody(body);
+      }
+      attributes.build().forEach((key, value) -> putAttribute(builder, key, value));
+      builder.emit();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> void putAttribute(
+      LogRecordBuilder builder, AttributeKey<T> key, Object value) {
+    builder.setAttribute(key, (T) value);
+  }
+
+  private static long toNanos(Instant instant) {
+    return TimeUnit.SECONDS.toNanos(instant.getEpochSecond()) + instant.getNano();
+  }
+}
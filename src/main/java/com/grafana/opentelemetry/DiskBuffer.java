@@ -0,0 +1,306 @@
+package com.grafana.opentelemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A durable queue of serialized OTLP requests, stored in memory-mapped segment files.
+ *
+ * <p>Each record is stored as its length followed by its bytes. The length is written last, so
+ * that a record that was only partially written (e.g. if the process was killed) ends the segment.
+ * The segments are replayed in order - and deleted once all their records have been sent. If the
+ * total size of the segments would exceed the maximum, the oldest segment is dropped.
+ *
+ * <p>The position of the reader is not persisted: after a restart, the records of a partially
+ * replayed segment are sent again.
+ */
+class DiskBuffer implements Closeable {
+
+  enum Result {
+    SENT,
+    /** The backend rejected the request, e.g. because it is malformed - it is dropped. */
+    REJECTED,
+    /** The backend is not available - the request is kept and sent again later. */
+    FAILED,
+    /**
+     * The request could not be sent for another reason, e.g. a TLS error - the request is kept and
+     * sent again later.
+     */
+    ERROR
+  }
+
+  interface Sender {
+    Result send(byte[] request);
+  }
+
+  private static final Logger logger = LoggerFactory.getLogger(DiskBuffer.class);
+
+  private static final String SUFFIX = ".seg";
+  private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+  private static final int MAX_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+  private final Path directory;
+  private final long maxBytes;
+  private final int segmentSize;
+
+  // guarded by this
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private long nextSequence;
+  private long totalBytes;
+  private long pending;
+  private long dropped;
+  private boolean closed;
+
+  DiskBuffer(Path directory, long maxBytes) throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.segmentSize = (int) Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, maxBytes / 10));
+    Files.createDirectories(directory);
+    for (Path path : listSegments(directory)) {
+      Segment segment = Segment.load(path);
+      if (segment.records == 0) {
+        Files.deleteIfExists(path);
+        continue;
+      }
+      // segments of the previous process are only read
+      segment.full = true;
+      segments.add(segment);
+      totalBytes += segment.size();
+      pending += segment.records;
+      nextSequence = segment.sequence + 1;
+    }
+    if (pending > 0) {
+      logger.info("found {} buffered requests in {}", pending, directory);
+    }
+  }
+
+  private static List<Path> listSegments(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(p -> p.getFileName().toString().matches("\\d+\\" + SUFFIX))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  /** Returns false if the request was dropped. */
+  synchronized boolean append(byte[] request) {
+    int recordSize = Integer.BYTES + request.length;
+    if (closed || recordSize > maxBytes) {
+      dropped++;
+      return false;
+    }
+    try {
+      Segment segment = segments.peekLast();
+      if (segment == null || segment.full || segment.remaining() < recordSize) {
+        if (segment != null) {
+          segment.seal();
+        }
+        segment = createSegment(Math.max(segmentSize, recordSize));
+      }
+      segment.write(request);
+      pending++;
+      return true;
+    } catch (IOException | UncheckedIOException e) {
+      logger.warn("unable to write to buffer {}", directory, e);
+      dropped++;
+      return false;
+    }
+  }
+
+  private Segment createSegment(int size) throws IOException {
+    while (totalBytes + size > maxBytes && !segments.isEmpty()) {
+      Segment oldest = segments.peekFirst();
+      long lost = oldest.records - oldest.readRecords;
+      logger.warn("buffer {} is full, dropping {} requests", directory, lost);
+      dropped += lost;
+      delete(oldest);
+    }
+    // zero-padded, so that the segments are sorted by name
+    Path path = directory.resolve(String.format("%020d%s", nextSequence, SUFFIX));
+    Segment segment = Segment.create(path, nextSequence++, size);
+    segments.addLast(segment);
+    totalBytes += size;
+    return segment;
+  }
+
+  private void delete(Segment segment) {
+    segments.remove(segment);
+    totalBytes -= segment.size();
+    pending -= segment.records - segment.readRecords;
+    try {
+      Files.deleteIfExists(segment.path);
+    } catch (IOException e) {
+      logger.warn("unable to delete buffer segment {}", segment.path, e);
+    }
+  }
+
+  /**
+   * Sends the buffered requests in order, until the buffer is empty or the backend is not
+   * available. Segments are deleted after all their requests have been sent.
+   *
+   * @return true if the buffer is empty
+   */
+  boolean replay(Sender sender) {
+    while (true) {
+      Segment segment;
+      byte[] request;
+      synchronized (this) {
+        segment = segments.peekFirst();
+        if (segment == null) {
+          return true;
+        }
+        request = segment.peek();
+        if (request == null) {
+          // all records have been read - the next append creates a new segment
+          delete(segment);
+          continue;
+        }
+      }
+      Result result = sender.send(request);
+      if (result == Result.FAILED || result == Result.ERROR) {
+        return false;
+      }
+      synchronized (this) {
+        // the segment may have been dropped in the meantime
+        if (segments.peekFirst() == segment) {
+          segment.advance(request.length);
+          pending--;
+          if (result == Result.REJECTED) {
+            dropped++;
+          }
+        }
+      }
+    }
+  }
+
+  synchronized boolean isEmpty() {
+    return pending == 0;
+  }
+
+  synchronized long getPending() {
+    return pending;
+  }
+
+  synchronized long getDropped() {
+    return dropped;
+  }
+
+  synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    for (Segment segment : segments) {
+      segment.buffer.force();
+    }
+  }
+
+  private static class Segment {
+    private final Path path;
+    private final long sequence;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+    private int readPosition;
+    private long records;
+    private long readRecords;
+    private boolean full;
+
+    private Segment(Path path, long sequence, MappedByteBuffer buffer) {
+      this.path = path;
+      this.sequence = sequence;
+      this.buffer = buffer;
+    }
+
+    static Segment create(Path path, long sequence, int size) throws IOException {
+      try (FileChannel channel =
+          FileChannel.open(
+              path,
+              StandardOpenOption.CREATE_NEW,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE)) {
+        // the mapping stays valid after the channel is closed
+        return new Segment(path, sequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+      }
+    }
+
+    static Segment load(Path path) throws IOException {
+      String name = path.getFileName().toString();
+      long sequence = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+      try (FileChannel channel =
+          FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        Segment segment = new Segment(path, sequence, buffer);
+        int length;
+        while ((length = segment.lengthAt(segment.writePosition)) > 0) {
+          segment.writePosition += Integer.BYTES + length;
+          segment.records++;
+        }
+        return segment;
+      }
+    }
+
+    int size() {
+      return buffer.capacity();
+    }
+
+    int remaining() {
+      return buffer.capacity() - writePosition;
+    }
+
+    void write(byte[] request) {
+      buffer.put(writePosition + Integer.BYTES, request);
+      buffer.putInt(writePosition, request.length);
+      writePosition += Integer.BYTES + request.length;
+      records++;
+    }
+
+    void seal() {
+      full = true;
+      buffer.force();
+    }
+
+    /** Returns the next record without consuming it, or null if all records have been read. */
+    byte[] peek() {
+      int length = lengthAt(readPosition);
+      if (length <= 0) {
+        return null;
+      }
+      byte[] request = new byte[length];
+      buffer.get(readPosition + Integer.BYTES, request);
+      return request;
+    }
+
+    void advance(int length) {
+      readPosition += Integer.BYTES + length;
+      readRecords++;
+    }
+
+    /** Returns 0 at the end of the records, including a record that was only partially written. */
+    private int lengthAt(int position) {
+      if (position + Integer.BYTES > buffer.capacity()) {
+        return 0;
+      }
+      int length = buffer.getInt(position);
+      if (length < 0 || position + Integer.BYTES + length > buffer.capacity()) {
+        return 0;
+      }
+      return length;
+    }
+  }
+}
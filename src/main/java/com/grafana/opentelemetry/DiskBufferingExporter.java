@@ -0,0 +1,410 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.exporter.internal.marshal.Marshaler;
+import io.opentelemetry.exporter.internal.otlp.logs.LogsRequestMarshaler;
+import io.opentelemetry.exporter.internal.otlp.metrics.MetricsRequestMarshaler;
+import io.opentelemetry.exporter.internal.otlp.traces.TraceRequestMarshaler;
+import io.opentelemetry.exporter.otlp.http.logs.OtlpHttpLogRecordExporter;
+import io.opentelemetry.exporter.otlp.http.metrics.OtlpHttpMetricExporter;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.exporter.otlp.logs.OtlpGrpcLogRecordExporter;
+import io.opentelemetry.exporter.otlp.metrics.OtlpGrpcMetricExporter;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.logs.export.LogRecordExporter;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.apache.logging.log4j.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the batches that could not be exported in a {@link DiskBuffer}, and replays them when the
+ * backend is available again.
+ *
+ * <p>While there are buffered batches, new batches are also appended to the buffer, so that the
+ * batches are sent in order - unless the replay failed for a reason other than the availability of
+ * the backend (e.g. a TLS error), then new batches are exported first. With concurrent requests
+ * ({@link ConcurrentExporter}), the batches that fail are appended in the order in which their
+ * requests complete. The batches are only serialized if they are buffered - the serialized
+ * requests count towards the {@link MemoryBudget} until they have been written.
+ *
+ * <p>The export always succeeds, so the batches that could not be buffered, and the buffered
+ * requests that were dropped, are counted as lost for the {@link ShutdownFlush}.
+ *
+ * @param <T> the telemetry data of the signal
+ */
+class DiskBufferingExporter<T> implements ShutdownFlush.Losses {
+
+  private static final Logger logger = LoggerFactory.getLogger(DiskBufferingExporter.class);
+
+  private static final long REPLAY_INTERVAL_SECONDS = 5;
+
+  private final Function<Collection<T>, CompletableResultCode> delegate;
+  private final Function<Collection<T>, Marshaler> marshaler;
+  private final DiskBuffer buffer;
+  private final DiskBuffer.Sender sender;
+  private final ScheduledExecutorService scheduler;
+  private final MemoryBudget.Account account;
+  // the last replay failed, although the backend may be available
+  private volatile boolean replayError;
+  private final LongAdder lost = new LongAdder();
+  // counted as lost items, and by the buffer as dropped requests
+  private final LongAdder rejected = new LongAdder();
+
+  /** The account is null if there is no memory budget. */
+  DiskBufferingExporter(
+      Function<Collection<T>, CompletableResultCode> delegate,
+      Function<Collection<T>, Marshaler> marshaler,
+      DiskBuffer buffer,
+      DiskBuffer.Sender sender,
+      boolean scheduleReplay,
+      MemoryBudget.Account account) {
+    this.delegate = delegate;
+    this.account = account;
+    this.marshaler = marshaler;
+    this.buffer = buffer;
+    this.sender =
+        request -> {
+          DiskBuffer.Result result = sender.send(request);
+          replayError = result == DiskBuffer.Result.ERROR;
+          return result;
+        };
+    if (scheduleReplay) {
+      scheduler =
+          Executors.newSingleThreadScheduledExecutor(
+              r -> {
+                Thread thread = new Thread(r, "grafana-otlp-disk-buffer");
+                thread.setDaemon(true);
+                return thread;
+              });
+      scheduler.scheduleWithFixedDelay(this::replay, 0, REPLAY_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    } else {
+      scheduler = null;
+    }
+  }
+
+  /** Returns the exporter if no buffer directory has been configured. */
+  static SpanExporter wrap(
+      SpanExporter exporter,
+      GrafanaProperties.BufferProperties properties,
+      ConfigProperties config,
+      MemoryBudget.Account account) {
+    Object otlpExporter = CircuitBreakerExporter.unwrap(exporter);
+    if (!isBuffered(
+        exporter,
+        properties,
+        otlpExporter instanceof OtlpHttpSpanExporter,
+        otlpExporter instanceof OtlpGrpcSpanExporter)) {
+      return exporter;
+    }
+    DiskBufferingExporter<SpanData> buffering =
+        create(
+            exporter::export,
+            TraceRequestMarshaler::create,
+            properties,
+            OtlpHttpReplaySender.create(config, "traces"),
+            "traces",
+            account);
+    return buffering == null ? exporter : new Spans(exporter, buffering);
+  }
+
+  /** Returns the exporter if no buffer directory has been configured. */
+  static MetricExporter wrap(
+      MetricExporter exporter,
+      GrafanaProperties.BufferProperties properties,
+      ConfigProperties config,
+      MemoryBudget.Account account) {
+    Object otlpExporter = CircuitBreakerExporter.unwrap(exporter);
+    if (!isBuffered(
+        exporter,
+        properties,
+        otlpExporter instanceof OtlpHttpMetricExporter,
+        otlpExporter instanceof OtlpGrpcMetricExporter)) {
+      return exporter;
+    }
+    DiskBufferingExporter<MetricData> buffering =
+        create(
+            exporter::export,
+            MetricsRequestMarshaler::create,
+            properties,
+            OtlpHttpReplaySender.create(config, "metrics"),
+            "metrics",
+            account);
+    return buffering == null ? exporter : new Metrics(exporter, buffering);
+  }
+
+  /** Returns the exporter if no buffer directory has been configured. */
+  static LogRecordExporter wrap(
+      LogRecordExporter exporter,
+      GrafanaProperties.BufferProperties properties,
+      ConfigProperties config,
+      MemoryBudget.Account account) {
+    Object otlpExporter = CircuitBreakerExporter.unwrap(exporter);
+    if (!isBuffered(
+        exporter,
+        properties,
+        otlpExporter instanceof OtlpHttpLogRecordExporter,
+        otlpExporter instanceof OtlpGrpcLogRecordExporter)) {
+      return exporter;
+    }
+    DiskBufferingExporter<LogRecordData> buffering =
+        create(
+            exporter::export,
+            LogsRequestMarshaler::create,
+            properties,
+            OtlpHttpReplaySender.create(config, "logs"),
+            "logs",
+            account);
+    return buffering == null ? exporter : new Logs(exporter, buffering);
+  }
+
+  private static boolean isBuffered(
+      Object exporter, GrafanaProperties.BufferProperties properties, boolean http, boolean grpc) {
+    if (Strings.isBlank(properties.getDirectory())) {
+      return false;
+    }
+    if (grpc) {
+      logger.warn(
+          "grafana.otlp.buffer.directory is ignored for {}, "
+              + "because it requires otel.exporter.otlp.protocol=http/protobuf",
+          exporter);
+    }
+    // e.g. the logging exporter
+    return http;
+  }
+
+  private static <T> DiskBufferingExporter<T> create(
+      Function<Collection<T>, CompletableResultCode> delegate,
+      Function<Collection<T>, Marshaler> marshaler,
+      GrafanaProperties.BufferProperties properties,
+      DiskBuffer.Sender sender,
+      String signal,
+      MemoryBudget.Account account) {
+    if (sender == null) {
+      // the properties of the exporter are not supported
+      return null;
+    }
+    Path directory = Paths.get(properties.getDirectory(), signal);
+    try {
+      DiskBuffer buffer = new DiskBuffer(directory, properties.getMaxSize().toBytes());
+      return new DiskBufferingExporter<>(delegate, marshaler, buffer, sender, true, account);
+    } catch (IOException e) {
+      logger.warn("unable to create buffer in {}", directory, e);
+      return null;
+    }
+  }
+
+  CompletableResultCode export(Collection<T> data) {
+    if (!buffer.isEmpty() && !replayError) {
+      append(data);
+      return CompletableResultCode.ofSuccess();
+    }
+    CompletableResultCode result = new CompletableResultCode();
+    CompletableResultCode exported = delegate.apply(data);
+    exported.whenComplete(
+        () -> {
+          if (!exported.isSuccess()) {
+            append(data);
+          }
+          result.succeed();
+        });
+    return result;
+  }
+
+  private void append(Collection<T> data) {
+    if (data.isEmpty()) {
+      return;
+    }
+    Marshaler request = marshaler.apply(data);
+    int size = request.getBinarySerializedSize();
+    // the stream and its copy
+    long bytes = 2L * size;
+    if (account != null) {
+      account.add(bytes);
+    }
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+      request.writeBinaryTo(out);
+      if (!buffer.append(out.toByteArray())) {
+        rejected.increment();
+        lost.add(data.size());
+      }
+    } catch (IOException e) {
+      logger.warn("unable to serialize request", e);
+      lost.add(data.size());
+    } finally {
+      if (account != null) {
+        account.release(bytes);
+      }
+    }
+  }
+
+  /** Returns true if the buffer is empty. */
+  boolean replay() {
+    try {
+      return buffer.isEmpty() || buffer.replay(sender);
+    } catch (RuntimeException e) {
+      logger.warn("unable to replay buffered requests", e);
+      return false;
+    }
+  }
+
+  DiskBuffer getBuffer() {
+    return buffer;
+  }
+
+  /** The items of the batches that could not be buffered. */
+  @Override
+  public long getLostItems() {
+    return lost.sum();
+  }
+
+  /** The buffered requests that were dropped, because the buffer was full or they were rejected. */
+  @Override
+  public long getDroppedRequests() {
+    return buffer.getDropped() - rejected.sum();
+  }
+
+  /** Returns the buffering exporter if the exporter has been wrapped. */
+  static DiskBufferingExporter<?> unwrap(Object exporter) {
+    if (exporter instanceof Spans) {
+      return ((Spans) exporter).buffering;
+    }
+    if (exporter instanceof Metrics) {
+      return ((Metrics) exporter).buffering;
+    }
+    if (exporter instanceof Logs) {
+      return ((Logs) exporter).buffering;
+    }
+    return null;
+  }
+
+  /** The buffered batches stay on disk, and are replayed after a restart. */
+  void shutdown() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+    buffer.close();
+  }
+
+  static class Spans implements SpanExporter {
+    private final SpanExporter delegate;
+    private final DiskBufferingExporter<SpanData> buffering;
+
+    Spans(SpanExporter delegate, DiskBufferingExporter<SpanData> buffering) {
+      this.delegate = delegate;
+      this.buffering = buffering;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+      return buffering.export(spans);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      buffering.shutdown();
+      return delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "DiskBufferingSpanExporter{delegate=" + delegate + "}";
+    }
+  }
+
+  static class Metrics implements MetricExporter {
+    private final MetricExporter delegate;
+    private final DiskBufferingExporter<MetricData> buffering;
+
+    Metrics(MetricExporter delegate, DiskBufferingExporter<MetricData> buffering) {
+      this.delegate = delegate;
+      this.buffering = buffering;
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+      return delegate.getAggregationTemporality(instrumentType);
+    }
+
+    @Override
+    public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+      return delegate.getDefaultAggregation(instrumentType);
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<MetricData> metrics) {
+      return buffering.export(metrics);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      buffering.shutdown();
+      return delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "DiskBufferingMetricExporter{delegate=" + delegate + "}";
+    }
+  }
+
+  static class Logs implements LogRecordExporter {
+    private final LogRecordExporter delegate;
+    private final DiskBufferingExporter<LogRecordData> buffering;
+
+    Logs(LogRecordExporter delegate, DiskBufferingExporter<LogRecordData> buffering) {
+      this.delegate = delegate;
+      this.buffering = buffering;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<LogRecordData> logs) {
+      return buffering.export(logs);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      buffering.shutdown();
+      return delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "DiskBufferingLogRecordExporter{delegate=" + delegate + "}";
+    }
+  }
+}
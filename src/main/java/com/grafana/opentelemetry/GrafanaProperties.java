@@ -1,8 +1,12 @@
 package com.grafana.opentelemetry;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 @ConfigurationProperties(prefix = "grafana.otlp")
 public class GrafanaProperties {
@@ -11,6 +15,30 @@ public class GrafanaProperties {
 
   private OnPremProperties onPrem = new OnPremProperties();
 
+  private TracesProperties traces = new TracesProperties();
+
+  private MetricsProperties metrics = new MetricsProperties();
+
+  private LogsProperties logs = new LogsProperties();
+
+  private BufferProperties buffer = new BufferProperties();
+
+  private MemoryProperties memory = new MemoryProperties();
+
+  private ExportProperties export = new ExportProperties();
+
+  private RetryProperties retry = new RetryProperties();
+
+  private CircuitBreakerProperties circuitBreaker = new CircuitBreakerProperties();
+
+  private StartupProperties startup = new StartupProperties();
+
+  private ResourceProperties resource = new ResourceProperties();
+
+  private ShutdownProperties shutdown = new ShutdownProperties();
+
+  private PipelineHealthProperties pipelineHealth = new PipelineHealthProperties();
+
   /**
    * Adds global (resource) attributes to metrics, traces and logs.
    *
@@ -61,6 +89,14 @@ public class GrafanaProperties {
    */
   private boolean debugLogging;
 
+  /**
+   * The compression of the OTLP payloads: <code>gzip</code> (default) or <code>none</code>.
+   *
+   * <p>Gzip reduces the bytes on the wire (and egress costs) considerably, at the cost of some CPU
+   * time on the exporter threads.
+   */
+  private String compression = "gzip";
+
   /**
    * Enable or disable the OpenTelemetry integration (default is enabled).
    *
@@ -84,6 +120,102 @@ public class GrafanaProperties {
     this.onPrem = onPrem;
   }
 
+  public TracesProperties getTraces() {
+    return traces;
+  }
+
+  public void setTraces(TracesProperties traces) {
+    this.traces = traces;
+  }
+
+  public MetricsProperties getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(MetricsProperties metrics) {
+    this.metrics = metrics;
+  }
+
+  public LogsProperties getLogs() {
+    return logs;
+  }
+
+  public void setLogs(LogsProperties logs) {
+    this.logs = logs;
+  }
+
+  public BufferProperties getBuffer() {
+    return buffer;
+  }
+
+  public void setBuffer(BufferProperties buffer) {
+    this.buffer = buffer;
+  }
+
+  public MemoryProperties getMemory() {
+    return memory;
+  }
+
+  public void setMemory(MemoryProperties memory) {
+    this.memory = memory;
+  }
+
+  public ExportProperties getExport() {
+    return export;
+  }
+
+  public void setExport(ExportProperties export) {
+    this.export = export;
+  }
+
+  public RetryProperties getRetry() {
+    return retry;
+  }
+
+  public void setRetry(RetryProperties retry) {
+    this.retry = retry;
+  }
+
+  public CircuitBreakerProperties getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  public void setCircuitBreaker(CircuitBreakerProperties circuitBreaker) {
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  public StartupProperties getStartup() {
+    return startup;
+  }
+
+  public void setStartup(StartupProperties startup) {
+    this.startup = startup;
+  }
+
+  public ResourceProperties getResource() {
+    return resource;
+  }
+
+  public void setResource(ResourceProperties resource) {
+    this.resource = resource;
+  }
+
+  public ShutdownProperties getShutdown() {
+    return shutdown;
+  }
+
+  public void setShutdown(ShutdownProperties shutdown) {
+    this.shutdown = shutdown;
+  }
+
+  public PipelineHealthProperties getPipelineHealth() {
+    return pipelineHealth;
+  }
+
+  public void setPipelineHealth(PipelineHealthProperties pipelineHealth) {
+    this.pipelineHealth = pipelineHealth;
+  }
+
   public boolean isDebugLogging() {
     return debugLogging;
   }
@@ -92,6 +224,14 @@ public class GrafanaProperties {
     this.debugLogging = debugLogging;
   }
 
+  public String getCompression() {
+    return compression;
+  }
+
+  public void setCompression(String compression) {
+    this.compression = compression;
+  }
+
   public boolean isEnabled() {
     return enabled;
   }
@@ -187,4 +327,1128 @@ public class GrafanaProperties {
       this.protocol = protocol;
     }
   }
+
+  public static class BufferProperties {
+    /**
+     * Keep the spans, metrics, and logs that could not be exported (e.g. because the backend is not
+     * available) in this directory, and send them when the backend is available again (default is
+     * none, i.e. disabled).
+     *
+     * <p>The data is also kept if the application is restarted. This requires <code>
+     * otel.exporter.otlp.protocol=http/protobuf</code>, which is used for Grafana Cloud. The
+     * buffered data is sent with the endpoint, headers, compression, timeout, and certificate of
+     * the OTLP exporter - the buffer is disabled if a client certificate is configured.
+     *
+     * <p>With <code>grafana.otlp.export.maxConcurrentRequests</code>, the batches that fail are
+     * buffered in the order in which their requests complete.
+     */
+    private String directory;
+
+    /**
+     * The maximum size of the buffer per signal (default is 100MB). If the buffer is full, the
+     * oldest data is dropped.
+     */
+    private DataSize maxSize = DataSize.ofMegabytes(100);
+
+    public String getDirectory() {
+      return directory;
+    }
+
+    public void setDirectory(String directory) {
+      this.directory = directory;
+    }
+
+    public DataSize getMaxSize() {
+      return maxSize;
+    }
+
+    public void setMaxSize(DataSize maxSize) {
+      this.maxSize = maxSize;
+    }
+  }
+
+  public static class MemoryProperties {
+    /**
+     * The maximum estimated heap usage of the spans and logs that are waiting to be exported
+     * (default is none, i.e. only the queue sizes are limited).
+     *
+     * <p>Debug logs and new traces are dropped when 80% of the limit is used, and all new spans and
+     * logs are dropped when the limit is reached.
+     */
+    private DataSize limit;
+
+    public DataSize getLimit() {
+      return limit;
+    }
+
+    public void setLimit(DataSize limit) {
+      this.limit = limit;
+    }
+  }
+
+  public static class ExportProperties {
+    /**
+     * The maximum number of export requests per signal that are sent concurrently (default is 1).
+     *
+     * <p>The batch processors wait for each export to complete, so a higher value increases the
+     * throughput if the latency to the backend is high. Metrics are always sent one request after
+     * another.
+     */
+    private int maxConcurrentRequests = 1;
+
+    /**
+     * Split batches whose serialized (uncompressed) size exceeds this size into several requests,
+     * e.g. to stay under the request size limit of a gateway (default is none, i.e. not split).
+     */
+    private DataSize maxRequestSize;
+
+    public int getMaxConcurrentRequests() {
+      return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+      this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public DataSize getMaxRequestSize() {
+      return maxRequestSize;
+    }
+
+    public void setMaxRequestSize(DataSize maxRequestSize) {
+      this.maxRequestSize = maxRequestSize;
+    }
+  }
+
+  public static class RetryProperties {
+    /**
+     * Retry failed export requests with exponential backoff and jitter, if the backend responded
+     * with a retryable status, e.g. 429 or 503 (default is true).
+     */
+    private boolean enabled = true;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+  }
+
+  public static class CircuitBreakerProperties {
+    /**
+     * Stop exporting - and serializing - data after a number of consecutive failed exports, until a
+     * probe export succeeds (default is false).
+     *
+     * <p>Any failed export counts, including errors that are not caused by the availability of the
+     * backend (e.g. 401 or 413) - the data of the signal is dropped while the circuit is open.
+     */
+    private boolean enabled;
+
+    /** The number of consecutive failed exports that open the circuit (default is 3). */
+    private int failureThreshold = 3;
+
+    /**
+     * The time until the first probe export (default is 5s). The time doubles with every failed
+     * probe, with jitter.
+     */
+    private Duration initialBackoff = Duration.ofSeconds(5);
+
+    /** The maximum time between probe exports (default is 30s). */
+    private Duration maxBackoff = Duration.ofSeconds(30);
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getFailureThreshold() {
+      return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+      this.failureThreshold = failureThreshold;
+    }
+
+    public Duration getInitialBackoff() {
+      return initialBackoff;
+    }
+
+    public void setInitialBackoff(Duration initialBackoff) {
+      this.initialBackoff = initialBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+      return maxBackoff;
+    }
+
+    public void setMaxBackoff(Duration maxBackoff) {
+      this.maxBackoff = maxBackoff;
+    }
+  }
+
+  public static class StartupProperties {
+    /**
+     * <code>eager</code> (default): the OpenTelemetry SDK is created during the startup of the
+     * application. <code>deferred</code>: the SDK is created on a background thread, so that e.g. a
+     * slow host name lookup doesn't delay the startup.
+     */
+    private String mode = "eager";
+
+    /**
+     * The time for which log records are buffered until the SDK is ready in deferred mode (default
+     * is 30s). Log records that are emitted later - but before the SDK is ready - are dropped. This
+     * doesn't limit the time that the SDK may take to be created, see <code>timeout</code>.
+     */
+    private Duration bufferTimeout = Duration.ofSeconds(30);
+
+    /**
+     * The maximum time that the SDK may take to be created in deferred mode (default is 2m). If
+     * it's not ready by then, a warning is logged and no telemetry is exported - an SDK that
+     * becomes ready later is closed. Use <code>0</code> to wait without limit.
+     */
+    private Duration timeout = Duration.ofMinutes(2);
+
+    /** The maximum number of log records that are buffered in deferred mode (default is 2048). */
+    private int bufferSize = 2048;
+
+    public String getMode() {
+      return mode;
+    }
+
+    public void setMode(String mode) {
+      this.mode = mode;
+    }
+
+    public Duration getBufferTimeout() {
+      return bufferTimeout;
+    }
+
+    public void setBufferTimeout(Duration bufferTimeout) {
+      this.bufferTimeout = bufferTimeout;
+    }
+
+    public Duration getTimeout() {
+      return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+      this.timeout = timeout;
+    }
+
+    public int getBufferSize() {
+      return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+      this.bufferSize = bufferSize;
+    }
+  }
+
+  public static class ResourceProperties {
+    /**
+     * The time that the resource detectors (container, host, OS, process) and the host name lookup
+     * may take (default is 2s). They run concurrently - a detector that is slower is skipped, and
+     * its attributes are missing.
+     */
+    private Duration detectionTimeout = Duration.ofSeconds(2);
+
+    /**
+     * A file to cache the attributes of the host and OS detectors in, e.g. <code>
+     * /tmp/otel-resource.properties</code>. The cache is only used if the boot ID of the kernel
+     * is the same, e.g. when a container is restarted. The container detector is not cached,
+     * because the container ID changes on restart. Not set by default.
+     */
+    private String cacheFile;
+
+    public Duration getDetectionTimeout() {
+      return detectionTimeout;
+    }
+
+    public void setDetectionTimeout(Duration detectionTimeout) {
+      this.detectionTimeout = detectionTimeout;
+    }
+
+    public String getCacheFile() {
+      return cacheFile;
+    }
+
+    public void setCacheFile(String cacheFile) {
+      this.cacheFile = cacheFile;
+    }
+  }
+
+  public static class ShutdownProperties {
+    /**
+     * The time for flushing the queued spans, log records, and the last metrics when the
+     * application is stopped (default is 10s). It should be shorter than the termination grace
+     * period of the pod, minus the graceful shutdown of the web server.
+     */
+    private Duration timeout = Duration.ofSeconds(10);
+
+    public Duration getTimeout() {
+      return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+      this.timeout = timeout;
+    }
+  }
+
+  public static class PipelineHealthProperties {
+    /**
+     * Report the health of the export pipelines as <code>grafana.otlp.exporter.*</code> metrics
+     * and at the <code>grafanaOtlp</code> actuator endpoint (default is false).
+     */
+    private boolean enabled;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+  }
+
+  public static class TracesProperties {
+
+    private BatchProperties batch = new BatchProperties();
+
+    private TraceSamplingProperties sampling = new TraceSamplingProperties();
+
+    private TailSamplingProperties tailSampling = new TailSamplingProperties();
+
+    public BatchProperties getBatch() {
+      return batch;
+    }
+
+    public void setBatch(BatchProperties batch) {
+      this.batch = batch;
+    }
+
+    public TraceSamplingProperties getSampling() {
+      return sampling;
+    }
+
+    public void setSampling(TraceSamplingProperties sampling) {
+      this.sampling = sampling;
+    }
+
+    public TailSamplingProperties getTailSampling() {
+      return tailSampling;
+    }
+
+    public void setTailSampling(TailSamplingProperties tailSampling) {
+      this.tailSampling = tailSampling;
+    }
+  }
+
+  public static class LogsProperties {
+
+    private BatchProperties batch = new BatchProperties();
+
+    private AsyncProperties async = new AsyncProperties();
+
+    private CaptureProperties capture = new CaptureProperties();
+
+    private SuppressionProperties suppression = new SuppressionProperties();
+
+    private LogSamplingProperties sampling = new LogSamplingProperties();
+
+    /**
+     * The minimum level of log events that are exported (default is all levels that are enabled in
+     * the logging configuration).
+     *
+     * <p>This allows to keep e.g. <code>DEBUG</code> logs in the console or in files, but only
+     * export <code>INFO</code> and above. Events below the level are dropped before they are
+     * converted to log records.
+     */
+    private String level;
+
+    /**
+     * The minimum level of log events that are exported by logger name, e.g. <code>
+     * grafana.otlp.logs.levels.com.example=DEBUG</code>.
+     *
+     * <p>The most specific logger name takes precedence over <code>grafana.otlp.logs.level</code>.
+     */
+    private final Map<String, String> levels = new HashMap<>();
+
+    /**
+     * Use an appender for Log4j2 that doesn't allocate intermediate objects for each log event
+     * (default is disabled, only supported for Log4j2).
+     *
+     * <p>The appender can be used with async loggers: the span context is captured on the logging
+     * thread. It is added to the context data of log events as <code>trace_id</code>, <code>
+     * span_id</code>, and <code>trace_flags</code>. All other context data is exported as log
+     * record attributes.
+     */
+    private boolean garbageFree;
+
+    public BatchProperties getBatch() {
+      return batch;
+    }
+
+    public void setBatch(BatchProperties batch) {
+      this.batch = batch;
+    }
+
+    public AsyncProperties getAsync() {
+      return async;
+    }
+
+    public void setAsync(AsyncProperties async) {
+      this.async = async;
+    }
+
+    public CaptureProperties getCapture() {
+      return capture;
+    }
+
+    public void setCapture(CaptureProperties capture) {
+      this.capture = capture;
+    }
+
+    public SuppressionProperties getSuppression() {
+      return suppression;
+    }
+
+    public void setSuppression(SuppressionProperties suppression) {
+      this.suppression = suppression;
+    }
+
+    public LogSamplingProperties getSampling() {
+      return sampling;
+    }
+
+    public void setSampling(LogSamplingProperties sampling) {
+      this.sampling = sampling;
+    }
+
+    public String getLevel() {
+      return level;
+    }
+
+    public void setLevel(String level) {
+      this.level = level;
+    }
+
+    public Map<String, String> getLevels() {
+      return levels;
+    }
+
+    public boolean isGarbageFree() {
+      return garbageFree;
+    }
+
+    public void setGarbageFree(boolean garbageFree) {
+      this.garbageFree = garbageFree;
+    }
+  }
+
+  public static class AsyncProperties {
+    /**
+     * Convert and export log records on a dedicated thread instead of the thread that is logging
+     * (default is disabled, only supported for Logback).
+     *
+     * <p>The log events are handed over using a bounded buffer of <code>queueSize</code> entries.
+     */
+    private boolean enabled;
+
+    /** The number of log events that can be waiting for the export thread (default is 8192). */
+    private int queueSize = 8192;
+
+    /**
+     * Drop log events when the queue is full (default), instead of blocking the thread that is
+     * logging until there is room in the queue.
+     *
+     * <p>The number of dropped events is reported in the metric <code>
+     * grafana.otlp.logs.async.dropped</code>.
+     */
+    private boolean dropWhenFull = true;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getQueueSize() {
+      return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+      this.queueSize = queueSize;
+    }
+
+    public boolean isDropWhenFull() {
+      return dropWhenFull;
+    }
+
+    public void setDropWhenFull(boolean dropWhenFull) {
+      this.dropWhenFull = dropWhenFull;
+    }
+  }
+
+  public static class CaptureProperties {
+    /**
+     * Add the attributes <code>thread.name</code> and <code>thread.id</code> to log records
+     * (default is enabled, only supported for Logback).
+     */
+    private boolean thread = true;
+
+    /**
+     * Add the attributes <code>code.namespace</code>, <code>code.function</code>, <code>
+     * code.filepath</code>, and <code>code.lineno</code> to log records (default is disabled, only
+     * supported for Logback).
+     *
+     * <p>This is expensive, because the caller is found by walking the stack of each log event.
+     */
+    private boolean codeLocation;
+
+    /**
+     * The MDC keys that are added as attributes to log records (default is none, only supported
+     * for Logback).
+     *
+     * <p>Use <code>*</code> to add all MDC entries.
+     */
+    private List<String> mdc = new ArrayList<>();
+
+    /**
+     * Add the marker of log events as the attribute <code>logback.marker</code> (default is
+     * disabled, only supported for Logback).
+     */
+    private boolean marker;
+
+    /**
+     * Add the key value pairs of log events (e.g. <code>logger.atInfo().addKeyValue("key",
+     * "value")</code>) as attributes (default is disabled, only supported for Logback).
+     */
+    private boolean keyValuePairs;
+
+    public boolean isThread() {
+      return thread;
+    }
+
+    public void setThread(boolean thread) {
+      this.thread = thread;
+    }
+
+    public boolean isCodeLocation() {
+      return codeLocation;
+    }
+
+    public void setCodeLocation(boolean codeLocation) {
+      this.codeLocation = codeLocation;
+    }
+
+    public List<String> getMdc() {
+      return mdc;
+    }
+
+    public void setMdc(List<String> mdc) {
+      this.mdc = mdc;
+    }
+
+    public boolean isMarker() {
+      return marker;
+    }
+
+    public void setMarker(boolean marker) {
+      this.marker = marker;
+    }
+
+    public boolean isKeyValuePairs() {
+      return keyValuePairs;
+    }
+
+    public void setKeyValuePairs(boolean keyValuePairs) {
+      this.keyValuePairs = keyValuePairs;
+    }
+  }
+
+  public static class SuppressionProperties {
+    /**
+     * Suppress log storms, e.g. the same stack trace being logged thousands of times per second
+     * when a dependency fails (default is disabled).
+     *
+     * <p>Log events with the same logger, level, message template, and exception type are only
+     * exported <code>maxRepeats</code> times per <code>window</code>. The number of suppressed
+     * events is exported in a summary log record with the attribute <code>suppressed_count</code>.
+     */
+    private boolean enabled;
+
+    /** The time window for counting repeated log events (default is 10s). */
+    private Duration window = Duration.ofSeconds(10);
+
+    /**
+     * The number of repeated log events that are exported per window (default is 10). Use <code>0
+     * </code> to only apply the <code>rateLimits</code>.
+     */
+    private int maxRepeats = 10;
+
+    /**
+     * The maximum number of log events per second by logger name, e.g. <code>
+     * grafana.otlp.logs.suppression.rateLimits.com.example=100</code>.
+     *
+     * <p>All loggers below the logger name share the same limit. The number of suppressed events
+     * is exported in a summary log record with the attribute <code>suppressed_count</code> after
+     * each <code>window</code>.
+     */
+    private final Map<String, Double> rateLimits = new HashMap<>();
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public Duration getWindow() {
+      return window;
+    }
+
+    public void setWindow(Duration window) {
+      this.window = window;
+    }
+
+    public int getMaxRepeats() {
+      return maxRepeats;
+    }
+
+    public void setMaxRepeats(int maxRepeats) {
+      this.maxRepeats = maxRepeats;
+    }
+
+    public Map<String, Double> getRateLimits() {
+      return rateLimits;
+    }
+  }
+
+  public static class LogSamplingProperties {
+    /**
+     * Only export log events if their trace is sampled (default is disabled).
+     *
+     * <p>Log events in a span that is not sampled are dropped, unless their level is <code>WARN
+     * </code> or above. With log4j, the span context is captured on the logging thread and added
+     * to the context data as <code>trace_id</code>, <code>span_id</code>, and <code>trace_flags
+     * </code>, so that async loggers are sampled as well.
+     */
+    private boolean enabled;
+
+    /**
+     * The ratio of log events outside of any span that are exported (default is 1.0, i.e. all of
+     * them). Log events with level <code>WARN</code> or above are always exported.
+     */
+    private double ratio = 1.0;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public double getRatio() {
+      return ratio;
+    }
+
+    public void setRatio(double ratio) {
+      this.ratio = ratio;
+    }
+  }
+
+  public static class BatchProperties {
+    /**
+     * The maximum number of spans or log records that are waiting to be exported (default is
+     * 2048). When the queue is full, new spans or log records are dropped.
+     *
+     * <p>To absorb bursts, increase the queue size, use the <code>adaptive</code> batch processor,
+     * or send requests concurrently with <code>grafana.otlp.export.maxConcurrentRequests</code>.
+     */
+    private Integer maxQueueSize;
+
+    /**
+     * Use a batch processor that grows the batch size and shortens the delay when the queue fills
+     * faster than it drains, and relaxes them again when idle (default is false).
+     *
+     * <p>The batch size grows up to 8 times <code>maxExportBatchSize</code> (at most <code>
+     * maxQueueSize</code>), and the delay shrinks down to an 8th of <code>scheduleDelay</code>. The
+     * queue only allocates memory for the entries that are waiting, so a large <code>maxQueueSize
+     * </code> costs little memory while the application is idle. This only applies to the OTLP
+     * exporter.
+     */
+    private boolean adaptive;
+
+    /**
+     * The maximum number of spans or log records that are exported in one request (default is
+     * 512). An export starts as soon as a full batch is waiting, without waiting for the <code>
+     * scheduleDelay</code>.
+     */
+    private Integer maxExportBatchSize;
+
+    /**
+     * The maximum time between two exports (default is 5s for traces and 1s for logs).
+     *
+     * <p>This is the delay that applies when there is not enough data for a full batch.
+     */
+    private Duration scheduleDelay;
+
+    /** The maximum time an export may take before it is cancelled (default is 30s). */
+    private Duration exportTimeout;
+
+    public Integer getMaxQueueSize() {
+      return maxQueueSize;
+    }
+
+    public void setMaxQueueSize(Integer maxQueueSize) {
+      this.maxQueueSize = maxQueueSize;
+    }
+
+    public boolean isAdaptive() {
+      return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+      this.adaptive = adaptive;
+    }
+
+    public Integer getMaxExportBatchSize() {
+      return maxExportBatchSize;
+    }
+
+    public void setMaxExportBatchSize(Integer maxExportBatchSize) {
+      this.maxExportBatchSize = maxExportBatchSize;
+    }
+
+    public Duration getScheduleDelay() {
+      return scheduleDelay;
+    }
+
+    public void setScheduleDelay(Duration scheduleDelay) {
+      this.scheduleDelay = scheduleDelay;
+    }
+
+    public Duration getExportTimeout() {
+      return exportTimeout;
+    }
+
+    public void setExportTimeout(Duration exportTimeout) {
+      this.exportTimeout = exportTimeout;
+    }
+  }
+
+  public static class TraceSamplingProperties {
+    /**
+     * Sample new traces with the ratios and rate limits below (default is disabled, i.e. the
+     * sampler configured with <code>otel.traces.sampler</code> is used).
+     *
+     * <p>Spans with a parent follow the sampling decision of the parent.
+     */
+    private boolean enabled;
+
+    /** The ratio of new traces that are sampled (default is 1.0, i.e. all of them). */
+    private double ratio = 1.0;
+
+    /**
+     * The maximum number of new traces that are sampled per second (default is unlimited). This
+     * avoids flooding the backend during traffic spikes, while keeping all traces when there is
+     * little traffic.
+     */
+    private double rateLimit;
+
+    /**
+     * The ratio and rate limit by <code>http.route</code>, e.g. <code>
+     * grafana.otlp.traces.sampling.routes[/api/orders/**].ratio=0.1</code>. A route ending with
+     * <code>/**</code> also matches all routes below it, the most specific route wins.
+     *
+     * <p>If the span has no <code>http.route</code> attribute when it is started, <code>url.path
+     * </code> is used, or the path of the Spring MVC request (server spans of Micrometer Tracing
+     * have no attributes when they are started). Routes of the actuator and <code>/health</code>
+     * are not sampled by default.
+     */
+    private final Map<String, RouteSamplingProperties> routes = defaultRoutes();
+
+    private static Map<String, RouteSamplingProperties> defaultRoutes() {
+      Map<String, RouteSamplingProperties> routes = new HashMap<>();
+      for (String route : List.of("/actuator/**", "/health/**")) {
+        RouteSamplingProperties properties = new RouteSamplingProperties();
+        properties.setRatio(0.0);
+        routes.put(route, properties);
+      }
+      return routes;
+    }
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public double getRatio() {
+      return ratio;
+    }
+
+    public void setRatio(double ratio) {
+      this.ratio = ratio;
+    }
+
+    public double getRateLimit() {
+      return rateLimit;
+    }
+
+    public void setRateLimit(double rateLimit) {
+      this.rateLimit = rateLimit;
+    }
+
+    public Map<String, RouteSamplingProperties> getRoutes() {
+      return routes;
+    }
+  }
+
+  public static class RouteSamplingProperties {
+    /** The ratio of new traces that are sampled (default is the global ratio). */
+    private Double ratio;
+
+    /**
+     * The maximum number of new traces that are sampled per second (default is unlimited). The
+     * global rate limit applies in addition.
+     */
+    private double rateLimit;
+
+    public Double getRatio() {
+      return ratio;
+    }
+
+    public void setRatio(Double ratio) {
+      this.ratio = ratio;
+    }
+
+    public double getRateLimit() {
+      return rateLimit;
+    }
+
+    public void setRateLimit(double rateLimit) {
+      this.rateLimit = rateLimit;
+    }
+  }
+
+  public static class TailSamplingProperties {
+    /**
+     * Buffer the spans of each trace and only export traces that are slow, have an error, or are
+     * part of a random baseline (default is disabled).
+     *
+     * <p>The decision is made when the local root span ends, or when the <code>window</code> has
+     * passed. Spans of a trace that arrive after the decision follow that decision. All spans must
+     * be sampled by the head sampler for this to work. Only the OTLP exporter is sampled, other
+     * exporters (e.g. <code>logging</code>) receive all spans.
+     */
+    private boolean enabled;
+
+    /** The maximum time to wait for the local root span of a trace (default is 5s). */
+    private Duration window = Duration.ofSeconds(5);
+
+    /** Traces with a span that takes at least this long are kept (default is 1s). */
+    private Duration latencyThreshold = Duration.ofSeconds(1);
+
+    /** The ratio of other traces that are kept (default is 0.1). */
+    private double baselineRatio = 0.1;
+
+    /**
+     * The maximum number of traces that are buffered (default is 10000). If the limit is reached,
+     * the oldest trace is decided early.
+     */
+    private int maxTraces = 10000;
+
+    /**
+     * The maximum number of spans that are buffered (default is 100000), which limits the memory
+     * used for buffering. If the limit is reached, the oldest trace is decided early.
+     */
+    private int maxSpans = 100000;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public Duration getWindow() {
+      return window;
+    }
+
+    public void setWindow(Duration window) {
+      this.window = window;
+    }
+
+    public Duration getLatencyThreshold() {
+      return latencyThreshold;
+    }
+
+    public void setLatencyThreshold(Duration latencyThreshold) {
+      this.latencyThreshold = latencyThreshold;
+    }
+
+    public double getBaselineRatio() {
+      return baselineRatio;
+    }
+
+    public void setBaselineRatio(double baselineRatio) {
+      this.baselineRatio = baselineRatio;
+    }
+
+    public int getMaxTraces() {
+      return maxTraces;
+    }
+
+    public void setMaxTraces(int maxTraces) {
+      this.maxTraces = maxTraces;
+    }
+
+    public int getMaxSpans() {
+      return maxSpans;
+    }
+
+    public void setMaxSpans(int maxSpans) {
+      this.maxSpans = maxSpans;
+    }
+  }
+
+  public static class MetricsProperties {
+
+    private HistogramProperties histogram = new HistogramProperties();
+
+    /**
+     * Record the duration of observations directly on OpenTelemetry histograms, instead of
+     * creating Micrometer timers that are bridged to OpenTelemetry (default is disabled).
+     *
+     * <p>HTTP server and client requests are recorded as <code>http.server.request.duration</code>
+     * and <code>http.client.request.duration</code> with the attributes of the semantic
+     * conventions, instead of <code>http.server.requests</code> and <code>http.client.requests
+     * </code>. Other observations (e.g. <code>@Observed</code>) keep their name, and their events
+     * are counted. Long task timers (<code>.active</code>) are not recorded.
+     *
+     * <p><code>include</code>, <code>exclude</code>, <code>includeTags</code>, <code>excludeTags
+     * </code> and the cardinality limits apply to the names and tags that the Micrometer meters
+     * would have, e.g. <code>http.server.requests</code> and <code>uri</code>.
+     */
+    private boolean nativeObservations;
+
+    /**
+     * Only export the meters with these names (default is all meters), e.g. <code>
+     * grafana.otlp.metrics.include=http.server.*,jvm.memory.used</code>.
+     *
+     * <p>The names can contain the wildcards <code>*</code> and <code>?</code>. The filter is
+     * applied to Micrometer meters before they are bridged to OpenTelemetry.
+     */
+    private List<String> include = new ArrayList<>();
+
+    /**
+     * Don't export the meters with these names, e.g. <code>
+     * grafana.otlp.metrics.exclude=tomcat.*,executor.*</code>. This takes precedence over <code>
+     * include</code>.
+     *
+     * <p>The names can contain the wildcards <code>*</code> and <code>?</code>. The filter is
+     * applied to Micrometer meters before they are bridged to OpenTelemetry, and to all other
+     * OpenTelemetry instruments. Explicit bucket boundaries (<code>
+     * grafana.otlp.metrics.histogram.buckets</code>) are ignored for excluded names.
+     */
+    private List<String> exclude = new ArrayList<>();
+
+    /**
+     * Only keep the tags with these keys on Micrometer meters (default is all tags), e.g. <code>
+     * grafana.otlp.metrics.includeTags=method,status,uri</code>. The keys can contain the wildcards
+     * <code>*</code> and <code>?</code>.
+     */
+    private List<String> includeTags = new ArrayList<>();
+
+    /**
+     * Remove the tags with these keys from all Micrometer meters, e.g. <code>
+     * grafana.otlp.metrics.excludeTags=exception,uri</code>. This takes precedence over <code>
+     * includeTags</code>. The keys can contain the wildcards <code>*</code> and <code>?</code>.
+     */
+    private List<String> excludeTags = new ArrayList<>();
+
+    /**
+     * The maximum number of tag combinations per Micrometer meter (default is 2000). Use <code>0
+     * </code> to disable the limit.
+     *
+     * <p>Additional tag combinations are recorded in a single series with the tag <code>
+     * otel.metric.overflow=true</code>, so that a tag with unbounded values (e.g. a raw URI or a
+     * user ID) can't grow the memory usage and the export payload without limit.
+     */
+    private int cardinalityLimit = 2000;
+
+    /**
+     * The maximum number of tag combinations by meter name, e.g. <code>
+     * grafana.otlp.metrics.cardinalityLimits.http.server.requests=500</code>.
+     *
+     * <p>The limit also applies to the meters below the meter name, each meter is counted
+     * separately.
+     */
+    private final Map<String, Integer> cardinalityLimits = new HashMap<>();
+
+    /**
+     * The aggregation temporality that is preferred by the OTLP exporter: <code>cumulative</code>
+     * (default), <code>delta</code>, or <code>lowmemory</code>.
+     *
+     * <p>With <code>delta</code>, series that are not recorded in an export interval are removed
+     * from memory after the export, but the backend must support delta temporality.
+     */
+    private String temporality;
+
+    /**
+     * Stop exporting series that have not been updated for this number of export intervals, and
+     * remove them from memory (default is 0, i.e. disabled).
+     *
+     * <p>This only applies to cumulative temporality, and to counters and explicit bucket
+     * histograms - not to up-down counters, whose value is still valid if it doesn't change. The
+     * metrics are collected with delta temporality and converted to cumulative temporality by the
+     * starter, which keeps the cumulative value of each series until it is stale. A series that is
+     * updated after it was removed starts again with a new start time. The intervals are measured
+     * in time (<code>otel.metric.export.interval</code>), so additional flushes don't count.
+     */
+    private int staleIntervals;
+
+    public HistogramProperties getHistogram() {
+      return histogram;
+    }
+
+    public void setHistogram(HistogramProperties histogram) {
+      this.histogram = histogram;
+    }
+
+    public boolean isNativeObservations() {
+      return nativeObservations;
+    }
+
+    public void setNativeObservations(boolean nativeObservations) {
+      this.nativeObservations = nativeObservations;
+    }
+
+    public List<String> getInclude() {
+      return include;
+    }
+
+    public void setInclude(List<String> include) {
+      this.include = include;
+    }
+
+    public List<String> getExclude() {
+      return exclude;
+    }
+
+    public void setExclude(List<String> exclude) {
+      this.exclude = exclude;
+    }
+
+    public List<String> getIncludeTags() {
+      return includeTags;
+    }
+
+    public void setIncludeTags(List<String> includeTags) {
+      this.includeTags = includeTags;
+    }
+
+    public List<String> getExcludeTags() {
+      return excludeTags;
+    }
+
+    public void setExcludeTags(List<String> excludeTags) {
+      this.excludeTags = excludeTags;
+    }
+
+    public int getCardinalityLimit() {
+      return cardinalityLimit;
+    }
+
+    public void setCardinalityLimit(int cardinalityLimit) {
+      this.cardinalityLimit = cardinalityLimit;
+    }
+
+    public Map<String, Integer> getCardinalityLimits() {
+      return cardinalityLimits;
+    }
+
+    public String getTemporality() {
+      return temporality;
+    }
+
+    public void setTemporality(String temporality) {
+      this.temporality = temporality;
+    }
+
+    public int getStaleIntervals() {
+      return staleIntervals;
+    }
+
+    public void setStaleIntervals(int staleIntervals) {
+      this.staleIntervals = staleIntervals;
+    }
+  }
+
+  public static class HistogramProperties {
+    /**
+     * The aggregation of histograms: <code>explicit</code> (default) or <code>exponential</code>.
+     *
+     * <p>Explicit histograms use the default bucket boundaries of OpenTelemetry, in seconds.
+     * Exponential histograms adjust their scale to the recorded values, which gives a better
+     * resolution with far fewer buckets - and a smaller export payload.
+     */
+    private String aggregation = "explicit";
+
+    /** The maximum number of buckets of exponential histograms (default is 160). */
+    private int maxBuckets = 160;
+
+    /** The maximum scale of exponential histograms (default is 20). */
+    private int maxScale = 20;
+
+    /**
+     * Explicit bucket boundaries by instrument name, e.g. <code>
+     * grafana.otlp.metrics.histogram.buckets.http.server.requests=0.1,0.5,1,5</code>.
+     *
+     * <p>The boundaries are in the unit of the instrument. The instrument name can contain the
+     * wildcards <code>*</code> and <code>?</code>. These histograms use explicit buckets regardless
+     * of the <code>aggregation</code>.
+     */
+    private final Map<String, List<Double>> buckets = new HashMap<>();
+
+    public String getAggregation() {
+      return aggregation;
+    }
+
+    public void setAggregation(String aggregation) {
+      this.aggregation = aggregation;
+    }
+
+    public int getMaxBuckets() {
+      return maxBuckets;
+    }
+
+    public void setMaxBuckets(int maxBuckets) {
+      this.maxBuckets = maxBuckets;
+    }
+
+    public int getMaxScale() {
+      return maxScale;
+    }
+
+    public void setMaxScale(int maxScale) {
+      this.maxScale = maxScale;
+    }
+
+    public Map<String, List<Double>> getBuckets() {
+      return buckets;
+    }
+  }
 }
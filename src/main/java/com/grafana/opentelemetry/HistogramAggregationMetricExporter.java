@@ -0,0 +1,58 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import java.util.Collection;
+
+/**
+ * Sets the default aggregation of histograms.
+ *
+ * <p>This is used instead of a view that matches all histograms, because views for individual
+ * instruments would not replace such a view, but create a second metric stream.
+ */
+class HistogramAggregationMetricExporter implements MetricExporter {
+
+  private final MetricExporter delegate;
+  private final Aggregation histogramAggregation;
+
+  HistogramAggregationMetricExporter(MetricExporter delegate, Aggregation histogramAggregation) {
+    this.delegate = delegate;
+    this.histogramAggregation = histogramAggregation;
+  }
+
+  @Override
+  public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+    return instrumentType == InstrumentType.HISTOGRAM
+        ? histogramAggregation
+        : delegate.getDefaultAggregation(instrumentType);
+  }
+
+  @Override
+  public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+    return delegate.getAggregationTemporality(instrumentType);
+  }
+
+  @Override
+  public CompletableResultCode export(Collection<MetricData> metrics) {
+    return delegate.export(metrics);
+  }
+
+  @Override
+  public CompletableResultCode flush() {
+    return delegate.flush();
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    return delegate.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    return "HistogramAggregationMetricExporter{delegate=" + delegate + "}";
+  }
+}
@@ -0,0 +1,115 @@
+package com.grafana.opentelemetry;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.config.MeterFilterReply;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Filters Micrometer meters by name, and tags by key, before the meters are bridged to
+ * OpenTelemetry - so that no OpenTelemetry instrument is created for meters that are not exported.
+ */
+class IncludeExcludeMeterFilter implements MeterFilter {
+
+  private final List<Pattern> include;
+  private final List<Pattern> exclude;
+  private final List<Pattern> includeTags;
+  private final List<Pattern> excludeTags;
+
+  IncludeExcludeMeterFilter(
+      List<String> include,
+      List<String> exclude,
+      List<String> includeTags,
+      List<String> excludeTags) {
+    this.include = toPatterns(include);
+    this.exclude = toPatterns(exclude);
+    this.includeTags = toPatterns(includeTags);
+    this.excludeTags = toPatterns(excludeTags);
+  }
+
+  /** Returns null if no filter has been configured. */
+  static IncludeExcludeMeterFilter create(GrafanaProperties.MetricsProperties properties) {
+    if (properties.getInclude().isEmpty()
+        && properties.getExclude().isEmpty()
+        && properties.getIncludeTags().isEmpty()
+        && properties.getExcludeTags().isEmpty()) {
+      return null;
+    }
+    return new IncludeExcludeMeterFilter(
+        properties.getInclude(),
+        properties.getExclude(),
+        properties.getIncludeTags(),
+        properties.getExcludeTags());
+  }
+
+  /** Returns true if the instrument name matches <code>grafana.otlp.metrics.exclude</code>. */
+  static boolean isExcluded(GrafanaProperties.MetricsProperties properties, String name) {
+    return matchesAny(toPatterns(properties.getExclude()), name);
+  }
+
+  @Override
+  public MeterFilterReply accept(Meter.Id id) {
+    String name = id.getName();
+    if (matchesAny(exclude, name)) {
+      return MeterFilterReply.DENY;
+    }
+    if (!include.isEmpty() && !matchesAny(include, name)) {
+      return MeterFilterReply.DENY;
+    }
+    return MeterFilterReply.NEUTRAL;
+  }
+
+  @Override
+  public Meter.Id map(Meter.Id id) {
+    if (includeTags.isEmpty() && excludeTags.isEmpty()) {
+      return id;
+    }
+    List<Tag> tags = new ArrayList<>();
+    for (Tag tag : id.getTagsAsIterable()) {
+      String key = tag.getKey();
+      if ((includeTags.isEmpty() || matchesAny(includeTags, key))
+          && !matchesAny(excludeTags, key)) {
+        tags.add(tag);
+      }
+    }
+    return tags.size() == id.getTags().size() ? id : id.replaceTags(tags);
+  }
+
+  private static boolean matchesAny(List<Pattern> patterns, String value) {
+    for (Pattern pattern : patterns) {
+      if (pattern.matcher(value).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static List<Pattern> toPatterns(List<String> globs) {
+    return globs.stream().map(IncludeExcludeMeterFilter::toPattern).collect(Collectors.toList());
+  }
+
+  /** Supports the same wildcards as the instrument selectors of OpenTelemetry views. */
+  static Pattern toPattern(String glob) {
+    StringBuilder regex = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
+    for (char c : glob.trim().toCharArray()) {
+      if (c == '*' || c == '?') {
+        if (literal.length() > 0) {
+          regex.append(Pattern.quote(literal.toString()));
+          literal.setLength(0);
+        }
+        regex.append(c == '*' ? ".*" : ".");
+      } else {
+        literal.append(c);
+      }
+    }
+    if (literal.length() > 0) {
+      regex.append(Pattern.quote(literal.toString()));
+    }
+    return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+  }
+}
@@ -2,12 +2,17 @@ package com.grafana.opentelemetry;
 
 import io.opentelemetry.api.OpenTelemetry;
 import io.opentelemetry.instrumentation.log4j.appender.v2_17.OpenTelemetryAppender;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Filter;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.core.filter.AbstractFilterable;
+import org.apache.logging.log4j.core.filter.CompositeFilter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 
 @ConditionalOnClass(name = "org.apache.logging.log4j.core.LoggerContext")
@@ -15,7 +20,10 @@ public class Log4jConfig implements LogAppenderConfigurer {
 
   private static final Logger logger = LogManager.getLogger(Log4jConfig.class);
 
-  public void tryAddAppender(OpenTelemetry openTelemetry) {
+  private static final String GARBAGE_FREE_APPENDER_NAME = "OpenTelemetryGarbageFreeAppender";
+
+  public void tryAddAppender(
+      OpenTelemetry openTelemetry, GrafanaProperties.LogsProperties properties) {
     org.apache.logging.log4j.spi.LoggerContext loggerContextSpi = LogManager.getContext(false);
     if (!(loggerContextSpi instanceof LoggerContext)) {
       logger.warn("cannot add log4j OpenTelemetryAppender, not running in a LoggerContext");
@@ -24,34 +32,124 @@ public class Log4jConfig implements LogAppenderConfigurer {
 
     LoggerContext context = (LoggerContext) LogManager.getContext(false);
     Configuration config = context.getConfiguration();
-    boolean found =
+    Appender found =
         config.getAppenders().values().stream()
-            .anyMatch(
+            .filter(
                 a ->
                     a
                         instanceof
                         io.opentelemetry.instrumentation.log4j.appender.v2_17
-                            .OpenTelemetryAppender);
-    if (found) {
+                            .OpenTelemetryAppender)
+            .findFirst()
+            .orElse(null);
+    TraceAwareLogSampler sampler = TraceAwareLogSampler.create(properties.getSampling());
+    if (found != null) {
       logger.info("log4j2 OpenTelemetryAppender has already been added");
       OpenTelemetryAppender.install(openTelemetry);
+      Log4jContextDataProvider.setEnabled(sampler != null);
+      replaceFilters((AbstractFilterable) found, createFilters(openTelemetry, properties, sampler));
+      if (properties.isGarbageFree()) {
+        logger.warn(
+            "ignoring grafana.otlp.logs.garbageFree for the OpenTelemetryAppender from the log4j2 "
+                + "configuration");
+      }
       return;
     }
 
-    logger.info("adding log4j OpenTelemetryAppender");
-    OpenTelemetryAppender appender =
-        OpenTelemetryAppender.builder()
-            .setCaptureExperimentalAttributes(true)
-            .setName("OpenTelemetryAppender")
-            .setConfiguration(config)
-            .setOpenTelemetry(openTelemetry)
-            .build();
+    // a garbage-free appender that was added for a previous application context can't be reused
+    removeGarbageFreeAppender(config);
+
+    Filter filter = toFilter(createFilters(openTelemetry, properties, sampler));
+    // the appender and the sampling filter may run on the background thread of an async logger
+    Log4jContextDataProvider.setEnabled(properties.isGarbageFree() || sampler != null);
+    Appender appender;
+    if (properties.isGarbageFree()) {
+      logger.info("adding log4j garbage-free OpenTelemetry appender");
+      appender = new Log4jGarbageFreeAppender(GARBAGE_FREE_APPENDER_NAME, filter, openTelemetry);
+    } else {
+      logger.info("adding log4j OpenTelemetryAppender");
+      appender =
+          OpenTelemetryAppender.builder()
+              .setCaptureExperimentalAttributes(true)
+              .setName("OpenTelemetryAppender")
+              .setFilter(filter)
+              .setConfiguration(config)
+              .setOpenTelemetry(openTelemetry)
+              .build();
+    }
     appender.start();
     config.addAppender(appender);
 
     updateLoggers(appender, config);
   }
 
+  private static List<Filter> createFilters(
+      OpenTelemetry openTelemetry,
+      GrafanaProperties.LogsProperties properties,
+      TraceAwareLogSampler sampler) {
+    List<Filter> filters = new ArrayList<>();
+    LogLevelThresholds thresholds = LogLevelThresholds.create(properties);
+    if (thresholds != null) {
+      filters.add(new Log4jLevelFilter(thresholds));
+    }
+    if (sampler != null) {
+      filters.add(new Log4jSamplingFilter(sampler));
+    }
+    LogStormSuppressor suppressor =
+        LogStormSuppressor.create(openTelemetry, properties.getSuppression());
+    if (suppressor != null) {
+      filters.add(new Log4jSuppressionFilter(suppressor));
+    }
+    return filters;
+  }
+
+  private static Filter toFilter(List<Filter> filters) {
+    if (filters.isEmpty()) {
+      return null;
+    }
+    return filters.size() == 1
+        ? filters.get(0)
+        : CompositeFilter.createFilters(filters.toArray(new Filter[0]));
+  }
+
+  /**
+   * Adds the filters to an appender from the logging configuration, replacing the ones that were
+   * added for a previous application context.
+   */
+  static void replaceFilters(AbstractFilterable appender, List<Filter> filters) {
+    List<Filter> previous = new ArrayList<>();
+    Filter current = appender.getFilter();
+    if (current instanceof CompositeFilter) {
+      ((CompositeFilter) current).forEach(previous::add);
+    } else if (current != null) {
+      previous.add(current);
+    }
+    for (Filter filter : previous) {
+      if (isOwnFilter(filter)) {
+        appender.removeFilter(filter);
+      }
+    }
+    filters.forEach(appender::addFilter);
+  }
+
+  private static boolean isOwnFilter(Filter filter) {
+    return filter instanceof Log4jLevelFilter
+        || filter instanceof Log4jSamplingFilter
+        || filter instanceof Log4jSuppressionFilter;
+  }
+
+  private static void removeGarbageFreeAppender(Configuration config) {
+    Appender appender = config.getAppender(GARBAGE_FREE_APPENDER_NAME);
+    if (appender == null) {
+      return;
+    }
+    for (LoggerConfig loggerConfig : config.getLoggers().values()) {
+      loggerConfig.removeAppender(GARBAGE_FREE_APPENDER_NAME);
+    }
+    config.getRootLogger().removeAppender(GARBAGE_FREE_APPENDER_NAME);
+    appender.stop();
+  }
+
   private static void updateLoggers(Appender appender, Configuration config) {
     for (LoggerConfig loggerConfig : config.getLoggers().values()) {
       loggerConfig.addAppender(appender, null, null);
@@ -0,0 +1,85 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import java.util.Collections;
+import java.util.Map;
+import org.apache.logging.log4j.core.util.ContextDataProvider;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.apache.logging.log4j.util.StringMap;
+
+/**
+ * Adds the span context of the logging thread to the context data of log4j events, so that {@link
+ * Log4jGarbageFreeAppender} can correlate log records with spans, and {@link Log4jSamplingFilter}
+ * can sample them, even if they are called from the background thread of an async logger.
+ *
+ * <p>This provider is loaded by log4j using the {@link java.util.ServiceLoader} - i.e. for all
+ * applications that have the starter and log4j on the class path, because log4j creates its context
+ * data injectors before the starter is configured. It only adds the span context if the
+ * garbage-free appender or the sampling filter has been added by {@link Log4jConfig}, otherwise it
+ * returns a shared empty map.
+ *
+ * <p>The span context is put into a thread local map, because log4j copies the context data of all
+ * providers into the (reusable) context data of the event.
+ */
+public class Log4jContextDataProvider implements ContextDataProvider {
+
+  static final String TRACE_ID = "trace_id";
+  static final String SPAN_ID = "span_id";
+  static final String TRACE_FLAGS = "trace_flags";
+
+  private static final StringMap EMPTY = frozen(new SortedArrayStringMap(0));
+
+  private static final ThreadLocal<StringMap> reusableContextData =
+      ThreadLocal.withInitial(() -> new SortedArrayStringMap(3));
+
+  private static volatile boolean enabled;
+
+  private static StringMap frozen(StringMap map) {
+    map.freeze();
+    return map;
+  }
+
+  static void setEnabled(boolean enabled) {
+    Log4jContextDataProvider.enabled = enabled;
+  }
+
+  static boolean isSpanContextKey(String key) {
+    return TRACE_ID.equals(key) || SPAN_ID.equals(key) || TRACE_FLAGS.equals(key);
+  }
+
+  @Override
+  public Map<String, String> supplyContextData() {
+    if (!enabled) {
+      return Collections.emptyMap();
+    }
+    SpanContext spanContext = Span.current().getSpanContext();
+    if (!spanContext.isValid()) {
+      return Collections.emptyMap();
+    }
+    return Map.of(
+        TRACE_ID,
+        spanContext.getTraceId(),
+        SPAN_ID,
+        spanContext.getSpanId(),
+        TRACE_FLAGS,
+        spanContext.getTraceFlags().asHex());
+  }
+
+  @Override
+  public StringMap supplyStringMap() {
+    if (!enabled) {
+      return EMPTY;
+    }
+    SpanContext spanContext = Span.current().getSpanContext();
+    if (!spanContext.isValid()) {
+      return EMPTY;
+    }
+    // the hex strings are cached by the span context and trace flags
+    StringMap contextData = reusableContextData.get();
+    contextData.putValue(TRACE_ID, spanContext.getTraceId());
+    contextData.putValue(SPAN_ID, spanContext.getSpanId());
+    contextData.putValue(TRACE_FLAGS, spanContext.getTraceFlags().asHex());
+    return contextData;
+  }
+}
@@ -0,0 +1,200 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.logs.LogRecordBuilder;
+import io.opentelemetry.api.logs.Severity;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.semconv.SemanticAttributes;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.time.Instant;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ReusableSimpleMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.Constants;
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+import org.apache.logging.log4j.util.StringBuilders;
+import org.apache.logging.log4j.util.TriConsumer;
+
+/**
+ * Emits log4j events as OpenTelemetry log records without creating intermediate objects.
+ *
+ * <ul>
+ *   <li>attributes are set on the {@link LogRecordBuilder} directly - no {@code Attributes} are
+ *       built per event
+ *   <li>{@link AttributeKey}s for context data and the OpenTelemetry loggers are cached
+ *   <li>messages are formatted into a thread local {@link StringBuilder} if log4j's thread locals
+ *       are enabled (<code>log4j2.enableThreadlocals</code>) - the body of the log record is the
+ *       only copy, because the SDK keeps it after the record has been emitted. Simple messages are
+ *       used as they are.
+ *   <li>the span context is taken from the context data that was captured on the logging thread
+ *       (see {@link Log4jContextDataProvider}), so that the appender can run on the background
+ *       thread of async loggers. Only on another thread, a context has to be created for the span
+ *       context of the event.
+ * </ul>
+ */
+class Log4jGarbageFreeAppender extends AbstractAppender {
+
+  private static final int MAX_CACHED_KEYS = 1000;
+
+  private static final Map<String, AttributeKey<String>> contextDataKeys =
+      new ConcurrentHashMap<>();
+
+  private static final ThreadLocal<StringBuilder> messageBuilder =
+      ThreadLocal.withInitial(() -> new StringBuilder(Constants.INITIAL_REUSABLE_MESSAGE_SIZE));
+
+  private static final TriConsumer<String, Object, LogRecordBuilder> contextDataToAttributes =
+      (key, value, builder) -> {
+        if (value != null && !Log4jContextDataProvider.isSpanContextKey(key)) {
+          builder.setAttribute(getContextDataKey(key), value.toString());
+        }
+      };
+
+  private final OpenTelemetry openTelemetry;
+  private final Map<String, io.opentelemetry.api.logs.Logger> loggers = new ConcurrentHashMap<>();
+
+  Log4jGarbageFreeAppender(String name, Filter filter, OpenTelemetry openTelemetry) {
+    super(name, filter, null, true, Property.EMPTY_ARRAY);
+    this.openTelemetry = openTelemetry;
+  }
+
+  @Override
+  public void append(LogEvent event) {
+    LogRecordBuilder builder = getLogger(event.getLoggerName()).logRecordBuilder();
+
+    Instant instant = event.getInstant();
+    builder.setTimestamp(
+        TimeUnit.SECONDS.toNanos(instant.getEpochSecond()) + instant.getNanoOfSecond(),
+        TimeUnit.NANOSECONDS);
+
+    Level level = event.getLevel();
+    if (level != null) {
+      builder.setSeverity(toSeverity(level));
+      builder.setSeverityText(level.name());
+    }
+
+    setBody(builder, event.getMessage());
+
+    Throwable thrown = event.getThrown();
+    if (thrown != null) {
+      setThrowable(builder, thrown);
+    }
+
+    ReadOnlyStringMap contextData = event.getContextData();
+    if (contextData != null && !contextData.isEmpty()) {
+      contextData.forEach(contextDataToAttributes, builder);
+      Context context = getContext(contextData);
+      if (context != null) {
+        builder.setContext(context);
+      }
+    }
+
+    builder.setAttribute(SemanticAttributes.THREAD_NAME, event.getThreadName());
+    builder.setAttribute(SemanticAttributes.THREAD_ID, event.getThreadId());
+
+    builder.emit();
+  }
+
+  private io.opentelemetry.api.logs.Logger getLogger(String loggerName) {
+    String name = loggerName == null || loggerName.isEmpty() ? "ROOT" : loggerName;
+    io.opentelemetry.api.logs.Logger logger = loggers.get(name);
+    if (logger == null) {
+      logger = loggers.computeIfAbsent(name, n -> openTelemetry.getLogsBridge().get(n));
+    }
+    return logger;
+  }
+
+  private static void setBody(LogRecordBuilder builder, Message message) {
+    if (message == null) {
+      return;
+    }
+    if (message instanceof SimpleMessage || message instanceof ReusableSimpleMessage) {
+      // the message is already a string (usually)
+      builder.setBody(message.getFormattedMessage());
+    } else if (Constants.ENABLE_THREADLOCALS && message instanceof StringBuilderFormattable) {
+      StringBuilder sb = messageBuilder.get();
+      sb.setLength(0);
+      ((StringBuilderFormattable) message).formatTo(sb);
+      builder.setBody(sb.toString());
+      StringBuilders.trimToMaxSize(sb, Constants.MAX_REUSABLE_MESSAGE_SIZE);
+    } else {
+      builder.setBody(message.getFormattedMessage());
+    }
+  }
+
+  private static void setThrowable(LogRecordBuilder builder, Throwable throwable) {
+    builder.setAttribute(SemanticAttributes.EXCEPTION_TYPE, throwable.getClass().getName());
+    String message = throwable.getMessage();
+    if (message != null) {
+      builder.setAttribute(SemanticAttributes.EXCEPTION_MESSAGE, message);
+    }
+    StringWriter writer = new StringWriter();
+    throwable.printStackTrace(new PrintWriter(writer));
+    builder.setAttribute(SemanticAttributes.EXCEPTION_STACKTRACE, writer.toString());
+  }
+
+  private static Context getContext(ReadOnlyStringMap contextData) {
+    String traceId = contextData.getValue(Log4jContextDataProvider.TRACE_ID);
+    String spanId = contextData.getValue(Log4jContextDataProvider.SPAN_ID);
+    if (traceId == null || spanId == null) {
+      // not captured on the logging thread - the appender is called synchronously
+      return null;
+    }
+    SpanContext current = Span.current().getSpanContext();
+    if (spanId.equals(current.getSpanId()) && traceId.equals(current.getTraceId())) {
+      // called on the logging thread - the SDK uses the current context
+      return null;
+    }
+    String traceFlags = contextData.getValue(Log4jContextDataProvider.TRACE_FLAGS);
+    SpanContext spanContext =
+        SpanContext.create(
+            traceId,
+            spanId,
+            traceFlags == null ? TraceFlags.getDefault() : TraceFlags.fromHex(traceFlags, 0),
+            TraceState.getDefault());
+    return Context.root().with(Span.wrap(spanContext));
+  }
+
+  static AttributeKey<String> getContextDataKey(String key) {
+    AttributeKey<String> attributeKey = contextDataKeys.get(key);
+    if (attributeKey != null) {
+      return attributeKey;
+    }
+    if (contextDataKeys.size() >= MAX_CACHED_KEYS) {
+      return AttributeKey.stringKey(key);
+    }
+    return contextDataKeys.computeIfAbsent(key, AttributeKey::stringKey);
+  }
+
+  static Severity toSeverity(Level level) {
+    int intLevel = level.intLevel();
+    if (intLevel == Level.OFF.intLevel()) {
+      return Severity.UNDEFINED_SEVERITY_NUMBER;
+    } else if (intLevel <= Level.FATAL.intLevel()) {
+      return Severity.FATAL;
+    } else if (intLevel <= Level.ERROR.intLevel()) {
+      return Severity.ERROR;
+    } else if (intLevel <= Level.WARN.intLevel()) {
+      return Severity.WARN;
+    } else if (intLevel <= Level.INFO.intLevel()) {
+      return Severity.INFO;
+    } else if (intLevel <= Level.DEBUG.intLevel()) {
+      return Severity.DEBUG;
+    }
+    return Severity.TRACE;
+  }
+}
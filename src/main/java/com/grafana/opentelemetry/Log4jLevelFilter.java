@@ -0,0 +1,21 @@
+package com.grafana.opentelemetry;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.filter.AbstractFilter;
+
+/** Drops log events below the configured threshold, before they are converted to log records. */
+class Log4jLevelFilter extends AbstractFilter {
+
+  private final LogLevelThresholds thresholds;
+
+  Log4jLevelFilter(LogLevelThresholds thresholds) {
+    super(Result.NEUTRAL, Result.DENY);
+    this.thresholds = thresholds;
+  }
+
+  @Override
+  public Result filter(LogEvent event) {
+    int severityNumber = Log4jGarbageFreeAppender.toSeverity(event.getLevel()).getSeverityNumber();
+    return thresholds.isEnabled(event.getLoggerName(), severityNumber) ? onMatch : onMismatch;
+  }
+}
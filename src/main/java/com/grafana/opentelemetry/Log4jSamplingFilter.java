@@ -0,0 +1,48 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.filter.AbstractFilter;
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
+
+/**
+ * Drops log events that are not sampled by {@link TraceAwareLogSampler}.
+ *
+ * <p>The span context is taken from the context data that was captured on the logging thread (see
+ * {@link Log4jContextDataProvider}, which is enabled together with this filter), because the filter
+ * may run on the background thread of an async logger. The current span is only used if the
+ * context data has not been captured, e.g. with a custom context data injector - for async
+ * loggers, such log events are treated like log events outside of any span.
+ */
+class Log4jSamplingFilter extends AbstractFilter {
+
+  private final TraceAwareLogSampler sampler;
+
+  Log4jSamplingFilter(TraceAwareLogSampler sampler) {
+    super(Result.NEUTRAL, Result.DENY);
+    this.sampler = sampler;
+  }
+
+  @Override
+  public Result filter(LogEvent event) {
+    int severityNumber = Log4jGarbageFreeAppender.toSeverity(event.getLevel()).getSeverityNumber();
+    ReadOnlyStringMap contextData = event.getContextData();
+    String traceFlags =
+        contextData == null ? null : contextData.getValue(Log4jContextDataProvider.TRACE_FLAGS);
+
+    boolean export;
+    if (traceFlags != null) {
+      export = sampler.shouldExport(severityNumber, true, isSampled(traceFlags));
+    } else {
+      SpanContext spanContext = Span.current().getSpanContext();
+      export = sampler.shouldExport(severityNumber, spanContext.isValid(), spanContext.isSampled());
+    }
+    return export ? onMatch : onMismatch;
+  }
+
+  private static boolean isSampled(String traceFlags) {
+    return traceFlags.length() == 2 && TraceFlags.fromHex(traceFlags, 0).isSampled();
+  }
+}
@@ -0,0 +1,29 @@
+package com.grafana.opentelemetry;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.filter.AbstractFilter;
+import org.apache.logging.log4j.message.Message;
+
+/** Drops log events that are suppressed by {@link LogStormSuppressor}. */
+class Log4jSuppressionFilter extends AbstractFilter {
+
+  private final LogStormSuppressor suppressor;
+
+  Log4jSuppressionFilter(LogStormSuppressor suppressor) {
+    super(Result.NEUTRAL, Result.DENY);
+    this.suppressor = suppressor;
+  }
+
+  @Override
+  public Result filter(LogEvent event) {
+    Message message = event.getMessage();
+    Throwable thrown = event.getThrown();
+    return suppressor.tryAcquire(
+            event.getLoggerName(),
+            Log4jGarbageFreeAppender.toSeverity(event.getLevel()),
+            message == null ? null : message.getFormat(),
+            thrown == null ? null : thrown.getClass().getName())
+        ? onMatch
+        : onMismatch;
+  }
+}
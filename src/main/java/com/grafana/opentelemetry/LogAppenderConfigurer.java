@@ -3,5 +3,15 @@ package com.grafana.opentelemetry;
 import io.opentelemetry.api.OpenTelemetry;
 
 public interface LogAppenderConfigurer {
-  void tryAddAppender(OpenTelemetry openTelemetry);
+  void tryAddAppender(OpenTelemetry openTelemetry, GrafanaProperties.LogsProperties properties);
+
+  /**
+   * Hands the log events that the appender has queued over to the SDK, before the SDK is flushed on
+   * shutdown. Logging must not block afterwards, e.g. because a queue is full.
+   *
+   * @return the number of log events that could not be handed over within the timeout
+   */
+  default long drain(long timeoutNanos) {
+    return 0;
+  }
 }
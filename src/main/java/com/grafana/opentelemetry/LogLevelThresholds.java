@@ -0,0 +1,102 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.logs.Severity;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.logging.log4j.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The minimum severity of log events that are exported, by logger name.
+ *
+ * <p>Severities are compared using the OpenTelemetry severity number, so that the same thresholds
+ * can be used for Logback and Log4j2.
+ */
+class LogLevelThresholds {
+
+  private static final Logger logger = LoggerFactory.getLogger(LogLevelThresholds.class);
+
+  static final int OFF = Integer.MAX_VALUE;
+
+  private final int rootThreshold;
+  private final Map<String, Integer> loggerThresholds;
+  private final Map<String, Integer> cache = new ConcurrentHashMap<>();
+
+  LogLevelThresholds(int rootThreshold, Map<String, Integer> loggerThresholds) {
+    this.rootThreshold = rootThreshold;
+    this.loggerThresholds = loggerThresholds;
+  }
+
+  /** Returns null if no threshold has been configured. */
+  static LogLevelThresholds create(GrafanaProperties.LogsProperties properties) {
+    Integer rootThreshold = parseLevel(properties.getLevel(), "grafana.otlp.logs.level");
+    Map<String, Integer> loggerThresholds = new HashMap<>();
+    properties
+        .getLevels()
+        .forEach(
+            (name, level) -> {
+              Integer threshold = parseLevel(level, "grafana.otlp.logs.levels." + name);
+              if (threshold != null) {
+                loggerThresholds.put(name, threshold);
+              }
+            });
+    if (rootThreshold == null && loggerThresholds.isEmpty()) {
+      return null;
+    }
+    return new LogLevelThresholds(
+        rootThreshold == null
+            ? Severity.UNDEFINED_SEVERITY_NUMBER.getSeverityNumber()
+            : rootThreshold,
+        loggerThresholds);
+  }
+
+  static Integer parseLevel(String level, String property) {
+    if (Strings.isBlank(level)) {
+      return null;
+    }
+    switch (level.trim().toUpperCase(Locale.ROOT)) {
+      case "ALL":
+      case "TRACE":
+        return Severity.TRACE.getSeverityNumber();
+      case "DEBUG":
+        return Severity.DEBUG.getSeverityNumber();
+      case "INFO":
+        return Severity.INFO.getSeverityNumber();
+      case "WARN":
+      case "WARNING":
+        return Severity.WARN.getSeverityNumber();
+      case "ERROR":
+        return Severity.ERROR.getSeverityNumber();
+      case "FATAL":
+        return Severity.FATAL.getSeverityNumber();
+      case "OFF":
+        return OFF;
+      default:
+        logger.warn("ignoring {}, unknown log level: {}", property, level);
+        return null;
+    }
+  }
+
+  boolean isEnabled(String loggerName, int severityNumber) {
+    return severityNumber >= getThreshold(loggerName);
+  }
+
+  int getThreshold(String loggerName) {
+    if (loggerName == null) {
+      return rootThreshold;
+    }
+    Integer threshold = cache.get(loggerName);
+    if (threshold == null) {
+      // the most specific logger wins, like in the logging configuration of Spring Boot
+      threshold = LoggerNames.findMostSpecific(loggerThresholds, loggerName);
+      if (threshold == null) {
+        threshold = rootThreshold;
+      }
+      cache.put(loggerName, threshold);
+    }
+    return threshold;
+  }
+}
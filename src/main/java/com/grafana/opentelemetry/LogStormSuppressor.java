@@ -0,0 +1,387 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.logs.LogRecordBuilder;
+import io.opentelemetry.api.logs.Severity;
+import io.opentelemetry.semconv.SemanticAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Suppresses log storms, before the log events are converted to log records.
+ *
+ * <ul>
+ *   <li>Log events with the same logger, level, message template, and exception type are only
+ *       exported <code>maxRepeats</code> times per window. The number of suppressed events is
+ *       exported in a summary log record with the attribute <code>suppressed_count</code> - when
+ *       the next event with the same fingerprint arrives, or when any log event arrives after the
+ *       window has ended.
+ *   <li>Loggers can be limited to a number of log events per second. The number of suppressed
+ *       events is exported in a summary log record per rate limit after each window.
+ * </ul>
+ *
+ * <p>Fingerprints are stored in a fixed size table without allocating memory for each event. Each
+ * slot holds a few fingerprints, so that messages that share a slot are still counted separately -
+ * only if all of them are in use, the least recently used fingerprint is replaced (and its summary
+ * is exported). The summaries are exported outside of the locks of the slots.
+ */
+class LogStormSuppressor {
+
+  static final AttributeKey<Long> SUPPRESSED_COUNT = AttributeKey.longKey("suppressed_count");
+
+  private static final AttributeKey<String> REASON = AttributeKey.stringKey("reason");
+  private static final Attributes DUPLICATE = Attributes.of(REASON, "duplicate");
+  private static final Attributes RATE_LIMIT = Attributes.of(REASON, "rate_limit");
+
+  private static final int SLOTS = 256;
+  private static final int FINGERPRINTS_PER_SLOT = 4;
+  private static final Severity[] SEVERITIES = Severity.values();
+  private static final RateLimit UNLIMITED = new RateLimit(null, new TokenBucket(1, 0));
+
+  private final OpenTelemetry openTelemetry;
+  private final long windowNanos;
+  private final int maxRepeats;
+  private final Slot[] slots = new Slot[SLOTS];
+  private final AtomicLong nextSweep;
+  // the fingerprints with suppressed events, so that the sweep doesn't visit all slots
+  private final Queue<Fingerprint> pending = new ConcurrentLinkedQueue<>();
+
+  private final Map<String, RateLimit> rateLimits = new HashMap<>();
+  private final Map<String, RateLimit> rateLimitsByLogger = new ConcurrentHashMap<>();
+
+  private final LongAdder duplicates = new LongAdder();
+  private final LongAdder rateLimited = new LongAdder();
+
+  LogStormSuppressor(
+      OpenTelemetry openTelemetry,
+      long windowNanos,
+      int maxRepeats,
+      Map<String, Double> rateLimits,
+      long nanoTime) {
+    this.openTelemetry = openTelemetry;
+    this.windowNanos = windowNanos;
+    this.maxRepeats = maxRepeats;
+    this.nextSweep = new AtomicLong(nanoTime + windowNanos);
+    rateLimits.forEach(
+        (name, limit) ->
+            this.rateLimits.put(name, new RateLimit(name, new TokenBucket(limit, nanoTime))));
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = new Slot();
+    }
+  }
+
+  /** Returns null if suppression is disabled. */
+  static LogStormSuppressor create(
+      OpenTelemetry openTelemetry, GrafanaProperties.SuppressionProperties properties) {
+    if (!properties.isEnabled()) {
+      return null;
+    }
+    LogStormSuppressor suppressor =
+        new LogStormSuppressor(
+            openTelemetry,
+            properties.getWindow().toNanos(),
+            properties.getMaxRepeats(),
+            properties.getRateLimits(),
+            System.nanoTime());
+    openTelemetry
+        .getMeter(OpenTelemetryConfig.INSTRUMENTATION_SCOPE_NAME)
+        .counterBuilder("grafana.otlp.logs.suppressed")
+        .setDescription("The number of log events that were suppressed by log storm suppression")
+        .buildWithCallback(
+            m -> {
+              m.record(suppressor.duplicates.sum(), DUPLICATE);
+              m.record(suppressor.rateLimited.sum(), RATE_LIMIT);
+            });
+    return suppressor;
+  }
+
+  boolean tryAcquire(String loggerName, Severity severity, String template, String exceptionType) {
+    return tryAcquire(loggerName, severity, template, exceptionType, System.nanoTime());
+  }
+
+  boolean tryAcquire(
+      String loggerName, Severity severity, String template, String exceptionType, long now) {
+    sweepIfDue(now);
+
+    if (maxRepeats > 0 && !tryAcquireRepeat(loggerName, severity, template, exceptionType, now)) {
+      duplicates.increment();
+      return false;
+    }
+
+    RateLimit rateLimit = getRateLimit(loggerName);
+    if (rateLimit != UNLIMITED && !rateLimit.bucket.tryAcquire(now)) {
+      rateLimit.suppress(severity);
+      rateLimited.increment();
+      return false;
+    }
+    return true;
+  }
+
+  private boolean tryAcquireRepeat(
+      String loggerName, Severity severity, String template, String exceptionType, long now) {
+    int h = Objects.hashCode(loggerName);
+    h = 31 * h + severity.ordinal();
+    h = 31 * h + Objects.hashCode(template);
+    h = 31 * h + Objects.hashCode(exceptionType);
+    Slot slot = slots[(h ^ (h >>> 16)) & (SLOTS - 1)];
+
+    Summary summary = null;
+    boolean acquired;
+    synchronized (slot) {
+      Fingerprint fingerprint = slot.find(loggerName, severity, template, exceptionType);
+      if (fingerprint == null) {
+        fingerprint = slot.leastRecentlyUsed(now);
+        summary = fingerprint.takeSummary();
+        fingerprint.reset(loggerName, severity, template, exceptionType, now);
+      } else if (now - fingerprint.windowStart >= windowNanos) {
+        summary = fingerprint.takeSummary();
+        fingerprint.windowStart = now;
+        fingerprint.count = 0;
+      }
+      fingerprint.lastUsed = now;
+      acquired = fingerprint.count < maxRepeats;
+      if (acquired) {
+        fingerprint.count++;
+      } else if (fingerprint.suppressed++ == 0 && !fingerprint.pending) {
+        fingerprint.pending = true;
+        pending.add(fingerprint);
+      }
+    }
+    if (summary != null) {
+      emit(summary);
+    }
+    return acquired;
+  }
+
+  private RateLimit getRateLimit(String loggerName) {
+    if (rateLimits.isEmpty() || loggerName == null) {
+      return UNLIMITED;
+    }
+    RateLimit rateLimit = rateLimitsByLogger.get(loggerName);
+    if (rateLimit == null) {
+      // all loggers below the configured logger share the same bucket
+      rateLimit = LoggerNames.findMostSpecific(rateLimits, loggerName);
+      if (rateLimit == null) {
+        rateLimit = UNLIMITED;
+      }
+      rateLimitsByLogger.put(loggerName, rateLimit);
+    }
+    return rateLimit;
+  }
+
+  private void sweepIfDue(long now) {
+    long next = nextSweep.get();
+    if (now - next < 0 || !nextSweep.compareAndSet(next, now + windowNanos)) {
+      return;
+    }
+    List<Summary> summaries = new ArrayList<>();
+    // the fingerprints whose window has not ended yet are added again
+    for (int i = pending.size(); i > 0; i--) {
+      Fingerprint fingerprint = pending.poll();
+      if (fingerprint == null) {
+        break;
+      }
+      synchronized (fingerprint.slot) {
+        if (fingerprint.suppressed > 0 && now - fingerprint.windowStart < windowNanos) {
+          pending.add(fingerprint);
+          continue;
+        }
+        fingerprint.pending = false;
+        Summary summary = fingerprint.takeSummary();
+        if (summary != null) {
+          fingerprint.windowStart = now;
+          fingerprint.count = 0;
+          summaries.add(summary);
+        }
+      }
+    }
+    for (RateLimit rateLimit : rateLimits.values()) {
+      Summary summary = rateLimit.takeSummary();
+      if (summary != null) {
+        summaries.add(summary);
+      }
+    }
+    summaries.forEach(this::emit);
+  }
+
+  private void emit(Summary summary) {
+    LogRecordBuilder builder =
+        openTelemetry
+            .getLogsBridge()
+            .get(summary.loggerName == null ? "ROOT" : summary.loggerName)
+            .logRecordBuilder()
+            .setSeverity(summary.severity)
+            .setBody(String.format(summary.format, summary.suppressed, summary.detail))
+            .setAttribute(SUPPRESSED_COUNT, summary.suppressed);
+    if (summary.exceptionType != null) {
+      builder.setAttribute(SemanticAttributes.EXCEPTION_TYPE, summary.exceptionType);
+    }
+    builder.emit();
+  }
+
+  long getDuplicates() {
+    return duplicates.sum();
+  }
+
+  long getRateLimited() {
+    return rateLimited.sum();
+  }
+
+  /** The fingerprints that share a slot, guarded by the slot. */
+  private static class Slot {
+    private final Fingerprint[] fingerprints = new Fingerprint[FINGERPRINTS_PER_SLOT];
+
+    Slot() {
+      for (int i = 0; i < fingerprints.length; i++) {
+        fingerprints[i] = new Fingerprint(this);
+      }
+    }
+
+    Fingerprint find(String loggerName, Severity severity, String template, String exceptionType) {
+      for (Fingerprint fingerprint : fingerprints) {
+        if (fingerprint.matches(loggerName, severity, template, exceptionType)) {
+          return fingerprint;
+        }
+      }
+      return null;
+    }
+
+    /** Returns an unused fingerprint, or the one that was used least recently. */
+    Fingerprint leastRecentlyUsed(long now) {
+      Fingerprint result = fingerprints[0];
+      for (Fingerprint fingerprint : fingerprints) {
+        if (fingerprint.severity == null) {
+          return fingerprint;
+        }
+        if (now - fingerprint.lastUsed > now - result.lastUsed) {
+          result = fingerprint;
+        }
+      }
+      return result;
+    }
+  }
+
+  private static class Fingerprint {
+    private final Slot slot;
+    private String loggerName;
+    private Severity severity;
+    private String template;
+    private String exceptionType;
+    private long windowStart;
+    private long lastUsed;
+    private int count;
+    private long suppressed;
+    // whether the fingerprint is in the queue of pending summaries
+    private boolean pending;
+
+    Fingerprint(Slot slot) {
+      this.slot = slot;
+    }
+
+    boolean matches(String loggerName, Severity severity, String template, String exceptionType) {
+      return this.severity == severity
+          && Objects.equals(this.loggerName, loggerName)
+          && Objects.equals(this.template, template)
+          && Objects.equals(this.exceptionType, exceptionType);
+    }
+
+    void reset(
+        String loggerName, Severity severity, String template, String exceptionType, long now) {
+      this.loggerName = loggerName;
+      this.severity = severity;
+      this.template = template;
+      this.exceptionType = exceptionType;
+      this.windowStart = now;
+      this.count = 0;
+      this.suppressed = 0;
+    }
+
+    /** Returns null if no events were suppressed. */
+    Summary takeSummary() {
+      if (suppressed == 0) {
+        return null;
+      }
+      Summary summary =
+          new Summary(
+              loggerName,
+              severity,
+              "suppressed %d repeated log records: %s",
+              template,
+              exceptionType,
+              suppressed);
+      suppressed = 0;
+      return summary;
+    }
+  }
+
+  private static class RateLimit {
+    private final String loggerName;
+    private final TokenBucket bucket;
+    private final AtomicLong suppressed = new AtomicLong();
+    // the highest severity of the suppressed events
+    private final AtomicInteger severity = new AtomicInteger();
+
+    RateLimit(String loggerName, TokenBucket bucket) {
+      this.loggerName = loggerName;
+      this.bucket = bucket;
+    }
+
+    void suppress(Severity severity) {
+      suppressed.incrementAndGet();
+      int ordinal = severity.ordinal();
+      if (this.severity.get() < ordinal) {
+        this.severity.accumulateAndGet(ordinal, Math::max);
+      }
+    }
+
+    /** Returns null if no events were suppressed. */
+    Summary takeSummary() {
+      long count = suppressed.getAndSet(0);
+      if (count == 0) {
+        return null;
+      }
+      return new Summary(
+          loggerName,
+          SEVERITIES[severity.getAndSet(0)],
+          "suppressed %d log records above the rate limit of %s",
+          loggerName,
+          null,
+          count);
+    }
+  }
+
+  private static class Summary {
+    private final String loggerName;
+    private final Severity severity;
+    private final String format;
+    private final String detail;
+    private final String exceptionType;
+    private final long suppressed;
+
+    Summary(
+        String loggerName,
+        Severity severity,
+        String format,
+        String detail,
+        String exceptionType,
+        long suppressed) {
+      this.loggerName = loggerName;
+      this.severity = severity;
+      this.format = format;
+      this.detail = detail;
+      this.exceptionType = exceptionType;
+      this.suppressed = suppressed;
+    }
+  }
+}
@@ -0,0 +1,276 @@
+package com.grafana.opentelemetry;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableLongCounter;
+import io.opentelemetry.api.metrics.ObservableLongGauge;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands log events over to a dedicated thread that converts and exports them using the delegate
+ * appender.
+ *
+ * <p>The events are stored in a lock-free ring buffer with preallocated slots, together with the
+ * OpenTelemetry context of the logging thread, so that the log records are still correlated with
+ * the active span. The logging threads claim a position with a compare-and-set, and publish the
+ * event with the sequence number of its slot - the export thread is the only consumer. Only a full
+ * buffer makes a logging thread wait (unless events are dropped when full), by parking briefly
+ * until a slot is free.
+ */
+class LogbackAsyncAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+  private static final long STOP_TIMEOUT_MILLIS = 1000;
+  // how long a logging thread or drain waits before checking the buffer again
+  private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private final Appender<ILoggingEvent> delegate;
+  private final boolean dropWhenFull;
+  private final boolean includeCallerData;
+
+  private final ILoggingEvent[] events;
+  private final Context[] contexts;
+  // the slot at position p is free for p, and holds an event when its sequence is p + 1
+  private final AtomicLongArray sequences;
+  // the next position for the logging threads
+  private final AtomicLong tail = new AtomicLong();
+  // the next position for the export thread, which is the only writer
+  private volatile long head;
+  // the events that have been appended to the delegate
+  private volatile long appended;
+  // the export thread is parked until an event is published
+  private volatile boolean waiting;
+
+  private final LongAdder enqueued = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+
+  private volatile boolean running;
+  private volatile boolean draining;
+  private volatile Thread worker;
+
+  private ObservableLongCounter enqueuedCounter;
+  private ObservableLongCounter droppedCounter;
+  private ObservableLongGauge queueSizeGauge;
+
+  LogbackAsyncAppender(
+      Appender<ILoggingEvent> delegate,
+      int queueSize,
+      boolean dropWhenFull,
+      boolean includeCallerData) {
+    if (queueSize < 1) {
+      throw new IllegalArgumentException("queueSize must be positive: " + queueSize);
+    }
+    this.delegate = delegate;
+    this.dropWhenFull = dropWhenFull;
+    this.includeCallerData = includeCallerData;
+    this.events = new ILoggingEvent[queueSize];
+    this.contexts = new Context[queueSize];
+    this.sequences = new AtomicLongArray(queueSize);
+    for (int i = 0; i < queueSize; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /** The instruments are closed when the appender is stopped, e.g. when it is replaced. */
+  void registerMetrics(Meter meter) {
+    enqueuedCounter =
+        meter
+            .counterBuilder("grafana.otlp.logs.async.enqueued")
+            .setDescription("The number of log events that were handed over to the export thread")
+            .buildWithCallback(m -> m.record(getEnqueued()));
+    droppedCounter =
+        meter
+            .counterBuilder("grafana.otlp.logs.async.dropped")
+            .setDescription(
+                "The number of log events that were dropped, because the queue was full")
+            .buildWithCallback(m -> m.record(getDropped()));
+    queueSizeGauge =
+        meter
+            .gaugeBuilder("grafana.otlp.logs.async.queue.size")
+            .ofLongs()
+            .setDescription("The number of log events that are waiting for the export thread")
+            .buildWithCallback(m -> m.record(getQueueSize()));
+  }
+
+  @Override
+  public void start() {
+    if (isStarted()) {
+      return;
+    }
+    running = true;
+    worker = new Thread(this::run, "grafana-otlp-log-appender");
+    worker.setDaemon(true);
+    worker.start();
+    super.start();
+  }
+
+  @Override
+  public void stop() {
+    if (!isStarted()) {
+      return;
+    }
+    super.stop();
+    running = false;
+    LockSupport.unpark(worker);
+    try {
+      worker.join(STOP_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (worker.isAlive()) {
+      addWarn("log events were not exported within " + STOP_TIMEOUT_MILLIS + "ms");
+    }
+    delegate.stop();
+    closeMetrics();
+  }
+
+  private void closeMetrics() {
+    if (enqueuedCounter != null) {
+      enqueuedCounter.close();
+      droppedCounter.close();
+      queueSizeGauge.close();
+      enqueuedCounter = null;
+      droppedCounter = null;
+      queueSizeGauge = null;
+    }
+  }
+
+  @Override
+  protected void append(ILoggingEvent event) {
+    // everything that is lazily computed from the logging thread must be computed now
+    event.prepareForDeferredProcessing();
+    if (includeCallerData) {
+      event.getCallerData();
+    }
+    Context context = Context.current();
+
+    while (!offer(event, context)) {
+      if (dropWhenFull || draining || !running || Thread.currentThread().isInterrupted()) {
+        dropped.increment();
+        return;
+      }
+      LockSupport.parkNanos(this, PARK_NANOS);
+    }
+    enqueued.increment();
+  }
+
+  /** Returns false if the buffer is full. */
+  private boolean offer(ILoggingEvent event, Context context) {
+    while (true) {
+      long position = tail.get();
+      int slot = (int) (position % events.length);
+      long sequence = sequences.get(slot);
+      if (sequence < position) {
+        // the slot still holds the event of the previous round
+        return false;
+      }
+      if (sequence == position && tail.compareAndSet(position, position + 1)) {
+        events[slot] = event;
+        contexts[slot] = context;
+        sequences.set(slot, position + 1);
+        if (waiting) {
+          LockSupport.unpark(worker);
+        }
+        return true;
+      }
+      // another logging thread claimed the position
+    }
+  }
+
+  private void run() {
+    ILoggingEvent[] batchEvents = new ILoggingEvent[events.length];
+    Context[] batchContexts = new Context[events.length];
+    while (true) {
+      int n = take(batchEvents, batchContexts);
+      if (n == 0) {
+        if (!running) {
+          return;
+        }
+        waiting = true;
+        // an event may have been published before the flag was set
+        if (isEmpty() && running) {
+          LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(STOP_TIMEOUT_MILLIS));
+        }
+        waiting = false;
+        continue;
+      }
+      for (int i = 0; i < n; i++) {
+        try (Scope ignored = batchContexts[i].makeCurrent()) {
+          delegate.doAppend(batchEvents[i]);
+        } catch (RuntimeException e) {
+          addError("unable to export log event", e);
+        }
+        batchEvents[i] = null;
+        batchContexts[i] = null;
+      }
+      appended += n;
+    }
+  }
+
+  private boolean isEmpty() {
+    long position = head;
+    return sequences.get((int) (position % events.length)) != position + 1;
+  }
+
+  /**
+   * Waits until the queued events have been appended to the delegate, e.g. before the SDK is
+   * flushed on shutdown. Events are dropped from now on if the queue is full, so that logging never
+   * blocks.
+   *
+   * @return the number of events that are still queued after the timeout
+   */
+  int drain(long timeoutNanos) {
+    draining = true;
+    long deadline = System.nanoTime() + timeoutNanos;
+    // the logging threads that wait for a free slot drop their events from now on
+    while (appended < tail.get() && running && System.nanoTime() < deadline) {
+      if (Thread.currentThread().isInterrupted()) {
+        break;
+      }
+      LockSupport.parkNanos(this, PARK_NANOS);
+    }
+    return getQueueSize();
+  }
+
+  /** Moves all published events to the batch - returns 0 if there are none. */
+  private int take(ILoggingEvent[] batchEvents, Context[] batchContexts) {
+    long position = head;
+    int n = 0;
+    while (n < events.length) {
+      int slot = (int) (position % events.length);
+      if (sequences.get(slot) != position + 1) {
+        break;
+      }
+      batchEvents[n] = events[slot];
+      batchContexts[n] = contexts[slot];
+      events[slot] = null;
+      contexts[slot] = null;
+      // the slot is free for the next round
+      sequences.set(slot, position + events.length);
+      position++;
+      n++;
+    }
+    head = position;
+    return n;
+  }
+
+  long getEnqueued() {
+    return enqueued.sum();
+  }
+
+  long getDropped() {
+    return dropped.sum();
+  }
+
+  int getQueueSize() {
+    // includes the positions that have been claimed, but not yet published
+    return (int) Math.max(0, Math.min(events.length, tail.get() - head));
+  }
+}
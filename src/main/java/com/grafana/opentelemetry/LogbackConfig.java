@@ -1,8 +1,15 @@
 package com.grafana.opentelemetry;
 
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.filter.Filter;
 import io.opentelemetry.api.OpenTelemetry;
 import io.opentelemetry.instrumentation.logback.appender.v1_0.OpenTelemetryAppender;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
@@ -12,22 +19,174 @@ public class LogbackConfig implements LogAppenderConfigurer {
 
   private static final Logger logger = LoggerFactory.getLogger(LogbackConfig.class);
 
-  public void tryAddAppender(OpenTelemetry openTelemetry) {
+  public void tryAddAppender(
+      OpenTelemetry openTelemetry, GrafanaProperties.LogsProperties properties) {
     ch.qos.logback.classic.Logger logbackLogger = getLogger();
 
+    // an async appender that was added for a previous application context can't be reused
+    removeAsyncAppender(logbackLogger);
+
     // check if appender has been added manually already
-    if (hasAppender(logbackLogger)) {
+    OpenTelemetryAppender existing = findAppender(logbackLogger);
+    if (existing != null) {
       logger.info("logback OpenTelemetryAppender has already been added");
       OpenTelemetryAppender.install(openTelemetry);
+      replaceFilters(existing, createFilters(openTelemetry, properties));
+      warnIgnoredProperties(properties);
       return;
     }
 
     logger.info("adding logback OpenTelemetryAppender");
+    GrafanaProperties.CaptureProperties capture = properties.getCapture();
     OpenTelemetryAppender appender = new OpenTelemetryAppender();
-    appender.setCaptureExperimentalAttributes(true);
+    appender.setContext(logbackLogger.getLoggerContext());
+    configureCapture(appender, capture);
     appender.setOpenTelemetry(openTelemetry);
     appender.start();
-    logbackLogger.addAppender(appender);
+
+    GrafanaProperties.AsyncProperties async = properties.getAsync();
+    Appender<ILoggingEvent> rootAppender =
+        async.isEnabled()
+            ? createAsyncAppender(openTelemetry, appender, async, capture.isCodeLocation())
+            : appender;
+
+    // filter before the event is handed over or converted
+    createFilters(openTelemetry, properties).forEach(filter -> addFilter(rootAppender, filter));
+    logbackLogger.addAppender(rootAppender);
+  }
+
+  private static List<Filter<ILoggingEvent>> createFilters(
+      OpenTelemetry openTelemetry, GrafanaProperties.LogsProperties properties) {
+    List<Filter<ILoggingEvent>> filters = new ArrayList<>();
+    LogLevelThresholds thresholds = LogLevelThresholds.create(properties);
+    if (thresholds != null) {
+      filters.add(new LogbackLevelFilter(thresholds));
+    }
+    TraceAwareLogSampler sampler = TraceAwareLogSampler.create(properties.getSampling());
+    if (sampler != null) {
+      filters.add(new LogbackSamplingFilter(sampler));
+    }
+    LogStormSuppressor suppressor =
+        LogStormSuppressor.create(openTelemetry, properties.getSuppression());
+    if (suppressor != null) {
+      filters.add(new LogbackSuppressionFilter(suppressor));
+    }
+    return filters;
+  }
+
+  private static void addFilter(Appender<ILoggingEvent> appender, Filter<ILoggingEvent> filter) {
+    filter.setContext(appender.getContext());
+    filter.start();
+    appender.addFilter(filter);
+  }
+
+  /**
+   * Adds the filters to an appender from the logging configuration, replacing the ones that were
+   * added for a previous application context.
+   */
+  static void replaceFilters(
+      Appender<ILoggingEvent> appender, List<Filter<ILoggingEvent>> filters) {
+    List<Filter<ILoggingEvent>> previous = appender.getCopyOfAttachedFiltersList();
+    List<Filter<ILoggingEvent>> kept =
+        previous.stream().filter(filter -> !isOwnFilter(filter)).collect(Collectors.toList());
+    if (kept.size() != previous.size()) {
+      appender.clearAllFilters();
+      kept.forEach(appender::addFilter);
+      previous.stream().filter(LogbackConfig::isOwnFilter).forEach(Filter::stop);
+    }
+    filters.forEach(filter -> addFilter(appender, filter));
+  }
+
+  private static boolean isOwnFilter(Filter<ILoggingEvent> filter) {
+    return filter instanceof LogbackLevelFilter
+        || filter instanceof LogbackSamplingFilter
+        || filter instanceof LogbackSuppressionFilter;
+  }
+
+  private static void warnIgnoredProperties(GrafanaProperties.LogsProperties properties) {
+    List<String> ignored = new ArrayList<>();
+    if (properties.getAsync().isEnabled()) {
+      ignored.add("grafana.otlp.logs.async.*");
+    }
+    if (!isDefault(properties.getCapture())) {
+      ignored.add("grafana.otlp.logs.capture.*");
+    }
+    if (!ignored.isEmpty()) {
+      logger.warn(
+          "ignoring {} for the OpenTelemetryAppender from the logback configuration, "
+              + "configure the appender there instead",
+          String.join(", ", ignored));
+    }
+  }
+
+  private static boolean isDefault(GrafanaProperties.CaptureProperties capture) {
+    GrafanaProperties.CaptureProperties defaults = new GrafanaProperties.CaptureProperties();
+    return capture.isThread() == defaults.isThread()
+        && capture.isCodeLocation() == defaults.isCodeLocation()
+        && capture.getMdc().equals(defaults.getMdc())
+        && capture.isMarker() == defaults.isMarker()
+        && capture.isKeyValuePairs() == defaults.isKeyValuePairs();
+  }
+
+  private static void configureCapture(
+      OpenTelemetryAppender appender, GrafanaProperties.CaptureProperties capture) {
+    // thread name and id are the only experimental attributes
+    appender.setCaptureExperimentalAttributes(capture.isThread());
+    appender.setCaptureCodeAttributes(capture.isCodeLocation());
+    appender.setCaptureMarkerAttribute(capture.isMarker());
+    appender.setCaptureKeyValuePairAttributes(capture.isKeyValuePairs());
+    if (!capture.getMdc().isEmpty()) {
+      // the appender caches the attribute keys of MDC entries
+      appender.setCaptureMdcAttributes(String.join(",", capture.getMdc()));
+    }
+  }
+
+  private static LogbackAsyncAppender createAsyncAppender(
+      OpenTelemetry openTelemetry,
+      OpenTelemetryAppender appender,
+      GrafanaProperties.AsyncProperties properties,
+      boolean includeCallerData) {
+    logger.info("exporting logback events asynchronously");
+    LogbackAsyncAppender asyncAppender =
+        new LogbackAsyncAppender(
+            appender, properties.getQueueSize(), properties.isDropWhenFull(), includeCallerData);
+    asyncAppender.setContext(appender.getContext());
+    asyncAppender.setName("OpenTelemetryAsyncAppender");
+    asyncAppender.start();
+    // closed when the appender is removed for the next application context
+    asyncAppender.registerMetrics(
+        openTelemetry.getMeter(OpenTelemetryConfig.INSTRUMENTATION_SCOPE_NAME));
+    return asyncAppender;
+  }
+
+  @Override
+  public long drain(long timeoutNanos) {
+    long remaining = 0;
+    Iterator<Appender<ILoggingEvent>> appenders = getLogger().iteratorForAppenders();
+    while (appenders.hasNext()) {
+      Appender<ILoggingEvent> appender = appenders.next();
+      if (appender instanceof LogbackAsyncAppender) {
+        remaining += ((LogbackAsyncAppender) appender).drain(timeoutNanos);
+      }
+    }
+    return remaining;
+  }
+
+  private static void removeAsyncAppender(ch.qos.logback.classic.Logger logbackLogger) {
+    List<Appender<ILoggingEvent>> appenders = new ArrayList<>();
+    logbackLogger
+        .iteratorForAppenders()
+        .forEachRemaining(
+            appender -> {
+              if (appender instanceof LogbackAsyncAppender) {
+                appenders.add(appender);
+              }
+            });
+    appenders.forEach(
+        appender -> {
+          logbackLogger.detachAppender(appender);
+          appender.stop();
+        });
   }
 
   static ch.qos.logback.classic.Logger getLogger() {
@@ -35,14 +194,14 @@ public class LogbackConfig implements LogAppenderConfigurer {
         LoggerFactory.getILoggerFactory().getLogger(Logger.ROOT_LOGGER_NAME);
   }
 
-  static boolean hasAppender(ch.qos.logback.classic.Logger logbackLogger) {
-    AtomicBoolean found = new AtomicBoolean(false);
+  static OpenTelemetryAppender findAppender(ch.qos.logback.classic.Logger logbackLogger) {
+    AtomicReference<OpenTelemetryAppender> found = new AtomicReference<>();
     logbackLogger
         .iteratorForAppenders()
         .forEachRemaining(
             appender -> {
               if (appender instanceof OpenTelemetryAppender) {
-                found.set(true);
+                found.set((OpenTelemetryAppender) appender);
               }
             });
     return found.get();
@@ -0,0 +1,42 @@
+package com.grafana.opentelemetry;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+import io.opentelemetry.api.logs.Severity;
+
+/** Drops log events below the configured threshold, before they are converted to log records. */
+class LogbackLevelFilter extends Filter<ILoggingEvent> {
+
+  private final LogLevelThresholds thresholds;
+
+  LogbackLevelFilter(LogLevelThresholds thresholds) {
+    this.thresholds = thresholds;
+  }
+
+  @Override
+  public FilterReply decide(ILoggingEvent event) {
+    int severityNumber = toSeverity(event.getLevel()).getSeverityNumber();
+    return thresholds.isEnabled(event.getLoggerName(), severityNumber)
+        ? FilterReply.NEUTRAL
+        : FilterReply.DENY;
+  }
+
+  static Severity toSeverity(Level level) {
+    switch (level.toInt()) {
+      case Level.ERROR_INT:
+        return Severity.ERROR;
+      case Level.WARN_INT:
+        return Severity.WARN;
+      case Level.INFO_INT:
+        return Severity.INFO;
+      case Level.DEBUG_INT:
+        return Severity.DEBUG;
+      case Level.TRACE_INT:
+        return Severity.TRACE;
+      default:
+        return Severity.UNDEFINED_SEVERITY_NUMBER;
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package com.grafana.opentelemetry;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+
+/**
+ * Drops log events that are not sampled by {@link TraceAwareLogSampler} - using the span of the
+ * logging thread.
+ */
+class LogbackSamplingFilter extends Filter<ILoggingEvent> {
+
+  private final TraceAwareLogSampler sampler;
+
+  LogbackSamplingFilter(TraceAwareLogSampler sampler) {
+    this.sampler = sampler;
+  }
+
+  @Override
+  public FilterReply decide(ILoggingEvent event) {
+    SpanContext spanContext = Span.current().getSpanContext();
+    return sampler.shouldExport(
+            LogbackLevelFilter.toSeverity(event.getLevel()).getSeverityNumber(),
+            spanContext.isValid(),
+            spanContext.isSampled())
+        ? FilterReply.NEUTRAL
+        : FilterReply.DENY;
+  }
+}
@@ -0,0 +1,28 @@
+package com.grafana.opentelemetry;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/** Drops log events that are suppressed by {@link LogStormSuppressor}. */
+class LogbackSuppressionFilter extends Filter<ILoggingEvent> {
+
+  private final LogStormSuppressor suppressor;
+
+  LogbackSuppressionFilter(LogStormSuppressor suppressor) {
+    this.suppressor = suppressor;
+  }
+
+  @Override
+  public FilterReply decide(ILoggingEvent event) {
+    IThrowableProxy throwable = event.getThrowableProxy();
+    return suppressor.tryAcquire(
+            event.getLoggerName(),
+            LogbackLevelFilter.toSeverity(event.getLevel()),
+            event.getMessage(),
+            throwable == null ? null : throwable.getClassName())
+        ? FilterReply.NEUTRAL
+        : FilterReply.DENY;
+  }
+}
@@ -0,0 +1,27 @@
+package com.grafana.opentelemetry;
+
+import java.util.Map;
+
+class LoggerNames {
+
+  private LoggerNames() {}
+
+  /**
+   * Returns the value of the most specific logger name, e.g. <code>com.example</code> for <code>
+   * com.example.Foo</code>, or null if no parent of the logger name is in the map.
+   */
+  static <T> T findMostSpecific(Map<String, T> valuesByLoggerName, String loggerName) {
+    String name = loggerName;
+    while (true) {
+      T value = valuesByLoggerName.get(name);
+      if (value != null) {
+        return value;
+      }
+      int dot = Math.max(name.lastIndexOf('.'), name.lastIndexOf('$'));
+      if (dot < 0) {
+        return null;
+      }
+      name = name.substring(0, dot);
+    }
+  }
+}
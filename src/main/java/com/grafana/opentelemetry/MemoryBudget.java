@@ -0,0 +1,273 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.PointData;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * A limit for the estimated heap usage of the spans and log records that are waiting to be
+ * exported.
+ *
+ * <p>The bytes are accounted per queue when the data is queued, and released when it leaves the
+ * queue. Low priority data (e.g. debug logs) is shed when {@link #SHED_RATIO} of the limit is used,
+ * and all new data is shed when the limit is reached.
+ *
+ * <p>Data that can't be shed also counts towards the limit: the cumulative state of stale series
+ * removal, the requests that are in flight, and the requests that are serialized for the disk
+ * buffer.
+ *
+ * <p>The sizes are estimates of the retained heap (object headers, strings, and attributes), not
+ * exact measurements.
+ */
+class MemoryBudget {
+
+  private static final Logger logger = LoggerFactory.getLogger(MemoryBudget.class);
+
+  static final double SHED_RATIO = 0.8;
+
+  private static final AttributeKey<String> SIGNAL = AttributeKey.stringKey("signal");
+  private static final AttributeKey<String> QUEUE = AttributeKey.stringKey("queue");
+  private static final AttributeKey<String> PRIORITY = AttributeKey.stringKey("priority");
+
+  // rough sizes of the objects that are retained per item, including the IDs and references
+  static final long SPAN_OVERHEAD = 400;
+  static final long LOG_RECORD_OVERHEAD = 250;
+  private static final long EVENT_OVERHEAD = 64;
+  private static final long LINK_OVERHEAD = 150;
+  private static final long ATTRIBUTE_OVERHEAD = 48;
+  private static final long STRING_OVERHEAD = 40;
+  private static final long BOXED_VALUE = 16;
+  private static final long POINT_OVERHEAD = 64;
+  static final long SERIES_OVERHEAD = 150;
+  static final long BUCKET_COUNT = 24;
+
+  private final long limit;
+  private final long shedThreshold;
+  private final AtomicLong used = new AtomicLong();
+  private final List<Account> accounts = new CopyOnWriteArrayList<>();
+  private MemoryBudgetQueue tracesQueue;
+  private MemoryBudgetQueue logsQueue;
+
+  MemoryBudget(long limit) {
+    this.limit = limit;
+    this.shedThreshold = (long) (limit * SHED_RATIO);
+  }
+
+  /** Only measures the usage if the limit is not positive. */
+  static MemoryBudget create(GrafanaProperties properties) {
+    DataSize limit = properties.getMemory().getLimit();
+    long bytes = limit == null ? 0 : limit.toBytes();
+    if (bytes <= 0) {
+      logger.warn("ignoring grafana.otlp.memory.limit, must be positive: {}", limit);
+      bytes = Long.MAX_VALUE;
+    }
+    MemoryBudget budget = new MemoryBudget(bytes);
+    // the default schedule delays of the batch processors of the SDK
+    budget.tracesQueue =
+        MemoryBudgetQueue.create(
+            budget.account("traces", "queue"),
+            properties.getTraces().getBatch(),
+            Duration.ofSeconds(5));
+    budget.logsQueue =
+        MemoryBudgetQueue.create(
+            budget.account("logs", "queue"),
+            properties.getLogs().getBatch(),
+            Duration.ofSeconds(1));
+    return budget;
+  }
+
+  /** Creates an account for a queue of a signal, e.g. the queue of the batch span processor. */
+  Account account(String signal, String queue) {
+    Account account = new Account(Attributes.of(SIGNAL, signal, QUEUE, queue));
+    accounts.add(account);
+    return account;
+  }
+
+  /** Returns true if data with this priority should not be queued. */
+  boolean shouldShed(boolean lowPriority) {
+    long bytes = used.get();
+    return bytes >= limit || (lowPriority && bytes >= shedThreshold);
+  }
+
+  boolean isUnderPressure() {
+    return shouldShed(true);
+  }
+
+  long getUsed() {
+    return used.get();
+  }
+
+  MemoryBudgetQueue getTracesQueue() {
+    return tracesQueue;
+  }
+
+  MemoryBudgetQueue getLogsQueue() {
+    return logsQueue;
+  }
+
+  long getLimit() {
+    return limit;
+  }
+
+  void registerMetrics(OpenTelemetry openTelemetry) {
+    Meter meter = openTelemetry.getMeter(OpenTelemetryConfig.INSTRUMENTATION_SCOPE_NAME);
+    meter
+        .gaugeBuilder("grafana.otlp.memory.used")
+        .ofLongs()
+        .setUnit("By")
+        .setDescription("The estimated heap usage of the data that is waiting to be exported")
+        .buildWithCallback(m -> accounts.forEach(a -> m.record(a.getUsed(), a.attributes)));
+    meter
+        .gaugeBuilder("grafana.otlp.memory.limit")
+        .ofLongs()
+        .setUnit("By")
+        .setDescription("The limit for the estimated heap usage (grafana.otlp.memory.limit)")
+        .buildWithCallback(m -> m.record(limit));
+    meter
+        .counterBuilder("grafana.otlp.memory.shed")
+        .setDescription("The number of spans and log records that were shed to stay in the limit")
+        .buildWithCallback(
+            m ->
+                accounts.forEach(
+                    a -> {
+                      m.record(a.shedLow.sum(), a.shedLowAttributes);
+                      m.record(a.shedNormal.sum(), a.shedNormalAttributes);
+                    }));
+  }
+
+  static long estimate(SpanData span) {
+    long bytes = SPAN_OVERHEAD + estimate(span.getName()) + estimate(span.getAttributes());
+    for (EventData event : span.getEvents()) {
+      bytes += EVENT_OVERHEAD + estimate(event.getName()) + estimate(event.getAttributes());
+    }
+    for (LinkData link : span.getLinks()) {
+      bytes += LINK_OVERHEAD + estimate(link.getAttributes());
+    }
+    return bytes;
+  }
+
+  static long estimate(LogRecordData log) {
+    return LOG_RECORD_OVERHEAD
+        + estimate(log.getSeverityText())
+        + estimate(log.getBody().asString())
+        + estimate(log.getAttributes());
+  }
+
+  /** The attributes of the points are shared with the SDK, only the points are counted. */
+  static long estimate(MetricData metric) {
+    long bytes = 0;
+    for (PointData point : metric.getData().getPoints()) {
+      bytes += POINT_OVERHEAD;
+      if (point instanceof HistogramPointData) {
+        bytes += ((HistogramPointData) point).getCounts().size() * BUCKET_COUNT;
+      }
+    }
+    return bytes;
+  }
+
+  static long estimate(Attributes attributes) {
+    long[] bytes = {0};
+    attributes.forEach((key, value) -> bytes[0] += estimateAttribute(value));
+    return bytes[0];
+  }
+
+  static long estimateAttribute(Object value) {
+    // the keys are usually constants that are shared
+    return ATTRIBUTE_OVERHEAD + estimateValue(value);
+  }
+
+  private static long estimateValue(Object value) {
+    if (value instanceof String) {
+      return estimate((String) value);
+    }
+    if (value instanceof List) {
+      long bytes = BOXED_VALUE;
+      for (Object element : (List<?>) value) {
+        bytes += estimateValue(element);
+      }
+      return bytes;
+    }
+    return BOXED_VALUE;
+  }
+
+  /** Assumes compact (Latin-1) strings, which use one byte per character. */
+  static long estimate(String value) {
+    return value == null ? 0 : STRING_OVERHEAD + value.length();
+  }
+
+  /** The bytes of the data in one queue, which also count towards the total of the budget. */
+  class Account {
+    private final Attributes attributes;
+    private final Attributes shedLowAttributes;
+    private final Attributes shedNormalAttributes;
+    private final AtomicLong used = new AtomicLong();
+    private final LongAdder shedLow = new LongAdder();
+    private final LongAdder shedNormal = new LongAdder();
+
+    private Account(Attributes attributes) {
+      this.attributes = attributes;
+      this.shedLowAttributes = attributes.toBuilder().put(PRIORITY, "low").build();
+      this.shedNormalAttributes = attributes.toBuilder().put(PRIORITY, "normal").build();
+    }
+
+    /**
+     * Returns false - and counts the data as shed - if the data should not be queued. Otherwise,
+     * the bytes are added to the account.
+     */
+    boolean tryAcquire(long bytes, boolean lowPriority) {
+      if (shouldShed(lowPriority)) {
+        shed(lowPriority);
+        return false;
+      }
+      add(bytes);
+      return true;
+    }
+
+    /** Adds data that has already been queued, regardless of the limit. */
+    void add(long bytes) {
+      used.addAndGet(bytes);
+      MemoryBudget.this.used.addAndGet(bytes);
+    }
+
+    void release(long bytes) {
+      used.addAndGet(-bytes);
+      MemoryBudget.this.used.addAndGet(-bytes);
+    }
+
+    void shed(boolean lowPriority) {
+      (lowPriority ? shedLow : shedNormal).increment();
+    }
+
+    boolean shouldShed(boolean lowPriority) {
+      return MemoryBudget.this.shouldShed(lowPriority);
+    }
+
+    boolean isUnderPressure() {
+      return MemoryBudget.this.isUnderPressure();
+    }
+
+    long getUsed() {
+      return used.get();
+    }
+
+    long getShed(boolean lowPriority) {
+      return (lowPriority ? shedLow : shedNormal).sum();
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.logs.LogRecordBuilder;
+import io.opentelemetry.api.logs.Logger;
+import io.opentelemetry.api.logs.LoggerBuilder;
+import io.opentelemetry.api.logs.LoggerProvider;
+import io.opentelemetry.api.logs.Severity;
+import io.opentelemetry.api.metrics.MeterProvider;
+import io.opentelemetry.api.trace.TracerProvider;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The logs bridge that is used by the log appenders: estimates the size of each log record while
+ * it is built, and only emits it if it fits into the {@link MemoryBudget}.
+ *
+ * <p>Debug and trace logs have a low priority, and are shed first.
+ */
+class MemoryBudgetLogsBridge implements LoggerProvider {
+
+  private final LoggerProvider delegate;
+  private final MemoryBudgetQueue queue;
+
+  MemoryBudgetLogsBridge(LoggerProvider delegate, MemoryBudgetQueue queue) {
+    this.delegate = delegate;
+    this.queue = queue;
+  }
+
+  /** Returns an {@link OpenTelemetry} that uses this logs bridge, to be passed to the appenders. */
+  static OpenTelemetry wrap(OpenTelemetry openTelemetry, MemoryBudgetQueue queue) {
+    MemoryBudgetLogsBridge logsBridge =
+        new MemoryBudgetLogsBridge(openTelemetry.getLogsBridge(), queue);
+    return new OpenTelemetry() {
+      @Override
+      public TracerProvider getTracerProvider() {
+        return openTelemetry.getTracerProvider();
+      }
+
+      @Override
+      public MeterProvider getMeterProvider() {
+        return openTelemetry.getMeterProvider();
+      }
+
+      @Override
+      public LoggerProvider getLogsBridge() {
+        return logsBridge;
+      }
+
+      @Override
+      public ContextPropagators getPropagators() {
+        return openTelemetry.getPropagators();
+      }
+    };
+  }
+
+  @Override
+  public LoggerBuilder loggerBuilder(String instrumentationScopeName) {
+    LoggerBuilder builder = delegate.loggerBuilder(instrumentationScopeName);
+    return new LoggerBuilder() {
+      @Override
+      public LoggerBuilder setSchemaUrl(String schemaUrl) {
+        builder.setSchemaUrl(schemaUrl);
+        return this;
+      }
+
+      @Override
+      public LoggerBuilder setInstrumentationVersion(String instrumentationScopeVersion) {
+        builder.setInstrumentationVersion(instrumentationScopeVersion);
+        return this;
+      }
+
+      @Override
+      public Logger build() {
+        Logger logger = builder.build();
+        return () -> new Builder(logger.logRecordBuilder(), queue);
+      }
+    };
+  }
+
+  static class Builder implements LogRecordBuilder {
+    private final LogRecordBuilder delegate;
+    private final MemoryBudgetQueue queue;
+    private long bytes = MemoryBudget.LOG_RECORD_OVERHEAD;
+    private boolean lowPriority;
+
+    Builder(LogRecordBuilder delegate, MemoryBudgetQueue queue) {
+      this.delegate = delegate;
+      this.queue = queue;
+    }
+
+    @Override
+    public LogRecordBuilder setTimestamp(long timestamp, TimeUnit unit) {
+      delegate.setTimestamp(timestamp, unit);
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setTimestamp(Instant instant) {
+      delegate.setTimestamp(instant);
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setObservedTimestamp(long timestamp, TimeUnit unit) {
+      delegate.setObservedTimestamp(timestamp, unit);
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setObservedTimestamp(Instant instant) {
+      delegate.setObservedTimestamp(instant);
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setContext(Context context) {
+      delegate.setContext(context);
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setSeverity(Severity severity) {
+      int severityNumber = severity.getSeverityNumber();
+      lowPriority =
+          severityNumber > Severity.UNDEFINED_SEVERITY_NUMBER.getSeverityNumber()
+              && severityNumber < Severity.INFO.getSeverityNumber();
+      delegate.setSeverity(severity);
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setSeverityText(String severityText) {
+      bytes += MemoryBudget.estimate(severityText);
+      delegate.setSeverityText(severityText);
+      return this;
+    }
+
+    @Override
+    public LogRecordBuilder setBody(String body) {
+      bytes += MemoryBudget.estimate(body);
+      delegate.setBody(body);
+      return this;
+    }
+
+    @Override
+    public <T> LogRecordBuilder setAttribute(AttributeKey<T> key, T value) {
+      if (key != null && value != null) {
+        bytes += MemoryBudget.estimateAttribute(value);
+      }
+      delegate.setAttribute(key, value);
+      return this;
+    }
+
+    @Override
+    public void emit() {
+      if (queue.offer(bytes, lowPriority)) {
+        delegate.emit();
+      }
+    }
+  }
+}
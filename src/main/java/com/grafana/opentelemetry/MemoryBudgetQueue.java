@@ -0,0 +1,253 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import io.opentelemetry.exporter.logging.SystemOutLogRecordExporter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.logs.export.LogRecordExporter;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accounts the estimated bytes of the items in a queue of a batch processor of the SDK.
+ *
+ * <p>The items are added when they are queued, and released in the same order when the batch
+ * processor passes them to the exporter. The batch processor silently drops items if its queue is
+ * full, so items that are added while the queue (plus the batch that is being exported) is full
+ * are not accounted - otherwise, the budget would stay used by items that are never exported.
+ * Items that have been in the queue for longer than it takes to drain a full queue are released as
+ * well, e.g. the few items that are exported before they are added.
+ *
+ * <p>Spans are estimated when they end without converting them to {@link SpanData}: the name is
+ * counted, and the rest of the span is assumed to be as large as the average span of the last
+ * exported batch.
+ */
+class MemoryBudgetQueue {
+
+  private final MemoryBudget.Account account;
+  private final int capacity;
+  private final long maxAgeNanos;
+  private final Queue<Item> items = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private volatile long averageSpanBytes = MemoryBudget.SPAN_OVERHEAD;
+
+  MemoryBudgetQueue(MemoryBudget.Account account, int capacity, long maxAgeNanos) {
+    this.account = account;
+    this.capacity = capacity;
+    this.maxAgeNanos = maxAgeNanos;
+  }
+
+  /** Uses the defaults of the SDK for the properties that have not been set. */
+  static MemoryBudgetQueue create(
+      MemoryBudget.Account account,
+      GrafanaProperties.BatchProperties batch,
+      Duration defaultScheduleDelay) {
+    int maxQueueSize = batch.getMaxQueueSize() != null ? batch.getMaxQueueSize() : 2048;
+    int maxExportBatchSize =
+        batch.getMaxExportBatchSize() != null ? batch.getMaxExportBatchSize() : 512;
+    Duration scheduleDelay =
+        batch.getScheduleDelay() != null ? batch.getScheduleDelay() : defaultScheduleDelay;
+    Duration exportTimeout =
+        batch.getExportTimeout() != null ? batch.getExportTimeout() : Duration.ofSeconds(30);
+    // the number of exports that it takes to drain a full queue, plus the batch in flight
+    long exports = maxQueueSize / Math.max(1, maxExportBatchSize) + 2;
+    return new MemoryBudgetQueue(
+        account,
+        maxQueueSize + maxExportBatchSize,
+        exports * scheduleDelay.plus(exportTimeout).toNanos());
+  }
+
+  /**
+   * Returns false - and counts the item as shed - if the item should not be queued. Items that
+   * would be dropped by the full queue are not accounted.
+   */
+  boolean offer(long bytes, boolean lowPriority) {
+    long now = System.nanoTime();
+    expire(now);
+    if (!reserve()) {
+      return true;
+    }
+    if (!account.tryAcquire(bytes, lowPriority)) {
+      size.decrementAndGet();
+      return false;
+    }
+    items.add(new Item(bytes, now));
+    return true;
+  }
+
+  /** Adds an item that has already been queued, regardless of the limit. */
+  void add(long bytes) {
+    long now = System.nanoTime();
+    expire(now);
+    if (!reserve()) {
+      // dropped by the full queue
+      return;
+    }
+    items.add(new Item(bytes, now));
+    account.add(bytes);
+  }
+
+  private boolean reserve() {
+    if (size.incrementAndGet() > capacity) {
+      size.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  void exported(int count) {
+    for (int i = 0; i < count; i++) {
+      Item item = items.poll();
+      if (item == null) {
+        break;
+      }
+      release(item);
+    }
+    expire(System.nanoTime());
+  }
+
+  private void expire(long now) {
+    Item oldest;
+    while ((oldest = items.peek()) != null && now - oldest.enqueued > maxAgeNanos) {
+      if (items.remove(oldest)) {
+        release(oldest);
+      }
+    }
+  }
+
+  private void release(Item item) {
+    size.decrementAndGet();
+    account.release(item.bytes);
+  }
+
+  int getSize() {
+    return size.get();
+  }
+
+  long estimate(ReadableSpan span) {
+    return averageSpanBytes + MemoryBudget.estimate(span.getName());
+  }
+
+  private void updateAverageSpanBytes(Collection<SpanData> spans) {
+    if (spans.isEmpty()) {
+      return;
+    }
+    long bytes = 0;
+    for (SpanData span : spans) {
+      bytes += MemoryBudget.estimate(span) - MemoryBudget.estimate(span.getName());
+    }
+    averageSpanBytes = bytes / spans.size();
+  }
+
+  MemoryBudget.Account getAccount() {
+    return account;
+  }
+
+  /**
+   * Adds the sampled spans that are passed to the batch span processor - spans can't be rejected
+   * when they end, so new traces are shed by {@link MemoryBudgetSampler} instead.
+   */
+  SpanProcessor spanProcessor() {
+    return new SpanProcessor() {
+      @Override
+      public void onStart(Context parentContext, ReadWriteSpan span) {}
+
+      @Override
+      public boolean isStartRequired() {
+        return false;
+      }
+
+      @Override
+      public void onEnd(ReadableSpan span) {
+        if (span.getSpanContext().isSampled()) {
+          add(estimate(span));
+        }
+      }
+
+      @Override
+      public boolean isEndRequired() {
+        return true;
+      }
+    };
+  }
+
+  /** Returns the delegate if it is not used with a batch processor. */
+  SpanExporter wrap(SpanExporter delegate) {
+    if (delegate instanceof LoggingSpanExporter) {
+      // exported with a simple processor
+      return delegate;
+    }
+    return new SpanExporter() {
+      @Override
+      public CompletableResultCode export(Collection<SpanData> spans) {
+        updateAverageSpanBytes(spans);
+        exported(spans.size());
+        return delegate.export(spans);
+      }
+
+      @Override
+      public CompletableResultCode flush() {
+        return delegate.flush();
+      }
+
+      @Override
+      public CompletableResultCode shutdown() {
+        return delegate.shutdown();
+      }
+
+      @Override
+      public String toString() {
+        return "MemoryBudgetSpanExporter{delegate=" + delegate + "}";
+      }
+    };
+  }
+
+  /** Returns the delegate if it is not used with a batch processor. */
+  LogRecordExporter wrap(LogRecordExporter delegate) {
+    if (delegate instanceof SystemOutLogRecordExporter) {
+      // exported with a simple processor
+      return delegate;
+    }
+    return new LogRecordExporter() {
+      @Override
+      public CompletableResultCode export(Collection<LogRecordData> logs) {
+        exported(logs.size());
+        return delegate.export(logs);
+      }
+
+      @Override
+      public CompletableResultCode flush() {
+        return delegate.flush();
+      }
+
+      @Override
+      public CompletableResultCode shutdown() {
+        return delegate.shutdown();
+      }
+
+      @Override
+      public String toString() {
+        return "MemoryBudgetLogRecordExporter{delegate=" + delegate + "}";
+      }
+    };
+  }
+
+  private static class Item {
+    private final long bytes;
+    private final long enqueued;
+
+    Item(long bytes, long enqueued) {
+      this.bytes = bytes;
+      this.enqueued = enqueued;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingDecision;
+import io.opentelemetry.sdk.trace.samplers.SamplingResult;
+import java.util.List;
+
+/**
+ * Drops spans that would be sampled if the {@link MemoryBudget} is exhausted.
+ *
+ * <p>New traces have a low priority, and are dropped first - so that the traces that are already
+ * in progress can be completed.
+ */
+class MemoryBudgetSampler implements Sampler {
+
+  private final Sampler delegate;
+  private final MemoryBudget.Account account;
+
+  MemoryBudgetSampler(Sampler delegate, MemoryBudget.Account account) {
+    this.delegate = delegate;
+    this.account = account;
+  }
+
+  @Override
+  public SamplingResult shouldSample(
+      Context parentContext,
+      String traceId,
+      String name,
+      SpanKind spanKind,
+      Attributes attributes,
+      List<LinkData> parentLinks) {
+    SamplingResult result =
+        delegate.shouldSample(parentContext, traceId, name, spanKind, attributes, parentLinks);
+    if (result.getDecision() != SamplingDecision.RECORD_AND_SAMPLE) {
+      return result;
+    }
+    boolean newTrace = !Span.fromContext(parentContext).getSpanContext().isValid();
+    if (account.shouldShed(newTrace)) {
+      account.shed(newTrace);
+      return SamplingResult.drop();
+    }
+    return result;
+  }
+
+  @Override
+  public String getDescription() {
+    return "MemoryBudgetSampler{" + delegate.getDescription() + "}";
+  }
+
+  @Override
+  public String toString() {
+    return getDescription();
+  }
+}
@@ -2,54 +2,115 @@ package com.grafana.opentelemetry;
 
 import io.micrometer.core.instrument.Clock;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.observation.MeterObservationHandler;
+import io.micrometer.observation.Observation;
 import io.opentelemetry.api.OpenTelemetry;
 import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.instrumentation.micrometer.v1_5.OpenTelemetryMeterRegistry;
 import io.opentelemetry.sdk.autoconfigure.AutoConfiguredOpenTelemetrySdk;
 import io.opentelemetry.sdk.autoconfigure.AutoConfiguredOpenTelemetrySdkBuilder;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+import io.opentelemetry.sdk.logs.export.LogRecordExporter;
 import io.opentelemetry.sdk.metrics.Aggregation;
 import io.opentelemetry.sdk.metrics.InstrumentSelector;
 import io.opentelemetry.sdk.metrics.InstrumentType;
 import io.opentelemetry.sdk.metrics.SdkMeterProviderBuilder;
 import io.opentelemetry.sdk.metrics.View;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
 import io.opentelemetry.sdk.metrics.internal.aggregator.ExplicitBucketHistogramUtils;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
 import io.opentelemetry.semconv.ResourceAttributes;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.jar.Attributes;
+import java.util.function.BiFunction;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 import org.apache.logging.log4j.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.actuate.autoconfigure.observation.ObservationAutoConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.Ordered;
 
 @Configuration(proxyBeanMethods = false)
+@AutoConfigureBefore(ObservationAutoConfiguration.class)
 @ConditionalOnProperty(value = "grafana.otlp.enabled", havingValue = "true", matchIfMissing = true)
 @EnableConfigurationProperties(GrafanaProperties.class)
+@ImportRuntimeHints(OpenTelemetryRuntimeHints.class)
 @PropertySource(value = {"classpath:grafana-otel-starter.properties"})
 public class OpenTelemetryConfig {
 
   public static final String DISTRIBUTION_NAME = "telemetry.distro.name";
   public static final String DISTRIBUTION_VERSION = "telemetry.distro.version";
 
+  static final String INSTRUMENTATION_SCOPE_NAME = "com.grafana.opentelemetry";
+
   private static final Logger logger = LoggerFactory.getLogger(OpenTelemetryConfig.class);
 
+  private static final AttributeKey<String> STARTUP_PHASE = AttributeKey.stringKey("phase");
+
+  // the defaults of exponential histograms, see GrafanaProperties.HistogramProperties
+  private static final int DEFAULT_MAX_BUCKETS = 160;
+  private static final int DEFAULT_MAX_SCALE = 20;
+
   public static final String OTLP_HEADERS = "otel.exporter.otlp.headers";
 
   @Bean
-  public MeterRegistry openTelemetryMeterRegistry(OpenTelemetry openTelemetry, Clock clock) {
+  public MeterRegistry openTelemetryMeterRegistry(
+      OpenTelemetry openTelemetry, Clock clock, GrafanaProperties properties) {
+    MeterRegistry registry;
+    DeferredOpenTelemetry deferred = null;
+    if (openTelemetry instanceof DeferredOpenTelemetry) {
+      // the meters are added to the OpenTelemetry registry when the SDK is ready
+      deferred = (DeferredOpenTelemetry) openTelemetry;
+      CompositeMeterRegistry composite = new CompositeMeterRegistry(clock);
+      deferred.onReady(sdk -> composite.add(createMeterRegistry(sdk, clock)));
+      registry = composite;
+    } else {
+      registry = createMeterRegistry(openTelemetry, clock);
+    }
+    // the meters are filtered first, so that excluded tags are not counted for the limit
+    IncludeExcludeMeterFilter includeExclude =
+        IncludeExcludeMeterFilter.create(properties.getMetrics());
+    if (includeExclude != null) {
+      registry.config().meterFilter(includeExclude);
+    }
+    CardinalityLimitMeterFilter cardinalityLimit =
+        CardinalityLimitMeterFilter.create(properties.getMetrics());
+    if (cardinalityLimit != null) {
+      registry.config().meterFilter(cardinalityLimit);
+      if (deferred != null) {
+        deferred.onReady(cardinalityLimit::registerMetrics);
+      } else {
+        cardinalityLimit.registerMetrics(openTelemetry);
+      }
+    }
+    return registry;
+  }
+
+  private static MeterRegistry createMeterRegistry(OpenTelemetry openTelemetry, Clock clock) {
     // note: add setting histogramGaugesEnabled in new otel version
     return OpenTelemetryMeterRegistry.builder(openTelemetry)
         .setClock(clock)
@@ -57,63 +118,432 @@ public class OpenTelemetryConfig {
         .build();
   }
 
+  /**
+   * Replaces the default meter observation handler of Spring Boot, which would record the same
+   * observations as Micrometer timers.
+   */
+  @Bean
+  @ConditionalOnProperty(value = "grafana.otlp.metrics.nativeObservations", havingValue = "true")
+  public MeterObservationHandler<Observation.Context> openTelemetryObservationHandler(
+      OpenTelemetry openTelemetry, GrafanaProperties properties) {
+    return new OpenTelemetryObservationHandler(openTelemetry, properties.getMetrics());
+  }
+
   @Bean
   public OpenTelemetry openTelemetry(
       Optional<AutoConfiguredOpenTelemetrySdk> sdk,
-      List<LogAppenderConfigurer> logAppenderConfigurers) {
-    OpenTelemetry openTelemetry =
-        sdk.<OpenTelemetry>map(AutoConfiguredOpenTelemetrySdk::getOpenTelemetrySdk)
-            .orElse(OpenTelemetry.noop());
+      GrafanaProperties properties,
+      List<LogAppenderConfigurer> logAppenderConfigurers,
+      Optional<MemoryBudget> memoryBudget,
+      Optional<ShutdownFlush> shutdownFlush,
+      Optional<PipelineHealth> pipelineHealth,
+      @Value("${spring.application.name:#{null}}") String applicationName) {
+    OpenTelemetry openTelemetry;
+    if (isDeferred(properties.getStartup())) {
+      logger.info("creating OpenTelemetry SDK in the background (grafana.otlp.startup.mode)");
+      openTelemetry =
+          DeferredOpenTelemetry.start(
+              properties.getStartup(),
+              () ->
+                  autoConfiguredOpenTelemetrySdk(
+                      properties, applicationName, memoryBudget, shutdownFlush, pipelineHealth));
+    } else {
+      openTelemetry =
+          sdk.<OpenTelemetry>map(AutoConfiguredOpenTelemetrySdk::getOpenTelemetrySdk)
+              .orElse(OpenTelemetry.noop());
+    }
 
-    tryAddAppender(openTelemetry, logAppenderConfigurers);
+    // only the appenders are limited by the memory budget
+    OpenTelemetry appenderOpenTelemetry =
+        memoryBudget
+            .map(b -> MemoryBudgetLogsBridge.wrap(openTelemetry, b.getLogsQueue()))
+            .orElse(openTelemetry);
+    tryAddAppender(appenderOpenTelemetry, properties.getLogs(), logAppenderConfigurers);
     return openTelemetry;
   }
 
+  @Bean
+  @ConditionalOnProperty("grafana.otlp.memory.limit")
+  MemoryBudget grafanaMemoryBudget(GrafanaProperties properties) {
+    return MemoryBudget.create(properties);
+  }
+
+  @Bean
+  ShutdownFlush grafanaShutdownFlush(
+      GrafanaProperties properties, List<LogAppenderConfigurer> logAppenderConfigurers) {
+    return new ShutdownFlush(properties.getShutdown().getTimeout(), logAppenderConfigurers);
+  }
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(value = "grafana.otlp.pipelineHealth.enabled", havingValue = "true")
+  PipelineHealth grafanaPipelineHealth(GrafanaProperties properties) {
+    return PipelineHealth.create(properties);
+  }
+
+  @Bean
+  @ConditionalOnProperty(value = "grafana.otlp.pipelineHealth.enabled", havingValue = "true")
+  @ConditionalOnAvailableEndpoint
+  PipelineHealthEndpoint grafanaPipelineHealthEndpoint(PipelineHealth pipelineHealth) {
+    return new PipelineHealthEndpoint(pipelineHealth);
+  }
+
+  /** Runs before the observation filter, which starts the server span. */
+  @Configuration(proxyBeanMethods = false)
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  @ConditionalOnProperty(value = "grafana.otlp.traces.sampling.enabled", havingValue = "true")
+  static class RequestPathConfig {
+
+    @Bean
+    FilterRegistrationBean<RequestPathFilter> grafanaRequestPathFilter() {
+      FilterRegistrationBean<RequestPathFilter> registration =
+          new FilterRegistrationBean<>(new RequestPathFilter());
+      registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+      return registration;
+    }
+  }
+
   static void tryAddAppender(
-      OpenTelemetry openTelemetry, List<LogAppenderConfigurer> logAppenderConfigurers) {
+      OpenTelemetry openTelemetry,
+      GrafanaProperties.LogsProperties properties,
+      List<LogAppenderConfigurer> logAppenderConfigurers) {
     if (logAppenderConfigurers.isEmpty()) {
       logger.warn("no logging library found - OpenTelemetryAppender not added");
     } else {
       logAppenderConfigurers.forEach(
-          logAppenderConfigurer -> logAppenderConfigurer.tryAddAppender(openTelemetry));
+          logAppenderConfigurer -> logAppenderConfigurer.tryAddAppender(openTelemetry, properties));
     }
   }
 
+  static boolean isDeferred(GrafanaProperties.StartupProperties properties) {
+    String mode = properties.getMode();
+    if (Strings.isBlank(mode) || mode.trim().equalsIgnoreCase("eager")) {
+      return false;
+    }
+    if (mode.trim().equalsIgnoreCase("deferred")) {
+      return true;
+    }
+    logger.warn("ignoring grafana.otlp.startup.mode, unknown mode: {}", mode);
+    return false;
+  }
+
+  /** In deferred startup mode, the SDK is created by {@link #openTelemetry} in the background. */
   @Bean
+  @ConditionalOnExpression(
+      "!'${grafana.otlp.startup.mode:eager}'.trim().equalsIgnoreCase('deferred')")
   public AutoConfiguredOpenTelemetrySdk autoConfiguredOpenTelemetrySdk(
       GrafanaProperties properties,
-      @Value("${spring.application.name:#{null}}") String applicationName) {
+      @Value("${spring.application.name:#{null}}") String applicationName,
+      Optional<MemoryBudget> memoryBudget,
+      Optional<ShutdownFlush> shutdownFlush,
+      Optional<PipelineHealth> pipelineHealth) {
+    MemoryBudget budget = memoryBudget.orElse(null);
+    ShutdownFlush flush = shutdownFlush.orElse(null);
+    PipelineHealth health = pipelineHealth.orElse(null);
     AutoConfiguredOpenTelemetrySdkBuilder builder = AutoConfiguredOpenTelemetrySdk.builder();
-    builder.addMeterProviderCustomizer((b, configProperties) -> customizeMeterBuilder(b));
+    if (flush != null) {
+      // the SDK is flushed when the application context is closed, after the web server
+      builder.registerShutdownHook(false);
+    }
+    GrafanaProperties.HistogramProperties histogram = properties.getMetrics().getHistogram();
+    Aggregation histogramAggregation = getHistogramAggregation(histogram);
+    builder.addMeterProviderCustomizer(
+        (b, configProperties) -> customizeMeterBuilder(b, properties.getMetrics()));
+    GrafanaProperties.BufferProperties buffer = properties.getBuffer();
+    GrafanaProperties.ExportProperties export = properties.getExport();
+    GrafanaProperties.CircuitBreakerProperties circuitBreaker = properties.getCircuitBreaker();
+    List<CircuitBreakerExporter<?>> circuitBreakers = new ArrayList<>();
+    // shared by all exporters of a signal
+    MemoryBudget.Account metricsState = account(budget, "metrics", "stale_series");
+    MemoryBudget.Account metricsInFlight = account(budget, "metrics", "in_flight");
+    MemoryBudget.Account metricsBuffer = account(budget, "metrics", "disk_buffer");
+    MemoryBudget.Account logsInFlight = account(budget, "logs", "in_flight");
+    MemoryBudget.Account logsBuffer = account(budget, "logs", "disk_buffer");
+    MemoryBudget.Account tracesInFlight = account(budget, "traces", "in_flight");
+    MemoryBudget.Account tracesBuffer = account(budget, "traces", "disk_buffer");
+    builder.addMetricExporterCustomizer(
+        (exporter, configProperties) -> {
+          MetricExporter measured = health == null ? exporter : health.wrap(exporter);
+          MetricExporter buffered =
+              DiskBufferingExporter.wrap(
+                  CircuitBreakerExporter.wrap(measured, circuitBreaker, circuitBreakers),
+                  buffer,
+                  configProperties,
+                  metricsBuffer);
+          MetricExporter concurrent =
+              ConcurrentExporter.wrap(
+                  buffered, export, properties.getShutdown().getTimeout(), metricsInFlight);
+          MetricExporter wrapped =
+              StaleSeriesMetricExporter.wrap(
+                  new HistogramAggregationMetricExporter(concurrent, histogramAggregation),
+                  properties.getMetrics().getStaleIntervals(),
+                  configProperties.getDuration(
+                      "otel.metric.export.interval", Duration.ofMinutes(1)),
+                  !isExponential(histogram),
+                  metricsState);
+          if (flush == null) {
+            return wrapped;
+          }
+          flush.getMetrics().track(DiskBufferingExporter.unwrap(buffered));
+          flush.getMetrics().track(ConcurrentExporter.unwrap(concurrent));
+          return flush.wrap(wrapped);
+        });
+    BiFunction<LogRecordExporter, ConfigProperties, LogRecordExporter> customizeLogExporter =
+        (exporter, configProperties) -> {
+          LogRecordExporter measured = health == null ? exporter : health.wrap(exporter);
+          LogRecordExporter buffered =
+              DiskBufferingExporter.wrap(
+                  CircuitBreakerExporter.wrap(measured, circuitBreaker, circuitBreakers),
+                  buffer,
+                  configProperties,
+                  logsBuffer);
+          LogRecordExporter wrapped =
+              ConcurrentExporter.wrap(
+                  buffered, export, properties.getShutdown().getTimeout(), logsInFlight);
+          if (flush != null) {
+            flush.getLogs().track(DiskBufferingExporter.unwrap(buffered));
+            flush.getLogs().track(ConcurrentExporter.unwrap(wrapped));
+          }
+          if (budget != null) {
+            wrapped = budget.getLogsQueue().wrap(wrapped);
+          }
+          if (health != null) {
+            wrapped = health.wrapQueue(exporter, wrapped);
+          }
+          return flush == null ? wrapped : flush.wrap(wrapped);
+        };
+    builder.addLogRecordExporterCustomizer(customizeLogExporter);
+    builder.addSamplerCustomizer(
+        (sampler, configProperties) -> {
+          Sampler customized = customizeSampler(sampler, properties.getTraces());
+          return budget == null
+              ? customized
+              : new MemoryBudgetSampler(customized, budget.getTracesQueue().getAccount());
+        });
+    if (budget != null) {
+      builder.addTracerProviderCustomizer(
+          (b, configProperties) -> b.addSpanProcessor(budget.getTracesQueue().spanProcessor()));
+    }
+    if (health != null) {
+      builder.addTracerProviderCustomizer(
+          (b, configProperties) -> b.addSpanProcessor(health.spanProcessor()));
+      builder.addLoggerProviderCustomizer(
+          (b, configProperties) -> b.addLogRecordProcessor(health.logRecordProcessor()));
+    }
+    List<TailSamplingSpanExporter> tailSamplingExporters = new ArrayList<>();
+    BiFunction<SpanExporter, ConfigProperties, SpanExporter> customizeSpanExporter =
+        (exporter, configProperties) -> {
+          SpanExporter measured = health == null ? exporter : health.wrap(exporter);
+          SpanExporter buffered =
+              DiskBufferingExporter.wrap(
+                  CircuitBreakerExporter.wrap(measured, circuitBreaker, circuitBreakers),
+                  buffer,
+                  configProperties,
+                  tracesBuffer);
+          SpanExporter concurrent =
+              ConcurrentExporter.wrap(
+                  buffered, export, properties.getShutdown().getTimeout(), tracesInFlight);
+          if (flush != null) {
+            flush.getTraces().track(DiskBufferingExporter.unwrap(buffered));
+            flush.getTraces().track(ConcurrentExporter.unwrap(concurrent));
+          }
+          SpanExporter wrapped =
+              TailSamplingSpanExporter.wrap(
+                  exporter,
+                  concurrent,
+                  properties.getTraces().getTailSampling(),
+                  budget,
+                  properties.getShutdown().getTimeout());
+          if (wrapped instanceof TailSamplingSpanExporter) {
+            tailSamplingExporters.add((TailSamplingSpanExporter) wrapped);
+          }
+          if (budget != null) {
+            wrapped = budget.getTracesQueue().wrap(wrapped);
+          }
+          if (health != null) {
+            wrapped = health.wrapQueue(exporter, wrapped);
+          }
+          return flush == null ? wrapped : flush.wrap(wrapped);
+        };
+    builder.addSpanExporterCustomizer(customizeSpanExporter);
+    GrafanaProperties.BatchProperties tracesBatch = properties.getTraces().getBatch();
+    if (tracesBatch.isAdaptive()) {
+      builder.addTracerProviderCustomizer(
+          (b, configProperties) -> {
+            SpanExporter exporter = AdaptiveBatchProcessor.createOtlpSpanExporter(configProperties);
+            return exporter == null
+                ? b
+                : b.addSpanProcessor(
+                    AdaptiveBatchProcessor.create(
+                        customizeSpanExporter.apply(exporter, configProperties), tracesBatch));
+          });
+    }
+    GrafanaProperties.BatchProperties logsBatch = properties.getLogs().getBatch();
+    if (logsBatch.isAdaptive()) {
+      builder.addLoggerProviderCustomizer(
+          (b, configProperties) -> {
+            LogRecordExporter exporter =
+                AdaptiveBatchProcessor.createOtlpLogRecordExporter(configProperties);
+            return exporter == null
+                ? b
+                : b.addLogRecordProcessor(
+                    AdaptiveBatchProcessor.create(
+                        customizeLogExporter.apply(exporter, configProperties), logsBatch));
+          });
+    }
+
+    ResourceDetector resourceDetector = ResourceDetector.create(properties.getResource());
+    builder.addPropertiesCustomizer(resourceDetector::customizeProperties);
+    // the configured resource attributes take precedence over the detected ones
+    builder.addResourceCustomizer(
+        (resource, configProperties) -> resourceDetector.detect(configProperties).merge(resource));
 
+    // e.g. the host name lookup of the resource attributes
+    long configStart = System.nanoTime();
     Map<String, String> configProperties = getConfigProperties(properties, applicationName);
+    long configNanos = System.nanoTime() - configStart;
     builder.addPropertiesSupplier(() -> configProperties);
     logger.info("using config properties: {}", maskAuthHeader(configProperties));
+    if (health != null) {
+      health.setConfigProperties(maskAuthHeader(configProperties));
+    }
 
     try {
-      return builder.build();
+      long sdkStart = System.nanoTime();
+      AutoConfiguredOpenTelemetrySdk sdk = builder.build();
+      long sdkNanos = System.nanoTime() - sdkStart;
+      registerStartupMetrics(sdk.getOpenTelemetrySdk(), configNanos, sdkNanos);
+      tailSamplingExporters.forEach(e -> e.registerMetrics(sdk.getOpenTelemetrySdk()));
+      CircuitBreakerExporter.registerMetrics(sdk.getOpenTelemetrySdk(), circuitBreakers);
+      if (budget != null) {
+        budget.registerMetrics(sdk.getOpenTelemetrySdk());
+      }
+      if (flush != null) {
+        flush.setSdk(sdk.getOpenTelemetrySdk());
+      }
+      if (health != null) {
+        health.registerMetrics(sdk.getOpenTelemetrySdk());
+      }
+      return sdk;
     } catch (Exception e) {
       logger.warn("unable to create OpenTelemetry instance", e);
       return null;
     }
   }
 
-  private static SdkMeterProviderBuilder customizeMeterBuilder(
-      SdkMeterProviderBuilder meterProviderBuilder) {
+  private static MemoryBudget.Account account(MemoryBudget budget, String signal, String queue) {
+    return budget == null ? null : budget.account(signal, queue);
+  }
+
+  private static void registerStartupMetrics(
+      OpenTelemetry openTelemetry, long configNanos, long sdkNanos) {
+    Attributes config = Attributes.of(STARTUP_PHASE, "config");
+    Attributes sdk = Attributes.of(STARTUP_PHASE, "sdk");
+    openTelemetry
+        .getMeter(INSTRUMENTATION_SCOPE_NAME)
+        .gaugeBuilder("grafana.otlp.startup.duration")
+        .setUnit("s")
+        .setDescription("The time it took to create the OpenTelemetry SDK, per phase")
+        .buildWithCallback(
+            m -> {
+              m.record(configNanos / 1e9, config);
+              m.record(sdkNanos / 1e9, sdk);
+            });
+  }
+
+  static SdkMeterProviderBuilder customizeMeterBuilder(
+      SdkMeterProviderBuilder meterProviderBuilder,
+      GrafanaProperties.MetricsProperties properties) {
+    // also drops instruments that are not bridged from Micrometer
+    for (String name : properties.getExclude()) {
+      meterProviderBuilder.registerView(
+          InstrumentSelector.builder().setName(name.trim()).build(),
+          View.builder().setAggregation(Aggregation.drop()).build());
+    }
+    properties
+        .getHistogram()
+        .getBuckets()
+        .forEach(
+            (name, boundaries) -> {
+              // a second view would create a second metric stream that is not dropped
+              if (IncludeExcludeMeterFilter.isExcluded(properties, name)) {
+                logger.warn(
+                    "ignoring grafana.otlp.metrics.histogram.buckets.{}, the histogram is excluded",
+                    name);
+                return;
+              }
+              Aggregation aggregation;
+              try {
+                aggregation = Aggregation.explicitBucketHistogram(boundaries);
+              } catch (IllegalArgumentException e) {
+                logger.warn(
+                    "ignoring grafana.otlp.metrics.histogram.buckets.{}, {}: {}",
+                    name,
+                    e.getMessage(),
+                    boundaries);
+                return;
+              }
+              meterProviderBuilder.registerView(
+                  InstrumentSelector.builder()
+                      .setType(InstrumentType.HISTOGRAM)
+                      .setName(name)
+                      .build(),
+                  View.builder().setAggregation(aggregation).build());
+            });
+    return meterProviderBuilder;
+  }
+
+  /**
+   * The default aggregation of histograms, which is used for all histograms without explicit
+   * buckets.
+   */
+  static Aggregation getHistogramAggregation(GrafanaProperties.HistogramProperties properties) {
+    String aggregation = properties.getAggregation();
+    if (isExponential(properties)) {
+      // the limits of the SDK, which would otherwise fail the startup
+      int maxBuckets = properties.getMaxBuckets();
+      if (maxBuckets < 2) {
+        logger.warn(
+            "ignoring grafana.otlp.metrics.histogram.maxBuckets, must be at least 2: {}",
+            maxBuckets);
+        maxBuckets = DEFAULT_MAX_BUCKETS;
+      }
+      int maxScale = properties.getMaxScale();
+      if (maxScale < -10 || maxScale > 20) {
+        logger.warn(
+            "ignoring grafana.otlp.metrics.histogram.maxScale, must be between -10 and 20: {}",
+            maxScale);
+        maxScale = DEFAULT_MAX_SCALE;
+      }
+      return Aggregation.base2ExponentialBucketHistogram(maxBuckets, maxScale);
+    }
+    if (!"explicit".equalsIgnoreCase(aggregation)) {
+      logger.warn(
+          "ignoring grafana.otlp.metrics.histogram.aggregation, unknown aggregation: {}",
+          aggregation);
+    }
     // workaround for bug that bucket boundaries are not scaled correctly: bucket boundaries for
     // seconds
     List<Double> buckets =
         ExplicitBucketHistogramUtils.DEFAULT_HISTOGRAM_BUCKET_BOUNDARIES.stream()
             .map(d -> d * 0.001)
             .collect(Collectors.toList());
+    return Aggregation.explicitBucketHistogram(buckets);
+  }
 
-    meterProviderBuilder.registerView(
-        InstrumentSelector.builder().setType(InstrumentType.HISTOGRAM).build(),
-        View.builder().setAggregation(Aggregation.explicitBucketHistogram(buckets)).build());
-    return meterProviderBuilder;
+  private static boolean isExponential(GrafanaProperties.HistogramProperties properties) {
+    return "exponential".equalsIgnoreCase(properties.getAggregation());
+  }
+
+  static Sampler customizeSampler(Sampler sampler, GrafanaProperties.TracesProperties properties) {
+    Sampler rateLimitingSampler = RateLimitingSampler.create(properties.getSampling());
+    if (rateLimitingSampler == null) {
+      return sampler;
+    }
+    logger.info("replacing sampler {} with {}", sampler, rateLimitingSampler);
+    return rateLimitingSampler;
   }
 
-  private static Map<String, String> getConfigProperties(
+  static Map<String, String> getConfigProperties(
       GrafanaProperties properties, String applicationName) {
     String exporters = properties.isDebugLogging() ? "logging,otlp" : "otlp";
 
@@ -125,15 +555,90 @@ public class OpenTelemetryConfig {
             Map.of(
                 "otel.resource.attributes", getResourceAttributes(properties, applicationName),
                 "otel.exporter.otlp.protocol", getProtocol(onPrem.getProtocol(), authHeader),
-                "otel.traces.exporter", exporters,
+                "otel.traces.exporter",
+                getExporters(properties, properties.getTraces().getBatch()),
                 "otel.metrics.exporter", exporters,
-                "otel.logs.exporter", exporters));
+                "otel.logs.exporter",
+                getExporters(properties, properties.getLogs().getBatch())));
     authHeader.ifPresent(s -> configProperties.put(OTLP_HEADERS, s));
     getEndpoint(onPrem.getEndpoint(), cloud.getZone(), authHeader)
         .ifPresent(s -> configProperties.put("otel.exporter.otlp.endpoint", s));
+    addCompression(configProperties, properties.getCompression());
+    if (properties.getRetry().isEnabled()) {
+      // exponential backoff with jitter for retryable responses, e.g. 429 or UNAVAILABLE
+      configProperties.put("otel.experimental.exporter.otlp.retry.enabled", "true");
+    }
+    addTemporality(configProperties, properties.getMetrics().getTemporality());
+    addBatchProperties(configProperties, "otel.bsp", properties.getTraces().getBatch());
+    addBatchProperties(configProperties, "otel.blrp", properties.getLogs().getBatch());
     return configProperties;
   }
 
+  /** With the adaptive batch processor, the OTLP exporter is created by the starter. */
+  private static String getExporters(
+      GrafanaProperties properties, GrafanaProperties.BatchProperties batch) {
+    if (batch.isAdaptive()) {
+      return properties.isDebugLogging() ? "logging" : "none";
+    }
+    return properties.isDebugLogging() ? "logging,otlp" : "otlp";
+  }
+
+  static void addCompression(Map<String, String> configProperties, String compression) {
+    if (Strings.isBlank(compression)) {
+      return;
+    }
+    String value = compression.trim().toLowerCase(Locale.ROOT);
+    // the OTLP exporters of this SDK version only support these
+    if (!List.of("gzip", "none").contains(value)) {
+      logger.warn("ignoring grafana.otlp.compression, unknown compression: {}", compression);
+      return;
+    }
+    configProperties.put("otel.exporter.otlp.compression", value);
+  }
+
+  static void addTemporality(Map<String, String> configProperties, String temporality) {
+    if (Strings.isBlank(temporality)) {
+      return;
+    }
+    String value = temporality.trim().toLowerCase(Locale.ROOT);
+    if (!List.of("cumulative", "delta", "lowmemory").contains(value)) {
+      logger.warn(
+          "ignoring grafana.otlp.metrics.temporality, unknown temporality: {}", temporality);
+      return;
+    }
+    configProperties.put("otel.exporter.otlp.metrics.temporality.preference", value);
+  }
+
+  static void addBatchProperties(
+      Map<String, String> configProperties,
+      String prefix,
+      GrafanaProperties.BatchProperties batch) {
+    Integer maxQueueSize = batch.getMaxQueueSize();
+    Integer maxExportBatchSize = batch.getMaxExportBatchSize();
+    if (maxQueueSize != null && maxExportBatchSize != null && maxExportBatchSize > maxQueueSize) {
+      logger.warn(
+          "{}.max.export.batch.size ({}) is larger than {}.max.queue.size ({})",
+          prefix,
+          maxExportBatchSize,
+          prefix,
+          maxQueueSize);
+    }
+    if (maxQueueSize != null) {
+      configProperties.put(prefix + ".max.queue.size", maxQueueSize.toString());
+    }
+    if (maxExportBatchSize != null) {
+      configProperties.put(prefix + ".max.export.batch.size", maxExportBatchSize.toString());
+    }
+    if (batch.getScheduleDelay() != null) {
+      configProperties.put(
+          prefix + ".schedule.delay", Long.toString(batch.getScheduleDelay().toMillis()));
+    }
+    if (batch.getExportTimeout() != null) {
+      configProperties.put(
+          prefix + ".export.timeout", Long.toString(batch.getExportTimeout().toMillis()));
+    }
+  }
+
   static String getProtocol(String protocol, Optional<String> authHeader) {
     boolean hasProto = Strings.isNotBlank(protocol);
     if (authHeader.isPresent()) {
@@ -211,13 +716,15 @@ public class OpenTelemetryConfig {
   private static String getResourceAttributes(
       GrafanaProperties properties, String applicationName) {
     Map<String, String> resourceAttributes = properties.getGlobalAttributes();
+    // runs while the manifest is read
+    Future<String> hostNameLookup = ResourceDetector.lookupHostName();
 
     String manifestApplicationName = null;
     String manifestApplicationVersion = null;
     try {
       Manifest mf = new Manifest();
       mf.read(ClassLoader.getSystemResourceAsStream("META-INF/MANIFEST.MF"));
-      Attributes atts = mf.getMainAttributes();
+      java.util.jar.Attributes atts = mf.getMainAttributes();
 
       Object n = atts.getValue("Implementation-Title");
       if (n != null) {
@@ -239,16 +746,14 @@ public class OpenTelemetryConfig {
     updateResourceAttribute(
         resourceAttributes, ResourceAttributes.SERVICE_VERSION, manifestApplicationVersion);
 
-    String hostName;
-    try {
-      hostName = InetAddress.getLocalHost().getHostName();
-    } catch (UnknownHostException e) {
-      hostName = System.getenv("HOSTNAME");
-    }
+    String hostName =
+        ResourceDetector.getHostName(
+            hostNameLookup, properties.getResource().getDetectionTimeout());
     updateResourceAttribute(
         resourceAttributes,
         ResourceAttributes.SERVICE_INSTANCE_ID,
         hostName,
+        System.getenv("HOSTNAME"),
         System.getenv("HOST"));
 
     resourceAttributes.put(DISTRIBUTION_NAME, "grafana-opentelemetry-starter");
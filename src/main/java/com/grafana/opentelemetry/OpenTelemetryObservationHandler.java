@@ -0,0 +1,278 @@
+package com.grafana.opentelemetry;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.common.KeyValues;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.config.MeterFilterReply;
+import io.micrometer.core.instrument.observation.MeterObservationHandler;
+import io.micrometer.observation.Observation;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.semconv.SemanticAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the duration of observations directly on OpenTelemetry histograms, instead of creating
+ * Micrometer timers that are bridged to OpenTelemetry.
+ *
+ * <p>HTTP server and client requests are recorded as <code>http.server.request.duration</code> and
+ * <code>http.client.request.duration</code> with the attributes of the semantic conventions. Other
+ * observations (e.g. <code>@Observed</code>) are recorded with the name of the observation and
+ * their low cardinality key values as attributes. Events are counted like Micrometer does, as
+ * <code>&lt;observation name&gt;.&lt;event name&gt;</code>.
+ *
+ * <p>The key values are filtered like the tags of Micrometer meters ({@link
+ * IncludeExcludeMeterFilter}, {@link CardinalityLimitMeterFilter}), with the names that the
+ * Micrometer meters would have - e.g. <code>http.server.requests</code>.
+ *
+ * <p>The attributes are cached by key values, so that they are only converted once.
+ *
+ * <p>In deferred startup mode, the instruments are created again when the SDK is ready - the ones
+ * that were created before are no-ops.
+ */
+class OpenTelemetryObservationHandler implements MeterObservationHandler<Observation.Context> {
+
+  static final String HTTP_SERVER_REQUESTS = "http.server.requests";
+  static final String HTTP_CLIENT_REQUESTS = "http.client.requests";
+
+  static final AttributeKey<String> ERROR_TYPE = AttributeKey.stringKey("error.type");
+  // not part of the semantic conventions version of this SDK yet
+  static final AttributeKey<String> URL_TEMPLATE = AttributeKey.stringKey("url.template");
+
+  enum Kind {
+    HTTP_SERVER,
+    HTTP_CLIENT,
+    OTHER
+  }
+
+  private static final int MAX_CACHED_ATTRIBUTES = 1000;
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final Map<String, Instrument> instruments = new ConcurrentHashMap<>();
+  private final Map<String, Instrument> events = new ConcurrentHashMap<>();
+  private final IncludeExcludeMeterFilter includeExclude;
+  private final CardinalityLimitMeterFilter cardinalityLimit;
+  private volatile Meter meter;
+
+  OpenTelemetryObservationHandler(
+      OpenTelemetry openTelemetry, GrafanaProperties.MetricsProperties properties) {
+    this.meter = openTelemetry.getMeter(OpenTelemetryConfig.INSTRUMENTATION_SCOPE_NAME);
+    this.includeExclude = IncludeExcludeMeterFilter.create(properties);
+    // separate from the limit of the meter registry - the names don't overlap, because
+    // observations are not recorded as Micrometer meters
+    this.cardinalityLimit = CardinalityLimitMeterFilter.create(properties);
+    if (openTelemetry instanceof DeferredOpenTelemetry) {
+      DeferredOpenTelemetry deferred = (DeferredOpenTelemetry) openTelemetry;
+      deferred.onReady(sdk -> meter = sdk.getMeter(OpenTelemetryConfig.INSTRUMENTATION_SCOPE_NAME));
+      if (cardinalityLimit != null) {
+        deferred.onReady(cardinalityLimit::registerMetrics);
+      }
+    } else if (cardinalityLimit != null) {
+      cardinalityLimit.registerMetrics(openTelemetry);
+    }
+  }
+
+  @Override
+  public boolean supportsContext(Observation.Context context) {
+    return true;
+  }
+
+  @Override
+  public void onStart(Observation.Context context) {
+    context.put(OpenTelemetryObservationHandler.class, System.nanoTime());
+  }
+
+  @Override
+  public void onStop(Observation.Context context) {
+    Long start = context.get(OpenTelemetryObservationHandler.class);
+    if (start == null) {
+      return;
+    }
+    double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+    Meter current = meter;
+    Instrument instrument = instruments.get(context.getName());
+    if (instrument == null || instrument.meter != current) {
+      // e.g. the instrument was created before the SDK was ready
+      instrument = createInstrument(current, context.getName());
+      instruments.put(context.getName(), instrument);
+    }
+    if (instrument.histogram != null) {
+      instrument.histogram.record(seconds, instrument.getAttributes(context));
+    }
+  }
+
+  @Override
+  public void onEvent(Observation.Event event, Observation.Context context) {
+    String name = context.getName() + "." + event.getName();
+    Meter current = meter;
+    Instrument instrument = events.get(name);
+    if (instrument == null || instrument.meter != current) {
+      instrument =
+          new Instrument(
+              current,
+              name,
+              Kind.OTHER,
+              null,
+              current.counterBuilder(name).setDescription(event.getContextualName()).build());
+      events.put(name, instrument);
+    }
+    if (instrument.counter != null) {
+      instrument.counter.add(1, instrument.getAttributes(context));
+    }
+  }
+
+  private Instrument createInstrument(Meter meter, String observationName) {
+    switch (observationName) {
+      case HTTP_SERVER_REQUESTS:
+        return new Instrument(
+            meter,
+            observationName,
+            Kind.HTTP_SERVER,
+            histogram(meter, "http.server.request.duration", "Duration of HTTP server requests."),
+            null);
+      case HTTP_CLIENT_REQUESTS:
+        return new Instrument(
+            meter,
+            observationName,
+            Kind.HTTP_CLIENT,
+            histogram(meter, "http.client.request.duration", "Duration of HTTP client requests."),
+            null);
+      default:
+        return new Instrument(
+            meter,
+            observationName,
+            Kind.OTHER,
+            histogram(meter, observationName, "Duration of " + observationName),
+            null);
+    }
+  }
+
+  private static DoubleHistogram histogram(Meter meter, String name, String description) {
+    return meter.histogramBuilder(name).setUnit("s").setDescription(description).build();
+  }
+
+  private boolean isExcluded(String name) {
+    return includeExclude != null
+        && includeExclude.accept(micrometerId(name, Tags.empty())) == MeterFilterReply.DENY;
+  }
+
+  /** Applies the tag filters and the cardinality limit of the Micrometer meter with this name. */
+  KeyValues filter(String name, KeyValues keyValues) {
+    if (includeExclude == null && cardinalityLimit == null) {
+      return keyValues;
+    }
+    List<Tag> tags = new ArrayList<>();
+    for (KeyValue keyValue : keyValues) {
+      tags.add(Tag.of(keyValue.getKey(), keyValue.getValue()));
+    }
+    io.micrometer.core.instrument.Meter.Id id = micrometerId(name, Tags.of(tags));
+    // the tags are filtered first, so that excluded tags are not counted for the limit
+    if (includeExclude != null) {
+      id = includeExclude.map(id);
+    }
+    if (cardinalityLimit != null) {
+      id = cardinalityLimit.map(id);
+    }
+    return KeyValues.of(id.getTagsAsIterable(), Tag::getKey, Tag::getValue);
+  }
+
+  private static io.micrometer.core.instrument.Meter.Id micrometerId(String name, Tags tags) {
+    return new io.micrometer.core.instrument.Meter.Id(
+        name, tags, null, null, io.micrometer.core.instrument.Meter.Type.OTHER);
+  }
+
+  static Attributes toAttributes(KeyValues keyValues, Kind kind, Throwable error) {
+    AttributesBuilder builder = Attributes.builder();
+    for (KeyValue keyValue : keyValues) {
+      String key = keyValue.getKey();
+      String value = keyValue.getValue();
+      if (kind == Kind.OTHER || CardinalityLimitMeterFilter.OVERFLOW_KEY.equals(key)) {
+        builder.put(key, value);
+        continue;
+      }
+      switch (key) {
+        case "method":
+          builder.put(SemanticAttributes.HTTP_REQUEST_METHOD, value);
+          break;
+        case "status":
+          putStatusCode(builder, value);
+          break;
+        case "uri":
+          // http.route is only defined for server requests
+          builder.put(
+              kind == Kind.HTTP_SERVER ? SemanticAttributes.HTTP_ROUTE : URL_TEMPLATE, value);
+          break;
+        case "client.name":
+          builder.put(SemanticAttributes.SERVER_ADDRESS, value);
+          break;
+        case "exception":
+          if (!"none".equals(value)) {
+            builder.put(ERROR_TYPE, value);
+          }
+          break;
+        default:
+          // e.g. outcome, which can be derived from the status code
+          break;
+      }
+    }
+    if (error != null) {
+      builder.put(ERROR_TYPE, error.getClass().getName());
+    }
+    return builder.build();
+  }
+
+  private static void putStatusCode(AttributesBuilder builder, String value) {
+    try {
+      builder.put(SemanticAttributes.HTTP_RESPONSE_STATUS_CODE, Long.parseLong(value));
+    } catch (NumberFormatException e) {
+      // e.g. CLIENT_ERROR if there was no response
+    }
+  }
+
+  /** Either a histogram or a counter - both are null if the meter name is excluded. */
+  private class Instrument {
+    private final Meter meter;
+    private final String name;
+    private final Kind kind;
+    private final DoubleHistogram histogram;
+    private final LongCounter counter;
+    private final Map<KeyValues, Attributes> attributes = new ConcurrentHashMap<>();
+
+    Instrument(
+        Meter meter, String name, Kind kind, DoubleHistogram histogram, LongCounter counter) {
+      boolean excluded = isExcluded(name);
+      this.meter = meter;
+      this.name = name;
+      this.kind = kind;
+      this.histogram = excluded ? null : histogram;
+      this.counter = excluded ? null : counter;
+    }
+
+    Attributes getAttributes(Observation.Context context) {
+      KeyValues keyValues = context.getLowCardinalityKeyValues();
+      Throwable error = context.getError();
+      if (error != null) {
+        // the error type is not part of the cache key
+        return toAttributes(filter(name, keyValues), kind, error);
+      }
+      Attributes cached = attributes.get(keyValues);
+      if (cached == null) {
+        cached = toAttributes(filter(name, keyValues), kind, null);
+        if (attributes.size() < MAX_CACHED_ATTRIBUTES) {
+          attributes.put(keyValues, cached);
+        }
+      }
+      return cached;
+    }
+  }
+}
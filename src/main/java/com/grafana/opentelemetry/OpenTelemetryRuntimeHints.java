@@ -0,0 +1,67 @@
+package com.grafana.opentelemetry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+/**
+ * Registers the hints for a native image that Spring can't infer from the configuration classes.
+ *
+ * <p>The SDK autoconfiguration, the resource detectors, and Log4j find their extensions with a
+ * {@link java.util.ServiceLoader}. The service files are read when the image is built, so that
+ * all extensions on the classpath - e.g. the OTLP exporters - can be instantiated at runtime.
+ */
+class OpenTelemetryRuntimeHints implements RuntimeHintsRegistrar {
+
+  private static final List<String> SERVICES =
+      List.of(
+          "classpath*:META-INF/services/io.opentelemetry.*",
+          "classpath*:META-INF/services/org.apache.logging.log4j.core.util.ContextDataProvider");
+
+  @Override
+  public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+    hints.resources().registerPattern("grafana-otel-starter.properties");
+    // the application name and version are read from the manifest
+    hints.resources().registerPattern("META-INF/MANIFEST.MF");
+
+    PathMatchingResourcePatternResolver resolver =
+        new PathMatchingResourcePatternResolver(classLoader);
+    try {
+      for (String pattern : SERVICES) {
+        for (Resource service : resolver.getResources(pattern)) {
+          registerService(hints, service);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("unable to read service files", e);
+    }
+  }
+
+  private static void registerService(RuntimeHints hints, Resource service) throws IOException {
+    hints.resources().registerPattern("META-INF/services/" + service.getFilename());
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(service.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int comment = line.indexOf('#');
+        String implementation = (comment < 0 ? line : line.substring(0, comment)).trim();
+        if (!implementation.isEmpty()) {
+          hints
+              .reflection()
+              .registerType(
+                  TypeReference.of(implementation), MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,230 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends buffered OTLP requests to the same endpoint as the OTLP/HTTP exporter of the signal, using
+ * the same headers, compression, timeout, and trusted certificates. Like the exporter, it uses the
+ * proxies of the JVM (e.g. <code>https.proxyHost</code>).
+ *
+ * <p>If the backend responds with <code>Retry-After</code>, no requests are sent until then.
+ */
+class OtlpHttpReplaySender implements DiskBuffer.Sender {
+
+  private static final Logger logger = LoggerFactory.getLogger(OtlpHttpReplaySender.class);
+
+  private static final String DEFAULT_ENDPOINT = "http://localhost:4318";
+  private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+  private static final Duration MAX_RETRY_AFTER = Duration.ofHours(1);
+
+  private final URI endpoint;
+  private final Map<String, String> headers;
+  private final boolean gzip;
+  private final Duration timeout;
+  private final HttpClient client;
+  private volatile long retryAfterNanos;
+
+  /** The SSL context is null for the default trusted certificates of the JVM. */
+  OtlpHttpReplaySender(
+      URI endpoint,
+      Map<String, String> headers,
+      boolean gzip,
+      Duration timeout,
+      SSLContext sslContext) {
+    this.endpoint = endpoint;
+    this.headers = headers;
+    this.gzip = gzip;
+    this.timeout = timeout;
+    HttpClient.Builder builder =
+        HttpClient.newBuilder().connectTimeout(timeout).proxy(ProxySelector.getDefault());
+    if (sslContext != null) {
+      builder.sslContext(sslContext);
+    }
+    this.client = builder.build();
+  }
+
+  /**
+   * Reads the same properties as the OTLP/HTTP exporter - returns null if they are not supported,
+   * i.e. a client certificate is configured, or the trusted certificates can't be read.
+   *
+   * @param signal <code>traces</code>, <code>metrics</code>, or <code>logs</code>
+   */
+  static OtlpHttpReplaySender create(ConfigProperties config, String signal) {
+    String prefix = "otel.exporter.otlp.";
+    String clientKey =
+        config.getString(
+            prefix + signal + ".client.key", config.getString(prefix + "client.key"));
+    String clientCertificate =
+        config.getString(
+            prefix + signal + ".client.certificate",
+            config.getString(prefix + "client.certificate"));
+    if (clientKey != null || clientCertificate != null) {
+      logger.warn(
+          "grafana.otlp.buffer.directory is ignored for {}, "
+              + "because client certificates (otel.exporter.otlp.client.*) are not supported",
+          signal);
+      return null;
+    }
+    String certificate =
+        config.getString(
+            prefix + signal + ".certificate", config.getString(prefix + "certificate"));
+    SSLContext sslContext = null;
+    if (certificate != null) {
+      try {
+        sslContext = createSslContext(certificate);
+      } catch (IOException | GeneralSecurityException e) {
+        logger.warn(
+            "grafana.otlp.buffer.directory is ignored for {}, unable to read certificate {}",
+            signal,
+            certificate,
+            e);
+        return null;
+      }
+    }
+    Duration timeout =
+        config.getDuration(
+            prefix + signal + ".timeout", config.getDuration(prefix + "timeout", DEFAULT_TIMEOUT));
+    String endpoint = config.getString(prefix + signal + ".endpoint");
+    if (endpoint == null) {
+      String base = config.getString(prefix + "endpoint", DEFAULT_ENDPOINT);
+      endpoint = (base.endsWith("/") ? base : base + "/") + "v1/" + signal;
+    }
+    Map<String, String> headers = new HashMap<>(config.getMap(prefix + "headers"));
+    headers.putAll(config.getMap(prefix + signal + ".headers"));
+    String compression = config.getString(prefix + "compression");
+    compression = config.getString(prefix + signal + ".compression", compression);
+    return new OtlpHttpReplaySender(
+        URI.create(endpoint), headers, "gzip".equals(compression), timeout, sslContext);
+  }
+
+  /** Trusts the certificates in the PEM file, like the OTLP exporter. */
+  static SSLContext createSslContext(String certificateFile)
+      throws IOException, GeneralSecurityException {
+    KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keyStore.load(null, null);
+    try (InputStream in = Files.newInputStream(Paths.get(certificateFile))) {
+      int i = 0;
+      for (Certificate cert : CertificateFactory.getInstance("X.509").generateCertificates(in)) {
+        keyStore.setCertificateEntry("cert_" + i++, cert);
+      }
+    }
+    TrustManagerFactory trustManagerFactory =
+        TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    trustManagerFactory.init(keyStore);
+    SSLContext sslContext = SSLContext.getInstance("TLS");
+    sslContext.init(null, trustManagerFactory.getTrustManagers(), null);
+    return sslContext;
+  }
+
+  @Override
+  public DiskBuffer.Result send(byte[] request) {
+    if (retryAfterNanos != 0 && System.nanoTime() - retryAfterNanos < 0) {
+      return DiskBuffer.Result.FAILED;
+    }
+    HttpRequest.Builder builder =
+        HttpRequest.newBuilder(endpoint)
+            .timeout(timeout)
+            .header("Content-Type", "application/x-protobuf");
+    headers.forEach(builder::header);
+    try {
+      byte[] body = request;
+      if (gzip) {
+        builder.header("Content-Encoding", "gzip");
+        body = compress(request);
+      }
+      HttpResponse<Void> response =
+          client.send(
+              builder.POST(HttpRequest.BodyPublishers.ofByteArray(body)).build(),
+              HttpResponse.BodyHandlers.discarding());
+      int statusCode = response.statusCode();
+      if (statusCode == 429 || statusCode == 503) {
+        response
+            .headers()
+            .firstValue("Retry-After")
+            .map(value -> parseRetryAfter(value, Instant.now()))
+            .ifPresent(delay -> retryAfterNanos = System.nanoTime() + delay.toNanos());
+      }
+      return getResult(statusCode);
+    } catch (ConnectException | HttpTimeoutException e) {
+      logger.debug("unable to replay buffered request to {}", endpoint, e);
+      return DiskBuffer.Result.FAILED;
+    } catch (IOException e) {
+      // e.g. a TLS handshake that fails, although the backend may be available
+      logger.warn("unable to replay buffered request to {}", endpoint, e);
+      return DiskBuffer.Result.ERROR;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return DiskBuffer.Result.FAILED;
+    }
+  }
+
+  private DiskBuffer.Result getResult(int statusCode) {
+    if (statusCode >= 200 && statusCode < 300) {
+      return DiskBuffer.Result.SENT;
+    }
+    // the backend is overloaded or not available (yet)
+    if (statusCode == 408 || statusCode == 429 || statusCode >= 500) {
+      return DiskBuffer.Result.FAILED;
+    }
+    logger.warn("dropping buffered request, {} responded with status {}", endpoint, statusCode);
+    return DiskBuffer.Result.REJECTED;
+  }
+
+  /** Returns null if the value is neither a number of seconds nor an HTTP date. */
+  static Duration parseRetryAfter(String value, Instant now) {
+    Duration delay;
+    try {
+      delay = Duration.ofSeconds(Long.parseLong(value.trim()));
+    } catch (NumberFormatException e) {
+      try {
+        delay =
+            Duration.between(
+                now, ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+      } catch (DateTimeParseException ex) {
+        logger.debug("ignoring invalid Retry-After: {}", value);
+        return null;
+      }
+    }
+    if (delay.isNegative()) {
+      return Duration.ZERO;
+    }
+    return delay.compareTo(MAX_RETRY_AFTER) > 0 ? MAX_RETRY_AFTER : delay;
+  }
+
+  private static byte[] compress(byte[] request) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(request.length / 4);
+    try (OutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(request);
+    }
+    return out.toByteArray();
+  }
+}
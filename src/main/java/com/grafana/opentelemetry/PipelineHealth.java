@@ -0,0 +1,655 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.exporter.otlp.http.logs.OtlpHttpLogRecordExporter;
+import io.opentelemetry.exporter.otlp.http.metrics.OtlpHttpMetricExporter;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.exporter.otlp.logs.OtlpGrpcLogRecordExporter;
+import io.opentelemetry.exporter.otlp.metrics.OtlpGrpcMetricExporter;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.logs.LogRecordProcessor;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.logs.export.LogRecordExporter;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.ExponentialHistogramPointData;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.PointData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * The health of the export pipelines of the three signals: the estimated size of the queues of the
+ * batch processors, the number of items that were exported, failed, or dropped, the duration and
+ * the estimated (uncompressed) size of the export requests, and the last export error.
+ *
+ * <p>The queue size is estimated like in {@link MemoryBudgetQueue}: items are added when they are
+ * queued, and removed when the batch processor passes them to the exporter. An item that would
+ * exceed the capacity of the queue is counted as dropped, because the batch processor drops it.
+ *
+ * <p>The export requests are measured inside the circuit breaker, and their size is estimated from
+ * the data, so that the measurement doesn't serialize the data a second time.
+ *
+ * <p>The self-metrics don't generate more telemetry than they report on: they only have the
+ * attributes <code>signal</code> and <code>outcome</code>, so each collection adds a constant
+ * number of points, and the export path doesn't create spans or log records.
+ */
+class PipelineHealth {
+
+  private static final AttributeKey<String> SIGNAL = AttributeKey.stringKey("signal");
+  private static final AttributeKey<String> OUTCOME = AttributeKey.stringKey("outcome");
+
+  // rough protobuf sizes of the fields that every item has, e.g. IDs, timestamps, and tags
+  private static final int SPAN_FIELDS = 64;
+  private static final int EVENT_FIELDS = 16;
+  private static final int LINK_FIELDS = 32;
+  private static final int LOG_RECORD_FIELDS = 48;
+  private static final int POINT_FIELDS = 24;
+  private static final int ATTRIBUTE_FIELDS = 6;
+  private static final int NUMBER = 9;
+
+  // the logger of the OTLP exporters, which log the reason of a failed export
+  private static final String EXPORTER_LOGGER = "io.opentelemetry.exporter";
+
+  private final Signal traces;
+  private final Signal metrics;
+  private final Signal logs;
+  private final ExportErrorHandler errorHandler = new ExportErrorHandler();
+  // strong reference - JUL only keeps weak references to loggers
+  private java.util.logging.Logger exporterLogger;
+  private volatile Map<String, String> configProperties = Map.of();
+
+  PipelineHealth(int tracesCapacity, int logsCapacity) {
+    traces = new Signal("traces", tracesCapacity);
+    metrics = new Signal("metrics", 0);
+    logs = new Signal("logs", logsCapacity);
+  }
+
+  /** Uses the default queue size of the SDK if it has not been set. */
+  static PipelineHealth create(GrafanaProperties properties) {
+    PipelineHealth health =
+        new PipelineHealth(
+            getMaxQueueSize(properties.getTraces().getBatch()),
+            getMaxQueueSize(properties.getLogs().getBatch()));
+    health.exporterLogger = java.util.logging.Logger.getLogger(EXPORTER_LOGGER);
+    health.exporterLogger.addHandler(health.errorHandler);
+    return health;
+  }
+
+  private static int getMaxQueueSize(GrafanaProperties.BatchProperties batch) {
+    return batch.getMaxQueueSize() != null ? batch.getMaxQueueSize() : 2048;
+  }
+
+  /** The config properties of the SDK, with the auth header masked. */
+  void setConfigProperties(Map<String, String> configProperties) {
+    this.configProperties = configProperties;
+  }
+
+  /** Stops capturing the export errors when the application context is closed. */
+  public void close() {
+    if (exporterLogger != null) {
+      exporterLogger.removeHandler(errorHandler);
+    }
+  }
+
+  /**
+   * Measures the export requests of an OTLP exporter - inside the circuit breaker, so that the
+   * batches that it rejects are not measured. Returns the exporter if it's not an OTLP exporter.
+   */
+  SpanExporter wrap(SpanExporter exporter) {
+    if (!(exporter instanceof OtlpHttpSpanExporter || exporter instanceof OtlpGrpcSpanExporter)) {
+      return exporter;
+    }
+    return new Spans(exporter, traces);
+  }
+
+  /**
+   * Measures the export requests of an OTLP exporter - inside the circuit breaker, so that the
+   * batches that it rejects are not measured. Returns the exporter if it's not an OTLP exporter.
+   */
+  MetricExporter wrap(MetricExporter exporter) {
+    if (!(exporter instanceof OtlpHttpMetricExporter
+        || exporter instanceof OtlpGrpcMetricExporter)) {
+      return exporter;
+    }
+    return new Metrics(exporter, metrics);
+  }
+
+  /**
+   * Measures the export requests of an OTLP exporter - inside the circuit breaker, so that the
+   * batches that it rejects are not measured. Returns the exporter if it's not an OTLP exporter.
+   */
+  LogRecordExporter wrap(LogRecordExporter exporter) {
+    if (!(exporter instanceof OtlpHttpLogRecordExporter
+        || exporter instanceof OtlpGrpcLogRecordExporter)) {
+      return exporter;
+    }
+    return new Logs(exporter, logs);
+  }
+
+  /** Returns the OTLP exporter if the exporter is measured. */
+  static Object unwrap(Object exporter) {
+    if (exporter instanceof Spans) {
+      return ((Spans) exporter).delegate;
+    }
+    if (exporter instanceof Metrics) {
+      return ((Metrics) exporter).delegate;
+    }
+    if (exporter instanceof Logs) {
+      return ((Logs) exporter).delegate;
+    }
+    return exporter;
+  }
+
+  /**
+   * Counts the spans that leave the queue of the batch processor. The wrapped exporter is the
+   * outermost exporter that the batch processor calls, the exporter is the original exporter.
+   */
+  SpanExporter wrapQueue(SpanExporter exporter, SpanExporter wrapped) {
+    if (!(exporter instanceof OtlpHttpSpanExporter || exporter instanceof OtlpGrpcSpanExporter)) {
+      return wrapped;
+    }
+    return wrapQueue(wrapped);
+  }
+
+  SpanExporter wrapQueue(SpanExporter wrapped) {
+    traces.queued = true;
+    return new SpanExporter() {
+      @Override
+      public CompletableResultCode export(Collection<SpanData> spans) {
+        traces.dequeue(spans.size());
+        return wrapped.export(spans);
+      }
+
+      @Override
+      public CompletableResultCode flush() {
+        return wrapped.flush();
+      }
+
+      @Override
+      public CompletableResultCode shutdown() {
+        return wrapped.shutdown();
+      }
+
+      @Override
+      public String toString() {
+        return "PipelineHealthQueueSpanExporter{delegate=" + wrapped + "}";
+      }
+    };
+  }
+
+  /**
+   * Counts the log records that leave the queue of the batch processor. The wrapped exporter is
+   * the outermost exporter that the batch processor calls, the exporter is the original exporter.
+   */
+  LogRecordExporter wrapQueue(LogRecordExporter exporter, LogRecordExporter wrapped) {
+    if (!(exporter instanceof OtlpHttpLogRecordExporter
+        || exporter instanceof OtlpGrpcLogRecordExporter)) {
+      return wrapped;
+    }
+    return wrapQueue(wrapped);
+  }
+
+  LogRecordExporter wrapQueue(LogRecordExporter wrapped) {
+    logs.queued = true;
+    return new LogRecordExporter() {
+      @Override
+      public CompletableResultCode export(Collection<LogRecordData> data) {
+        logs.dequeue(data.size());
+        return wrapped.export(data);
+      }
+
+      @Override
+      public CompletableResultCode flush() {
+        return wrapped.flush();
+      }
+
+      @Override
+      public CompletableResultCode shutdown() {
+        return wrapped.shutdown();
+      }
+
+      @Override
+      public String toString() {
+        return "PipelineHealthQueueLogRecordExporter{delegate=" + wrapped + "}";
+      }
+    };
+  }
+
+  /** Counts the sampled spans that are passed to the batch span processor. */
+  SpanProcessor spanProcessor() {
+    return new SpanProcessor() {
+      @Override
+      public void onStart(Context parentContext, ReadWriteSpan span) {}
+
+      @Override
+      public boolean isStartRequired() {
+        return false;
+      }
+
+      @Override
+      public void onEnd(ReadableSpan span) {
+        if (span.getSpanContext().isSampled()) {
+          traces.enqueue();
+        }
+      }
+
+      @Override
+      public boolean isEndRequired() {
+        return true;
+      }
+    };
+  }
+
+  /** Counts the log records that are passed to the batch log record processor. */
+  LogRecordProcessor logRecordProcessor() {
+    return (context, logRecord) -> logs.enqueue();
+  }
+
+  void registerMetrics(OpenTelemetry openTelemetry) {
+    Meter meter = openTelemetry.getMeter(OpenTelemetryConfig.INSTRUMENTATION_SCOPE_NAME);
+    List<Signal> signals = List.of(traces, metrics, logs);
+    List<Signal> queues = List.of(traces, logs);
+    meter
+        .gaugeBuilder("grafana.otlp.exporter.queue.size")
+        .ofLongs()
+        .setDescription("The estimated number of items in the queue of the batch processor")
+        .buildWithCallback(m -> queues.forEach(s -> m.record(s.getQueueSize(), s.attributes)));
+    meter
+        .gaugeBuilder("grafana.otlp.exporter.queue.capacity")
+        .ofLongs()
+        .setDescription("The maximum number of items in the queue of the batch processor")
+        .buildWithCallback(m -> queues.forEach(s -> m.record(s.capacity, s.attributes)));
+    meter
+        .counterBuilder("grafana.otlp.exporter.items")
+        .setDescription("The number of items that were exported, failed, or dropped")
+        .buildWithCallback(
+            m ->
+                signals.forEach(
+                    s -> {
+                      m.record(s.exported.sum(), s.exportedAttributes);
+                      m.record(s.failed.sum(), s.failedAttributes);
+                      m.record(s.dropped.sum(), s.droppedAttributes);
+                    }));
+    meter
+        .counterBuilder("grafana.otlp.exporter.payload.size")
+        .setUnit("By")
+        .setDescription("The estimated uncompressed size of the export requests")
+        .buildWithCallback(m -> signals.forEach(s -> m.record(s.bytes.sum(), s.attributes)));
+    DoubleHistogram duration =
+        meter
+            .histogramBuilder("grafana.otlp.exporter.duration")
+            .setUnit("s")
+            .setDescription("The duration of the export requests")
+            .build();
+    signals.forEach(s -> s.duration = duration);
+  }
+
+  /** The content of the <code>grafana-otlp</code> actuator endpoint. */
+  Map<String, Object> describe() {
+    Map<String, Object> description = new LinkedHashMap<>();
+    Map<String, String> config = new TreeMap<>(configProperties);
+    description.put("endpoint", config.get("otel.exporter.otlp.endpoint"));
+    description.put("protocol", config.get("otel.exporter.otlp.protocol"));
+    description.put("configProperties", config);
+    Map<String, Object> signals = new LinkedHashMap<>();
+    for (Signal signal : List.of(traces, metrics, logs)) {
+      signals.put(signal.name, signal.describe());
+    }
+    description.put("signals", signals);
+    description.put("lastExportError", errorHandler.describe());
+    return description;
+  }
+
+  Signal getTraces() {
+    return traces;
+  }
+
+  Signal getMetrics() {
+    return metrics;
+  }
+
+  Signal getLogs() {
+    return logs;
+  }
+
+  static class Signal {
+    private final String name;
+    private final int capacity;
+    private final Attributes attributes;
+    private final Attributes exportedAttributes;
+    private final Attributes failedAttributes;
+    private final Attributes droppedAttributes;
+    private final Attributes successAttributes;
+    private final Attributes failureAttributes;
+    private final LongAdder exported = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLong queueSize = new AtomicLong();
+    // the signal is exported with a batch processor and an OTLP exporter
+    private volatile boolean queued;
+    private volatile DoubleHistogram duration;
+    private volatile Instant lastFailure;
+
+    Signal(String name, int capacity) {
+      this.name = name;
+      this.capacity = capacity;
+      this.attributes = Attributes.of(SIGNAL, name);
+      this.exportedAttributes = Attributes.of(SIGNAL, name, OUTCOME, "exported");
+      this.failedAttributes = Attributes.of(SIGNAL, name, OUTCOME, "failed");
+      this.droppedAttributes = Attributes.of(SIGNAL, name, OUTCOME, "dropped");
+      this.successAttributes = Attributes.of(SIGNAL, name, OUTCOME, "success");
+      this.failureAttributes = Attributes.of(SIGNAL, name, OUTCOME, "failure");
+    }
+
+    void enqueue() {
+      if (!queued) {
+        return;
+      }
+      long size;
+      do {
+        size = queueSize.get();
+        if (size >= capacity) {
+          dropped.increment();
+          return;
+        }
+      } while (!queueSize.compareAndSet(size, size + 1));
+    }
+
+    void dequeue(int size) {
+      // may be negative for a moment, if items are exported before they are counted
+      queueSize.addAndGet(-size);
+    }
+
+    <T> CompletableResultCode export(
+        Collection<T> data,
+        Function<Collection<T>, CompletableResultCode> delegate,
+        ToLongFunction<Collection<T>> payloadSize) {
+      int size = data.size();
+      bytes.add(payloadSize.applyAsLong(data));
+      long start = System.nanoTime();
+      CompletableResultCode result = delegate.apply(data);
+      result.whenComplete(
+          () -> {
+            boolean success = result.isSuccess();
+            (success ? exported : failed).add(size);
+            if (!success) {
+              lastFailure = Instant.now();
+            }
+            DoubleHistogram histogram = duration;
+            if (histogram != null) {
+              histogram.record(
+                  (System.nanoTime() - start) / 1e9,
+                  success ? successAttributes : failureAttributes);
+            }
+          });
+      return result;
+    }
+
+    long getQueueSize() {
+      return Math.max(0, queueSize.get());
+    }
+
+    long getExported() {
+      return exported.sum();
+    }
+
+    long getFailed() {
+      return failed.sum();
+    }
+
+    long getDropped() {
+      return dropped.sum();
+    }
+
+    long getBytes() {
+      return bytes.sum();
+    }
+
+    Map<String, Object> describe() {
+      Map<String, Object> description = new LinkedHashMap<>();
+      if (capacity > 0) {
+        description.put("queueSize", getQueueSize());
+        description.put("queueCapacity", capacity);
+      }
+      description.put("exported", getExported());
+      description.put("failed", getFailed());
+      description.put("dropped", getDropped());
+      description.put("payloadBytes", getBytes());
+      Instant failure = lastFailure;
+      description.put("lastFailure", failure == null ? null : failure.toString());
+      return description;
+    }
+  }
+
+  static long estimateSpans(Collection<SpanData> spans) {
+    long bytes = 0;
+    for (SpanData span : spans) {
+      bytes += SPAN_FIELDS + span.getName().length() + estimate(span.getAttributes());
+      for (EventData event : span.getEvents()) {
+        bytes += EVENT_FIELDS + event.getName().length() + estimate(event.getAttributes());
+      }
+      for (LinkData link : span.getLinks()) {
+        bytes += LINK_FIELDS + estimate(link.getAttributes());
+      }
+    }
+    return bytes;
+  }
+
+  static long estimateMetrics(Collection<MetricData> metrics) {
+    long bytes = 0;
+    for (MetricData metric : metrics) {
+      bytes += metric.getName().length() + metric.getDescription().length();
+      bytes += metric.getUnit().length();
+      for (PointData point : metric.getData().getPoints()) {
+        bytes += POINT_FIELDS + estimate(point.getAttributes());
+        if (point instanceof HistogramPointData) {
+          HistogramPointData histogram = (HistogramPointData) point;
+          bytes += NUMBER * (histogram.getCounts().size() + histogram.getBoundaries().size());
+        } else if (point instanceof ExponentialHistogramPointData) {
+          ExponentialHistogramPointData histogram = (ExponentialHistogramPointData) point;
+          bytes +=
+              NUMBER
+                  * (histogram.getPositiveBuckets().getBucketCounts().size()
+                      + histogram.getNegativeBuckets().getBucketCounts().size());
+        }
+      }
+    }
+    return bytes;
+  }
+
+  static long estimateLogs(Collection<LogRecordData> logs) {
+    long bytes = 0;
+    for (LogRecordData log : logs) {
+      bytes += LOG_RECORD_FIELDS + estimate(log.getAttributes());
+      bytes += log.getBody().asString().length();
+      if (log.getSeverityText() != null) {
+        bytes += log.getSeverityText().length();
+      }
+    }
+    return bytes;
+  }
+
+  private static long estimate(Attributes attributes) {
+    long[] bytes = {0};
+    attributes.forEach(
+        (key, value) -> bytes[0] += ATTRIBUTE_FIELDS + key.getKey().length() + estimate(value));
+    return bytes[0];
+  }
+
+  private static long estimate(Object value) {
+    if (value instanceof String) {
+      return ((String) value).length();
+    }
+    if (value instanceof List) {
+      long bytes = 0;
+      for (Object element : (List<?>) value) {
+        bytes += estimate(element);
+      }
+      return bytes;
+    }
+    return NUMBER;
+  }
+
+  static class Spans implements SpanExporter {
+    private final SpanExporter delegate;
+    private final Signal signal;
+
+    Spans(SpanExporter delegate, Signal signal) {
+      this.delegate = delegate;
+      this.signal = signal;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+      return signal.export(spans, delegate::export, PipelineHealth::estimateSpans);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "PipelineHealthSpanExporter{delegate=" + delegate + "}";
+    }
+  }
+
+  static class Metrics implements MetricExporter {
+    private final MetricExporter delegate;
+    private final Signal signal;
+
+    Metrics(MetricExporter delegate, Signal signal) {
+      this.delegate = delegate;
+      this.signal = signal;
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+      return delegate.getAggregationTemporality(instrumentType);
+    }
+
+    @Override
+    public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+      return delegate.getDefaultAggregation(instrumentType);
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<MetricData> metrics) {
+      return signal.export(metrics, delegate::export, PipelineHealth::estimateMetrics);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "PipelineHealthMetricExporter{delegate=" + delegate + "}";
+    }
+  }
+
+  static class Logs implements LogRecordExporter {
+    private final LogRecordExporter delegate;
+    private final Signal signal;
+
+    Logs(LogRecordExporter delegate, Signal signal) {
+      this.delegate = delegate;
+      this.signal = signal;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<LogRecordData> logs) {
+      return signal.export(logs, delegate::export, PipelineHealth::estimateLogs);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+      return "PipelineHealthLogRecordExporter{delegate=" + delegate + "}";
+    }
+  }
+
+  /** Keeps the last warning of the OTLP exporters, e.g. the status code of a failed request. */
+  static class ExportErrorHandler extends Handler {
+    private final SimpleFormatter formatter = new SimpleFormatter();
+    private volatile LogRecord last;
+
+    @Override
+    public void publish(LogRecord record) {
+      if (record.getLevel().intValue() >= Level.WARNING.intValue()) {
+        last = record;
+      }
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+
+    Map<String, Object> describe() {
+      LogRecord record = last;
+      if (record == null) {
+        return null;
+      }
+      Map<String, Object> description = new LinkedHashMap<>();
+      description.put("time", record.getInstant().toString());
+      description.put("logger", record.getLoggerName());
+      description.put("message", formatter.formatMessage(record));
+      Throwable thrown = record.getThrown();
+      description.put("exception", thrown == null ? null : thrown.toString());
+      return description;
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package com.grafana.opentelemetry;
+
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * Shows the effective configuration of the SDK and the health of the export pipelines at <code>
+ * /actuator/grafana-otlp</code>. The endpoint has to be exposed, e.g. with <code>
+ * management.endpoints.web.exposure.include=health,grafanaOtlp</code>.
+ */
+@Endpoint(id = "grafanaOtlp")
+class PipelineHealthEndpoint {
+
+  private final PipelineHealth pipelineHealth;
+
+  PipelineHealthEndpoint(PipelineHealth pipelineHealth) {
+    this.pipelineHealth = pipelineHealth;
+  }
+
+  @ReadOperation
+  public Map<String, Object> pipelineHealth() {
+    return pipelineHealth.describe();
+  }
+}
@@ -0,0 +1,164 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingDecision;
+import io.opentelemetry.sdk.trace.samplers.SamplingResult;
+import io.opentelemetry.semconv.SemanticAttributes;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Samples new traces with a ratio and a rate limit, both of which can be overridden by <code>
+ * http.route</code>.
+ *
+ * <p>The ratio is applied first, based on the trace ID (like <code>traceidratio</code>), so that
+ * the rate limits only count traces that would be sampled. A trace is sampled if neither the rate
+ * limit of its route nor the global rate limit is exceeded.
+ *
+ * <p>Micrometer Tracing starts the server spans without attributes, so the path of the servlet
+ * request that is handled by the current thread (see {@link RequestPathFilter}) is used for server
+ * spans without <code>http.route</code> or <code>url.path</code>.
+ *
+ * <p>This sampler should be wrapped in {@link Sampler#parentBased(Sampler)}, so that it only
+ * decides on root spans.
+ */
+class RateLimitingSampler implements Sampler {
+
+  /** The path of the servlet request that is handled by the current thread. */
+  static final ThreadLocal<String> REQUEST_PATH = new ThreadLocal<>();
+
+  private final Sampler ratio;
+  private final TokenBucket rateLimit;
+  private final Route[] routes;
+  private final String description;
+
+  RateLimitingSampler(double ratio, double rateLimit, List<Route> routes, long nanoTime) {
+    this.ratio = Sampler.traceIdRatioBased(ratio);
+    this.rateLimit = rateLimit > 0 ? new TokenBucket(rateLimit, nanoTime) : null;
+    // the most specific route wins: exact routes first, then the longest prefix
+    this.routes =
+        routes.stream()
+            .sorted(
+                Comparator.comparing((Route r) -> r.prefix)
+                    .thenComparing(r -> r.route.length(), Comparator.reverseOrder()))
+            .toArray(Route[]::new);
+    this.description =
+        String.format(
+            "RateLimitingSampler{ratio=%s, rateLimit=%s, routes=%d}",
+            ratio, rateLimit, routes.size());
+  }
+
+  /** Returns null if sampling is disabled. */
+  static Sampler create(GrafanaProperties.TraceSamplingProperties properties) {
+    if (!properties.isEnabled()) {
+      return null;
+    }
+    long now = System.nanoTime();
+    List<Route> routes =
+        properties.getRoutes().entrySet().stream()
+            .map(e -> Route.create(e.getKey(), e.getValue(), now))
+            .collect(Collectors.toList());
+    return Sampler.parentBased(
+        new RateLimitingSampler(properties.getRatio(), properties.getRateLimit(), routes, now));
+  }
+
+  @Override
+  public SamplingResult shouldSample(
+      Context parentContext,
+      String traceId,
+      String name,
+      SpanKind spanKind,
+      Attributes attributes,
+      List<LinkData> parentLinks) {
+    return shouldSample(
+        parentContext, traceId, name, spanKind, attributes, parentLinks, System.nanoTime());
+  }
+
+  SamplingResult shouldSample(
+      Context parentContext,
+      String traceId,
+      String name,
+      SpanKind spanKind,
+      Attributes attributes,
+      List<LinkData> parentLinks,
+      long now) {
+    Route route = findRoute(spanKind, attributes);
+    Sampler sampler = route != null && route.ratio != null ? route.ratio : ratio;
+    SamplingResult result =
+        sampler.shouldSample(parentContext, traceId, name, spanKind, attributes, parentLinks);
+    if (result.getDecision() == SamplingDecision.DROP) {
+      return result;
+    }
+    if (route != null && route.rateLimit != null && !route.rateLimit.tryAcquire(now)) {
+      return SamplingResult.drop();
+    }
+    if (rateLimit != null && !rateLimit.tryAcquire(now)) {
+      return SamplingResult.drop();
+    }
+    return result;
+  }
+
+  private Route findRoute(SpanKind spanKind, Attributes attributes) {
+    if (routes.length == 0) {
+      return null;
+    }
+    String path = attributes.get(SemanticAttributes.HTTP_ROUTE);
+    if (path == null) {
+      path = attributes.get(SemanticAttributes.URL_PATH);
+    }
+    if (path == null && spanKind == SpanKind.SERVER) {
+      path = REQUEST_PATH.get();
+    }
+    if (path == null) {
+      return null;
+    }
+    for (Route route : routes) {
+      if (route.matches(path)) {
+        return route;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String getDescription() {
+    return description;
+  }
+
+  @Override
+  public String toString() {
+    return description;
+  }
+
+  static class Route {
+    private final String route;
+    private final boolean prefix;
+    private final Sampler ratio;
+    private final TokenBucket rateLimit;
+
+    Route(String route, Double ratio, double rateLimit, long nanoTime) {
+      this.prefix = route.endsWith("/**");
+      this.route = prefix ? route.substring(0, route.length() - 3) : route;
+      this.ratio = ratio != null ? Sampler.traceIdRatioBased(ratio) : null;
+      this.rateLimit = rateLimit > 0 ? new TokenBucket(rateLimit, nanoTime) : null;
+    }
+
+    static Route create(
+        String route, GrafanaProperties.RouteSamplingProperties properties, long nanoTime) {
+      return new Route(route, properties.getRatio(), properties.getRateLimit(), nanoTime);
+    }
+
+    boolean matches(String path) {
+      if (!prefix) {
+        return path.equals(route);
+      }
+      return path.startsWith(route)
+          && (path.length() == route.length() || path.charAt(route.length()) == '/');
+    }
+  }
+}
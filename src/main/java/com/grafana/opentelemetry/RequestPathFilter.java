@@ -0,0 +1,30 @@
+package com.grafana.opentelemetry;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Makes the request path available to {@link RateLimitingSampler} while the request is handled.
+ *
+ * <p>The server span of Spring MVC is started by the observation filter without any attributes,
+ * so this filter has to run before it.
+ */
+class RequestPathFilter extends OncePerRequestFilter {
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    RateLimitingSampler.REQUEST_PATH.set(
+        request.getRequestURI().substring(request.getContextPath().length()));
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      RateLimitingSampler.REQUEST_PATH.remove();
+    }
+  }
+}
@@ -0,0 +1,261 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.common.AttributeType;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+import io.opentelemetry.sdk.autoconfigure.spi.ResourceProvider;
+import io.opentelemetry.sdk.resources.Resource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the resource detectors of <code>opentelemetry-resources</code> (container, host, OS,
+ * process) concurrently, instead of one after the other in the autoconfiguration of the SDK.
+ *
+ * <p>Each detector runs on its own thread. A detector that doesn't complete within the timeout is
+ * skipped with a warning - its attributes are missing, but the startup is not blocked.
+ *
+ * <p>The attributes of the host and OS detectors don't change until the next boot, so they can be
+ * cached in a file that is keyed by the boot ID of the kernel. If the container is restarted, these
+ * detectors are skipped. The container detector always runs: all containers on a node share the
+ * boot ID, and a restarted container has a new container ID.
+ */
+class ResourceDetector {
+
+  private static final Logger logger = LoggerFactory.getLogger(ResourceDetector.class);
+
+  static final String DISABLED_PROVIDERS = "otel.java.disabled.resource.providers";
+
+  private static final String PACKAGE = "io.opentelemetry.instrumentation.resources.";
+  private static final Set<String> CACHEABLE =
+      Set.of(PACKAGE + "HostResourceProvider", PACKAGE + "OsResourceProvider");
+  private static final Path BOOT_ID = Paths.get("/proc/sys/kernel/random/boot_id");
+  private static final String BOOT_ID_KEY = "boot.id";
+
+  private final List<ResourceProvider> providers;
+  private final Set<String> cacheable;
+  private final Duration timeout;
+  private final Path cacheFile;
+  private final Supplier<String> bootId;
+  // the providers that the user disabled, which are not run either
+  private volatile Set<String> disabled = Set.of();
+
+  ResourceDetector(
+      List<ResourceProvider> providers,
+      Set<String> cacheable,
+      Duration timeout,
+      Path cacheFile,
+      Supplier<String> bootId) {
+    this.providers = providers;
+    this.cacheable = cacheable;
+    this.timeout = timeout;
+    this.cacheFile = cacheFile;
+    this.bootId = bootId;
+  }
+
+  static ResourceDetector create(GrafanaProperties.ResourceProperties properties) {
+    List<ResourceProvider> providers = new ArrayList<>();
+    for (ResourceProvider provider : ServiceLoader.load(ResourceProvider.class)) {
+      if (provider.getClass().getName().startsWith(PACKAGE)) {
+        providers.add(provider);
+      }
+    }
+    providers.sort(Comparator.comparingInt(ResourceProvider::order));
+    String cacheFile = properties.getCacheFile();
+    return new ResourceDetector(
+        providers,
+        CACHEABLE,
+        properties.getDetectionTimeout(),
+        Strings.isBlank(cacheFile) ? null : Paths.get(cacheFile),
+        ResourceDetector::readBootId);
+  }
+
+  /** Disables the detectors in the autoconfiguration of the SDK, so that they are only run here. */
+  Map<String, String> customizeProperties(ConfigProperties config) {
+    return disable(config.getList(DISABLED_PROVIDERS));
+  }
+
+  Map<String, String> disable(List<String> userDisabled) {
+    disabled = new HashSet<>(userDisabled);
+    Set<String> names = new HashSet<>(userDisabled);
+    providers.forEach(p -> names.add(p.getClass().getName()));
+    return Map.of(DISABLED_PROVIDERS, names.stream().sorted().collect(Collectors.joining(",")));
+  }
+
+  /** Returns the merged resource of the detectors that completed in time. */
+  Resource detect(ConfigProperties config) {
+    String currentBootId = cacheFile == null ? null : bootId.get();
+    Attributes cached = currentBootId == null ? null : readCache(currentBootId);
+
+    long start = System.nanoTime();
+    Map<ResourceProvider, FutureTask<Resource>> tasks = new LinkedHashMap<>();
+    for (ResourceProvider provider : providers) {
+      String name = provider.getClass().getName();
+      if (disabled.contains(name) || (cached != null && cacheable.contains(name))) {
+        continue;
+      }
+      FutureTask<Resource> task = new FutureTask<>(() -> provider.createResource(config));
+      startDaemon(task, "grafana-otlp-resource-" + provider.getClass().getSimpleName());
+      tasks.put(provider, task);
+    }
+
+    Resource resource = Resource.empty();
+    AttributesBuilder detected = Attributes.builder();
+    long deadline = start + timeout.toNanos();
+    boolean complete = true;
+    for (Map.Entry<ResourceProvider, FutureTask<Resource>> entry : tasks.entrySet()) {
+      String name = entry.getKey().getClass().getName();
+      Resource result = await(entry.getValue(), deadline, name);
+      if (result == null) {
+        complete &= !cacheable.contains(name);
+        continue;
+      }
+      resource = resource.merge(result);
+      if (cacheable.contains(name)) {
+        detected.putAll(result.getAttributes());
+      }
+    }
+    logger.debug(
+        "detected resource in {}ms: {}",
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+        resource);
+
+    if (cached != null) {
+      // the cached detectors don't overlap with the others, so the order doesn't matter
+      return Resource.create(cached).merge(resource);
+    }
+    if (currentBootId != null && complete) {
+      writeCache(currentBootId, detected.build());
+    }
+    return resource;
+  }
+
+  /** Returns null if the task failed or didn't complete before the deadline. */
+  private static Resource await(FutureTask<Resource> task, long deadline, String name) {
+    try {
+      return task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      task.cancel(true);
+      logger.warn("skipping resource detector {}, it didn't complete in time", name);
+    } catch (ExecutionException e) {
+      logger.warn("skipping resource detector {}, it failed", name, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+
+  /**
+   * Looks up the host name on a background thread, so that it can run while the manifest is read.
+   */
+  static Future<String> lookupHostName() {
+    FutureTask<String> task = new FutureTask<>(() -> InetAddress.getLocalHost().getHostName());
+    startDaemon(task, "grafana-otlp-host-name");
+    return task;
+  }
+
+  /** Returns null if the lookup failed or didn't complete in time. */
+  static String getHostName(Future<String> lookup, Duration timeout) {
+    try {
+      return lookup.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      lookup.cancel(true);
+      logger.warn("skipping host name lookup, it didn't complete in {}", timeout);
+    } catch (ExecutionException e) {
+      logger.debug("unable to look up host name", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+
+  private static void startDaemon(Runnable task, String name) {
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Returns null if the cache doesn't exist or is from a different boot. */
+  Attributes readCache(String currentBootId) {
+    if (!Files.exists(cacheFile)) {
+      return null;
+    }
+    Properties cache = new Properties();
+    try (InputStream in = Files.newInputStream(cacheFile)) {
+      cache.load(in);
+    } catch (IOException | IllegalArgumentException e) {
+      logger.warn("unable to read resource cache {}", cacheFile, e);
+      return null;
+    }
+    if (!currentBootId.equals(cache.getProperty(BOOT_ID_KEY))) {
+      return null;
+    }
+    AttributesBuilder attributes = Attributes.builder();
+    cache.stringPropertyNames().stream()
+        .filter(key -> !key.equals(BOOT_ID_KEY))
+        .forEach(key -> attributes.put(key, cache.getProperty(key)));
+    logger.debug("using cached resource attributes from {}", cacheFile);
+    return attributes.build();
+  }
+
+  /** Only string attributes are cached, which includes all attributes of the cached detectors. */
+  void writeCache(String currentBootId, Attributes attributes) {
+    Properties cache = new Properties();
+    cache.setProperty(BOOT_ID_KEY, currentBootId);
+    attributes.forEach(
+        (key, value) -> {
+          if (key.getType() == AttributeType.STRING) {
+            cache.setProperty(key.getKey(), (String) value);
+          }
+        });
+    try {
+      Path parent = cacheFile.toAbsolutePath().getParent();
+      Files.createDirectories(parent);
+      // replaced atomically, so that a concurrent start never reads a partial file
+      Path temp = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        cache.store(out, "resource attributes detected by grafana-opentelemetry-starter");
+      }
+      Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      logger.warn("unable to write resource cache {}", cacheFile, e);
+    }
+  }
+
+  /** Returns null if the boot ID is not available, e.g. on other operating systems than Linux. */
+  private static String readBootId() {
+    try {
+      return Files.exists(BOOT_ID) ? Files.readString(BOOT_ID).trim() : null;
+    } catch (IOException e) {
+      logger.debug("unable to read boot ID", e);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,353 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.logs.export.LogRecordExporter;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+/**
+ * Flushes the tracer, meter, and logger providers of the SDK when the application context is
+ * closed, and then shuts them down - instead of the shutdown hook of the SDK, which runs
+ * concurrently with the shutdown of the application.
+ *
+ * <p>It is stopped after the web server (in a later phase), so that the spans and log records of
+ * the last requests are included. The providers are flushed in parallel, and the whole flush is
+ * bounded by <code>grafana.otlp.shutdown.timeout</code>. The spans, metric points, and log records
+ * whose export failed or had not completed by then are logged as lost - including the ones that an
+ * exporter further down the chain reported as exported before they were sent ({@link Losses}).
+ */
+class ShutdownFlush implements SmartLifecycle {
+
+  private static final Logger logger = LoggerFactory.getLogger(ShutdownFlush.class);
+
+  /** After the web server has been stopped (<code>SmartLifecycle.DEFAULT_PHASE - 2048</code>). */
+  static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+  private final Duration timeout;
+  private final List<LogAppenderConfigurer> logAppenderConfigurers;
+  private final Signal traces = new Signal();
+  private final Signal metrics = new Signal();
+  private final Signal logs = new Signal();
+
+  private volatile OpenTelemetrySdk sdk;
+  private volatile boolean running;
+
+  ShutdownFlush(Duration timeout, List<LogAppenderConfigurer> logAppenderConfigurers) {
+    this.timeout = timeout;
+    this.logAppenderConfigurers = logAppenderConfigurers;
+  }
+
+  /** Called when the SDK has been created - which may be after the start in deferred mode. */
+  void setSdk(OpenTelemetrySdk sdk) {
+    this.sdk = sdk;
+  }
+
+  @Override
+  public void start() {
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    OpenTelemetrySdk openTelemetrySdk = sdk;
+    if (openTelemetrySdk == null) {
+      // the SDK was not created, or is not ready yet in deferred mode
+      return;
+    }
+    long start = System.nanoTime();
+    long deadline = start + timeout.toNanos();
+    // only the exports that fail during the shutdown are counted
+    traces.mark();
+    metrics.mark();
+    logs.mark();
+
+    long queuedLogs = 0;
+    for (LogAppenderConfigurer configurer : logAppenderConfigurers) {
+      queuedLogs += configurer.drain(Math.max(0, deadline - System.nanoTime()));
+    }
+
+    Map<String, CompletableFuture<Boolean>> providers =
+        Map.of(
+            "tracer",
+            flushAndShutdown(
+                openTelemetrySdk.getSdkTracerProvider()::forceFlush,
+                openTelemetrySdk.getSdkTracerProvider()::shutdown,
+                deadline),
+            "meter",
+            flushAndShutdown(
+                openTelemetrySdk.getSdkMeterProvider()::forceFlush,
+                openTelemetrySdk.getSdkMeterProvider()::shutdown,
+                deadline),
+            "logger",
+            flushAndShutdown(
+                openTelemetrySdk.getSdkLoggerProvider()::forceFlush,
+                openTelemetrySdk.getSdkLoggerProvider()::shutdown,
+                deadline));
+    List<String> incomplete =
+        providers.entrySet().stream()
+            .filter(e -> !await(e.getValue(), deadline))
+            .map(Map.Entry::getKey)
+            .sorted()
+            .collect(Collectors.toList());
+
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    long lostSpans = traces.getLost();
+    long lostMetrics = metrics.getLost();
+    long lostLogs = logs.getLost() + queuedLogs;
+    long droppedRequests =
+        traces.getDroppedRequests() + metrics.getDroppedRequests() + logs.getDroppedRequests();
+    if (!incomplete.isEmpty()) {
+      logger.warn(
+          "the OpenTelemetry {} providers were not flushed within {}ms "
+              + "(grafana.otlp.shutdown.timeout), the data in their queues is lost",
+          incomplete,
+          timeout.toMillis());
+    }
+    if (lostSpans + lostMetrics + lostLogs > 0) {
+      logger.warn(
+          "lost {} spans, {} metric points, and {} log records on shutdown",
+          lostSpans,
+          lostMetrics,
+          lostLogs);
+    }
+    if (droppedRequests > 0) {
+      logger.warn("dropped {} requests from the disk buffer on shutdown", droppedRequests);
+    }
+    if (lostSpans + lostMetrics + lostLogs + droppedRequests == 0 && incomplete.isEmpty()) {
+      logger.info("flushed OpenTelemetry SDK in {}ms", millis);
+    }
+  }
+
+  /** Flushes and shuts down a provider on its own thread, so that the providers run in parallel. */
+  private static CompletableFuture<Boolean> flushAndShutdown(
+      Supplier<CompletableResultCode> flush,
+      Supplier<CompletableResultCode> shutdown,
+      long deadline) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          boolean flushed = join(flush.get(), deadline);
+          return join(shutdown.get(), deadline) && flushed;
+        },
+        runnable -> {
+          Thread thread = new Thread(runnable, "grafana-otlp-shutdown");
+          thread.setDaemon(true);
+          thread.start();
+        });
+  }
+
+  private static boolean join(CompletableResultCode result, long deadline) {
+    return result
+        .join(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+        .isDone();
+  }
+
+  private static boolean await(CompletableFuture<Boolean> future, long deadline) {
+    try {
+      return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (Exception e) {
+      logger.debug("unable to flush OpenTelemetry SDK", e);
+      return false;
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public int getPhase() {
+    return PHASE;
+  }
+
+  SpanExporter wrap(SpanExporter delegate) {
+    return new SpanExporter() {
+      @Override
+      public CompletableResultCode export(Collection<SpanData> spans) {
+        return traces.export(spans, delegate::export);
+      }
+
+      @Override
+      public CompletableResultCode flush() {
+        return delegate.flush();
+      }
+
+      @Override
+      public CompletableResultCode shutdown() {
+        return delegate.shutdown();
+      }
+
+      @Override
+      public String toString() {
+        return "ShutdownFlushSpanExporter{delegate=" + delegate + "}";
+      }
+    };
+  }
+
+  MetricExporter wrap(MetricExporter delegate) {
+    return new MetricExporter() {
+      @Override
+      public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+        return delegate.getAggregationTemporality(instrumentType);
+      }
+
+      @Override
+      public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+        return delegate.getDefaultAggregation(instrumentType);
+      }
+
+      @Override
+      public CompletableResultCode export(Collection<MetricData> data) {
+        return metrics.export(data, delegate::export);
+      }
+
+      @Override
+      public CompletableResultCode flush() {
+        return delegate.flush();
+      }
+
+      @Override
+      public CompletableResultCode shutdown() {
+        return delegate.shutdown();
+      }
+
+      @Override
+      public String toString() {
+        return "ShutdownFlushMetricExporter{delegate=" + delegate + "}";
+      }
+    };
+  }
+
+  LogRecordExporter wrap(LogRecordExporter delegate) {
+    return new LogRecordExporter() {
+      @Override
+      public CompletableResultCode export(Collection<LogRecordData> data) {
+        return logs.export(data, delegate::export);
+      }
+
+      @Override
+      public CompletableResultCode flush() {
+        return delegate.flush();
+      }
+
+      @Override
+      public CompletableResultCode shutdown() {
+        return delegate.shutdown();
+      }
+
+      @Override
+      public String toString() {
+        return "ShutdownFlushLogRecordExporter{delegate=" + delegate + "}";
+      }
+    };
+  }
+
+  Signal getTraces() {
+    return traces;
+  }
+
+  Signal getMetrics() {
+    return metrics;
+  }
+
+  Signal getLogs() {
+    return logs;
+  }
+
+  /**
+   * An exporter that completes the export before the items have been sent, e.g. because they are
+   * sent concurrently or buffered on disk - so its losses are not seen by the {@link Signal}.
+   */
+  interface Losses {
+    /** The items that were lost so far. */
+    long getLostItems();
+
+    /** The items that are being sent after their export has completed. */
+    default long getPendingItems() {
+      return 0;
+    }
+
+    /** The buffered requests that were dropped so far - their number of items is not known. */
+    default long getDroppedRequests() {
+      return 0;
+    }
+  }
+
+  /** Counts the items whose export failed, and the items that are being exported. */
+  static class Signal {
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final List<Losses> losses = new CopyOnWriteArrayList<>();
+    private volatile long failedBeforeShutdown;
+    private volatile long lostBeforeShutdown;
+    private volatile long droppedBeforeShutdown;
+
+    /** Ignores null, i.e. if the exporter was not wrapped. */
+    void track(Losses source) {
+      if (source != null) {
+        losses.add(source);
+      }
+    }
+
+    <T> CompletableResultCode export(
+        Collection<T> data, Function<Collection<T>, CompletableResultCode> delegate) {
+      int size = data.size();
+      inFlight.addAndGet(size);
+      CompletableResultCode result = delegate.apply(data);
+      result.whenComplete(
+          () -> {
+            inFlight.addAndGet(-size);
+            if (!result.isSuccess()) {
+              failed.add(size);
+            }
+          });
+      return result;
+    }
+
+    void mark() {
+      failedBeforeShutdown = failed.sum();
+      lostBeforeShutdown = losses.stream().mapToLong(Losses::getLostItems).sum();
+      droppedBeforeShutdown = losses.stream().mapToLong(Losses::getDroppedRequests).sum();
+    }
+
+    /** The items whose export failed since {@link #mark()}, or has not completed yet. */
+    long getLost() {
+      long lost = failed.sum() - failedBeforeShutdown + inFlight.get() - lostBeforeShutdown;
+      for (Losses source : losses) {
+        lost += source.getLostItems() + source.getPendingItems();
+      }
+      return lost;
+    }
+
+    /** The buffered requests that were dropped since {@link #mark()}. */
+    long getDroppedRequests() {
+      return losses.stream().mapToLong(Losses::getDroppedRequests).sum() - droppedBeforeShutdown;
+    }
+  }
+}
@@ -0,0 +1,415 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.DoubleExemplarData;
+import io.opentelemetry.sdk.metrics.data.DoublePointData;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.LongExemplarData;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.MetricDataType;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableDoublePointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableHistogramData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableHistogramPointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableLongPointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableMetricData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableSumData;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Removes series of cumulative metrics that have not been updated for a number of export intervals.
+ *
+ * <p>The SDK keeps every series of a cumulative metric in memory for the lifetime of the meter
+ * provider. Therefore, counters and explicit bucket histograms are collected with delta temporality
+ * (so that the SDK only keeps the series of the current interval), and converted back to cumulative
+ * temporality here. Stale series are removed from the cumulative state - and are no longer
+ * exported.
+ *
+ * <p>Up-down counters are not converted: a series that is not updated still has a valid value,
+ * e.g. the number of active requests or open connections.
+ *
+ * <p>The age of a series is measured in time rather than in exports, so that the additional
+ * collections of <code>forceFlush</code> (e.g. on shutdown) don't make series stale.
+ *
+ * <p>The cumulative state counts towards the {@link MemoryBudget}.
+ */
+class StaleSeriesMetricExporter implements MetricExporter {
+
+  private final MetricExporter delegate;
+  private final long staleNanos;
+  private final LongSupplier clock;
+  private final MemoryBudget.Account account;
+  private final Set<InstrumentType> convertedTypes = EnumSet.noneOf(InstrumentType.class);
+
+  // guarded by this
+  private final Map<MetricKey, MetricState> metrics = new HashMap<>();
+  private long interval;
+  private long evicted;
+
+  StaleSeriesMetricExporter(
+      MetricExporter delegate,
+      int staleIntervals,
+      Duration exportInterval,
+      boolean histograms,
+      LongSupplier clock) {
+    this(delegate, staleIntervals, exportInterval, histograms, clock, null);
+  }
+
+  /** The account is null if there is no memory budget. */
+  StaleSeriesMetricExporter(
+      MetricExporter delegate,
+      int staleIntervals,
+      Duration exportInterval,
+      boolean histograms,
+      LongSupplier clock,
+      MemoryBudget.Account account) {
+    this.delegate = delegate;
+    this.account = account;
+    // half an interval less, so that a delayed export doesn't keep a series for another interval
+    this.staleNanos = staleIntervals * exportInterval.toNanos() - exportInterval.toNanos() / 2;
+    this.clock = clock;
+    for (InstrumentType type : List.of(InstrumentType.COUNTER, InstrumentType.HISTOGRAM)) {
+      if ((histograms || type != InstrumentType.HISTOGRAM)
+          && delegate.getAggregationTemporality(type) == AggregationTemporality.CUMULATIVE) {
+        convertedTypes.add(type);
+      }
+    }
+  }
+
+  /**
+   * Returns the delegate if stale series are not removed.
+   *
+   * @param exportInterval the interval of the periodic metric reader
+   * @param histograms false for exponential histograms, which are not converted
+   */
+  static MetricExporter wrap(
+      MetricExporter delegate,
+      int staleIntervals,
+      Duration exportInterval,
+      boolean histograms,
+      MemoryBudget.Account account) {
+    if (staleIntervals <= 0) {
+      return delegate;
+    }
+    return new StaleSeriesMetricExporter(
+        delegate, staleIntervals, exportInterval, histograms, System::nanoTime, account);
+  }
+
+  @Override
+  public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+    return convertedTypes.contains(instrumentType)
+        ? AggregationTemporality.DELTA
+        : delegate.getAggregationTemporality(instrumentType);
+  }
+
+  @Override
+  public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+    return delegate.getDefaultAggregation(instrumentType);
+  }
+
+  @Override
+  public CompletableResultCode export(Collection<MetricData> metrics) {
+    List<MetricData> result = new ArrayList<>();
+    synchronized (this) {
+      interval++;
+      long now = clock.getAsLong();
+      long epochNanos = 0;
+      for (MetricData metric : metrics) {
+        if (isConverted(metric)) {
+          epochNanos = Math.max(epochNanos, accumulate(metric, now));
+        } else {
+          result.add(metric);
+        }
+      }
+      if (epochNanos == 0) {
+        epochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+      }
+      Iterator<MetricState> iterator = this.metrics.values().iterator();
+      while (iterator.hasNext()) {
+        MetricState state = iterator.next();
+        evictStale(state, now);
+        if (state.series.isEmpty()) {
+          iterator.remove();
+        } else {
+          result.add(state.toMetricData(epochNanos, interval));
+        }
+      }
+    }
+    return delegate.export(result);
+  }
+
+  private boolean isConverted(MetricData metric) {
+    switch (metric.getType()) {
+      case LONG_SUM:
+        return isConverted(
+            metric.getLongSumData().isMonotonic(),
+            metric.getLongSumData().getAggregationTemporality());
+      case DOUBLE_SUM:
+        return isConverted(
+            metric.getDoubleSumData().isMonotonic(),
+            metric.getDoubleSumData().getAggregationTemporality());
+      case HISTOGRAM:
+        return metric.getHistogramData().getAggregationTemporality()
+                == AggregationTemporality.DELTA
+            && convertedTypes.contains(InstrumentType.HISTOGRAM);
+      default:
+        return false;
+    }
+  }
+
+  private boolean isConverted(boolean monotonic, AggregationTemporality temporality) {
+    return monotonic
+        && temporality == AggregationTemporality.DELTA
+        && convertedTypes.contains(InstrumentType.COUNTER);
+  }
+
+  /** Returns the end time of the collection. */
+  private long accumulate(MetricData metric, long now) {
+    MetricState state =
+        metrics.computeIfAbsent(
+            new MetricKey(metric.getInstrumentationScopeInfo(), metric.getName()),
+            k -> new MetricState());
+    state.template = metric;
+    long epochNanos = 0;
+    switch (metric.getType()) {
+      case LONG_SUM:
+        for (LongPointData point : metric.getLongSumData().getPoints()) {
+          Series series = getSeries(state, point.getAttributes(), point.getStartEpochNanos());
+          series.longValue += point.getValue();
+          series.longExemplars = point.getExemplars();
+          series.lastInterval = interval;
+          series.lastUpdated = now;
+          epochNanos = Math.max(epochNanos, point.getEpochNanos());
+        }
+        break;
+      case DOUBLE_SUM:
+        for (DoublePointData point : metric.getDoubleSumData().getPoints()) {
+          Series series = getSeries(state, point.getAttributes(), point.getStartEpochNanos());
+          series.doubleValue += point.getValue();
+          series.doubleExemplars = point.getExemplars();
+          series.lastInterval = interval;
+          series.lastUpdated = now;
+          epochNanos = Math.max(epochNanos, point.getEpochNanos());
+        }
+        break;
+      case HISTOGRAM:
+        for (HistogramPointData point : metric.getHistogramData().getPoints()) {
+          Series series = getSeries(state, point.getAttributes(), point.getStartEpochNanos());
+          int buckets = series.counts == null ? 0 : series.counts.length;
+          series.addHistogram(point);
+          if (account != null && series.counts.length != buckets) {
+            long bytes = (series.counts.length - buckets) * MemoryBudget.BUCKET_COUNT;
+            series.bytes += bytes;
+            account.add(bytes);
+          }
+          series.doubleExemplars = point.getExemplars();
+          series.lastInterval = interval;
+          series.lastUpdated = now;
+          epochNanos = Math.max(epochNanos, point.getEpochNanos());
+        }
+        break;
+      default:
+        throw new IllegalStateException("unexpected metric type: " + metric.getType());
+    }
+    return epochNanos;
+  }
+
+  private Series getSeries(MetricState state, Attributes attributes, long startEpochNanos) {
+    Series series = state.series.get(attributes);
+    if (series == null) {
+      series = new Series(startEpochNanos);
+      state.series.put(attributes, series);
+      if (account != null) {
+        // the SDK doesn't keep the attributes of delta series
+        series.bytes = MemoryBudget.SERIES_OVERHEAD + MemoryBudget.estimate(attributes);
+        account.add(series.bytes);
+      }
+    }
+    return series;
+  }
+
+  private void evictStale(MetricState state, long now) {
+    Iterator<Series> iterator = state.series.values().iterator();
+    while (iterator.hasNext()) {
+      Series series = iterator.next();
+      if (now - series.lastUpdated >= staleNanos) {
+        iterator.remove();
+        evicted++;
+        if (account != null) {
+          account.release(series.bytes);
+        }
+      }
+    }
+  }
+
+  synchronized long getEvicted() {
+    return evicted;
+  }
+
+  @Override
+  public CompletableResultCode flush() {
+    return delegate.flush();
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    return delegate.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    return "StaleSeriesMetricExporter{delegate=" + delegate + "}";
+  }
+
+  private record MetricKey(InstrumentationScopeInfo scope, String name) {}
+
+  private static class MetricState {
+    private final Map<Attributes, Series> series = new HashMap<>();
+    private MetricData template;
+
+    MetricData toMetricData(long epochNanos, long interval) {
+      MetricDataType type = template.getType();
+      switch (type) {
+        case LONG_SUM:
+          return ImmutableMetricData.createLongSum(
+              template.getResource(),
+              template.getInstrumentationScopeInfo(),
+              template.getName(),
+              template.getDescription(),
+              template.getUnit(),
+              ImmutableSumData.create(
+                  template.getLongSumData().isMonotonic(),
+                  AggregationTemporality.CUMULATIVE,
+                  series.entrySet().stream()
+                      .map(
+                          e ->
+                              ImmutableLongPointData.create(
+                                  e.getValue().startEpochNanos,
+                                  epochNanos,
+                                  e.getKey(),
+                                  e.getValue().longValue,
+                                  e.getValue().longExemplars(interval)))
+                      .collect(Collectors.toList())));
+        case DOUBLE_SUM:
+          return ImmutableMetricData.createDoubleSum(
+              template.getResource(),
+              template.getInstrumentationScopeInfo(),
+              template.getName(),
+              template.getDescription(),
+              template.getUnit(),
+              ImmutableSumData.create(
+                  template.getDoubleSumData().isMonotonic(),
+                  AggregationTemporality.CUMULATIVE,
+                  series.entrySet().stream()
+                      .map(
+                          e ->
+                              ImmutableDoublePointData.create(
+                                  e.getValue().startEpochNanos,
+                                  epochNanos,
+                                  e.getKey(),
+                                  e.getValue().doubleValue,
+                                  e.getValue().doubleExemplars(interval)))
+                      .collect(Collectors.toList())));
+        case HISTOGRAM:
+          return ImmutableMetricData.createDoubleHistogram(
+              template.getResource(),
+              template.getInstrumentationScopeInfo(),
+              template.getName(),
+              template.getDescription(),
+              template.getUnit(),
+              ImmutableHistogramData.create(
+                  AggregationTemporality.CUMULATIVE,
+                  series.entrySet().stream()
+                      .map(e -> e.getValue().toHistogramPoint(e.getKey(), epochNanos, interval))
+                      .collect(Collectors.toList())));
+        default:
+          throw new IllegalStateException("unexpected metric type: " + type);
+      }
+    }
+  }
+
+  private static class Series {
+    private final long startEpochNanos;
+    private long bytes;
+    private long lastInterval;
+    private long lastUpdated;
+    private long longValue;
+    private double doubleValue;
+    private List<LongExemplarData> longExemplars = Collections.emptyList();
+    private List<DoubleExemplarData> doubleExemplars = Collections.emptyList();
+
+    private List<Double> boundaries;
+    private long[] counts;
+    private boolean hasMin;
+    private double min;
+    private boolean hasMax;
+    private double max;
+
+    Series(long startEpochNanos) {
+      this.startEpochNanos = startEpochNanos;
+    }
+
+    void addHistogram(HistogramPointData point) {
+      if (counts == null || !point.getBoundaries().equals(boundaries)) {
+        boundaries = point.getBoundaries();
+        counts = new long[point.getCounts().size()];
+      }
+      List<Long> pointCounts = point.getCounts();
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] += pointCounts.get(i);
+      }
+      doubleValue += point.getSum();
+      if (point.hasMin()) {
+        min = hasMin ? Math.min(min, point.getMin()) : point.getMin();
+        hasMin = true;
+      }
+      if (point.hasMax()) {
+        max = hasMax ? Math.max(max, point.getMax()) : point.getMax();
+        hasMax = true;
+      }
+    }
+
+    HistogramPointData toHistogramPoint(Attributes attributes, long epochNanos, long interval) {
+      return ImmutableHistogramPointData.create(
+          startEpochNanos,
+          epochNanos,
+          attributes,
+          doubleValue,
+          hasMin,
+          min,
+          hasMax,
+          max,
+          boundaries,
+          LongStream.of(counts).boxed().collect(Collectors.toList()),
+          doubleExemplars(interval));
+    }
+
+    /** Exemplars are only exported in the interval in which they were recorded. */
+    List<LongExemplarData> longExemplars(long interval) {
+      return lastInterval == interval ? longExemplars : Collections.emptyList();
+    }
+
+    List<DoubleExemplarData> doubleExemplars(long interval) {
+      return lastInterval == interval ? doubleExemplars : Collections.emptyList();
+    }
+  }
+}
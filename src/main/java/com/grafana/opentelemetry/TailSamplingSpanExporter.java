@@ -0,0 +1,343 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffers the spans of each trace and only exports traces that are slow, have an error, or are
+ * part of a random baseline.
+ *
+ * <p>The decision is made when the local root span ends (i.e. a span without a parent or with a
+ * remote parent), or when the window has passed. The decisions of recent traces are remembered, so
+ * that spans arriving after the decision are kept or dropped together with the rest of the trace.
+ *
+ * <p>The buffer is bounded by the number of traces and spans. If a limit is reached, the oldest
+ * trace is decided early. The buffered spans also count towards the {@link MemoryBudget}: under
+ * memory pressure, the oldest traces are decided early, and no baseline traces are kept.
+ *
+ * <p>Expired traces are decided on a separate thread, so the calls to the delegate are serialized
+ * - like the batch processor does - to keep the contract of {@link SpanExporter}.
+ */
+class TailSamplingSpanExporter implements SpanExporter {
+
+  private static final AttributeKey<String> DECISION = AttributeKey.stringKey("decision");
+  private static final AttributeKey<String> REASON = AttributeKey.stringKey("reason");
+
+  private static final Attributes KEEP_ERROR = Attributes.of(DECISION, "keep", REASON, "error");
+  private static final Attributes KEEP_LATENCY = Attributes.of(DECISION, "keep", REASON, "latency");
+  private static final Attributes KEEP_BASELINE =
+      Attributes.of(DECISION, "keep", REASON, "baseline");
+  private static final Attributes DROP = Attributes.of(DECISION, "drop");
+
+  private final SpanExporter delegate;
+  private final long windowNanos;
+  private final long latencyThresholdNanos;
+  private final double baselineRatio;
+  private final int maxTraces;
+  private final int maxSpans;
+  private final MemoryBudget.Account account;
+  private final Duration shutdownTimeout;
+
+  // guarded by this, in the order in which the traces were first seen
+  private final Map<String, Trace> traces = new LinkedHashMap<>();
+  private final Map<String, Boolean> decisions;
+  private int bufferedSpans;
+
+  private final LongAdder keptError = new LongAdder();
+  private final LongAdder keptLatency = new LongAdder();
+  private final LongAdder keptBaseline = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder evicted = new LongAdder();
+
+  // guards the calls to the delegate, separately from the buffer
+  private final Object exportLock = new Object();
+  private final ScheduledExecutorService scheduler;
+
+  TailSamplingSpanExporter(
+      SpanExporter delegate,
+      long windowNanos,
+      long latencyThresholdNanos,
+      double baselineRatio,
+      int maxTraces,
+      int maxSpans,
+      MemoryBudget.Account account,
+      Duration shutdownTimeout,
+      boolean scheduleExpiry) {
+    this.delegate = delegate;
+    this.windowNanos = windowNanos;
+    this.latencyThresholdNanos = latencyThresholdNanos;
+    this.baselineRatio = baselineRatio;
+    this.maxTraces = maxTraces;
+    this.maxSpans = maxSpans;
+    this.account = account;
+    this.shutdownTimeout = shutdownTimeout;
+    this.decisions =
+        new LinkedHashMap<>() {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > maxTraces;
+          }
+        };
+    if (scheduleExpiry) {
+      // traces must also be decided when no new spans arrive
+      scheduler =
+          Executors.newSingleThreadScheduledExecutor(
+              r -> {
+                Thread thread = new Thread(r, "grafana-otlp-tail-sampling");
+                thread.setDaemon(true);
+                return thread;
+              });
+      long period = Math.max(1, windowNanos / 2);
+      scheduler.scheduleAtFixedRate(
+          () -> export(List.of(), System.nanoTime()), period, period, TimeUnit.NANOSECONDS);
+    } else {
+      scheduler = null;
+    }
+  }
+
+  /**
+   * Returns the delegate if tail sampling is disabled or if the exporter is not an OTLP exporter,
+   * e.g. the logging exporter. The wrapped exporter is the innermost exporter that the batch
+   * processor calls, the exporter is the original exporter.
+   *
+   * @param budget the memory budget, or null if there is no budget
+   * @param shutdownTimeout the time to wait for the buffered traces on shutdown (<code>
+   *     grafana.otlp.shutdown.timeout</code>)
+   */
+  static SpanExporter wrap(
+      SpanExporter exporter,
+      SpanExporter delegate,
+      GrafanaProperties.TailSamplingProperties properties,
+      MemoryBudget budget,
+      Duration shutdownTimeout) {
+    if (!properties.isEnabled()
+        || !(exporter instanceof OtlpHttpSpanExporter
+            || exporter instanceof OtlpGrpcSpanExporter)) {
+      return delegate;
+    }
+    MemoryBudget.Account account =
+        budget == null ? null : budget.account("traces", "tail_sampling");
+    return new TailSamplingSpanExporter(
+        delegate,
+        properties.getWindow().toNanos(),
+        properties.getLatencyThreshold().toNanos(),
+        properties.getBaselineRatio(),
+        properties.getMaxTraces(),
+        properties.getMaxSpans(),
+        account,
+        shutdownTimeout,
+        true);
+  }
+
+  void registerMetrics(OpenTelemetry openTelemetry) {
+    Meter meter = openTelemetry.getMeter(OpenTelemetryConfig.INSTRUMENTATION_SCOPE_NAME);
+    meter
+        .gaugeBuilder("grafana.otlp.traces.tail_sampling.buffered")
+        .ofLongs()
+        .setDescription("The number of traces that are waiting for a tail sampling decision")
+        .buildWithCallback(m -> m.record(getBufferedTraces()));
+    meter
+        .counterBuilder("grafana.otlp.traces.tail_sampling.evicted")
+        .setDescription("The number of traces that were decided early, because the buffer was full")
+        .buildWithCallback(m -> m.record(evicted.sum()));
+    meter
+        .counterBuilder("grafana.otlp.traces.tail_sampling.decisions")
+        .setDescription("The number of tail sampling decisions")
+        .buildWithCallback(
+            m -> {
+              m.record(keptError.sum(), KEEP_ERROR);
+              m.record(keptLatency.sum(), KEEP_LATENCY);
+              m.record(keptBaseline.sum(), KEEP_BASELINE);
+              m.record(dropped.sum(), DROP);
+            });
+  }
+
+  @Override
+  public CompletableResultCode export(Collection<SpanData> spans) {
+    return export(spans, System.nanoTime());
+  }
+
+  CompletableResultCode export(Collection<SpanData> spans, long now) {
+    List<SpanData> kept = new ArrayList<>();
+    synchronized (this) {
+      for (SpanData span : spans) {
+        add(span, now, kept);
+      }
+      expire(now, kept);
+    }
+    return kept.isEmpty() ? CompletableResultCode.ofSuccess() : exportKept(kept);
+  }
+
+  private CompletableResultCode exportKept(List<SpanData> kept) {
+    synchronized (exportLock) {
+      return delegate.export(kept);
+    }
+  }
+
+  private void add(SpanData span, long now, List<SpanData> kept) {
+    String traceId = span.getTraceId();
+    Boolean decision = decisions.get(traceId);
+    if (decision != null) {
+      if (decision) {
+        kept.add(span);
+      }
+      return;
+    }
+
+    Trace trace = traces.computeIfAbsent(traceId, id -> new Trace(now));
+    trace.add(span, latencyThresholdNanos);
+    bufferedSpans++;
+    if (account != null) {
+      long bytes = MemoryBudget.estimate(span);
+      trace.bytes += bytes;
+      account.add(bytes);
+    }
+
+    SpanContext parent = span.getParentSpanContext();
+    if (!parent.isValid() || parent.isRemote()) {
+      traces.remove(traceId);
+      decide(traceId, trace, kept);
+    }
+
+    while (!traces.isEmpty() && (traces.size() > maxTraces || bufferedSpans > maxSpans)) {
+      evictOldest(kept);
+    }
+    // the buffer shrinks by one trace per span, so that it is not flushed at once
+    if (!traces.isEmpty() && isUnderPressure()) {
+      evictOldest(kept);
+    }
+  }
+
+  private void evictOldest(List<SpanData> kept) {
+    Iterator<Map.Entry<String, Trace>> iterator = traces.entrySet().iterator();
+    Map.Entry<String, Trace> oldest = iterator.next();
+    iterator.remove();
+    evicted.increment();
+    decide(oldest.getKey(), oldest.getValue(), kept);
+  }
+
+  private void expire(long now, List<SpanData> kept) {
+    Iterator<Map.Entry<String, Trace>> iterator = traces.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Trace> entry = iterator.next();
+      if (now - entry.getValue().firstSeen < windowNanos) {
+        // the remaining traces were seen later
+        return;
+      }
+      iterator.remove();
+      decide(entry.getKey(), entry.getValue(), kept);
+    }
+  }
+
+  private void decide(String traceId, Trace trace, List<SpanData> kept) {
+    bufferedSpans -= trace.spans.size();
+    // the baseline is the first thing to give up under memory pressure
+    boolean underPressure = isUnderPressure();
+    if (account != null) {
+      account.release(trace.bytes);
+    }
+    boolean keep = true;
+    if (trace.error) {
+      keptError.increment();
+    } else if (trace.slow) {
+      keptLatency.increment();
+    } else if (!underPressure && isBaseline(traceId)) {
+      keptBaseline.increment();
+    } else {
+      dropped.increment();
+      keep = false;
+    }
+    decisions.put(traceId, keep);
+    if (keep) {
+      kept.addAll(trace.spans);
+    }
+  }
+
+  private boolean isUnderPressure() {
+    return account != null && account.isUnderPressure();
+  }
+
+  /**
+   * Uses the random part of the trace ID like <code>traceidratio</code>, so that all exporters
+   * and services keep the same baseline traces.
+   */
+  private boolean isBaseline(String traceId) {
+    long random = Long.parseUnsignedLong(traceId, 16, 32, 16);
+    return Math.abs(random) < baselineRatio * Long.MAX_VALUE;
+  }
+
+  synchronized int getBufferedTraces() {
+    return traces.size();
+  }
+
+  long getEvicted() {
+    return evicted.sum();
+  }
+
+  @Override
+  public CompletableResultCode flush() {
+    List<SpanData> kept = new ArrayList<>();
+    synchronized (this) {
+      traces.forEach((traceId, trace) -> decide(traceId, trace, kept));
+      traces.clear();
+    }
+    synchronized (exportLock) {
+      if (kept.isEmpty()) {
+        return delegate.flush();
+      }
+      return CompletableResultCode.ofAll(List.of(delegate.export(kept), delegate.flush()));
+    }
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+    flush().join(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    return delegate.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    return "TailSamplingSpanExporter{delegate=" + delegate + "}";
+  }
+
+  private static class Trace {
+    private final long firstSeen;
+    private final List<SpanData> spans = new ArrayList<>();
+    private boolean error;
+    private boolean slow;
+    private long bytes;
+
+    Trace(long firstSeen) {
+      this.firstSeen = firstSeen;
+    }
+
+    void add(SpanData span, long latencyThresholdNanos) {
+      spans.add(span);
+      error |= span.getStatus().getStatusCode() == StatusCode.ERROR;
+      slow |= span.getEndEpochNanos() - span.getStartEpochNanos() >= latencyThresholdNanos;
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.grafana.opentelemetry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allows a number of permits per second, with bursts of up to one second worth of permits.
+ *
+ * <p>Instead of counting tokens, the bucket keeps the time at which it was (or will be) empty, so
+ * that a permit can be acquired with a single compare-and-set.
+ */
+class TokenBucket {
+
+  private final long nanosPerPermit;
+  private final long capacityNanos;
+  private final AtomicLong emptyAt;
+
+  TokenBucket(double permitsPerSecond, long nanoTime) {
+    this.nanosPerPermit = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+    this.capacityNanos = Math.round(Math.max(1, permitsPerSecond) * nanosPerPermit);
+    this.emptyAt = new AtomicLong(nanoTime - capacityNanos);
+  }
+
+  boolean tryAcquire(long nanoTime) {
+    while (true) {
+      long current = emptyAt.get();
+      // the bucket doesn't hold more than its capacity
+      long start = current - (nanoTime - capacityNanos) < 0 ? nanoTime - capacityNanos : current;
+      long next = start + nanosPerPermit;
+      if (next - nanoTime > 0) {
+        return false;
+      }
+      if (emptyAt.compareAndSet(current, next)) {
+        return true;
+      }
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.logs.Severity;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exports log events only if their trace is sampled, so that logs and traces scale down together.
+ *
+ * <ul>
+ *   <li><code>WARN</code> and above are always exported
+ *   <li>log events in a sampled span are exported
+ *   <li>log events in a span that is not sampled are dropped
+ *   <li>log events outside of any span are exported with the configured ratio
+ * </ul>
+ */
+class TraceAwareLogSampler {
+
+  private static final int ALWAYS_EXPORTED = Severity.WARN.getSeverityNumber();
+
+  private final double ratio;
+
+  TraceAwareLogSampler(double ratio) {
+    this.ratio = ratio;
+  }
+
+  /** Returns null if sampling is disabled. */
+  static TraceAwareLogSampler create(GrafanaProperties.LogSamplingProperties properties) {
+    return properties.isEnabled() ? new TraceAwareLogSampler(properties.getRatio()) : null;
+  }
+
+  boolean shouldExport(int severityNumber, boolean inSpan, boolean sampled) {
+    if (severityNumber >= ALWAYS_EXPORTED) {
+      return true;
+    }
+    if (inSpan) {
+      return sampled;
+    }
+    return ratio >= 1 || (ratio > 0 && ThreadLocalRandom.current().nextDouble() < ratio);
+  }
+}
@@ -0,0 +1,116 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveBatchProcessorTest {
+
+  private static final Duration DELAY = Duration.ofHours(1);
+
+  private final List<List<String>> exports = new CopyOnWriteArrayList<>();
+  private final CountDownLatch exporting = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private boolean shutdown;
+
+  // only exported when a full batch is waiting, or when flushed
+  private final AdaptiveBatchProcessor<String> processor =
+      new AdaptiveBatchProcessor<>(
+          this::export,
+          CompletableResultCode::ofSuccess,
+          () -> {
+            shutdown = true;
+            return CompletableResultCode.ofSuccess();
+          },
+          16,
+          2,
+          DELAY,
+          Duration.ofSeconds(10),
+          "test");
+
+  @AfterEach
+  void tearDown() {
+    release.countDown();
+    processor.shutdown().join(10, TimeUnit.SECONDS);
+  }
+
+  private CompletableResultCode export(Collection<String> batch) {
+    exports.add(new ArrayList<>(batch));
+    exporting.countDown();
+    try {
+      // the first export blocks until the test releases it
+      release.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return CompletableResultCode.ofSuccess();
+  }
+
+  private void add(int count) {
+    for (int i = 0; i < count; i++) {
+      processor.add("item" + i);
+    }
+  }
+
+  @Test
+  void growWhenQueueFillsFasterThanItDrains() throws InterruptedException {
+    add(2);
+    exporting.await();
+    // while the first batch is exported
+    add(10);
+    release.countDown();
+    processor.forceFlush().join(10, TimeUnit.SECONDS);
+
+    Assertions.assertThat(exports.get(0)).hasSize(2);
+    Assertions.assertThat(exports.get(1)).hasSize(4);
+    Assertions.assertThat(exports.stream().mapToInt(List::size).sum()).isEqualTo(12);
+    Assertions.assertThat(processor.getBatchSize()).isGreaterThan(2);
+    Assertions.assertThat(processor.getDelay()).isLessThan(DELAY);
+  }
+
+  @Test
+  void relaxWhenIdle() throws InterruptedException {
+    add(2);
+    exporting.await();
+    add(10);
+    release.countDown();
+    processor.forceFlush().join(10, TimeUnit.SECONDS);
+
+    for (int i = 0; i < 3; i++) {
+      processor.adapt(0);
+    }
+    Assertions.assertThat(processor.getBatchSize()).isEqualTo(2);
+    Assertions.assertThat(processor.getDelay()).isEqualTo(DELAY);
+  }
+
+  @Test
+  void dropWhenQueueIsFull() throws InterruptedException {
+    add(2);
+    exporting.await();
+    add(20);
+
+    Assertions.assertThat(processor.getQueueSize()).isEqualTo(16);
+    Assertions.assertThat(processor.getDropped()).isEqualTo(4);
+  }
+
+  @Test
+  void shutdownExportsQueuedItems() {
+    release.countDown();
+    processor.add("item");
+
+    Assertions.assertThat(processor.shutdown().join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    Assertions.assertThat(exports).containsExactly(List.of("item"));
+    Assertions.assertThat(shutdown).isTrue();
+    // dropped after the shutdown
+    processor.add("late");
+    Assertions.assertThat(processor.getDropped()).isEqualTo(1);
+  }
+}
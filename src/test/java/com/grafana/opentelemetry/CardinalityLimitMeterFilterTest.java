@@ -0,0 +1,45 @@
+package com.grafana.opentelemetry;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Map;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+
+@ExtendWith(OutputCaptureExtension.class)
+class CardinalityLimitMeterFilterTest {
+
+  @Test
+  void overflow(CapturedOutput output) {
+    CardinalityLimitMeterFilter filter =
+        new CardinalityLimitMeterFilter(2, Map.of("http.server", 1, "unlimited", 0));
+    MeterRegistry registry = new SimpleMeterRegistry();
+    registry.config().meterFilter(filter);
+
+    for (int i = 0; i < 5; i++) {
+      registry.counter("requests", "user", "user-" + i).increment();
+      registry.counter("http.server.requests", "uri", "/users/" + i).increment();
+      registry.counter("unlimited", "user", "user-" + i).increment();
+    }
+    // a known tag combination is not counted again
+    registry.counter("requests", "user", "user-0").increment();
+
+    Assertions.assertThat(registry.find("requests").counters()).hasSize(3);
+    Counter overflow =
+        registry.get("requests").tags(CardinalityLimitMeterFilter.OVERFLOW).counter();
+    Assertions.assertThat(overflow.count()).isEqualTo(3);
+    Assertions.assertThat(filter.getOverflow("requests")).isEqualTo(3);
+
+    Assertions.assertThat(registry.find("http.server.requests").counters()).hasSize(2);
+    Assertions.assertThat(filter.getOverflow("http.server.requests")).isEqualTo(4);
+
+    Assertions.assertThat(registry.find("unlimited").counters()).hasSize(5);
+
+    Assertions.assertThat(output)
+        .containsOnlyOnce("meter requests has more than 2 tag combinations");
+  }
+}
@@ -0,0 +1,96 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerExporterTest {
+
+  private long now;
+  private boolean up;
+  private int exports;
+
+  private final CircuitBreakerExporter<String> exporter = circuitBreaker();
+
+  private CircuitBreakerExporter<String> circuitBreaker() {
+    GrafanaProperties.CircuitBreakerProperties properties =
+        new GrafanaProperties.CircuitBreakerProperties();
+    properties.setFailureThreshold(2);
+    properties.setInitialBackoff(Duration.ofSeconds(10));
+    properties.setMaxBackoff(Duration.ofSeconds(15));
+    // always the full backoff
+    return new CircuitBreakerExporter<>(this::send, "traces", properties, () -> now, () -> 1);
+  }
+
+  private CompletableResultCode send(Collection<String> data) {
+    exports++;
+    return up ? CompletableResultCode.ofSuccess() : CompletableResultCode.ofFailure();
+  }
+
+  private boolean export() {
+    return exporter.export(List.of("a", "b")).isSuccess();
+  }
+
+  private void advance(Duration duration) {
+    now += duration.toNanos();
+  }
+
+  @Test
+  void openAfterConsecutiveFailures() {
+    Assertions.assertThat(export()).isFalse();
+    Assertions.assertThat(exporter.getState()).isEqualTo(CircuitBreakerExporter.State.CLOSED);
+    Assertions.assertThat(export()).isFalse();
+    Assertions.assertThat(exporter.getState()).isEqualTo(CircuitBreakerExporter.State.OPEN);
+
+    // not passed to the exporter
+    up = true;
+    Assertions.assertThat(export()).isFalse();
+    Assertions.assertThat(exports).isEqualTo(2);
+    Assertions.assertThat(exporter.getRejected()).isEqualTo(2);
+  }
+
+  @Test
+  void closeAfterSuccessfulProbe() {
+    export();
+    export();
+
+    advance(Duration.ofSeconds(10));
+    up = true;
+    Assertions.assertThat(export()).isTrue();
+    Assertions.assertThat(exporter.getState()).isEqualTo(CircuitBreakerExporter.State.CLOSED);
+    Assertions.assertThat(exports).isEqualTo(3);
+  }
+
+  @Test
+  void doubleBackoffAfterFailedProbe() {
+    export();
+    export();
+
+    advance(Duration.ofSeconds(10));
+    Assertions.assertThat(export()).isFalse();
+    Assertions.assertThat(exports).isEqualTo(3);
+    Assertions.assertThat(exporter.getState()).isEqualTo(CircuitBreakerExporter.State.OPEN);
+
+    // the backoff is limited to 15s
+    advance(Duration.ofSeconds(14));
+    Assertions.assertThat(export()).isFalse();
+    Assertions.assertThat(exports).isEqualTo(3);
+    advance(Duration.ofSeconds(1));
+    up = true;
+    Assertions.assertThat(export()).isTrue();
+    Assertions.assertThat(exports).isEqualTo(4);
+  }
+
+  @Test
+  void successResetsFailures() {
+    export();
+    up = true;
+    export();
+    up = false;
+    export();
+    Assertions.assertThat(exporter.getState()).isEqualTo(CircuitBreakerExporter.State.CLOSED);
+  }
+}
@@ -0,0 +1,149 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+class ConcurrentExporterTest {
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+  private final List<List<String>> requests = new ArrayList<>();
+  private final List<CompletableResultCode> results = new ArrayList<>();
+
+  private CompletableResultCode send(Collection<String> request) {
+    requests.add(new ArrayList<>(request));
+    CompletableResultCode result = new CompletableResultCode();
+    results.add(result);
+    return result;
+  }
+
+  private static long size(List<String> request) {
+    return request.stream().mapToLong(String::length).sum();
+  }
+
+  private static List<String> batch(int size) {
+    return IntStream.range(0, size).mapToObj(i -> "item" + i).collect(Collectors.toList());
+  }
+
+  @Test
+  void splitLargeBatches() {
+    ConcurrentExporter<String> exporter =
+        new ConcurrentExporter<>(this::send, ConcurrentExporterTest::size, 12, 1, null, null);
+
+    Assertions.assertThat(exporter.split(batch(5)))
+        .containsExactly(
+            List.of("item0"), List.of("item1", "item2"), List.of("item3", "item4"));
+    Assertions.assertThat(exporter.split(List.of("item_with_long_name")))
+        .containsExactly(List.of("item_with_long_name"));
+  }
+
+  @Test
+  void sendRequestsConcurrently() {
+    ConcurrentExporter<String> exporter =
+        new ConcurrentExporter<>(this::send, null, 0, 2, null, null);
+
+    Assertions.assertThat(exporter.export(batch(1)).isSuccess()).isTrue();
+    Assertions.assertThat(exporter.export(batch(2)).isSuccess()).isTrue();
+    Assertions.assertThat(exporter.getInFlight()).isEqualTo(2);
+
+    CompletableResultCode flush = exporter.flush(CompletableResultCode.ofSuccess());
+    Assertions.assertThat(flush.isDone()).isFalse();
+
+    results.get(0).succeed();
+    Assertions.assertThat(exporter.export(batch(3)).isSuccess()).isTrue();
+    Assertions.assertThat(requests).hasSize(3);
+
+    results.get(1).succeed();
+    Assertions.assertThat(flush.isSuccess()).isTrue();
+  }
+
+  @Test
+  void sendRequestsInOrder() {
+    ConcurrentExporter<String> exporter =
+        new ConcurrentExporter<>(
+            request -> {
+              send(request);
+              // completes before the next request is sent
+              return results.get(results.size() - 1).succeed();
+            },
+            ConcurrentExporterTest::size,
+            12,
+            1,
+            null,
+            null);
+
+    CompletableResultCode result = exporter.export(batch(4));
+
+    Assertions.assertThat(result.isSuccess()).isTrue();
+    Assertions.assertThat(requests)
+        .containsExactly(List.of("item0", "item1"), List.of("item2", "item3"));
+    Assertions.assertThat(exporter.getInFlight()).isZero();
+  }
+
+  @Test
+  void disabledByDefault() {
+    GrafanaProperties.ExportProperties properties = new GrafanaProperties.ExportProperties();
+    SpanExporter delegate = SpanExporter.composite();
+    Assertions.assertThat(ConcurrentExporter.wrap(delegate, properties, TIMEOUT, null))
+        .isSameAs(delegate);
+
+    properties.setMaxRequestSize(DataSize.ofMegabytes(4));
+    Assertions.assertThat(ConcurrentExporter.wrap(delegate, properties, TIMEOUT, null))
+        .isInstanceOf(ConcurrentExporter.Spans.class);
+  }
+
+  @Test
+  void droppedItemsFailTheExport() {
+    ConcurrentExporter<String> exporter =
+        new ConcurrentExporter<>(this::send, ConcurrentExporterTest::size, 12, 2, null, null);
+
+    // e.g. the application is stopped while the batch processor waits for a request
+    Thread.currentThread().interrupt();
+    try {
+      Assertions.assertThat(exporter.export(batch(5)).isSuccess()).isFalse();
+    } finally {
+      Thread.interrupted();
+    }
+    Assertions.assertThat(exporter.getDropped()).isEqualTo(5);
+    Assertions.assertThat(requests).isEmpty();
+  }
+
+  @Test
+  void shutdownTimeout() {
+    ConcurrentExporter<String> concurrent =
+        new ConcurrentExporter<>(this::send, null, 0, 2, null, null);
+    ConcurrentExporter.Spans exporter =
+        new ConcurrentExporter.Spans(SpanExporter.composite(), concurrent, Duration.ofMillis(10));
+    exporter.export(List.of());
+
+    // the request never completes
+    Assertions.assertThat(exporter.shutdown().isSuccess()).isTrue();
+    Assertions.assertThat(concurrent.getInFlight()).isEqualTo(1);
+  }
+
+  @Test
+  void requestsInFlightCountTowardsMemoryBudget() {
+    MemoryBudget budget = new MemoryBudget(1000);
+    ConcurrentExporter<String> exporter =
+        new ConcurrentExporter<>(
+            this::send, null, 0, 2, item -> 10, budget.account("traces", "in_flight"));
+
+    exporter.export(batch(2));
+    exporter.export(batch(3));
+    Assertions.assertThat(budget.getUsed()).isEqualTo(50);
+
+    results.get(0).succeed();
+    Assertions.assertThat(budget.getUsed()).isEqualTo(30);
+    results.get(1).fail();
+    Assertions.assertThat(budget.getUsed()).isZero();
+  }
+}
@@ -0,0 +1,149 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.logs.Logger;
+import io.opentelemetry.api.logs.Severity;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.logs.SdkLoggerProvider;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DeferredOpenTelemetryTest {
+
+  private static final AttributeKey<String> THREAD = AttributeKey.stringKey("thread.name");
+
+  private final List<LogRecordData> logs = new ArrayList<>();
+
+  private final OpenTelemetry sdk =
+      OpenTelemetrySdk.builder()
+          .setTracerProvider(SdkTracerProvider.builder().build())
+          .setLoggerProvider(
+              SdkLoggerProvider.builder()
+                  .addLogRecordProcessor((context, log) -> logs.add(log.toLogRecordData()))
+                  .build())
+          .build();
+
+  private final DeferredOpenTelemetry deferred = new DeferredOpenTelemetry(2);
+
+  private final Logger logger = deferred.getLogsBridge().get("test");
+
+  private void emit(String body) {
+    logger
+        .logRecordBuilder()
+        .setSeverity(Severity.INFO)
+        .setBody(body)
+        .setAttribute(THREAD, "main")
+        .emit();
+  }
+
+  private List<String> bodies() {
+    return logs.stream().map(l -> l.getBody().asString()).collect(Collectors.toList());
+  }
+
+  @Test
+  void replayBufferedLogsInOrder() {
+    emit("first");
+    emit("second");
+    // the buffer is full
+    emit("third");
+    Assertions.assertThat(logs).isEmpty();
+
+    deferred.switchTo(sdk);
+    emit("fourth");
+
+    Assertions.assertThat(bodies()).containsExactly("first", "second", "fourth");
+    Assertions.assertThat(logs.get(0).getAttributes().get(THREAD)).isEqualTo("main");
+    Assertions.assertThat(logs.get(0).getInstrumentationScopeInfo().getName()).isEqualTo("test");
+    Assertions.assertThat(logs.get(0).getObservedTimestampEpochNanos()).isPositive();
+    Assertions.assertThat(deferred.getDroppedLogs()).isEqualTo(1);
+  }
+
+  @Test
+  void dropLogsAfterTimeout() {
+    emit("first");
+    deferred.stopBuffering(Duration.ofSeconds(30));
+    emit("second");
+
+    deferred.switchTo(sdk);
+    Assertions.assertThat(logs).isEmpty();
+    Assertions.assertThat(deferred.getDroppedLogs()).isEqualTo(2);
+  }
+
+  @Test
+  void useTracersThatWereCreatedBefore() {
+    Tracer tracer = deferred.getTracer("test");
+    Span span = tracer.spanBuilder("early").startSpan();
+    Assertions.assertThat(span.getSpanContext().isValid()).isFalse();
+
+    deferred.switchTo(sdk);
+    Assertions.assertThat(tracer.spanBuilder("late").startSpan().getSpanContext().isValid())
+        .isTrue();
+  }
+
+  @Test
+  void notifyWhenReady() {
+    AtomicReference<OpenTelemetry> before = new AtomicReference<>();
+    deferred.onReady(before::set);
+    Assertions.assertThat(deferred.isReady()).isFalse();
+    Assertions.assertThat(before.get()).isNull();
+
+    deferred.switchTo(sdk);
+    Assertions.assertThat(before).hasValue(sdk);
+
+    AtomicReference<OpenTelemetry> after = new AtomicReference<>();
+    deferred.onReady(after::set);
+    Assertions.assertThat(after).hasValue(sdk);
+  }
+
+  @Test
+  void useNoopWhenSdkCantBeCreated() throws Exception {
+    DeferredOpenTelemetry failed =
+        DeferredOpenTelemetry.start(
+            new GrafanaProperties.StartupProperties(),
+            () -> {
+              throw new NoClassDefFoundError("io/opentelemetry/exporter/Missing");
+            });
+    CompletableFuture<OpenTelemetry> ready = new CompletableFuture<>();
+    failed.onReady(ready::complete);
+
+    Assertions.assertThat(ready.get(10, TimeUnit.SECONDS)).isSameAs(OpenTelemetry.noop());
+  }
+
+  @Test
+  void useNoopWhenSdkIsNotReadyInTime() throws Exception {
+    GrafanaProperties.StartupProperties properties = new GrafanaProperties.StartupProperties();
+    properties.setTimeout(Duration.ofMillis(100));
+    CountDownLatch release = new CountDownLatch(1);
+    DeferredOpenTelemetry slow =
+        DeferredOpenTelemetry.start(
+            properties,
+            () -> {
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return null;
+            });
+    CompletableFuture<OpenTelemetry> ready = new CompletableFuture<>();
+    slow.onReady(ready::complete);
+
+    Assertions.assertThat(ready.get(10, TimeUnit.SECONDS)).isSameAs(OpenTelemetry.noop());
+    release.countDown();
+    // an SDK that is ready later is not used
+    Assertions.assertThat(slow.switchTo(sdk)).isFalse();
+  }
+}
@@ -0,0 +1,86 @@
+package com.grafana.opentelemetry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DiskBufferTest {
+
+  private static final int RECORD_SIZE = 80 * 1024;
+
+  @TempDir Path directory;
+
+  private final List<Byte> sent = new ArrayList<>();
+
+  private DiskBuffer.Result send(byte[] request) {
+    sent.add(request[0]);
+    return DiskBuffer.Result.SENT;
+  }
+
+  private static byte[] record(int value) {
+    byte[] record = new byte[RECORD_SIZE];
+    Arrays.fill(record, (byte) value);
+    return record;
+  }
+
+  @Test
+  void replayInOrder() throws IOException {
+    DiskBuffer buffer = new DiskBuffer(directory, 1024 * 1024);
+    buffer.append(record(1));
+    buffer.append(record(2));
+    Assertions.assertThat(buffer.getPending()).isEqualTo(2);
+
+    Assertions.assertThat(buffer.replay(r -> DiskBuffer.Result.FAILED)).isFalse();
+    Assertions.assertThat(buffer.getPending()).isEqualTo(2);
+
+    buffer.append(record(3));
+    Assertions.assertThat(buffer.replay(this::send)).isTrue();
+    Assertions.assertThat(sent).containsExactly((byte) 1, (byte) 2, (byte) 3);
+    Assertions.assertThat(buffer.isEmpty()).isTrue();
+    // the segments have been deleted
+    Assertions.assertThat(buffer.getTotalBytes()).isZero();
+    Assertions.assertThat(directory).isEmptyDirectory();
+  }
+
+  @Test
+  void dropOldestIfFull() throws IOException {
+    // each record gets its own segment, because it is larger than the default segment size
+    DiskBuffer buffer = new DiskBuffer(directory, 200 * 1024);
+    buffer.append(record(1));
+    buffer.append(record(2));
+    buffer.append(record(3));
+
+    Assertions.assertThat(buffer.getPending()).isEqualTo(2);
+    Assertions.assertThat(buffer.getDropped()).isEqualTo(1);
+    Assertions.assertThat(buffer.replay(this::send)).isTrue();
+    Assertions.assertThat(sent).containsExactly((byte) 2, (byte) 3);
+  }
+
+  @Test
+  void rejectedRequestsAreDropped() throws IOException {
+    DiskBuffer buffer = new DiskBuffer(directory, 1024 * 1024);
+    buffer.append(record(1));
+
+    Assertions.assertThat(buffer.replay(r -> DiskBuffer.Result.REJECTED)).isTrue();
+    Assertions.assertThat(buffer.getDropped()).isEqualTo(1);
+  }
+
+  @Test
+  void keepRequestsAfterRestart() throws IOException {
+    DiskBuffer buffer = new DiskBuffer(directory, 1024 * 1024);
+    buffer.append(record(1));
+    buffer.append(record(2));
+    buffer.close();
+
+    DiskBuffer restarted = new DiskBuffer(directory, 1024 * 1024);
+    Assertions.assertThat(restarted.getPending()).isEqualTo(2);
+    restarted.append(record(3));
+    Assertions.assertThat(restarted.replay(this::send)).isTrue();
+    Assertions.assertThat(sent).containsExactly((byte) 1, (byte) 2, (byte) 3);
+  }
+}
@@ -0,0 +1,221 @@
+package com.grafana.opentelemetry;
+
+import com.sun.net.httpserver.HttpServer;
+import io.opentelemetry.exporter.internal.otlp.traces.TraceRequestMarshaler;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.sdk.autoconfigure.spi.internal.DefaultConfigProperties;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DiskBufferingExporterTest {
+
+  @TempDir Path directory;
+
+  /** A stand-in for the OTLP endpoint, which responds with 503 while it is down. */
+  private HttpServer server;
+
+  private volatile boolean up;
+  private volatile String retryAfter;
+  private final List<String> received = new CopyOnWriteArrayList<>();
+
+  private OtlpHttpSpanExporter delegate;
+  private OtlpHttpReplaySender sender;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/v1/traces",
+        exchange -> {
+          try (InputStream body = exchange.getRequestBody()) {
+            // the span names are readable in the protobuf payload
+            String request = new String(body.readAllBytes(), StandardCharsets.ISO_8859_1);
+            if (up) {
+              received.add(request);
+            }
+          }
+          if (!up && retryAfter != null) {
+            exchange.getResponseHeaders().add("Retry-After", retryAfter);
+          }
+          exchange.sendResponseHeaders(up ? 200 : 503, -1);
+          exchange.close();
+        });
+    server.start();
+    URI endpoint = URI.create("http://localhost:" + server.getAddress().getPort() + "/v1/traces");
+    delegate = OtlpHttpSpanExporter.builder().setEndpoint(endpoint.toString()).build();
+    sender = new OtlpHttpReplaySender(endpoint, Map.of(), false, Duration.ofSeconds(10), null);
+  }
+
+  @AfterEach
+  void tearDown() {
+    delegate.shutdown().join(10, TimeUnit.SECONDS);
+    server.stop(0);
+  }
+
+  private DiskBufferingExporter<SpanData> buffering() throws IOException {
+    return new DiskBufferingExporter<>(
+        delegate::export,
+        TraceRequestMarshaler::create,
+        new DiskBuffer(directory, 1024 * 1024),
+        sender,
+        false,
+        null);
+  }
+
+  private void endSpan(DiskBufferingExporter<SpanData> buffering, String name) {
+    // not closed, because that would shut down the exporter
+    SdkTracerProvider tracerProvider =
+        SdkTracerProvider.builder()
+            .addSpanProcessor(
+                SimpleSpanProcessor.create(new DiskBufferingExporter.Spans(delegate, buffering)))
+            .build();
+    tracerProvider.get("test").spanBuilder(name).startSpan().end();
+    tracerProvider.forceFlush().join(10, TimeUnit.SECONDS);
+  }
+
+  private List<String> receivedSpans() {
+    return received.stream()
+        .map(r -> r.contains("first") ? "first" : r.contains("second") ? "second" : "third")
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  void replayWhenBackendIsAvailableAgain() throws IOException {
+    DiskBufferingExporter<SpanData> buffering = buffering();
+
+    endSpan(buffering, "first");
+    Assertions.assertThat(buffering.getBuffer().getPending()).isEqualTo(1);
+    // appended without trying to export, to keep the order
+    endSpan(buffering, "second");
+    Assertions.assertThat(buffering.getBuffer().getPending()).isEqualTo(2);
+    Assertions.assertThat(buffering.replay()).isFalse();
+
+    up = true;
+    Assertions.assertThat(buffering.replay()).isTrue();
+    Assertions.assertThat(receivedSpans()).containsExactly("first", "second");
+
+    endSpan(buffering, "third");
+    Assertions.assertThat(receivedSpans()).containsExactly("first", "second", "third");
+    Assertions.assertThat(buffering.getBuffer().isEmpty()).isTrue();
+  }
+
+  @Test
+  void unbufferedBatchesAreLost() throws IOException {
+    // too small for any request
+    DiskBufferingExporter<SpanData> buffering =
+        new DiskBufferingExporter<>(
+            delegate::export,
+            TraceRequestMarshaler::create,
+            new DiskBuffer(directory, 16),
+            sender,
+            false,
+            null);
+
+    endSpan(buffering, "first");
+
+    Assertions.assertThat(buffering.getBuffer().isEmpty()).isTrue();
+    Assertions.assertThat(buffering.getLostItems()).isEqualTo(1);
+    // not counted twice
+    Assertions.assertThat(buffering.getDroppedRequests()).isZero();
+  }
+
+  @Test
+  void exportWhenReplayFailsForOtherReasons() throws IOException {
+    // e.g. the replay does not trust the certificate of the backend
+    DiskBufferingExporter<SpanData> buffering =
+        new DiskBufferingExporter<>(
+            delegate::export,
+            TraceRequestMarshaler::create,
+            new DiskBuffer(directory, 1024 * 1024),
+            request -> DiskBuffer.Result.ERROR,
+            false,
+            null);
+    endSpan(buffering, "first");
+    Assertions.assertThat(buffering.replay()).isFalse();
+
+    up = true;
+    endSpan(buffering, "second");
+    Assertions.assertThat(receivedSpans()).containsExactly("second");
+    Assertions.assertThat(buffering.getBuffer().getPending()).isEqualTo(1);
+  }
+
+  @Test
+  void unsupportedExporterProperties() {
+    Assertions.assertThat(
+            OtlpHttpReplaySender.create(
+                DefaultConfigProperties.createFromMap(
+                    Map.of("otel.exporter.otlp.client.key", "client.key")),
+                "traces"))
+        .isNull();
+    Assertions.assertThat(
+            OtlpHttpReplaySender.create(
+                DefaultConfigProperties.createFromMap(
+                    Map.of(
+                        "otel.exporter.otlp.traces.certificate",
+                        directory.resolve("missing.pem").toString())),
+                "traces"))
+        .isNull();
+    Assertions.assertThat(
+            OtlpHttpReplaySender.create(
+                DefaultConfigProperties.createFromMap(Map.of("otel.exporter.otlp.timeout", "1s")),
+                "traces"))
+        .isNotNull();
+  }
+
+  @Test
+  void replayAfterRestart() throws IOException {
+    DiskBufferingExporter<SpanData> buffering = buffering();
+    endSpan(buffering, "first");
+    buffering.shutdown();
+
+    up = true;
+    DiskBufferingExporter<SpanData> restarted = buffering();
+    Assertions.assertThat(restarted.replay()).isTrue();
+    Assertions.assertThat(receivedSpans()).containsExactly("first");
+  }
+
+  @Test
+  void waitForRetryAfter() throws IOException {
+    retryAfter = "60";
+    DiskBufferingExporter<SpanData> buffering = buffering();
+    endSpan(buffering, "first");
+    Assertions.assertThat(buffering.replay()).isFalse();
+
+    up = true;
+    Assertions.assertThat(buffering.replay()).isFalse();
+    Assertions.assertThat(received).isEmpty();
+  }
+
+  @Test
+  void parseRetryAfter() {
+    Instant now = Instant.parse("2024-01-01T00:00:00Z");
+    Assertions.assertThat(OtlpHttpReplaySender.parseRetryAfter(" 120 ", now))
+        .isEqualTo(Duration.ofMinutes(2));
+    Assertions.assertThat(
+            OtlpHttpReplaySender.parseRetryAfter("Mon, 01 Jan 2024 00:00:30 GMT", now))
+        .isEqualTo(Duration.ofSeconds(30));
+    Assertions.assertThat(OtlpHttpReplaySender.parseRetryAfter("-5", now)).isZero();
+    Assertions.assertThat(OtlpHttpReplaySender.parseRetryAfter("86400", now))
+        .isEqualTo(Duration.ofHours(1));
+    Assertions.assertThat(OtlpHttpReplaySender.parseRetryAfter("soon", now)).isNull();
+  }
+}
@@ -0,0 +1,52 @@
+package com.grafana.opentelemetry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class IncludeExcludeMeterFilterTest {
+
+  @Test
+  void filter() {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    registry
+        .config()
+        .meterFilter(
+            new IncludeExcludeMeterFilter(
+                List.of("http.server.*", "jvm.*"),
+                List.of("jvm.gc.*"),
+                List.of(),
+                List.of("exc?ption")));
+
+    registry.counter("http.server.requests", "uri", "/", "exception", "none").increment();
+    registry.counter("jvm.memory.used").increment();
+    registry.counter("jvm.gc.pause").increment();
+    registry.counter("tomcat.sessions").increment();
+    // the dot is not a wildcard
+    registry.counter("jvmXthreads").increment();
+
+    Assertions.assertThat(registry.getMeters())
+        .extracting(m -> m.getId().getName())
+        .containsExactlyInAnyOrder("http.server.requests", "jvm.memory.used");
+    Assertions.assertThat(registry.get("http.server.requests").counter().getId().getTags())
+        .containsExactly(Tag.of("uri", "/"));
+  }
+
+  @Test
+  void includeTags() {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    registry
+        .config()
+        .meterFilter(
+            new IncludeExcludeMeterFilter(
+                List.of(), List.of(), List.of("method", "u*"), List.of("user")));
+
+    registry.counter("http.server.requests", "method", "GET", "uri", "/", "user", "alice");
+
+    Assertions.assertThat(registry.get("http.server.requests").counter().getId().getTags())
+        .containsExactlyInAnyOrder(Tag.of("method", "GET"), Tag.of("uri", "/"));
+  }
+}
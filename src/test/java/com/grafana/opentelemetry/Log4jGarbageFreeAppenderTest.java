@@ -0,0 +1,142 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.logs.Severity;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.logs.SdkLoggerProvider;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.apache.logging.log4j.util.StringMap;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class Log4jGarbageFreeAppenderTest {
+
+  private final List<LogRecordData> logs = new ArrayList<>();
+
+  private final OpenTelemetry sdk =
+      OpenTelemetrySdk.builder()
+          .setTracerProvider(SdkTracerProvider.builder().build())
+          .setLoggerProvider(
+              SdkLoggerProvider.builder()
+                  .addLogRecordProcessor((context, log) -> logs.add(log.toLogRecordData()))
+                  .build())
+          .build();
+
+  private final Log4jGarbageFreeAppender appender =
+      new Log4jGarbageFreeAppender("test", null, sdk);
+
+  @AfterEach
+  void tearDown() {
+    Log4jContextDataProvider.setEnabled(false);
+  }
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("severityCases")
+  void toSeverity(Level level, Severity expected) {
+    Assertions.assertThat(Log4jGarbageFreeAppender.toSeverity(level)).isEqualTo(expected);
+  }
+
+  private static Stream<Arguments> severityCases() {
+    return Stream.of(
+        Arguments.of(Level.OFF, Severity.UNDEFINED_SEVERITY_NUMBER),
+        Arguments.of(Level.FATAL, Severity.FATAL),
+        Arguments.of(Level.ERROR, Severity.ERROR),
+        Arguments.of(Level.WARN, Severity.WARN),
+        Arguments.of(Level.INFO, Severity.INFO),
+        Arguments.of(Level.DEBUG, Severity.DEBUG),
+        Arguments.of(Level.TRACE, Severity.TRACE),
+        Arguments.of(Level.ALL, Severity.TRACE));
+  }
+
+  @Test
+  void correlateWithCapturedSpanContext() {
+    // e.g. captured on the logging thread of an async logger
+    Span span = sdk.getTracer("test").spanBuilder("span").startSpan();
+    SpanContext spanContext = span.getSpanContext();
+    StringMap contextData = new SortedArrayStringMap();
+    contextData.putValue(Log4jContextDataProvider.TRACE_ID, spanContext.getTraceId());
+    contextData.putValue(Log4jContextDataProvider.SPAN_ID, spanContext.getSpanId());
+    contextData.putValue(
+        Log4jContextDataProvider.TRACE_FLAGS, spanContext.getTraceFlags().asHex());
+    contextData.putValue("user", "alice");
+
+    append(contextData);
+
+    Assertions.assertThat(logs)
+        .singleElement()
+        .satisfies(
+            log -> {
+              Assertions.assertThat(log.getSpanContext()).isEqualTo(spanContext);
+              Assertions.assertThat(log.getSeverity()).isEqualTo(Severity.INFO);
+              Assertions.assertThat(log.getBody().asString()).isEqualTo("hello");
+              Assertions.assertThat(log.getAttributes().get(AttributeKey.stringKey("user")))
+                  .isEqualTo("alice");
+              Assertions.assertThat(
+                      log.getAttributes()
+                          .get(AttributeKey.stringKey(Log4jContextDataProvider.TRACE_ID)))
+                  .isNull();
+            });
+  }
+
+  @Test
+  void correlateWithCurrentSpan() {
+    Log4jContextDataProvider.setEnabled(true);
+    Log4jContextDataProvider provider = new Log4jContextDataProvider();
+    Span span = sdk.getTracer("test").spanBuilder("span").startSpan();
+    try (Scope ignored = span.makeCurrent()) {
+      StringMap contextData = provider.supplyStringMap();
+      // the map is reused
+      Assertions.assertThat(provider.supplyStringMap()).isSameAs(contextData);
+
+      append(contextData);
+    }
+
+    Assertions.assertThat(logs)
+        .singleElement()
+        .satisfies(
+            log -> Assertions.assertThat(log.getSpanContext()).isEqualTo(span.getSpanContext()));
+  }
+
+  @Test
+  void emptyContextDataWhenDisabled() {
+    Log4jContextDataProvider provider = new Log4jContextDataProvider();
+    Span span = sdk.getTracer("test").spanBuilder("span").startSpan();
+    try (Scope ignored = span.makeCurrent()) {
+      Assertions.assertThat(provider.supplyStringMap().isEmpty()).isTrue();
+      Assertions.assertThat(provider.supplyStringMap()).isSameAs(provider.supplyStringMap());
+    }
+  }
+
+  @Test
+  void contextDataKeysAreCached() {
+    Assertions.assertThat(Log4jGarbageFreeAppender.getContextDataKey("user"))
+        .isSameAs(Log4jGarbageFreeAppender.getContextDataKey("user"))
+        .isEqualTo(AttributeKey.stringKey("user"));
+  }
+
+  private void append(StringMap contextData) {
+    appender.append(
+        Log4jLogEvent.newBuilder()
+            .setLoggerName("test")
+            .setLevel(Level.INFO)
+            .setMessage(new SimpleMessage("hello"))
+            .setContextData(contextData)
+            .build());
+  }
+}
@@ -0,0 +1,88 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import java.util.concurrent.CompletableFuture;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.apache.logging.log4j.util.StringMap;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class Log4jSamplingFilterTest {
+
+  private final Log4jSamplingFilter filter = new Log4jSamplingFilter(new TraceAwareLogSampler(0));
+
+  @AfterEach
+  void tearDown() {
+    Log4jContextDataProvider.setEnabled(false);
+  }
+
+  @Test
+  void capturedTraceFlags() {
+    Assertions.assertThat(filter.filter(event(Level.INFO, traceFlags(TraceFlags.getSampled()))))
+        .isEqualTo(Filter.Result.NEUTRAL);
+    Assertions.assertThat(filter.filter(event(Level.INFO, traceFlags(TraceFlags.getDefault()))))
+        .isEqualTo(Filter.Result.DENY);
+    Assertions.assertThat(filter.filter(event(Level.WARN, traceFlags(TraceFlags.getDefault()))))
+        .isEqualTo(Filter.Result.NEUTRAL);
+  }
+
+  @Test
+  void outsideOfSpan() {
+    Assertions.assertThat(filter.filter(event(Level.INFO, new SortedArrayStringMap())))
+        .isEqualTo(Filter.Result.DENY);
+    Assertions.assertThat(
+            new Log4jSamplingFilter(new TraceAwareLogSampler(1))
+                .filter(event(Level.INFO, new SortedArrayStringMap())))
+        .isEqualTo(Filter.Result.NEUTRAL);
+  }
+
+  @Test
+  void filterOnBackgroundThread() {
+    // like an async logger: the context data is captured on the logging thread
+    Log4jContextDataProvider.setEnabled(true);
+    Assertions.assertThat(filterOnBackgroundThread(Sampler.alwaysOn()))
+        .isEqualTo(Filter.Result.NEUTRAL);
+    Assertions.assertThat(filterOnBackgroundThread(Sampler.alwaysOff()))
+        .isEqualTo(Filter.Result.DENY);
+  }
+
+  private Filter.Result filterOnBackgroundThread(Sampler sampler) {
+    SdkTracerProvider tracerProvider = SdkTracerProvider.builder().setSampler(sampler).build();
+    Span span = tracerProvider.get("test").spanBuilder("span").startSpan();
+    LogEvent event;
+    try (Scope ignored = span.makeCurrent()) {
+      // the provider reuses its map, like log4j reuses the context data of the event
+      StringMap contextData = new Log4jContextDataProvider().supplyStringMap();
+      event = event(Level.INFO, new SortedArrayStringMap(contextData));
+    } finally {
+      span.end();
+      tracerProvider.close();
+    }
+    return CompletableFuture.supplyAsync(() -> filter.filter(event)).join();
+  }
+
+  private static StringMap traceFlags(TraceFlags traceFlags) {
+    StringMap contextData = new SortedArrayStringMap();
+    contextData.putValue(Log4jContextDataProvider.TRACE_FLAGS, traceFlags.asHex());
+    return contextData;
+  }
+
+  private static LogEvent event(Level level, StringMap contextData) {
+    return Log4jLogEvent.newBuilder()
+        .setLoggerName("test")
+        .setLevel(level)
+        .setMessage(new SimpleMessage("hello"))
+        .setContextData(contextData)
+        .build();
+  }
+}
@@ -0,0 +1,59 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.logs.Severity;
+import java.util.stream.Stream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+
+@ExtendWith(OutputCaptureExtension.class)
+class LogLevelThresholdsTest {
+
+  @Test
+  void notConfigured() {
+    Assertions.assertThat(LogLevelThresholds.create(new GrafanaProperties.LogsProperties()))
+        .isNull();
+  }
+
+  @Test
+  void unknownLevel(CapturedOutput output) {
+    GrafanaProperties.LogsProperties properties = new GrafanaProperties.LogsProperties();
+    properties.setLevel("verbose");
+
+    Assertions.assertThat(LogLevelThresholds.create(properties)).isNull();
+    Assertions.assertThat(output)
+        .contains("ignoring grafana.otlp.logs.level, unknown log level: verbose");
+  }
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("thresholdCases")
+  void isEnabled(String name, boolean expected, String loggerName, Severity severity) {
+    GrafanaProperties.LogsProperties properties = new GrafanaProperties.LogsProperties();
+    properties.setLevel("info");
+    properties.getLevels().put("com.example", "DEBUG");
+    properties.getLevels().put("com.example.noisy", "ERROR");
+    properties.getLevels().put("com.example.Muted", "off");
+    LogLevelThresholds thresholds = LogLevelThresholds.create(properties);
+
+    Assertions.assertThat(thresholds.isEnabled(loggerName, severity.getSeverityNumber()))
+        .isEqualTo(expected);
+  }
+
+  private static Stream<Arguments> thresholdCases() {
+    return Stream.of(
+        Arguments.of("root level", true, "org.other.Foo", Severity.INFO),
+        Arguments.of("below root level", false, "org.other.Foo", Severity.DEBUG),
+        Arguments.of("no logger name", false, null, Severity.DEBUG),
+        Arguments.of("logger level", true, "com.example.Foo", Severity.DEBUG),
+        Arguments.of("below logger level", false, "com.example.Foo", Severity.TRACE),
+        Arguments.of("most specific logger", false, "com.example.noisy.Bar", Severity.WARN),
+        Arguments.of("nested class", false, "com.example.Muted$Inner", Severity.FATAL),
+        Arguments.of("prefix is not a parent", true, "com.examples.Foo", Severity.INFO),
+        Arguments.of("prefix is not a parent below", false, "com.examples.Foo", Severity.DEBUG));
+  }
+}
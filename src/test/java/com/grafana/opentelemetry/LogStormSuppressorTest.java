@@ -0,0 +1,120 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.logs.Severity;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.logs.SdkLoggerProvider;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LogStormSuppressorTest {
+
+  private static final long WINDOW = Duration.ofSeconds(10).toNanos();
+  private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+  private final List<LogRecordData> summaries = new ArrayList<>();
+
+  private final OpenTelemetrySdk sdk =
+      OpenTelemetrySdk.builder()
+          .setLoggerProvider(
+              SdkLoggerProvider.builder()
+                  .addLogRecordProcessor(
+                      (context, logRecord) -> summaries.add(logRecord.toLogRecordData()))
+                  .build())
+          .build();
+
+  @Test
+  void repeatsAreSuppressedWithinWindow() {
+    LogStormSuppressor suppressor = new LogStormSuppressor(sdk, WINDOW, 2, Map.of(), 0);
+
+    Assertions.assertThat(acquire(suppressor, "failed", 0)).isTrue();
+    Assertions.assertThat(acquire(suppressor, "failed", 1)).isTrue();
+    Assertions.assertThat(acquire(suppressor, "failed", 2)).isFalse();
+    Assertions.assertThat(acquire(suppressor, "failed", 3)).isFalse();
+    // a different message template has a different fingerprint
+    Assertions.assertThat(acquire(suppressor, "other", 4)).isTrue();
+    Assertions.assertThat(suppressor.getDuplicates()).isEqualTo(2);
+    Assertions.assertThat(summaries).isEmpty();
+
+    // the next window starts with a summary
+    Assertions.assertThat(acquire(suppressor, "failed", WINDOW)).isTrue();
+    Assertions.assertThat(summaries)
+        .singleElement()
+        .satisfies(
+            summary -> {
+              Long count = summary.getAttributes().get(LogStormSuppressor.SUPPRESSED_COUNT);
+              Assertions.assertThat(count).isEqualTo(2L);
+              Assertions.assertThat(summary.getSeverity()).isEqualTo(Severity.ERROR);
+              Assertions.assertThat(summary.getBody().asString())
+                  .isEqualTo("suppressed 2 repeated log records: failed");
+            });
+  }
+
+  @Test
+  void summaryIsEmittedByOtherLogEvents() {
+    LogStormSuppressor suppressor = new LogStormSuppressor(sdk, WINDOW, 1, Map.of(), 0);
+
+    acquire(suppressor, "failed", 0);
+    acquire(suppressor, "failed", 1);
+    Assertions.assertThat(summaries).isEmpty();
+
+    acquire(suppressor, "other", WINDOW + 1);
+    Assertions.assertThat(summaries).hasSize(1);
+  }
+
+  @Test
+  void rateLimit() {
+    LogStormSuppressor suppressor =
+        new LogStormSuppressor(sdk, WINDOW, 0, Map.of("com.example", 2.0), 0);
+
+    Assertions.assertThat(acquire(suppressor, "a", 0)).isTrue();
+    Assertions.assertThat(acquire(suppressor, "b", 0)).isTrue();
+    Assertions.assertThat(acquire(suppressor, "c", 0)).isFalse();
+    // other loggers are not limited
+    Assertions.assertThat(suppressor.tryAcquire("org.other", Severity.INFO, "a", null, 0))
+        .isTrue();
+    // tokens are refilled
+    Assertions.assertThat(acquire(suppressor, "d", SECOND / 2)).isTrue();
+    Assertions.assertThat(acquire(suppressor, "e", SECOND / 2)).isFalse();
+    Assertions.assertThat(suppressor.getRateLimited()).isEqualTo(2);
+    Assertions.assertThat(summaries).isEmpty();
+
+    // the summary is emitted after the window
+    acquire(suppressor, "f", WINDOW);
+    Assertions.assertThat(summaries)
+        .singleElement()
+        .satisfies(
+            summary -> {
+              Long count = summary.getAttributes().get(LogStormSuppressor.SUPPRESSED_COUNT);
+              Assertions.assertThat(count).isEqualTo(2L);
+              Assertions.assertThat(summary.getSeverity()).isEqualTo(Severity.ERROR);
+              Assertions.assertThat(summary.getInstrumentationScopeInfo().getName())
+                  .isEqualTo("com.example");
+              Assertions.assertThat(summary.getBody().asString())
+                  .isEqualTo("suppressed 2 log records above the rate limit of com.example");
+            });
+  }
+
+  @Test
+  void fingerprintsInTheSameSlot() {
+    LogStormSuppressor suppressor = new LogStormSuppressor(sdk, WINDOW, 1, Map.of(), 0);
+    // the templates have the same hash code
+    Assertions.assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+
+    Assertions.assertThat(acquire(suppressor, "Aa", 0)).isTrue();
+    Assertions.assertThat(acquire(suppressor, "BB", 1)).isTrue();
+    Assertions.assertThat(acquire(suppressor, "Aa", 2)).isFalse();
+    Assertions.assertThat(acquire(suppressor, "BB", 3)).isFalse();
+    Assertions.assertThat(suppressor.getDuplicates()).isEqualTo(2);
+    Assertions.assertThat(summaries).isEmpty();
+  }
+
+  private static boolean acquire(LogStormSuppressor suppressor, String template, long now) {
+    return suppressor.tryAcquire(
+        "com.example.Service", Severity.ERROR, template, "java.io.IOException", now);
+  }
+}
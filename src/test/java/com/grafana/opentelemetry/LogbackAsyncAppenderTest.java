@@ -0,0 +1,192 @@
+package com.grafana.opentelemetry;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.read.ListAppender;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+class LogbackAsyncAppenderTest {
+
+  private final LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+  @Test
+  void eventsAreExportedInOrder() {
+    ListAppender<ILoggingEvent> delegate = new ListAppender<>();
+    delegate.start();
+    LogbackAsyncAppender appender = start(new LogbackAsyncAppender(delegate, 4, false, false));
+
+    for (int i = 0; i < 100; i++) {
+      appender.doAppend(event("message " + i));
+    }
+    appender.stop();
+
+    Assertions.assertThat(delegate.list)
+        .extracting(ILoggingEvent::getFormattedMessage)
+        .startsWith("message 0", "message 1")
+        .hasSize(100)
+        .endsWith("message 99");
+    Assertions.assertThat(appender.getEnqueued()).isEqualTo(100);
+    Assertions.assertThat(appender.getDropped()).isZero();
+  }
+
+  @Test
+  void eventsAreDroppedWhenFull() throws InterruptedException {
+    CountDownLatch exporting = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AppenderBase<ILoggingEvent> delegate =
+        new AppenderBase<>() {
+          @Override
+          protected void append(ILoggingEvent event) {
+            exporting.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        };
+    delegate.start();
+    LogbackAsyncAppender appender = start(new LogbackAsyncAppender(delegate, 2, true, false));
+
+    // the export thread takes the first event and blocks
+    appender.doAppend(event("first"));
+    exporting.await();
+
+    for (int i = 0; i < 5; i++) {
+      appender.doAppend(event("message " + i));
+    }
+    Assertions.assertThat(appender.getEnqueued()).isEqualTo(3);
+    Assertions.assertThat(appender.getDropped()).isEqualTo(3);
+
+    release.countDown();
+    appender.stop();
+    Assertions.assertThat(appender.getQueueSize()).isZero();
+  }
+
+  @Test
+  void drainDoesNotBlock() throws InterruptedException {
+    CountDownLatch exporting = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ListAppender<ILoggingEvent> delegate =
+        new ListAppender<>() {
+          @Override
+          protected void append(ILoggingEvent event) {
+            exporting.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            super.append(event);
+          }
+        };
+    delegate.start();
+    // blocks when full
+    LogbackAsyncAppender appender = start(new LogbackAsyncAppender(delegate, 2, false, false));
+
+    appender.doAppend(event("first"));
+    exporting.await();
+    appender.doAppend(event("second"));
+    appender.doAppend(event("third"));
+
+    // times out, because the export thread is blocked
+    Assertions.assertThat(appender.drain(TimeUnit.MILLISECONDS.toNanos(50))).isEqualTo(2);
+    // dropped instead of blocking
+    appender.doAppend(event("fourth"));
+    Assertions.assertThat(appender.getDropped()).isEqualTo(1);
+
+    release.countDown();
+    Assertions.assertThat(appender.drain(TimeUnit.SECONDS.toNanos(10))).isZero();
+    Assertions.assertThat(delegate.list)
+        .extracting(ILoggingEvent::getFormattedMessage)
+        .containsExactly("first", "second", "third");
+    appender.stop();
+  }
+
+  @Test
+  void metricsAreClosedWhenStopped() {
+    List<Collection<MetricData>> exports = new CopyOnWriteArrayList<>();
+    MetricExporter exporter =
+        new MetricExporter() {
+          @Override
+          public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+            return AggregationTemporality.CUMULATIVE;
+          }
+
+          @Override
+          public CompletableResultCode export(Collection<MetricData> metrics) {
+            exports.add(metrics);
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+          }
+        };
+    SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder()
+            .registerMetricReader(PeriodicMetricReader.builder(exporter).build())
+            .build();
+    try {
+      ListAppender<ILoggingEvent> delegate = new ListAppender<>();
+      delegate.start();
+      LogbackAsyncAppender appender = start(new LogbackAsyncAppender(delegate, 4, true, false));
+      appender.registerMetrics(meterProvider.get("test"));
+
+      meterProvider.forceFlush().join(10, TimeUnit.SECONDS);
+      Assertions.assertThat(metricNames(exports))
+          .containsExactlyInAnyOrder(
+              "grafana.otlp.logs.async.enqueued",
+              "grafana.otlp.logs.async.dropped",
+              "grafana.otlp.logs.async.queue.size");
+
+      // e.g. replaced by the appender of the next application context
+      appender.stop();
+      meterProvider.forceFlush().join(10, TimeUnit.SECONDS);
+      Assertions.assertThat(metricNames(exports)).isEmpty();
+    } finally {
+      meterProvider.close();
+    }
+  }
+
+  private static List<String> metricNames(List<Collection<MetricData>> exports) {
+    return exports.get(exports.size() - 1).stream()
+        .map(MetricData::getName)
+        .collect(Collectors.toList());
+  }
+
+  private LogbackAsyncAppender start(LogbackAsyncAppender appender) {
+    appender.setContext(loggerContext);
+    appender.start();
+    return appender;
+  }
+
+  private ILoggingEvent event(String message) {
+    return new LoggingEvent(
+        getClass().getName(), loggerContext.getLogger(getClass()), Level.INFO, message, null, null);
+  }
+}
@@ -0,0 +1,204 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.logs.Severity;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.logs.SdkLoggerProvider;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingDecision;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MemoryBudgetTest {
+
+  private static final String TRACE_ID = "0af7651916cd43dd8448eb211c80319c";
+
+  private final MemoryBudget budget = new MemoryBudget(1000);
+  private final MemoryBudget.Account account = budget.account("logs", "queue");
+
+  @Test
+  void shedLowPriorityFirst() {
+    Assertions.assertThat(account.tryAcquire(700, true)).isTrue();
+    Assertions.assertThat(budget.isUnderPressure()).isFalse();
+
+    Assertions.assertThat(account.tryAcquire(100, false)).isTrue();
+    Assertions.assertThat(budget.isUnderPressure()).isTrue();
+    Assertions.assertThat(account.tryAcquire(10, true)).isFalse();
+    Assertions.assertThat(account.tryAcquire(200, false)).isTrue();
+
+    Assertions.assertThat(account.tryAcquire(10, false)).isFalse();
+    Assertions.assertThat(account.getShed(true)).isEqualTo(1);
+    Assertions.assertThat(account.getShed(false)).isEqualTo(1);
+
+    account.release(1000);
+    Assertions.assertThat(budget.getUsed()).isZero();
+    Assertions.assertThat(account.tryAcquire(10, true)).isTrue();
+  }
+
+  @Test
+  void accountsShareTheLimit() {
+    MemoryBudget.Account other = budget.account("traces", "queue");
+    other.add(1000);
+
+    Assertions.assertThat(account.tryAcquire(10, false)).isFalse();
+    Assertions.assertThat(account.getUsed()).isZero();
+    Assertions.assertThat(budget.getUsed()).isEqualTo(1000);
+  }
+
+  @Test
+  void releaseExportedItemsInOrder() {
+    MemoryBudgetQueue queue = new MemoryBudgetQueue(account, 100, Long.MAX_VALUE);
+    queue.add(100);
+    queue.add(200);
+    queue.add(300);
+
+    queue.exported(2);
+    Assertions.assertThat(budget.getUsed()).isEqualTo(300);
+
+    // more items than queued, e.g. after the queue has been full
+    queue.exported(2);
+    Assertions.assertThat(budget.getUsed()).isZero();
+  }
+
+  @Test
+  void expireItemsThatWereDroppedByTheQueue() throws InterruptedException {
+    MemoryBudgetQueue queue = new MemoryBudgetQueue(account, 100, 1);
+    queue.add(500);
+    Thread.sleep(1);
+
+    Assertions.assertThat(queue.offer(100, false)).isTrue();
+    Assertions.assertThat(budget.getUsed()).isEqualTo(100);
+  }
+
+  @Test
+  void itemsDroppedByFullQueueAreNotAccounted() {
+    MemoryBudgetQueue queue = new MemoryBudgetQueue(account, 2, Long.MAX_VALUE);
+    queue.add(100);
+    queue.add(200);
+    queue.add(300);
+    Assertions.assertThat(queue.offer(400, false)).isTrue();
+
+    Assertions.assertThat(budget.getUsed()).isEqualTo(300);
+    Assertions.assertThat(queue.getSize()).isEqualTo(2);
+
+    queue.exported(2);
+    Assertions.assertThat(budget.getUsed()).isZero();
+    Assertions.assertThat(queue.getSize()).isZero();
+  }
+
+  @Test
+  void estimateSpansFromExportedBatches() {
+    MemoryBudgetQueue queue = new MemoryBudgetQueue(account, 100, Long.MAX_VALUE);
+    List<SpanData> exported = new ArrayList<>();
+    SpanExporter exporter =
+        queue.wrap(
+            new SpanExporter() {
+              @Override
+              public CompletableResultCode export(Collection<SpanData> spans) {
+                exported.addAll(spans);
+                return CompletableResultCode.ofSuccess();
+              }
+
+              @Override
+              public CompletableResultCode flush() {
+                return CompletableResultCode.ofSuccess();
+              }
+
+              @Override
+              public CompletableResultCode shutdown() {
+                return CompletableResultCode.ofSuccess();
+              }
+            });
+    SdkTracerProvider tracerProvider =
+        SdkTracerProvider.builder()
+            .addSpanProcessor(queue.spanProcessor())
+            .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+            .build();
+
+    tracerProvider.get("test").spanBuilder("span").setAttribute("key", "value").startSpan().end();
+    Assertions.assertThat(budget.getUsed()).isZero();
+
+    Span span = tracerProvider.get("test").spanBuilder("span").startSpan();
+    span.setAttribute("key", "value");
+    ReadableSpan readable = (ReadableSpan) span;
+    // like the exported span with the same attributes
+    Assertions.assertThat(queue.estimate(readable))
+        .isEqualTo(MemoryBudget.estimate(exported.get(0)));
+    span.end();
+  }
+
+  @Test
+  void dropNewTracesFirst() {
+    Sampler sampler = new MemoryBudgetSampler(Sampler.alwaysOn(), account);
+    Context root = Context.root();
+    SpanContext parent =
+        SpanContext.create(
+            TRACE_ID, "b7ad6b7169203331", TraceFlags.getSampled(), TraceState.getDefault());
+    Context child = Context.root().with(Span.wrap(parent));
+
+    account.add(800);
+    Assertions.assertThat(decision(sampler, root)).isEqualTo(SamplingDecision.DROP);
+    Assertions.assertThat(decision(sampler, child)).isEqualTo(SamplingDecision.RECORD_AND_SAMPLE);
+
+    account.add(200);
+    Assertions.assertThat(decision(sampler, child)).isEqualTo(SamplingDecision.DROP);
+    Assertions.assertThat(account.getShed(true)).isEqualTo(1);
+    Assertions.assertThat(account.getShed(false)).isEqualTo(1);
+  }
+
+  private static SamplingDecision decision(Sampler sampler, Context context) {
+    return sampler
+        .shouldSample(context, TRACE_ID, "span", SpanKind.INTERNAL, Attributes.empty(), List.of())
+        .getDecision();
+  }
+
+  @Test
+  void dropDebugLogsFirst() {
+    List<LogRecordData> exported = new ArrayList<>();
+    SdkLoggerProvider loggerProvider =
+        SdkLoggerProvider.builder()
+            .addLogRecordProcessor((context, log) -> exported.add(log.toLogRecordData()))
+            .build();
+    MemoryBudgetQueue queue = new MemoryBudgetQueue(account, 100, Long.MAX_VALUE);
+    MemoryBudgetLogsBridge logsBridge = new MemoryBudgetLogsBridge(loggerProvider, queue);
+
+    account.add(800);
+    emit(logsBridge, Severity.DEBUG, "debug");
+    emit(logsBridge, Severity.INFO, "info");
+
+    Assertions.assertThat(exported)
+        .singleElement()
+        .satisfies(l -> Assertions.assertThat(l.getBody().asString()).isEqualTo("info"));
+    Assertions.assertThat(account.getShed(true)).isEqualTo(1);
+    Assertions.assertThat(budget.getUsed())
+        .isEqualTo(800 + MemoryBudget.LOG_RECORD_OVERHEAD + MemoryBudget.estimate("info"));
+  }
+
+  private static void emit(MemoryBudgetLogsBridge logsBridge, Severity severity, String body) {
+    logsBridge.get("test").logRecordBuilder().setSeverity(severity).setBody(body).emit();
+  }
+
+  @Test
+  void estimateStrings() {
+    Assertions.assertThat(MemoryBudget.estimate((String) null)).isZero();
+    Assertions.assertThat(MemoryBudget.estimate("abc"))
+        .isGreaterThan(MemoryBudget.estimate("ab"));
+    Assertions.assertThat(MemoryBudget.estimateAttribute(List.of("a", "b")))
+        .isGreaterThan(MemoryBudget.estimateAttribute("a"));
+  }
+}
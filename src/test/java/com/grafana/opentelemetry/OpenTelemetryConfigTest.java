@@ -1,11 +1,29 @@
 package com.grafana.opentelemetry;
 
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.SdkMeterProviderBuilder;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import io.opentelemetry.sdk.metrics.internal.aggregator.ExplicitBucketHistogramUtils;
 import io.opentelemetry.semconv.ResourceAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -197,4 +215,200 @@ class OpenTelemetryConfigTest {
             Map.of("foo", "bar", OpenTelemetryConfig.OTLP_HEADERS, "")),
         Arguments.of("no auth header", Map.of("foo", "bar"), Map.of("foo", "bar")));
   }
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("batchCases")
+  void addBatchProperties(
+      String name, Map<String, String> expected, GrafanaProperties.BatchProperties batch) {
+    Map<String, String> configProperties = new HashMap<>();
+    OpenTelemetryConfig.addBatchProperties(configProperties, "otel.bsp", batch);
+    Assertions.assertThat(configProperties).containsExactlyInAnyOrderEntriesOf(expected);
+  }
+
+  private static Stream<Arguments> batchCases() {
+    GrafanaProperties.BatchProperties all = new GrafanaProperties.BatchProperties();
+    all.setMaxQueueSize(8192);
+    all.setMaxExportBatchSize(1024);
+    all.setScheduleDelay(Duration.ofMillis(500));
+    all.setExportTimeout(Duration.ofSeconds(10));
+
+    return Stream.of(
+        Arguments.of("SDK defaults", Map.of(), new GrafanaProperties.BatchProperties()),
+        Arguments.of(
+            "all properties",
+            Map.of(
+                "otel.bsp.max.queue.size", "8192",
+                "otel.bsp.max.export.batch.size", "1024",
+                "otel.bsp.schedule.delay", "500",
+                "otel.bsp.export.timeout", "10000"),
+            all));
+  }
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("compressionCases")
+  void addCompression(
+      String name,
+      Map<String, String> expected,
+      String compression,
+      String expectedOutput,
+      CapturedOutput output) {
+    Map<String, String> configProperties = new HashMap<>();
+    OpenTelemetryConfig.addCompression(configProperties, compression);
+    Assertions.assertThat(configProperties).containsExactlyInAnyOrderEntriesOf(expected);
+    Assertions.assertThat(output).contains(expectedOutput);
+  }
+
+  private static Stream<Arguments> compressionCases() {
+    return Stream.of(
+        Arguments.of("gzip", Map.of("otel.exporter.otlp.compression", "gzip"), "gzip", ""),
+        Arguments.of("none", Map.of("otel.exporter.otlp.compression", "none"), " None ", ""),
+        Arguments.of("SDK default", Map.of(), "", ""),
+        Arguments.of(
+            "unknown",
+            Map.of(),
+            "zstd",
+            "ignoring grafana.otlp.compression, unknown compression: zstd"));
+  }
+
+  @Test
+  void gzipByDefault() {
+    Assertions.assertThat(OpenTelemetryConfig.getConfigProperties(new GrafanaProperties(), "app"))
+        .containsEntry("otel.exporter.otlp.compression", "gzip");
+  }
+
+  @Test
+  void adaptiveBatchProcessorReplacesOtlpExporter() {
+    GrafanaProperties properties = new GrafanaProperties();
+    properties.getTraces().getBatch().setAdaptive(true);
+
+    Assertions.assertThat(OpenTelemetryConfig.getConfigProperties(properties, "app"))
+        .containsEntry("otel.traces.exporter", "none")
+        .containsEntry("otel.logs.exporter", "otlp");
+
+    properties.setDebugLogging(true);
+    Assertions.assertThat(OpenTelemetryConfig.getConfigProperties(properties, "app"))
+        .containsEntry("otel.traces.exporter", "logging")
+        .containsEntry("otel.logs.exporter", "logging,otlp");
+  }
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("histogramCases")
+  void getHistogramAggregation(
+      String name,
+      Aggregation expected,
+      String aggregation,
+      int maxBuckets,
+      int maxScale,
+      String expectedOutput,
+      CapturedOutput output) {
+    GrafanaProperties.HistogramProperties properties = new GrafanaProperties.HistogramProperties();
+    properties.setAggregation(aggregation);
+    properties.setMaxBuckets(maxBuckets);
+    properties.setMaxScale(maxScale);
+
+    Assertions.assertThat(OpenTelemetryConfig.getHistogramAggregation(properties))
+        .hasToString(expected.toString());
+    Assertions.assertThat(output).contains(expectedOutput);
+  }
+
+  private static Stream<Arguments> histogramCases() {
+    Aggregation explicit =
+        Aggregation.explicitBucketHistogram(
+            ExplicitBucketHistogramUtils.DEFAULT_HISTOGRAM_BUCKET_BOUNDARIES.stream()
+                .map(d -> d * 0.001)
+                .collect(Collectors.toList()));
+    return Stream.of(
+        Arguments.of("explicit", explicit, "explicit", 80, 10, ""),
+        Arguments.of(
+            "exponential",
+            Aggregation.base2ExponentialBucketHistogram(80, 10),
+            "Exponential",
+            80,
+            10,
+            ""),
+        Arguments.of(
+            "invalid max buckets",
+            Aggregation.base2ExponentialBucketHistogram(160, 10),
+            "exponential",
+            1,
+            10,
+            "ignoring grafana.otlp.metrics.histogram.maxBuckets, must be at least 2: 1"),
+        Arguments.of(
+            "invalid max scale",
+            Aggregation.base2ExponentialBucketHistogram(80, 20),
+            "exponential",
+            80,
+            21,
+            "ignoring grafana.otlp.metrics.histogram.maxScale, must be between -10 and 20: 21"),
+        Arguments.of(
+            "unknown",
+            explicit,
+            "native",
+            80,
+            10,
+            "ignoring grafana.otlp.metrics.histogram.aggregation, unknown aggregation: native"));
+  }
+
+  @Test
+  void excludedHistogramsIgnoreBuckets(CapturedOutput output) {
+    GrafanaProperties.MetricsProperties properties = new GrafanaProperties.MetricsProperties();
+    properties.setExclude(List.of("http.client.*"));
+    properties.getHistogram().getBuckets().put("http.client.requests", List.of(0.1, 1.0));
+    properties.getHistogram().getBuckets().put("http.server.requests", List.of(0.1, 1.0));
+    List<MetricData> exported = new ArrayList<>();
+    MetricExporter exporter =
+        new MetricExporter() {
+          @Override
+          public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+            return AggregationTemporality.CUMULATIVE;
+          }
+
+          @Override
+          public CompletableResultCode export(Collection<MetricData> metrics) {
+            exported.addAll(metrics);
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+          }
+        };
+    SdkMeterProviderBuilder builder =
+        SdkMeterProvider.builder()
+            .registerMetricReader(PeriodicMetricReader.builder(exporter).build());
+    try (SdkMeterProvider meterProvider =
+        OpenTelemetryConfig.customizeMeterBuilder(builder, properties).build()) {
+      for (String name : List.of("http.client.requests", "http.server.requests")) {
+        DoubleHistogram histogram = meterProvider.get("test").histogramBuilder(name).build();
+        histogram.record(0.5);
+      }
+      meterProvider.forceFlush().join(10, TimeUnit.SECONDS);
+    }
+
+    Assertions.assertThat(exported)
+        .extracting(MetricData::getName)
+        .containsExactly("http.server.requests");
+    Assertions.assertThat(output)
+        .contains(
+            "ignoring grafana.otlp.metrics.histogram.buckets.http.client.requests, "
+                + "the histogram is excluded");
+  }
+
+  @Test
+  void invalidBucketsAreIgnored(CapturedOutput output) {
+    GrafanaProperties.MetricsProperties properties = new GrafanaProperties.MetricsProperties();
+    properties.getHistogram().getBuckets().put("latency", List.of(1.0, 0.5));
+
+    OpenTelemetryConfig.customizeMeterBuilder(SdkMeterProvider.builder(), properties)
+        .build()
+        .close();
+
+    Assertions.assertThat(output).contains("ignoring grafana.otlp.metrics.histogram.buckets.latency");
+  }
 }
@@ -0,0 +1,259 @@
+package com.grafana.opentelemetry;
+
+import io.micrometer.common.KeyValues;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.observation.MeterObservationHandler;
+import io.micrometer.observation.Observation;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import io.opentelemetry.semconv.SemanticAttributes;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.observation.ObservationAutoConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+class OpenTelemetryObservationHandlerTest {
+
+  private final ApplicationContextRunner contextRunner =
+      new ApplicationContextRunner()
+          .withConfiguration(
+              AutoConfigurations.of(
+                  OpenTelemetryConfig.class,
+                  MetricsAutoConfiguration.class,
+                  ObservationAutoConfiguration.class));
+
+  @Test
+  void replaceDefaultMeterObservationHandler() {
+    contextRunner
+        .withPropertyValues("grafana.otlp.metrics.nativeObservations=true")
+        .run(
+            context ->
+                Assertions.assertThat(
+                        context.getBeansOfType(MeterObservationHandler.class).values())
+                    .singleElement()
+                    .isInstanceOf(OpenTelemetryObservationHandler.class));
+  }
+
+  @Test
+  void keepDefaultMeterObservationHandler() {
+    contextRunner.run(
+        context ->
+            Assertions.assertThat(context)
+                .hasSingleBean(DefaultMeterObservationHandler.class)
+                .doesNotHaveBean(OpenTelemetryObservationHandler.class));
+  }
+
+  @Test
+  void recordOnStopAndOnEvent() {
+    InMemoryMetricReader reader = InMemoryMetricReader.create();
+    SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder().registerMetricReader(reader).build();
+    GrafanaProperties.MetricsProperties properties = new GrafanaProperties.MetricsProperties();
+    properties.setExcludeTags(List.of("user"));
+    properties.getCardinalityLimits().put("greeting", 1);
+    OpenTelemetryObservationHandler handler =
+        new OpenTelemetryObservationHandler(
+            OpenTelemetrySdk.builder().setMeterProvider(meterProvider).build(), properties);
+
+    observe(handler, "greeting", KeyValues.of("class", "Foo", "user", "alice"));
+    observe(handler, "greeting", KeyValues.of("class", "Foo", "user", "bob"));
+    // over the limit
+    observe(handler, "greeting", KeyValues.of("class", "Bar", "user", "alice"));
+    observe(
+        handler,
+        OpenTelemetryObservationHandler.HTTP_CLIENT_REQUESTS,
+        KeyValues.of("method", "GET", "uri", "/users/{id}", "status", "200"));
+
+    Map<String, MetricData> metrics =
+        reader.collectAllMetrics().stream()
+            .collect(Collectors.toMap(MetricData::getName, m -> m));
+    Assertions.assertThat(metrics.get("greeting").getHistogramData().getPoints())
+        .extracting(HistogramPointData::getAttributes, HistogramPointData::getCount)
+        .containsExactlyInAnyOrder(
+            Assertions.tuple(Attributes.of(AttributeKey.stringKey("class"), "Foo"), 2L),
+            Assertions.tuple(
+                Attributes.of(
+                    AttributeKey.stringKey(CardinalityLimitMeterFilter.OVERFLOW_KEY), "true"),
+                1L));
+    // the limit also applies to the meters below the name
+    Assertions.assertThat(metrics.get("greeting.sent").getLongSumData().getPoints())
+        .extracting(LongPointData::getValue)
+        .containsExactlyInAnyOrder(2L, 1L);
+    MetricData client = metrics.get("http.client.request.duration");
+    Assertions.assertThat(client.getHistogramData().getPoints())
+        .singleElement()
+        .satisfies(
+            p ->
+                Assertions.assertThat(p.getAttributes())
+                    .isEqualTo(
+                        Attributes.of(
+                            SemanticAttributes.HTTP_REQUEST_METHOD,
+                            "GET",
+                            OpenTelemetryObservationHandler.URL_TEMPLATE,
+                            "/users/{id}",
+                            SemanticAttributes.HTTP_RESPONSE_STATUS_CODE,
+                            200L)));
+    meterProvider.close();
+  }
+
+  private static void observe(
+      OpenTelemetryObservationHandler handler, String name, KeyValues keyValues) {
+    Observation.Context context = new Observation.Context();
+    context.setName(name);
+    context.addLowCardinalityKeyValues(keyValues);
+    handler.onStart(context);
+    if (!name.startsWith("http")) {
+      handler.onEvent(Observation.Event.of("sent"), context);
+    }
+    handler.onStop(context);
+  }
+
+  @Test
+  void createInstrumentsWhenSdkIsReady() {
+    List<MetricData> exported = new ArrayList<>();
+    MetricExporter exporter =
+        new MetricExporter() {
+          @Override
+          public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+            return AggregationTemporality.CUMULATIVE;
+          }
+
+          @Override
+          public CompletableResultCode export(Collection<MetricData> metrics) {
+            exported.addAll(metrics);
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+          }
+        };
+    SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder()
+            .registerMetricReader(PeriodicMetricReader.builder(exporter).build())
+            .build();
+    DeferredOpenTelemetry deferred = new DeferredOpenTelemetry(10);
+    OpenTelemetryObservationHandler handler =
+        new OpenTelemetryObservationHandler(deferred, new GrafanaProperties.MetricsProperties());
+
+    // recorded on a no-op instrument
+    observe(handler);
+    deferred.switchTo(OpenTelemetrySdk.builder().setMeterProvider(meterProvider).build());
+    observe(handler);
+    meterProvider.forceFlush().join(10, TimeUnit.SECONDS);
+
+    Assertions.assertThat(exported)
+        .singleElement()
+        .satisfies(
+            m -> {
+              Assertions.assertThat(m.getName()).isEqualTo("http.server.request.duration");
+              Assertions.assertThat(m.getHistogramData().getPoints())
+                  .singleElement()
+                  .satisfies(p -> Assertions.assertThat(p.getCount()).isEqualTo(1));
+            });
+    meterProvider.close();
+  }
+
+  private static void observe(OpenTelemetryObservationHandler handler) {
+    Observation.Context context = new Observation.Context();
+    context.setName(OpenTelemetryObservationHandler.HTTP_SERVER_REQUESTS);
+    handler.onStart(context);
+    handler.onStop(context);
+  }
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("attributeCases")
+  void toAttributes(
+      String name,
+      Attributes expected,
+      KeyValues keyValues,
+      OpenTelemetryObservationHandler.Kind kind,
+      Throwable error) {
+    Assertions.assertThat(OpenTelemetryObservationHandler.toAttributes(keyValues, kind, error))
+        .isEqualTo(expected);
+  }
+
+  private static Stream<Arguments> attributeCases() {
+    KeyValues server =
+        KeyValues.of("method", "GET", "uri", "/hello", "status", "200", "outcome", "SUCCESS")
+            .and("exception", "none");
+    return Stream.of(
+        Arguments.of(
+            "http",
+            Attributes.of(
+                SemanticAttributes.HTTP_REQUEST_METHOD,
+                "GET",
+                SemanticAttributes.HTTP_ROUTE,
+                "/hello",
+                SemanticAttributes.HTTP_RESPONSE_STATUS_CODE,
+                200L),
+            server,
+            OpenTelemetryObservationHandler.Kind.HTTP_SERVER,
+            null),
+        Arguments.of(
+            "http client",
+            Attributes.of(
+                SemanticAttributes.HTTP_REQUEST_METHOD,
+                "GET",
+                OpenTelemetryObservationHandler.URL_TEMPLATE,
+                "/hello",
+                SemanticAttributes.HTTP_RESPONSE_STATUS_CODE,
+                200L),
+            server,
+            OpenTelemetryObservationHandler.Kind.HTTP_CLIENT,
+            null),
+        Arguments.of(
+            "http client without response",
+            Attributes.of(
+                SemanticAttributes.SERVER_ADDRESS,
+                "example.com",
+                OpenTelemetryObservationHandler.ERROR_TYPE,
+                "IOException"),
+            KeyValues.of("client.name", "example.com", "status", "CLIENT_ERROR")
+                .and("exception", "IOException"),
+            OpenTelemetryObservationHandler.Kind.HTTP_CLIENT,
+            null),
+        Arguments.of(
+            "error",
+            Attributes.of(OpenTelemetryObservationHandler.ERROR_TYPE, "java.io.IOException"),
+            KeyValues.empty(),
+            OpenTelemetryObservationHandler.Kind.HTTP_SERVER,
+            new IOException()),
+        Arguments.of(
+            "other observation",
+            Attributes.builder().put("method", "GET").put("class", "Foo").build(),
+            KeyValues.of("method", "GET", "class", "Foo"),
+            OpenTelemetryObservationHandler.Kind.OTHER,
+            null));
+  }
+}
@@ -0,0 +1,42 @@
+package com.grafana.opentelemetry;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+class OpenTelemetryRuntimeHintsTest {
+
+  private static final String HOST_RESOURCE_PROVIDER =
+      "io.opentelemetry.instrumentation.resources.HostResourceProvider";
+
+  private final RuntimeHints hints = new RuntimeHints();
+
+  @Test
+  void registerHints() {
+    new OpenTelemetryRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+    Assertions.assertThat(
+            RuntimeHintsPredicates.resource().forResource("grafana-otel-starter.properties"))
+        .accepts(hints);
+    // our own service
+    Assertions.assertThat(
+            RuntimeHintsPredicates.resource()
+                .forResource(
+                    "META-INF/services/org.apache.logging.log4j.core.util.ContextDataProvider"))
+        .accepts(hints);
+    Assertions.assertThat(
+            RuntimeHintsPredicates.reflection().onType(Log4jContextDataProvider.class))
+        .accepts(hints);
+    // a resource detector of opentelemetry-resources
+    Assertions.assertThat(
+            RuntimeHintsPredicates.resource()
+                .forResource(
+                    "META-INF/services/io.opentelemetry.sdk.autoconfigure.spi.ResourceProvider"))
+        .accepts(hints);
+    Assertions.assertThat(
+            RuntimeHintsPredicates.reflection().onType(TypeReference.of(HOST_RESOURCE_PROVIDER)))
+        .accepts(hints);
+  }
+}
@@ -0,0 +1,179 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PipelineHealthTest {
+
+  private SdkTracerProvider createTracerProvider(
+      PipelineHealth health, Function<Collection<SpanData>, CompletableResultCode> export) {
+    SpanExporter exporter =
+        new SpanExporter() {
+          @Override
+          public CompletableResultCode export(Collection<SpanData> spans) {
+            return export.apply(spans);
+          }
+
+          @Override
+          public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+          }
+        };
+    return SdkTracerProvider.builder()
+        .addSpanProcessor(health.spanProcessor())
+        .addSpanProcessor(
+            BatchSpanProcessor.builder(
+                    health.wrapQueue(new PipelineHealth.Spans(exporter, health.getTraces())))
+                // only exported when flushed
+                .setScheduleDelay(Duration.ofHours(1))
+                .build())
+        .build();
+  }
+
+  private static void endSpans(SdkTracerProvider tracerProvider, int count) {
+    for (int i = 0; i < count; i++) {
+      tracerProvider.get("test").spanBuilder("span").startSpan().end();
+    }
+  }
+
+  @Test
+  void exported() {
+    PipelineHealth health = new PipelineHealth(10, 10);
+    SdkTracerProvider tracerProvider =
+        createTracerProvider(health, spans -> CompletableResultCode.ofSuccess());
+    endSpans(tracerProvider, 2);
+
+    Assertions.assertThat(health.getTraces().getQueueSize()).isEqualTo(2);
+
+    tracerProvider.forceFlush().join(10, TimeUnit.SECONDS);
+
+    PipelineHealth.Signal traces = health.getTraces();
+    Assertions.assertThat(traces.getQueueSize()).isZero();
+    Assertions.assertThat(traces.getExported()).isEqualTo(2);
+    Assertions.assertThat(traces.getFailed()).isZero();
+    Assertions.assertThat(traces.getDropped()).isZero();
+    Assertions.assertThat(traces.getBytes()).isPositive();
+  }
+
+  @Test
+  void failed() {
+    PipelineHealth health = new PipelineHealth(10, 10);
+    SdkTracerProvider tracerProvider =
+        createTracerProvider(health, spans -> CompletableResultCode.ofFailure());
+    endSpans(tracerProvider, 1);
+
+    tracerProvider.forceFlush().join(10, TimeUnit.SECONDS);
+
+    Assertions.assertThat(health.getTraces().getExported()).isZero();
+    Assertions.assertThat(health.getTraces().getFailed()).isEqualTo(1);
+    Assertions.assertThat(health.getTraces().describe().get("lastFailure")).isNotNull();
+  }
+
+  @Test
+  void droppedWhenQueueIsFull() {
+    PipelineHealth health = new PipelineHealth(2, 2);
+    SdkTracerProvider tracerProvider =
+        createTracerProvider(health, spans -> CompletableResultCode.ofSuccess());
+    endSpans(tracerProvider, 3);
+
+    Assertions.assertThat(health.getTraces().getQueueSize()).isEqualTo(2);
+    Assertions.assertThat(health.getTraces().getDropped()).isEqualTo(1);
+  }
+
+  @Test
+  void onlyOtlpExporters() {
+    PipelineHealth health = new PipelineHealth(2, 2);
+    SpanExporter logging = LoggingSpanExporter.create();
+
+    Assertions.assertThat(health.wrap(logging)).isSameAs(logging);
+    Assertions.assertThat(health.wrapQueue(logging, logging)).isSameAs(logging);
+  }
+
+  @Test
+  void estimatedPayloadSize() {
+    PipelineHealth small = new PipelineHealth(10, 10);
+    SdkTracerProvider smallProvider =
+        createTracerProvider(small, spans -> CompletableResultCode.ofSuccess());
+    smallProvider.get("test").spanBuilder("span").startSpan().end();
+    smallProvider.forceFlush().join(10, TimeUnit.SECONDS);
+    PipelineHealth large = new PipelineHealth(10, 10);
+    SdkTracerProvider largeProvider =
+        createTracerProvider(large, spans -> CompletableResultCode.ofSuccess());
+    largeProvider.get("test").spanBuilder("span").setAttribute("key", "value").startSpan().end();
+    largeProvider.forceFlush().join(10, TimeUnit.SECONDS);
+
+    Assertions.assertThat(small.getTraces().getBytes()).isPositive();
+    Assertions.assertThat(large.getTraces().getBytes())
+        .isGreaterThan(small.getTraces().getBytes());
+  }
+
+  @Test
+  void notQueuedWithoutExporter() {
+    PipelineHealth health = new PipelineHealth(2, 2);
+    health.getTraces().enqueue();
+    health.getLogs().enqueue();
+
+    Assertions.assertThat(health.getTraces().getQueueSize()).isZero();
+    Assertions.assertThat(health.getLogs().getQueueSize()).isZero();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void describe() {
+    PipelineHealth health = PipelineHealth.create(new GrafanaProperties());
+    try {
+      health.setConfigProperties(
+          OpenTelemetryConfig.maskAuthHeader(
+              Map.of(
+                  "otel.exporter.otlp.endpoint", "https://otlp.example.com",
+                  "otel.exporter.otlp.protocol", "http/protobuf",
+                  OpenTelemetryConfig.OTLP_HEADERS, "Authorization=Basic 0123456789abcdef")));
+      Logger.getLogger("io.opentelemetry.exporter.internal.http.HttpExporter")
+          .log(Level.WARNING, "Failed to export spans. Server responded with HTTP status code 401");
+
+      Map<String, Object> description = health.describe();
+
+      Assertions.assertThat(description)
+          .containsEntry("endpoint", "https://otlp.example.com")
+          .containsEntry("protocol", "http/protobuf");
+      Assertions.assertThat((Map<String, String>) description.get("configProperties"))
+          .containsEntry(OpenTelemetryConfig.OTLP_HEADERS, "Authorization=Basic 0123...");
+      Assertions.assertThat((Map<String, Object>) description.get("signals"))
+          .containsOnlyKeys("traces", "metrics", "logs");
+      Assertions.assertThat((Map<String, Object>) description.get("lastExportError"))
+          .containsEntry(
+              "message", "Failed to export spans. Server responded with HTTP status code 401");
+    } finally {
+      health.close();
+    }
+  }
+
+  @Test
+  void closeStopsCapturingErrors() {
+    PipelineHealth health = PipelineHealth.create(new GrafanaProperties());
+    health.close();
+
+    Logger.getLogger("io.opentelemetry.exporter.internal.http.HttpExporter")
+        .log(Level.WARNING, "Failed to export logs");
+
+    Assertions.assertThat(health.describe().get("lastExportError")).isNull();
+  }
+}
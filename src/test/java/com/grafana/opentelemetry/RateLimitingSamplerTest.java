@@ -0,0 +1,112 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.TraceId;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.samplers.SamplingDecision;
+import io.opentelemetry.semconv.SemanticAttributes;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class RateLimitingSamplerTest {
+
+  private static final String TRACE_ID = TraceId.fromLongs(1, 1);
+  private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("routeCases")
+  void routes(String name, boolean expected, Attributes attributes) {
+    RateLimitingSampler sampler =
+        new RateLimitingSampler(
+            1.0,
+            0,
+            List.of(
+                new RateLimitingSampler.Route("/actuator/**", 0.0, 0, 0),
+                new RateLimitingSampler.Route("/actuator/info", 1.0, 0, 0),
+                new RateLimitingSampler.Route("/api/**", 0.0, 0, 0)),
+            0);
+
+    Assertions.assertThat(sample(sampler, attributes, 0)).isEqualTo(expected);
+  }
+
+  private static Stream<Arguments> routeCases() {
+    return Stream.of(
+        Arguments.of("no route", true, Attributes.empty()),
+        Arguments.of("other route", true, route("/orders")),
+        Arguments.of("prefix route", false, route("/actuator/health")),
+        Arguments.of("prefix itself", false, route("/api")),
+        Arguments.of("prefix is not a parent", true, route("/apis")),
+        Arguments.of("exact route wins", true, route("/actuator/info")),
+        Arguments.of(
+            "url path", false, Attributes.of(SemanticAttributes.URL_PATH, "/actuator/prometheus")));
+  }
+
+  @Test
+  void requestPath() {
+    RateLimitingSampler sampler =
+        new RateLimitingSampler(
+            1.0, 0, List.of(new RateLimitingSampler.Route("/actuator/**", 0.0, 0, 0)), 0);
+
+    RateLimitingSampler.REQUEST_PATH.set("/actuator/health");
+    try {
+      Assertions.assertThat(sample(sampler, Attributes.empty(), 0)).isFalse();
+      // the route of the span takes precedence
+      Assertions.assertThat(sample(sampler, route("/orders"), 0)).isTrue();
+      Assertions.assertThat(
+              sampler
+                  .shouldSample(
+                      Context.root(),
+                      TRACE_ID,
+                      "span",
+                      SpanKind.INTERNAL,
+                      Attributes.empty(),
+                      List.of(),
+                      0)
+                  .getDecision())
+          .isEqualTo(SamplingDecision.RECORD_AND_SAMPLE);
+    } finally {
+      RateLimitingSampler.REQUEST_PATH.remove();
+    }
+  }
+
+  @Test
+  void rateLimit() {
+    RateLimitingSampler sampler =
+        new RateLimitingSampler(
+            1.0, 2, List.of(new RateLimitingSampler.Route("/slow", null, 1, 0)), 0);
+    Attributes slow = route("/slow");
+
+    Assertions.assertThat(sample(sampler, slow, 0)).isTrue();
+    Assertions.assertThat(sample(sampler, slow, 0)).isFalse();
+    Assertions.assertThat(sample(sampler, Attributes.empty(), 0)).isTrue();
+    Assertions.assertThat(sample(sampler, Attributes.empty(), 0)).isFalse();
+    // tokens are refilled
+    Assertions.assertThat(sample(sampler, Attributes.empty(), SECOND / 2)).isTrue();
+  }
+
+  @Test
+  void ratio() {
+    RateLimitingSampler sampler = new RateLimitingSampler(0.0, 1, List.of(), 0);
+
+    Assertions.assertThat(sample(sampler, Attributes.empty(), 0)).isFalse();
+  }
+
+  private static Attributes route(String route) {
+    return Attributes.of(SemanticAttributes.HTTP_ROUTE, route);
+  }
+
+  private static boolean sample(RateLimitingSampler sampler, Attributes attributes, long now) {
+    return sampler
+            .shouldSample(
+                Context.root(), TRACE_ID, "span", SpanKind.SERVER, attributes, List.of(), now)
+            .getDecision()
+        == SamplingDecision.RECORD_AND_SAMPLE;
+  }
+}
@@ -0,0 +1,161 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+import io.opentelemetry.sdk.autoconfigure.spi.ResourceProvider;
+import io.opentelemetry.sdk.resources.Resource;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResourceDetectorTest {
+
+  private static final AttributeKey<String> CONTAINER_ID = AttributeKey.stringKey("container.id");
+  private static final AttributeKey<Long> PROCESS_PID = AttributeKey.longKey("process.pid");
+  private static final AttributeKey<String> SLOW = AttributeKey.stringKey("slow");
+
+  @TempDir Path directory;
+
+  private final ContainerProvider container = new ContainerProvider();
+  private final ProcessProvider process = new ProcessProvider();
+  private final SlowProvider slow = new SlowProvider();
+  private final FailingProvider failing = new FailingProvider();
+
+  private ResourceDetector detector(Path cacheFile, String bootId) {
+    return new ResourceDetector(
+        List.of(container, process, slow, failing),
+        Set.of(ContainerProvider.class.getName()),
+        Duration.ofMillis(200),
+        cacheFile,
+        () -> bootId);
+  }
+
+  @Test
+  void skipSlowAndFailingDetectors() {
+    long start = System.nanoTime();
+    Resource resource = detector(null, null).detect(null);
+
+    Assertions.assertThat(Duration.ofNanos(System.nanoTime() - start))
+        .isLessThan(Duration.ofSeconds(5));
+    Assertions.assertThat(resource.getAttribute(CONTAINER_ID)).isEqualTo("abc");
+    Assertions.assertThat(resource.getAttribute(PROCESS_PID)).isEqualTo(42L);
+    Assertions.assertThat(resource.getAttribute(SLOW)).isNull();
+  }
+
+  @Test
+  void disabledDetectors() {
+    ResourceDetector detector = detector(null, null);
+
+    Map<String, String> properties = detector.disable(List.of(ProcessProvider.class.getName()));
+    Assertions.assertThat(properties.get(ResourceDetector.DISABLED_PROVIDERS).split(","))
+        .containsExactlyInAnyOrder(
+            ContainerProvider.class.getName(),
+            ProcessProvider.class.getName(),
+            SlowProvider.class.getName(),
+            FailingProvider.class.getName());
+
+    Resource resource = detector.detect(null);
+    Assertions.assertThat(process.calls).hasValue(0);
+    Assertions.assertThat(resource.getAttribute(PROCESS_PID)).isNull();
+    Assertions.assertThat(resource.getAttribute(CONTAINER_ID)).isEqualTo("abc");
+  }
+
+  @Test
+  void cacheByBootId() {
+    Path cacheFile = directory.resolve("resource.properties");
+
+    Assertions.assertThat(detector(cacheFile, "boot-1").detect(null).getAttributes())
+        .containsEntry(CONTAINER_ID, "abc");
+    Assertions.assertThat(cacheFile).exists();
+    Assertions.assertThat(container.calls).hasValue(1);
+
+    // the cached detector is skipped, the others still run
+    Resource resource = detector(cacheFile, "boot-1").detect(null);
+    Assertions.assertThat(resource.getAttribute(CONTAINER_ID)).isEqualTo("abc");
+    Assertions.assertThat(resource.getAttribute(PROCESS_PID)).isEqualTo(42L);
+    Assertions.assertThat(container.calls).hasValue(1);
+    Assertions.assertThat(process.calls).hasValue(2);
+
+    // after a reboot
+    detector(cacheFile, "boot-2").detect(null);
+    Assertions.assertThat(container.calls).hasValue(2);
+  }
+
+  @Test
+  void noCacheWithoutBootId() {
+    Path cacheFile = directory.resolve("resource.properties");
+
+    detector(cacheFile, null).detect(null);
+
+    Assertions.assertThat(cacheFile).doesNotExist();
+  }
+
+  @Test
+  void hostNameLookupTimeout() {
+    Assertions.assertThat(
+            ResourceDetector.getHostName(CompletableFuture.completedFuture("host"), Duration.ZERO))
+        .isEqualTo("host");
+    Assertions.assertThat(
+            ResourceDetector.getHostName(new CompletableFuture<>(), Duration.ofMillis(10)))
+        .isNull();
+  }
+
+  private abstract static class FakeProvider implements ResourceProvider {
+    final AtomicInteger calls = new AtomicInteger();
+    private final Attributes attributes;
+    private final long delayMillis;
+
+    FakeProvider(Attributes attributes, long delayMillis) {
+      this.attributes = attributes;
+      this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public Resource createResource(ConfigProperties config) {
+      calls.incrementAndGet();
+      try {
+        Thread.sleep(delayMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return Resource.create(attributes);
+    }
+  }
+
+  private static class ContainerProvider extends FakeProvider {
+    ContainerProvider() {
+      super(Attributes.of(CONTAINER_ID, "abc"), 0);
+    }
+  }
+
+  private static class ProcessProvider extends FakeProvider {
+    ProcessProvider() {
+      super(Attributes.of(PROCESS_PID, 42L), 0);
+    }
+  }
+
+  private static class SlowProvider extends FakeProvider {
+    SlowProvider() {
+      super(Attributes.of(SLOW, "yes"), 10_000);
+    }
+  }
+
+  private static class FailingProvider extends FakeProvider {
+    FailingProvider() {
+      super(Attributes.empty(), 0);
+    }
+
+    @Override
+    public Resource createResource(ConfigProperties config) {
+      throw new IllegalStateException("not available");
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.SmartLifecycle;
+
+class ShutdownFlushTest {
+
+  private final List<SpanData> exported = new CopyOnWriteArrayList<>();
+  private final List<Long> drained = new ArrayList<>();
+
+  private final LogAppenderConfigurer configurer =
+      new LogAppenderConfigurer() {
+        @Override
+        public void tryAddAppender(
+            OpenTelemetry openTelemetry, GrafanaProperties.LogsProperties properties) {}
+
+        @Override
+        public long drain(long timeoutNanos) {
+          drained.add(timeoutNanos);
+          return 0;
+        }
+      };
+
+  private OpenTelemetrySdk createSdk(
+      ShutdownFlush flush, Function<Collection<SpanData>, CompletableResultCode> export) {
+    SpanExporter exporter =
+        new SpanExporter() {
+          @Override
+          public CompletableResultCode export(Collection<SpanData> spans) {
+            return export.apply(spans);
+          }
+
+          @Override
+          public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+          }
+        };
+    OpenTelemetrySdk sdk =
+        OpenTelemetrySdk.builder()
+            .setTracerProvider(
+                SdkTracerProvider.builder()
+                    .addSpanProcessor(
+                        BatchSpanProcessor.builder(flush.wrap(exporter))
+                            // only exported when flushed
+                            .setScheduleDelay(Duration.ofHours(1))
+                            .build())
+                    .build())
+            .build();
+    flush.setSdk(sdk);
+    return sdk;
+  }
+
+  @Test
+  void flushOnStop() {
+    ShutdownFlush flush = new ShutdownFlush(Duration.ofSeconds(10), List.of(configurer));
+    OpenTelemetrySdk sdk =
+        createSdk(
+            flush,
+            spans -> {
+              exported.addAll(spans);
+              return CompletableResultCode.ofSuccess();
+            });
+    flush.start();
+    sdk.getTracer("test").spanBuilder("span").startSpan().end();
+
+    flush.stop();
+
+    Assertions.assertThat(flush.isRunning()).isFalse();
+    Assertions.assertThat(exported).hasSize(1);
+    Assertions.assertThat(drained).hasSize(1);
+    Assertions.assertThat(flush.getTraces().getLost()).isZero();
+    // shut down - new spans are not recorded
+    Assertions.assertThat(sdk.getTracer("test").spanBuilder("late").startSpan().isRecording())
+        .isFalse();
+  }
+
+  @Test
+  void boundedByTimeout() {
+    ShutdownFlush flush = new ShutdownFlush(Duration.ofMillis(200), List.of(configurer));
+    // the export never completes
+    OpenTelemetrySdk sdk = createSdk(flush, spans -> new CompletableResultCode());
+    flush.start();
+    sdk.getTracer("test").spanBuilder("span").startSpan().end();
+
+    long start = System.nanoTime();
+    flush.stop();
+
+    Assertions.assertThat(Duration.ofNanos(System.nanoTime() - start))
+        .isLessThan(Duration.ofSeconds(5));
+    Assertions.assertThat(flush.getTraces().getLost()).isEqualTo(1);
+  }
+
+  @Test
+  void failedExportsAreLost() {
+    ShutdownFlush flush = new ShutdownFlush(Duration.ofSeconds(10), List.of());
+    OpenTelemetrySdk sdk = createSdk(flush, spans -> CompletableResultCode.ofFailure());
+    flush.start();
+    sdk.getTracer("test").spanBuilder("span").startSpan().end();
+
+    flush.stop();
+
+    Assertions.assertThat(flush.getTraces().getLost()).isEqualTo(1);
+  }
+
+  @Test
+  void lossesBelowTheExporter() {
+    ShutdownFlush flush = new ShutdownFlush(Duration.ofMillis(200), List.of());
+    List<CompletableResultCode> requests = new CopyOnWriteArrayList<>();
+    ConcurrentExporter<SpanData> concurrent =
+        new ConcurrentExporter<>(
+            spans -> {
+              CompletableResultCode request = new CompletableResultCode();
+              requests.add(request);
+              return request;
+            },
+            null,
+            0,
+            2,
+            null,
+            null);
+    flush.getTraces().track(concurrent);
+    OpenTelemetrySdk sdk = createSdk(flush, concurrent::export);
+    flush.start();
+    sdk.getTracer("test").spanBuilder("span").startSpan().end();
+    sdk.getSdkTracerProvider().forceFlush().join(10, TimeUnit.SECONDS);
+    // before the shutdown, but after the export has completed
+    requests.get(0).fail();
+    sdk.getTracer("test").spanBuilder("span").startSpan().end();
+
+    flush.stop();
+
+    // the request of the second span never completes
+    Assertions.assertThat(requests).hasSize(2);
+    Assertions.assertThat(flush.getTraces().getLost()).isEqualTo(1);
+    requests.get(1).fail();
+    Assertions.assertThat(flush.getTraces().getLost()).isEqualTo(1);
+  }
+
+  @Test
+  void noSdk() {
+    ShutdownFlush flush = new ShutdownFlush(Duration.ofSeconds(10), List.of(configurer));
+    flush.start();
+
+    flush.stop();
+
+    Assertions.assertThat(drained).isEmpty();
+  }
+
+  @Test
+  void stoppedAfterWebServer() {
+    ShutdownFlush flush = new ShutdownFlush(Duration.ofSeconds(10), List.of());
+
+    // phases with a higher value are stopped first
+    Assertions.assertThat(flush.getPhase()).isLessThan(SmartLifecycle.DEFAULT_PHASE - 2048);
+  }
+}
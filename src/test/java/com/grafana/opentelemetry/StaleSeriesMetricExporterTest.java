@@ -0,0 +1,228 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.LongUpDownCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class StaleSeriesMetricExporterTest {
+
+  private static final AttributeKey<String> KEY = AttributeKey.stringKey("key");
+  private static final Attributes A = Attributes.of(KEY, "a");
+  private static final Attributes B = Attributes.of(KEY, "b");
+  private static final Duration INTERVAL = Duration.ofMinutes(1);
+
+  private final List<Collection<MetricData>> exports = new ArrayList<>();
+
+  private final MetricExporter delegate =
+      new MetricExporter() {
+        @Override
+        public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+          return AggregationTemporality.CUMULATIVE;
+        }
+
+        @Override
+        public CompletableResultCode export(Collection<MetricData> metrics) {
+          exports.add(metrics);
+          return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+          return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+          return CompletableResultCode.ofSuccess();
+        }
+      };
+
+  private long now;
+
+  private final StaleSeriesMetricExporter exporter =
+      new StaleSeriesMetricExporter(delegate, 2, INTERVAL, true, () -> now);
+
+  private final SdkMeterProvider meterProvider =
+      SdkMeterProvider.builder()
+          .registerMetricReader(PeriodicMetricReader.builder(exporter).build())
+          .build();
+
+  @AfterEach
+  void tearDown() {
+    meterProvider.close();
+  }
+
+  @Test
+  void countersAreCumulativeUntilStale() {
+    Meter meter = meterProvider.get("test");
+    // keeps the collections from being empty
+    meter.gaugeBuilder("gauge").buildWithCallback(m -> m.record(1));
+    LongCounter counter = meter.counterBuilder("counter").build();
+
+    counter.add(1, A);
+    Assertions.assertThat(collectCounter()).containsExactlyInAnyOrderEntriesOf(Map.of(A, 1L));
+
+    counter.add(2, A);
+    counter.add(1, B);
+    Assertions.assertThat(collectCounter())
+        .containsExactlyInAnyOrderEntriesOf(Map.of(A, 3L, B, 1L));
+
+    counter.add(1, B);
+    Assertions.assertThat(collectCounter())
+        .containsExactlyInAnyOrderEntriesOf(Map.of(A, 3L, B, 2L));
+
+    // A was last updated 2 intervals ago
+    Assertions.assertThat(collectCounter()).containsExactlyInAnyOrderEntriesOf(Map.of(B, 2L));
+    Assertions.assertThat(exporter.getEvicted()).isEqualTo(1);
+
+    // a series that is updated again starts from scratch
+    counter.add(5, A);
+    Assertions.assertThat(collectCounter()).containsExactlyInAnyOrderEntriesOf(Map.of(A, 5L));
+    Assertions.assertThat(exporter.getEvicted()).isEqualTo(2);
+  }
+
+  @Test
+  void forceFlushDoesNotCountAsInterval() {
+    Meter meter = meterProvider.get("test");
+    meter.gaugeBuilder("gauge").buildWithCallback(m -> m.record(1));
+    LongCounter counter = meter.counterBuilder("counter").build();
+
+    counter.add(1, A);
+    Assertions.assertThat(collectCounter()).containsExactlyInAnyOrderEntriesOf(Map.of(A, 1L));
+
+    // e.g. flushes on shutdown, within the same export interval
+    for (int i = 0; i < 5; i++) {
+      meterProvider.forceFlush().join(10, TimeUnit.SECONDS);
+    }
+    Assertions.assertThat(exports).hasSize(6);
+    Assertions.assertThat(exports.get(exports.size() - 1))
+        .anySatisfy(m -> Assertions.assertThat(m.getName()).isEqualTo("counter"));
+    Assertions.assertThat(exporter.getEvicted()).isZero();
+  }
+
+  @Test
+  void idleUpDownCountersKeepTheirValue() {
+    LongUpDownCounter active = meterProvider.get("test").upDownCounterBuilder("active").build();
+
+    active.add(5, A);
+    for (int i = 0; i < 5; i++) {
+      Assertions.assertThat(collectUpDownCounter())
+          .containsExactlyInAnyOrderEntriesOf(Map.of(A, 5L));
+    }
+    Assertions.assertThat(exporter.getEvicted()).isZero();
+  }
+
+  @Test
+  void seriesCountTowardsMemoryBudget() {
+    MemoryBudget budget = new MemoryBudget(Long.MAX_VALUE);
+    StaleSeriesMetricExporter accounted =
+        new StaleSeriesMetricExporter(
+            delegate, 2, INTERVAL, true, () -> now, budget.account("metrics", "stale_series"));
+    SdkMeterProvider provider =
+        SdkMeterProvider.builder()
+            .registerMetricReader(PeriodicMetricReader.builder(accounted).build())
+            .build();
+    try {
+      LongCounter counter = provider.get("test").counterBuilder("counter").build();
+      counter.add(1, A);
+      now += INTERVAL.toNanos();
+      provider.forceFlush().join(10, TimeUnit.SECONDS);
+      Assertions.assertThat(budget.getUsed())
+          .isEqualTo(MemoryBudget.SERIES_OVERHEAD + MemoryBudget.estimate(A));
+
+      counter.add(1, B);
+      now += 2 * INTERVAL.toNanos();
+      provider.forceFlush().join(10, TimeUnit.SECONDS);
+      Assertions.assertThat(budget.getUsed())
+          .isEqualTo(MemoryBudget.SERIES_OVERHEAD + MemoryBudget.estimate(B));
+    } finally {
+      provider.close();
+    }
+  }
+
+  @Test
+  void histogramsAreCumulative() {
+    Meter meter = meterProvider.get("test");
+    DoubleHistogram histogram = meter.histogramBuilder("histogram").build();
+
+    histogram.record(1, A);
+    collect();
+    histogram.record(3, A);
+    HistogramPointData point =
+        collect().stream()
+            .filter(m -> m.getName().equals("histogram"))
+            .flatMap(m -> m.getHistogramData().getPoints().stream())
+            .findFirst()
+            .orElseThrow();
+
+    Assertions.assertThat(point.getCount()).isEqualTo(2);
+    Assertions.assertThat(point.getSum()).isEqualTo(4);
+    Assertions.assertThat(point.getMin()).isEqualTo(1);
+    Assertions.assertThat(point.getMax()).isEqualTo(3);
+  }
+
+  @Test
+  void temporality() {
+    Assertions.assertThat(exporter.getAggregationTemporality(InstrumentType.COUNTER))
+        .isEqualTo(AggregationTemporality.DELTA);
+    Assertions.assertThat(exporter.getAggregationTemporality(InstrumentType.UP_DOWN_COUNTER))
+        .isEqualTo(AggregationTemporality.CUMULATIVE);
+    Assertions.assertThat(exporter.getAggregationTemporality(InstrumentType.OBSERVABLE_COUNTER))
+        .isEqualTo(AggregationTemporality.CUMULATIVE);
+    Assertions.assertThat(
+            new StaleSeriesMetricExporter(delegate, 2, INTERVAL, false, () -> now)
+                .getAggregationTemporality(InstrumentType.HISTOGRAM))
+        .isEqualTo(AggregationTemporality.CUMULATIVE);
+  }
+
+  /** Collects the metrics of the next export interval. */
+  private Collection<MetricData> collect() {
+    now += INTERVAL.toNanos();
+    meterProvider.forceFlush().join(10, TimeUnit.SECONDS);
+    return exports.get(exports.size() - 1);
+  }
+
+  private Map<Attributes, Long> collectCounter() {
+    return collect().stream()
+        .filter(m -> m.getName().equals("counter"))
+        .peek(
+            m ->
+                Assertions.assertThat(m.getLongSumData().getAggregationTemporality())
+                    .isEqualTo(AggregationTemporality.CUMULATIVE))
+        .flatMap(m -> m.getLongSumData().getPoints().stream())
+        .collect(Collectors.toMap(LongPointData::getAttributes, LongPointData::getValue));
+  }
+
+  private Map<Attributes, Long> collectUpDownCounter() {
+    return collect().stream()
+        .filter(m -> m.getName().equals("active"))
+        .peek(
+            m ->
+                Assertions.assertThat(m.getLongSumData().getAggregationTemporality())
+                    .isEqualTo(AggregationTemporality.CUMULATIVE))
+        .flatMap(m -> m.getLongSumData().getPoints().stream())
+        .collect(Collectors.toMap(LongPointData::getAttributes, LongPointData::getValue));
+  }
+}
@@ -0,0 +1,214 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TailSamplingSpanExporterTest {
+
+  private static final long WINDOW = Duration.ofSeconds(5).toNanos();
+  private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+  private final List<SpanData> exported = new ArrayList<>();
+
+  private final SpanExporter delegate =
+      new SpanExporter() {
+        @Override
+        public CompletableResultCode export(Collection<SpanData> spans) {
+          exported.addAll(spans);
+          return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+          return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+          return CompletableResultCode.ofSuccess();
+        }
+      };
+
+  private TailSamplingSpanExporter exporter(int maxTraces, int maxSpans) {
+    return new TailSamplingSpanExporter(
+        delegate,
+        WINDOW,
+        Duration.ofSeconds(1).toNanos(),
+        0,
+        maxTraces,
+        maxSpans,
+        null,
+        SHUTDOWN_TIMEOUT,
+        false);
+  }
+
+  private static Tracer tracer(SpanExporter exporter) {
+    return SdkTracerProvider.builder()
+        .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+        .build()
+        .get("test");
+  }
+
+  @Test
+  void keepsErrorsAndSlowTraces() {
+    Tracer tracer = tracer(exporter(100, 100));
+
+    trace(tracer, 0, false);
+    Assertions.assertThat(exported).isEmpty();
+
+    trace(tracer, 0, true);
+    Assertions.assertThat(exported).hasSize(2);
+
+    trace(tracer, 2, false);
+    Assertions.assertThat(exported).hasSize(4);
+  }
+
+  @Test
+  void decidesExpiredTraces() {
+    TailSamplingSpanExporter exporter = exporter(100, 100);
+    Tracer tracer = tracer(exporter);
+
+    Span root = tracer.spanBuilder("root").startSpan();
+    try (Scope ignored = root.makeCurrent()) {
+      tracer.spanBuilder("child").startSpan().setStatus(StatusCode.ERROR).end();
+    }
+    Assertions.assertThat(exporter.getBufferedTraces()).isEqualTo(1);
+
+    exporter.export(List.of(), System.nanoTime() + WINDOW);
+    Assertions.assertThat(exporter.getBufferedTraces()).isZero();
+    Assertions.assertThat(exported).hasSize(1);
+
+    // the root span follows the decision
+    root.end();
+    Assertions.assertThat(exported).hasSize(2);
+  }
+
+  @Test
+  void evictsOldestTrace() {
+    TailSamplingSpanExporter exporter = exporter(100, 2);
+    Tracer tracer = tracer(exporter);
+
+    Span first = tracer.spanBuilder("first").startSpan();
+    try (Scope ignored = first.makeCurrent()) {
+      tracer.spanBuilder("child").startSpan().setStatus(StatusCode.ERROR).end();
+    }
+    Span second = tracer.spanBuilder("second").startSpan();
+    try (Scope ignored = second.makeCurrent()) {
+      tracer.spanBuilder("child").startSpan().end();
+      tracer.spanBuilder("child").startSpan().end();
+    }
+
+    Assertions.assertThat(exporter.getEvicted()).isEqualTo(1);
+    Assertions.assertThat(exported).hasSize(1);
+  }
+
+  @Test
+  void serializesExports() throws InterruptedException {
+    AtomicInteger concurrent = new AtomicInteger();
+    AtomicInteger maxConcurrent = new AtomicInteger();
+    SpanExporter slow =
+        new SpanExporter() {
+          @Override
+          public CompletableResultCode export(Collection<SpanData> spans) {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+              Thread.sleep(10);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            concurrent.decrementAndGet();
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+          }
+        };
+    // like the batch processor and the thread that decides expired traces
+    TailSamplingSpanExporter exporter =
+        new TailSamplingSpanExporter(slow, WINDOW, 0, 0, 100, 100, null, SHUTDOWN_TIMEOUT, false);
+    Tracer tracer = tracer(exporter);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  return;
+                }
+                for (int j = 0; j < 5; j++) {
+                  tracer.spanBuilder("root").startSpan().end();
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assertions.assertThat(maxConcurrent.get()).isEqualTo(1);
+  }
+
+  @Test
+  void onlyOtlpExporters() {
+    GrafanaProperties.TailSamplingProperties properties =
+        new GrafanaProperties.TailSamplingProperties();
+    properties.setEnabled(true);
+    SpanExporter logging = LoggingSpanExporter.create();
+    SpanExporter otlp = OtlpHttpSpanExporter.getDefault();
+    try {
+      Assertions.assertThat(
+              TailSamplingSpanExporter.wrap(logging, logging, properties, null, SHUTDOWN_TIMEOUT))
+          .isSameAs(logging);
+      SpanExporter wrapped =
+          TailSamplingSpanExporter.wrap(otlp, otlp, properties, null, SHUTDOWN_TIMEOUT);
+      Assertions.assertThat(wrapped).isInstanceOf(TailSamplingSpanExporter.class);
+      wrapped.shutdown();
+    } finally {
+      otlp.shutdown();
+    }
+  }
+
+  private static void trace(Tracer tracer, long durationSeconds, boolean error) {
+    long start = TimeUnit.SECONDS.toNanos(1_000_000);
+    Span root =
+        tracer.spanBuilder("root").setStartTimestamp(start, TimeUnit.NANOSECONDS).startSpan();
+    try (Scope ignored = root.makeCurrent()) {
+      Span child = tracer.spanBuilder("child").startSpan();
+      if (error) {
+        child.setStatus(StatusCode.ERROR);
+      }
+      child.end();
+    }
+    root.end(start + TimeUnit.SECONDS.toNanos(durationSeconds), TimeUnit.NANOSECONDS);
+  }
+}
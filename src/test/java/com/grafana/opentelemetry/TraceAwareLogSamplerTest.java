@@ -0,0 +1,36 @@
+package com.grafana.opentelemetry;
+
+import io.opentelemetry.api.logs.Severity;
+import java.util.stream.Stream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class TraceAwareLogSamplerTest {
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("samplingCases")
+  void shouldExport(
+      String name,
+      boolean expected,
+      double ratio,
+      Severity severity,
+      boolean inSpan,
+      boolean sampled) {
+    Assertions.assertThat(
+            new TraceAwareLogSampler(ratio)
+                .shouldExport(severity.getSeverityNumber(), inSpan, sampled))
+        .isEqualTo(expected);
+  }
+
+  private static Stream<Arguments> samplingCases() {
+    return Stream.of(
+        Arguments.of("sampled span", true, 0.0, Severity.INFO, true, true),
+        Arguments.of("span not sampled", false, 1.0, Severity.INFO, true, false),
+        Arguments.of("warn in span not sampled", true, 0.0, Severity.WARN, true, false),
+        Arguments.of("error outside span", true, 0.0, Severity.ERROR, false, false),
+        Arguments.of("outside span with ratio 1", true, 1.0, Severity.DEBUG, false, false),
+        Arguments.of("outside span with ratio 0", false, 0.0, Severity.INFO, false, false));
+  }
+}